@@ -0,0 +1,84 @@
+package com.robotfloor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+/**
+ * Shared fixtures for the JMH benchmarks: floor backends by name and reproducible scripts
+ */
+final class BenchmarkScripts {
+
+    private BenchmarkScripts() {
+    }
+
+    /**
+     * Get the factory for a floor backend
+     * @param backend One of "array", "packed", "sparse", "concurrent" or "runlength"
+     */
+    static IntFunction<Floor> backend(String backend) {
+        switch (backend) {
+            case "array":
+                return Floor::new;
+            case "packed":
+                return PackedFloor::new;
+            case "sparse":
+                return SparseFloor::new;
+            case "concurrent":
+                return ConcurrentFloor::new;
+            case "runlength":
+                return RunLengthFloor::new;
+            default:
+                throw new IllegalArgumentException("Unknown floor backend: " + backend);
+        }
+    }
+
+    /**
+     * Build a pen-down walk that stays on the floor, starting with 'I size' and 'D'
+     * Each step turns and then moves a random distance up to the nearest wall.
+     * @param size The floor size
+     * @param length The number of commands after 'I' and 'D'
+     * @param seed The random seed
+     */
+    static List<String> walk(int size, int length, long seed) {
+        Random random = new Random(seed);
+        List<String> script = new ArrayList<>(length + 2);
+        script.add("I " + size);
+        script.add("D");
+        Robot robot = new Robot();
+        while (script.size() < length + 2) {
+            if (random.nextBoolean()) {
+                script.add("R");
+                robot.turnRight();
+            } else {
+                script.add("L");
+                robot.turnLeft();
+            }
+            if (script.size() == length + 2) {
+                break;
+            }
+            int room = room(robot, size);
+            int spaces = room == 0 ? 0 : 1 + random.nextInt(room);
+            script.add("M " + spaces);
+            robot.move(spaces);
+        }
+        return script;
+    }
+
+    /**
+     * Get how far the robot can move before leaving the floor
+     */
+    private static int room(Robot robot, int size) {
+        switch (robot.getFacing()) {
+            case NORTH:
+                return size - 1 - robot.getY();
+            case SOUTH:
+                return robot.getY();
+            case EAST:
+                return size - 1 - robot.getX();
+            default:
+                return robot.getX();
+        }
+    }
+}
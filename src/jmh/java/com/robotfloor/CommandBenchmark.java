@@ -0,0 +1,58 @@
+package com.robotfloor;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-command cost of parsing alone and of parsing plus dispatch through
+ * RobotSimulator.executeCommand, on an initialized floor with the pen down
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark {
+
+    @Param({"64", "1024"})
+    private int size;
+
+    @Param({"M 5", "R", "C", "P 0 0 8 8", "undo", "bogus"})
+    private String command;
+
+    private final CommandParser parser = new CommandParser();
+    private RobotSimulator simulator;
+
+    @Setup
+    public void setUp() {
+        // A bounded history keeps memory flat however many commands run
+        simulator = new RobotSimulator(PackedFloor::new, new PrintStream(OutputStream.nullOutputStream()),
+                new CommandHistory(4096, CommandHistory.EvictionPolicy.DROP_OLDEST));
+        simulator.setQuiet(true);
+        simulator.executeCommand("I " + size);
+        simulator.executeCommand("D");
+    }
+
+    @Benchmark
+    public int parse() {
+        return parser.parse(command);
+    }
+
+    @Benchmark
+    public void dispatch() {
+        simulator.executeCommand(command);
+    }
+}
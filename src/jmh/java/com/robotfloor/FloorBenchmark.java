@@ -0,0 +1,74 @@
+package com.robotfloor;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mark throughput of each floor backend by floor size
+ * Single cells are marked at pre-drawn random positions; rows and columns span the whole floor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FloorBenchmark {
+
+    private static final int POSITIONS = 4096;
+
+    @Param({"64", "1024", "4096"})
+    private int size;
+
+    @Param({"array", "packed", "sparse", "runlength"})
+    private String backend;
+
+    private Floor floor;
+    private final int[] xs = new int[POSITIONS];
+    private final int[] ys = new int[POSITIONS];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        floor = BenchmarkScripts.backend(backend).apply(size);
+        Random random = new Random(size);
+        for (int i = 0; i < POSITIONS; i++) {
+            xs[i] = random.nextInt(size);
+            ys[i] = random.nextInt(size);
+        }
+    }
+
+    @Benchmark
+    public void markCell() {
+        int i = next++ & (POSITIONS - 1);
+        floor.mark(xs[i], ys[i]);
+    }
+
+    @Benchmark
+    public void markCellAndUnmark() {
+        int i = next++ & (POSITIONS - 1);
+        floor.mark(xs[i], ys[i]);
+        floor.unmark(xs[i], ys[i]);
+    }
+
+    @Benchmark
+    public void markFullRow() {
+        floor.markRow(ys[next++ & (POSITIONS - 1)], 0, size - 1);
+    }
+
+    @Benchmark
+    public void markFullColumn() {
+        floor.markColumn(xs[next++ & (POSITIONS - 1)], 0, size - 1);
+    }
+}
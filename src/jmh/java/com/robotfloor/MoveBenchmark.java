@@ -0,0 +1,89 @@
+package com.robotfloor;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of moves through RobotSimulator.executeCommand by floor size
+ * 'longMove' sweeps the pen across the whole floor on every call, and 'squareWalk'
+ * cycles through a small closed walk so the robot stays on the floor. 'repeatStaircase'
+ * draws a million-step staircase with one REPEAT, which is fast-forwarded after one iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveBenchmark {
+
+    private static final String[] SQUARE = {
+        "D", "M 5", "R", "M 5", "R", "M 5", "R", "M 5", "R", "U"
+    };
+
+    @Param({"64", "1024", "16384"})
+    private int size;
+
+    @Param({"packed", "sparse", "runlength"})
+    private String backend;
+
+    private RobotSimulator sweeper;
+    private RobotSimulator walker;
+    private RobotSimulator stepper;
+    private String sweep;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        sweeper = simulator();
+        sweeper.executeCommand("D");
+        sweeper.executeCommand("R");
+        sweep = "M " + (size - 1);
+        walker = simulator();
+        stepper = simulator();
+        stepper.executeCommand("D");
+    }
+
+    private RobotSimulator simulator() {
+        // A bounded history keeps memory flat however many commands run
+        RobotSimulator simulator = new RobotSimulator(BenchmarkScripts.backend(backend),
+                new PrintStream(OutputStream.nullOutputStream()),
+                new CommandHistory(4096, CommandHistory.EvictionPolicy.DROP_OLDEST));
+        simulator.setQuiet(true);
+        simulator.executeCommand("I " + size);
+        return simulator;
+    }
+
+    @Benchmark
+    public void longMove() {
+        // Cross the floor, then turn around: every call marks a full row
+        sweeper.executeCommand(sweep);
+        sweeper.executeCommand("R");
+        sweeper.executeCommand("R");
+    }
+
+    @Benchmark
+    public void repeatStaircase() {
+        // Undo it, so every call starts from [0, 0] on an empty floor
+        stepper.executeCommand("REPEAT 1000000 [M 1 R M 1 L]");
+        stepper.executeCommand("UNDO");
+    }
+
+    @Benchmark
+    public void squareWalk() {
+        walker.executeCommand(SQUARE[next]);
+        next = next == SQUARE.length - 1 ? 0 : next + 1;
+    }
+}
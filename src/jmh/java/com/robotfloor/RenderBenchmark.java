@@ -0,0 +1,59 @@
+package com.robotfloor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of rendering a whole floor drawn by a random walk, as a String and as a byte stream
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+    @Param({"64", "256", "1024"})
+    private int size;
+
+    @Param({"array", "packed", "sparse", "runlength"})
+    private String backend;
+
+    private Floor floor;
+    private final FloorRenderer renderer = new FloorRenderer();
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setUp() {
+        RobotSimulator simulator = new RobotSimulator(BenchmarkScripts.backend(backend));
+        simulator.setQuiet(true);
+        simulator.run(CommandProgram.compile(BenchmarkScripts.walk(size, 2000, 21)));
+        floor = simulator.getFloor();
+        out = new ByteArrayOutputStream();
+    }
+
+    @Benchmark
+    public String floorToString() {
+        return floor.toString();
+    }
+
+    @Benchmark
+    public int renderToStream() throws IOException {
+        out.reset();
+        renderer.render(floor, out);
+        return out.size();
+    }
+}
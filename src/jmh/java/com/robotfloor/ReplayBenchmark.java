@@ -0,0 +1,70 @@
+package com.robotfloor;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of history replay ('H') and of running a whole compiled script, by floor size
+ * and script length
+ * With the largest checkpoint interval only the checkpoint taken at 'I' exists, so 'H'
+ * replays the full history.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplayBenchmark {
+
+    @Param({"64", "1024"})
+    private int size;
+
+    @Param({"1000", "100000"})
+    private int scriptLength;
+
+    @Param({"256", "2147483647"})
+    private int checkpointInterval;
+
+    private CommandProgram program;
+    private RobotSimulator simulator;
+
+    @Setup
+    public void setUp() {
+        program = CommandProgram.compile(BenchmarkScripts.walk(size, scriptLength, 25));
+        simulator = newSimulator();
+        simulator.run(program);
+    }
+
+    private RobotSimulator newSimulator() {
+        RobotSimulator result = new RobotSimulator(PackedFloor::new, new PrintStream(OutputStream.nullOutputStream()));
+        result.setQuiet(true);
+        result.setCheckpointInterval(checkpointInterval);
+        return result;
+    }
+
+    @Benchmark
+    public Floor replayHistory() {
+        simulator.executeCommand("H");
+        return simulator.getFloor();
+    }
+
+    @Benchmark
+    public Floor runScript() {
+        RobotSimulator fresh = newSimulator();
+        fresh.run(program);
+        return fresh.getFloor();
+    }
+}
@@ -0,0 +1,119 @@
+package com.robotfloor;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of hosting many SessionHost sessions on a small pool
+ * 'openAndScript' opens the sessions, queues a short script on each and waits for the
+ * pool to finish; its 'opened' counter is the throughput in sessions per second.
+ * 'retainedHeap' keeps the scripted sessions open and idle, collects garbage, and reports
+ * the live heap they hold as 'bytesPerSession'. Run with '-prof gc' to also see the
+ * bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionHostBenchmark {
+
+    private static final String[] SCRIPT = {"I 64", "D", "M 10", "R", "M 10", "R", "M 10", "C"};
+
+    @Param({"10000"})
+    private int sessions;
+
+    @Param({"1", "4"})
+    private int threads;
+
+    private final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+
+    /**
+     * Sessions opened, reported per second
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Opened {
+        public long opened;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            opened = 0;
+        }
+    }
+
+    /**
+     * Live heap held by each idle session, measured after garbage collection
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Retained {
+        public long bytesPerSession;
+    }
+
+    @Benchmark
+    public SessionHost openAndScript(Opened counter) {
+        SessionHost host = scripted();
+        counter.opened += sessions;
+        return host;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public SessionHost retainedHeap(Retained retained) {
+        long before = usedHeapAfterGc();
+        // Closing the host waits for the scripts and leaves the sessions open and idle
+        SessionHost host = scripted();
+        long after = usedHeapAfterGc();
+        Reference.reachabilityFence(host);
+        retained.bytesPerSession = (after - before) / sessions;
+        return host;
+    }
+
+    private SessionHost scripted() {
+        SessionHost host = new SessionHost(threads, PackedFloor::new);
+        for (int i = 0; i < sessions; i++) {
+            SessionHost.Session session = host.open(discard);
+            for (String command : SCRIPT) {
+                session.submit(command);
+            }
+        }
+        host.close();
+        return host;
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        // Collect until the figure settles, since one System.gc() may leave garbage behind
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            long now = memory.getHeapMemoryUsage().getUsed();
+            if (now >= used) {
+                break;
+            }
+            used = now;
+        }
+        return used;
+    }
+}
@@ -0,0 +1,72 @@
+package com.robotfloor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Runs a command script through a simulator without prompts
+ * Lines are streamed from the file and executed until the end of the script or a 'Q'
+ */
+public class BatchRunner {
+
+    private final RobotSimulator simulator;
+    private long commandCount;
+    private long elapsedNanos;
+
+    /**
+     * Constructor for BatchRunner
+     * @param simulator The simulator that executes the script
+     */
+    public BatchRunner(RobotSimulator simulator) {
+        this.simulator = simulator;
+    }
+
+    /**
+     * Execute every command in a script file
+     * @param script The script to run, one command per line
+     * @return The number of commands executed by this run
+     * @throws IOException If the script cannot be read
+     */
+    public long run(Path script) throws IOException {
+        long start = System.nanoTime();
+        long executed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(script, StandardCharsets.UTF_8)) {
+            String line;
+            while (simulator.isRunning() && (line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    simulator.executeCommand(line);
+                    executed++;
+                }
+            }
+        } finally {
+            commandCount += executed;
+            elapsedNanos += System.nanoTime() - start;
+        }
+        return executed;
+    }
+
+    /**
+     * Get the total number of commands executed
+     */
+    public long getCommandCount() {
+        return commandCount;
+    }
+
+    /**
+     * Get the total time spent running scripts, in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Get a one-line report of commands executed and elapsed time
+     */
+    public String getSummary() {
+        return String.format(Locale.ROOT, "Executed %d commands in %.3f ms", commandCount, elapsedNanos / 1_000_000.0);
+    }
+}
@@ -1,20 +1,64 @@
 package com.robotfloor;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 
 /**
  * Tracks the history of all commands executed
+ * Commands are stored encoded (opcode, status and operand in one long) in a ring buffer.
+ * The original text is kept only for entries that do not match their canonical form
+ * (e.g. "m 5" or "M bad"), so a typical entry costs 8 bytes instead of a String. A 'REPEAT'
+ * also keeps its compiled body, so replaying it does not parse the text again.
  */
-public class CommandHistory {
+public class CommandHistory implements Iterable<String> {
 
-    private List<String> commands;
+    /**
+     * What to do when a bounded history is full
+     */
+    public enum EvictionPolicy {
+        /** Overwrite the oldest command */
+        DROP_OLDEST,
+        /** Ignore the new command */
+        REJECT_NEWEST
+    }
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int capacity;
+    private final EvictionPolicy evictionPolicy;
+    private CommandParser parser;
+    private long[] entries;
+    private String[] raw;
+    private int[][] loops;
+    private int head;
+    private int count;
+    private long dropped;
 
     /**
      * Constructor for CommandHistory
+     * The history grows without bound.
      */
     public CommandHistory() {
-        this.commands = new ArrayList<>();
+        this(Integer.MAX_VALUE, EvictionPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Constructor for a bounded CommandHistory
+     * @param capacity The maximum number of commands kept
+     * @param evictionPolicy What to do when a command is added to a full history
+     */
+    public CommandHistory(int capacity, EvictionPolicy evictionPolicy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("History capacity must be greater than zero");
+        }
+        this.capacity = capacity;
+        this.evictionPolicy = Objects.requireNonNull(evictionPolicy);
+        this.entries = new long[Math.min(capacity, INITIAL_CAPACITY)];
     }
 
     /**
@@ -22,41 +66,314 @@ public class CommandHistory {
      * @param command The command to add
      */
     public void addCommand(String command) {
-        commands.add(command);
+        if (parser == null) {
+            parser = new CommandParser();
+        }
+        int status = parser.parse(command);
+        addCommand(command, CommandProgram.header(parser.getOpcode(), status, parser.getLetter()),
+                parser.getOperand());
+    }
+
+    /**
+     * Add a command that has already been decoded
+     * @param command The command text, or null to keep only the encoded form
+     * @param header The instruction header (see CommandProgram)
+     * @param operand The integer operand
+     */
+    void addCommand(String command, int header, int operand) {
+        int[] loop = null;
+        if (command != null && CommandProgram.opcode(header) == CommandParser.REPEAT
+                && CommandProgram.status(header) == CommandParser.OK) {
+            loop = RepeatLoop.compileOrNull(command);
+        }
+        addCommand(command, header, operand, loop);
+    }
+
+    /**
+     * Add a command that has already been decoded, with the compiled body of a 'REPEAT'
+     * @param command The command text, or null to keep only the encoded form
+     * @param header The instruction header (see CommandProgram)
+     * @param operand The integer operand
+     * @param loop The compiled loop (see RepeatLoop), or null
+     */
+    void addCommand(String command, int header, int operand, int[] loop) {
+        int slot;
+        if (count < entries.length) {
+            slot = (head + count) % entries.length;
+            count++;
+        } else if (count < capacity) {
+            grow();
+            slot = count++;
+        } else if (evictionPolicy == EvictionPolicy.DROP_OLDEST) {
+            slot = head;
+            head = (head + 1) % entries.length;
+            dropped++;
+        } else {
+            return;
+        }
+        entries[slot] = ((long) header << 32) | (operand & 0xFFFFFFFFL);
+        if (command == null || isCanonical(command, header, operand)) {
+            if (raw != null) {
+                raw[slot] = null;
+            }
+        } else {
+            if (raw == null) {
+                raw = new String[entries.length];
+            }
+            raw[slot] = command;
+        }
+        if (loop != null) {
+            if (loops == null) {
+                loops = new int[entries.length][];
+            }
+            loops[slot] = loop;
+        } else if (loops != null) {
+            loops[slot] = null;
+        }
     }
 
     /**
      * Get all commands
      */
     public List<String> getCommands() {
-        return new ArrayList<>(commands);
+        return new ArrayList<>(view());
+    }
+
+    /**
+     * Get a read-only live view of the commands, decoded on access
+     */
+    public List<String> view() {
+        return Collections.unmodifiableList(new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return getCommand(index);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        });
+    }
+
+    /**
+     * Iterate over the commands from oldest to newest without copying them
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public String next() {
+                if (next >= count) {
+                    throw new NoSuchElementException();
+                }
+                return getCommand(next++);
+            }
+        };
     }
 
     /**
      * Clear the history
      */
     public void clear() {
-        commands.clear();
+        head = 0;
+        count = 0;
+        dropped = 0;
+        raw = null;
+        loops = null;
+    }
+
+    /**
+     * Keep only the oldest commands, discarding the rest
+     * @param size The number of commands to keep
+     */
+    public void truncate(int size) {
+        if (size < 0 || size > count) {
+            throw new IndexOutOfBoundsException("Cannot truncate " + count + " commands to " + size);
+        }
+        if (raw != null) {
+            for (int i = size; i < count; i++) {
+                raw[(head + i) % entries.length] = null;
+            }
+        }
+        if (loops != null) {
+            for (int i = size; i < count; i++) {
+                loops[(head + i) % entries.length] = null;
+            }
+        }
+        count = size;
+    }
+
+    /**
+     * Get the number of commands dropped from the front by DROP_OLDEST since the last clear
+     * Index i of the history is command number getDroppedCount() + i since the last clear.
+     */
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Count earlier commands as dropped, e.g. when restoring a saved bounded history
+     * @param count The number of commands to add to getDroppedCount()
+     */
+    void addDropped(long count) {
+        dropped += count;
     }
 
     /**
      * Get the number of commands in history
      */
     public int size() {
-        return commands.size();
+        return count;
+    }
+
+    /**
+     * Get the maximum number of commands kept
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the policy applied when a bounded history is full
+     */
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
     }
 
     /**
      * Get a specific command by index
      */
     public String getCommand(int index) {
-        return commands.get(index);
+        int slot = slot(index);
+        if (raw != null && raw[slot] != null) {
+            return raw[slot];
+        }
+        int header = (int) (entries[slot] >>> 32);
+        String keyword = CommandParser.keyword(CommandProgram.opcode(header));
+        if (keyword != null && CommandProgram.status(header) == CommandParser.OK) {
+            return keyword;
+        }
+        char letter = Character.toUpperCase(CommandProgram.letter(header));
+        if (CommandProgram.status(header) == CommandParser.OK && hasOperand(CommandProgram.opcode(header))) {
+            return letter + " " + (int) entries[slot];
+        }
+        return String.valueOf(letter);
+    }
+
+    /**
+     * Get the opcode of a command by index (see CommandParser)
+     */
+    public int getOpcode(int index) {
+        return CommandProgram.opcode(getHeader(index));
+    }
+
+    /**
+     * Get the integer operand of a command by index
+     */
+    public int getOperand(int index) {
+        return (int) entries[slot(index)];
+    }
+
+    /**
+     * Get the instruction header of a command by index (see CommandProgram)
+     */
+    int getHeader(int index) {
+        return (int) (entries[slot(index)] >>> 32);
+    }
+
+    /**
+     * Get the text kept for a command that does not match its canonical form, or null
+     */
+    String getRawCommand(int index) {
+        int slot = slot(index);
+        return raw == null ? null : raw[slot];
+    }
+
+    /**
+     * Get the compiled body of a 'REPEAT' command, or null if it is malformed or not a loop
+     */
+    int[] getLoop(int index) {
+        int slot = slot(index);
+        return loops == null ? null : loops[slot];
     }
 
     @Override
     public String toString() {
         return "CommandHistory{" +
-                "commands=" + commands +
+                "commands=" + view() +
                 '}';
     }
+
+    private int slot(int index) {
+        Objects.checkIndex(index, count);
+        return (head + index) % entries.length;
+    }
+
+    private void grow() {
+        int newLength = (int) Math.min((long) entries.length * 2, capacity);
+        long[] newEntries = new long[newLength];
+        String[] newRaw = raw == null ? null : new String[newLength];
+        int[][] newLoops = loops == null ? null : new int[newLength][];
+        for (int i = 0; i < count; i++) {
+            int slot = (head + i) % entries.length;
+            newEntries[i] = entries[slot];
+            if (newRaw != null) {
+                newRaw[i] = raw[slot];
+            }
+            if (newLoops != null) {
+                newLoops[i] = loops[slot];
+            }
+        }
+        entries = newEntries;
+        raw = newRaw;
+        loops = newLoops;
+        head = 0;
+    }
+
+    private static boolean hasOperand(int opcode) {
+        return opcode == CommandParser.MOVE || opcode == CommandParser.INITIALIZE || opcode == CommandParser.JUMP;
+    }
+
+    /**
+     * Check whether a command is exactly the text getCommand would rebuild from its encoding
+     */
+    private static boolean isCanonical(String command, int header, int operand) {
+        if (CommandProgram.status(header) != CommandParser.OK || command.isEmpty()
+                || command.charAt(0) != Character.toUpperCase(CommandProgram.letter(header))) {
+            return false;
+        }
+        String keyword = CommandParser.keyword(CommandProgram.opcode(header));
+        if (keyword != null) {
+            return command.equals(keyword);
+        }
+        if (!hasOperand(CommandProgram.opcode(header))) {
+            return command.length() == 1;
+        }
+        int start = 2;
+        long value = operand;
+        if (value < 0) {
+            start = 3;
+            value = -value;
+        }
+        if (command.length() <= start || command.charAt(1) != ' ' || (operand < 0 && command.charAt(2) != '-')) {
+            return false;
+        }
+        int last = command.length() - 1;
+        for (int i = last; i >= start; i--) {
+            // A digit left over once the value is used up is a leading zero
+            if (command.charAt(i) != (char) ('0' + value % 10) || (value == 0 && i != last)) {
+                return false;
+            }
+            value /= 10;
+        }
+        return value == 0;
+    }
 }
@@ -0,0 +1,419 @@
+package com.robotfloor;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Decodes a command line into an opcode and an int operand without allocating
+ * The grammar is the one accepted by RobotSimulator: a first word that is one of the
+ * keywords (e.g. UNDO) selects that command, otherwise its first character selects a
+ * single-letter command. Both are case-insensitive, and 'M', 'I' and 'J' take an integer.
+ * 'REPEAT k [ ... ]' takes its count as the integer; the loop body is compiled by RepeatLoop.
+ * 'P' on its own takes optional integers: a viewport {@code x y w h} and a zoom block size.
+ * Problems are reported through the status code returned by parse, never by exceptions.
+ * A parser instance is reused between calls and is not thread-safe.
+ */
+public class CommandParser {
+
+    /** Opcode for an unrecognised command letter */
+    public static final int UNKNOWN = 0;
+    /** Opcode for 'U' (pen up) */
+    public static final int PEN_UP = 1;
+    /** Opcode for 'D' (pen down) */
+    public static final int PEN_DOWN = 2;
+    /** Opcode for 'R' (turn right) */
+    public static final int TURN_RIGHT = 3;
+    /** Opcode for 'L' (turn left) */
+    public static final int TURN_LEFT = 4;
+    /** Opcode for 'M n' (move n spaces) */
+    public static final int MOVE = 5;
+    /** Opcode for 'P' (print the floor, or 'P x y w h [k]' for a viewport) */
+    public static final int PRINT = 6;
+    /** Opcode for 'C' (current position) */
+    public static final int POSITION = 7;
+    /** Opcode for 'Q' (quit) */
+    public static final int QUIT = 8;
+    /** Opcode for 'I n' (initialize) */
+    public static final int INITIALIZE = 9;
+    /** Opcode for 'H' (history replay) */
+    public static final int HISTORY = 10;
+    /** Opcode for 'J n' (jump back to the state after history command n) */
+    public static final int JUMP = 11;
+    /** Opcode for 'UNDO' (undo the last command that changed the state) */
+    public static final int UNDO = 12;
+    /** Opcode for 'REDO' (re-run the last undone command) */
+    public static final int REDO = 13;
+    /** Opcode for 'COVERAGE' (marked-cell count and bounding box) */
+    public static final int COVERAGE = 14;
+    /** Opcode for 'TRIM' (print only the bounding box of the marks) */
+    public static final int TRIM = 15;
+    /** Opcode for 'STATS' (command counts and latencies) */
+    public static final int STATS = 16;
+    /** Opcode for 'DIFF' (print only the rows changed since the last DIFF or LIVE) */
+    public static final int DIFF = 17;
+    /** Opcode for 'LIVE' (update a terminal in place with ANSI escapes) */
+    public static final int LIVE = 18;
+    /** Opcode for 'REPEAT k [ ... ]' (run the bracketed commands k times) */
+    public static final int REPEAT = 19;
+    /** Number of opcodes, for tables indexed by opcode */
+    static final int OPCODE_COUNT = REPEAT + 1;
+
+    /** Status: the command was decoded */
+    public static final int OK = 0;
+    /** Status: the input was blank */
+    public static final int EMPTY = 1;
+    /** Status: the command letter is not part of the grammar */
+    public static final int UNKNOWN_COMMAND = 2;
+    /** Status: the command needs an integer and none was given */
+    public static final int MISSING_OPERAND = 3;
+    /** Status: the integer operand is malformed or out of range */
+    public static final int INVALID_OPERAND = 4;
+
+    private static final String[] KEYWORDS = {"undo", "redo", "coverage", "trim", "stats", "diff", "live", "repeat"};
+    private static final int[] KEYWORD_OPCODES = {UNDO, REDO, COVERAGE, TRIM, STATS, DIFF, LIVE, REPEAT};
+    /** The single-letter commands, in opcode order from PEN_UP */
+    private static final String LETTERS = "UDRLMPCQIHJ";
+
+    /** The most integers a command can take ('P x y w h k') */
+    public static final int MAX_OPERANDS = 5;
+
+    private final ByteRegion bytes = new ByteRegion();
+    private final int[] operands = new int[MAX_OPERANDS];
+    private int operandCount;
+    private int opcode;
+    private int operand;
+    private char letter;
+
+    /**
+     * Parse a whole command line
+     * @param input The command text
+     * @return The status code
+     */
+    public int parse(CharSequence input) {
+        return parse(input, 0, input.length());
+    }
+
+    /**
+     * Parse the command held in a region of a character sequence
+     * @param input The text holding the command
+     * @param start The index of the first character (inclusive)
+     * @param end The index after the last character (exclusive)
+     * @return The status code
+     */
+    public int parse(CharSequence input, int start, int end) {
+        reset();
+        while (start < end && input.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && input.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return EMPTY;
+        }
+        letter = Character.toLowerCase(input.charAt(start));
+        opcode = keywordAt(input, start, end);
+        if (opcode == REPEAT) {
+            return parseRepeatCount(input, start + "repeat".length(), end);
+        }
+        if (opcode != UNKNOWN) {
+            return OK;
+        }
+        opcode = opcodeOf(letter);
+        if (opcode == UNKNOWN) {
+            return UNKNOWN_COMMAND;
+        }
+        if (opcode == PRINT && (start + 1 == end || input.charAt(start + 1) <= ' ')) {
+            return parseOperands(input, start + 1, end);
+        }
+        if (opcode != MOVE && opcode != INITIALIZE && opcode != JUMP) {
+            return OK;
+        }
+        start++;
+        while (start < end && input.charAt(start) <= ' ') {
+            start++;
+        }
+        if (start == end) {
+            return MISSING_OPERAND;
+        }
+        int status = parseInteger(input, start, end);
+        if (status == OK) {
+            operands[0] = operand;
+            operandCount = 1;
+        }
+        return status;
+    }
+
+    /**
+     * Parse the count of a 'REPEAT k [ ... ]', which ends at whitespace or the '['
+     */
+    private int parseRepeatCount(CharSequence input, int start, int end) {
+        while (start < end && input.charAt(start) <= ' ') {
+            start++;
+        }
+        int wordEnd = start;
+        while (wordEnd < end && input.charAt(wordEnd) > ' ' && input.charAt(wordEnd) != '[') {
+            wordEnd++;
+        }
+        if (start == wordEnd) {
+            return MISSING_OPERAND;
+        }
+        int status = parseInteger(input, start, wordEnd);
+        if (status == OK) {
+            operands[0] = operand;
+            operandCount = 1;
+        }
+        return status;
+    }
+
+    /**
+     * Parse up to MAX_OPERANDS whitespace-separated integers
+     */
+    private int parseOperands(CharSequence input, int start, int end) {
+        while (start < end) {
+            while (start < end && input.charAt(start) <= ' ') {
+                start++;
+            }
+            if (start == end) {
+                break;
+            }
+            int wordEnd = start;
+            while (wordEnd < end && input.charAt(wordEnd) > ' ') {
+                wordEnd++;
+            }
+            if (operandCount == MAX_OPERANDS || parseInteger(input, start, wordEnd) != OK) {
+                operandCount = 0;
+                operand = 0;
+                return INVALID_OPERAND;
+            }
+            operands[operandCount++] = operand;
+            start = wordEnd;
+        }
+        // The viewport is only available through getOperand(index)
+        operand = 0;
+        return OK;
+    }
+
+    /**
+     * Parse a signed decimal integer filling a non-empty region, into getOperand()
+     * RepeatLoop uses it for the numbers inside a loop body.
+     * @return OK or INVALID_OPERAND
+     */
+    int parseInteger(CharSequence input, int start, int end) {
+        boolean negative = false;
+        char first = input.charAt(start);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            start++;
+            if (start == end) {
+                return INVALID_OPERAND;
+            }
+        }
+        // Accumulate negatively, like Integer.parseInt, so MIN_VALUE is representable
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(input.charAt(i), 10);
+            if (digit < 0 || result < limit / 10) {
+                return INVALID_OPERAND;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return INVALID_OPERAND;
+            }
+            result -= digit;
+        }
+        operand = negative ? result : -result;
+        return OK;
+    }
+
+    /**
+     * Parse the command held in a region of a buffer of ASCII bytes
+     * The buffer position and limit are not changed.
+     * @param buffer The buffer holding the command
+     * @param start The index of the first byte (inclusive)
+     * @param end The index after the last byte (exclusive)
+     * @return The status code
+     */
+    public int parse(ByteBuffer buffer, int start, int end) {
+        bytes.buffer = buffer;
+        try {
+            return parse(bytes, start, end);
+        } finally {
+            bytes.buffer = null;
+        }
+    }
+
+    /**
+     * Get the opcode of the last parsed command
+     */
+    public int getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * Get the integer operand of the last parsed command ('M', 'I', 'J' and 'REPEAT' only)
+     */
+    public int getOperand() {
+        return operand;
+    }
+
+    /**
+     * Get the number of integers given with the last parsed command
+     */
+    public int getOperandCount() {
+        return operandCount;
+    }
+
+    /**
+     * Get one of the integers given with the last parsed command
+     * @param index The operand index, below getOperandCount()
+     */
+    public int getOperand(int index) {
+        if (index < 0 || index >= operandCount) {
+            throw new IndexOutOfBoundsException("Operand " + index + " of " + operandCount);
+        }
+        return operands[index];
+    }
+
+    /**
+     * Get the lower-cased command letter of the last parsed command
+     */
+    public char getLetter() {
+        return letter;
+    }
+
+    /**
+     * Get the opcode for a lower-case command letter
+     * @param letter The command letter
+     * @return The opcode, or UNKNOWN
+     */
+    public static int opcodeOf(char letter) {
+        switch (letter) {
+            case 'u':
+                return PEN_UP;
+            case 'd':
+                return PEN_DOWN;
+            case 'r':
+                return TURN_RIGHT;
+            case 'l':
+                return TURN_LEFT;
+            case 'm':
+                return MOVE;
+            case 'p':
+                return PRINT;
+            case 'c':
+                return POSITION;
+            case 'q':
+                return QUIT;
+            case 'i':
+                return INITIALIZE;
+            case 'h':
+                return HISTORY;
+            case 'j':
+                return JUMP;
+            default:
+                return UNKNOWN;
+        }
+    }
+
+    /**
+     * Get the upper-case keyword of a keyword command, or null for a single-letter one
+     * @param opcode The command opcode
+     */
+    static String keyword(int opcode) {
+        for (int k = 0; k < KEYWORDS.length; k++) {
+            if (KEYWORD_OPCODES[k] == opcode) {
+                return KEYWORDS[k].toUpperCase();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the display name of a command: its keyword, its upper-case letter, or "unknown"
+     * @param opcode The command opcode
+     */
+    static String name(int opcode) {
+        String keyword = keyword(opcode);
+        if (keyword != null) {
+            return keyword;
+        }
+        return opcode > UNKNOWN && opcode <= LETTERS.length() ? LETTERS.substring(opcode - 1, opcode) : "unknown";
+    }
+
+    /**
+     * Match the first word of a command against the keywords
+     * @return The keyword's opcode, or UNKNOWN
+     */
+    private static int keywordAt(CharSequence input, int start, int end) {
+        int wordEnd = start;
+        while (wordEnd < end && input.charAt(wordEnd) > ' ') {
+            wordEnd++;
+        }
+        for (int k = 0; k < KEYWORDS.length; k++) {
+            String keyword = KEYWORDS[k];
+            if (keyword.length() != wordEnd - start) {
+                continue;
+            }
+            int i = 0;
+            while (i < keyword.length() && Character.toLowerCase(input.charAt(start + i)) == keyword.charAt(i)) {
+                i++;
+            }
+            if (i == keyword.length()) {
+                return KEYWORD_OPCODES[k];
+            }
+        }
+        return UNKNOWN;
+    }
+
+    private void reset() {
+        opcode = UNKNOWN;
+        operand = 0;
+        operandCount = 0;
+        letter = 0;
+    }
+
+    /**
+     * Absolute-index view of a byte buffer as Latin-1 characters, reused across parse calls
+     */
+    static final class ByteRegion implements CharSequence {
+
+        private ByteBuffer buffer;
+
+        ByteRegion() {
+        }
+
+        ByteRegion(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int length() {
+            return buffer.limit();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(index) & 0xFF);
+        }
+
+        /**
+         * Decode a region of the buffer into a String
+         */
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            Objects.checkFromToIndex(start, end, length());
+            char[] chars = new char[end - start];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = charAt(start + i);
+            }
+            return new String(chars);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
+}
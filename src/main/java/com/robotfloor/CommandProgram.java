@@ -0,0 +1,252 @@
+package com.robotfloor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A command script compiled once into a packed int[] so it can be executed many times
+ * Each instruction takes two ints: a header holding the opcode, parse status and command
+ * letter, followed by the integer operand. Blank lines are dropped at compile time.
+ * The integers of a 'P x y w h [k]' viewport live in a side table: the instruction's
+ * operand is 1 + the table offset of their count, or 0 for a plain 'P'.
+ * The body of a 'REPEAT k [ ... ]' is compiled once too (see RepeatLoop), so running or
+ * replaying it never re-parses it. The text of a loop and of a viewport 'P' is kept as well,
+ * since the history records them as text.
+ * Run a program with {@link RobotSimulator#run(CommandProgram)}.
+ */
+public class CommandProgram {
+
+    private static final int READ_BUFFER_BYTES = 1 << 16;
+
+    private int[] code;
+    private int size;
+    private int[] extra = new int[0];
+    private int extraSize;
+    private String[] texts;
+    private int[][] loops;
+
+    private CommandProgram() {
+        this.code = new int[32];
+    }
+
+    /**
+     * Compile a script file, one command per line
+     * The file is read in chunks through a FileChannel and decoded in place.
+     * @param script The script file
+     * @return The compiled program
+     * @throws IOException If the script cannot be read
+     */
+    public static CommandProgram compile(Path script) throws IOException {
+        CommandProgram program = new CommandProgram();
+        CommandParser parser = new CommandParser();
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        try (FileChannel channel = FileChannel.open(script, StandardOpenOption.READ)) {
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(buffer) < 0;
+                buffer.flip();
+                int lineStart = 0;
+                for (int i = 0; i < buffer.limit(); i++) {
+                    if (buffer.get(i) == '\n') {
+                        program.add(parser, buffer, lineStart, i);
+                        lineStart = i + 1;
+                    }
+                }
+                if (eof && lineStart < buffer.limit()) {
+                    program.add(parser, buffer, lineStart, buffer.limit());
+                }
+                buffer.position(lineStart);
+                buffer.compact();
+                if (!buffer.hasRemaining()) {
+                    // A single line longer than the buffer: grow it
+                    ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    buffer.flip();
+                    larger.put(buffer);
+                    buffer = larger;
+                }
+            }
+        }
+        return program;
+    }
+
+    /**
+     * Compile the commands recorded in a history
+     * @param history The history to compile
+     * @return The compiled program
+     */
+    public static CommandProgram compile(CommandHistory history) {
+        CommandProgram program = new CommandProgram();
+        CommandParser parser = new CommandParser();
+        for (int i = 0; i < history.size(); i++) {
+            String raw = history.getRawCommand(i);
+            if (raw != null && history.getOpcode(i) == CommandParser.PRINT) {
+                // The viewport integers are only in the text; parse it to refill the side table
+                program.add(parser, parser.parse(raw), raw);
+            } else {
+                boolean loop = history.getOpcode(i) == CommandParser.REPEAT;
+                program.add(history.getHeader(i), history.getOperand(i), loop ? raw : null,
+                        loop ? history.getLoop(i) : null);
+            }
+        }
+        return program;
+    }
+
+    /**
+     * Compile a sequence of command lines
+     * @param lines The command lines
+     * @return The compiled program
+     */
+    public static CommandProgram compile(Iterable<? extends CharSequence> lines) {
+        CommandProgram program = new CommandProgram();
+        CommandParser parser = new CommandParser();
+        for (CharSequence line : lines) {
+            program.add(parser, parser.parse(line), line);
+        }
+        return program;
+    }
+
+    /**
+     * Get the number of instructions in the program
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the opcode of an instruction (see CommandParser)
+     * @param index The instruction index
+     */
+    public int getOpcode(int index) {
+        return opcode(code[index * 2]);
+    }
+
+    /**
+     * Get the parse status of an instruction (see CommandParser)
+     * @param index The instruction index
+     */
+    public int getStatus(int index) {
+        return status(code[index * 2]);
+    }
+
+    /**
+     * Get the integer operand of an instruction
+     * @param index The instruction index
+     */
+    public int getOperand(int index) {
+        return code[index * 2 + 1];
+    }
+
+    /**
+     * Get the raw code array: header and operand per instruction, valid up to 2 * size()
+     */
+    int[] code() {
+        return code;
+    }
+
+    /**
+     * Get the side table of 'P' viewports: a count followed by that many integers each
+     */
+    int[] extra() {
+        return extra;
+    }
+
+    /**
+     * Get the text of a 'REPEAT' or viewport 'P' instruction, or null for other instructions
+     * @param index The instruction index
+     */
+    String text(int index) {
+        return texts == null || index >= texts.length ? null : texts[index];
+    }
+
+    /**
+     * Get the compiled body of a 'REPEAT' instruction, or null if it is malformed or not a loop
+     * @param index The instruction index
+     */
+    int[] loop(int index) {
+        return loops == null || index >= loops.length ? null : loops[index];
+    }
+
+    static int header(int opcode, int status, char letter) {
+        return opcode | (status << 8) | (letter << 16);
+    }
+
+    static int opcode(int header) {
+        return header & 0xFF;
+    }
+
+    static int status(int header) {
+        return (header >>> 8) & 0xFF;
+    }
+
+    static char letter(int header) {
+        return (char) (header >>> 16);
+    }
+
+    private static boolean keepsText(CommandParser parser) {
+        return parser.getOpcode() == CommandParser.REPEAT
+                || parser.getOpcode() == CommandParser.PRINT && parser.getOperandCount() > 0;
+    }
+
+    private void add(CommandParser parser, ByteBuffer buffer, int start, int end) {
+        int status = parser.parse(buffer, start, end);
+        String text = null;
+        if (keepsText(parser)) {
+            ByteBuffer line = buffer.duplicate();
+            line.limit(end).position(start);
+            text = StandardCharsets.ISO_8859_1.decode(line).toString();
+        }
+        add(parser, status, text);
+    }
+
+    private void add(CommandParser parser, int status, CharSequence line) {
+        int operand = parser.getOperand();
+        if (parser.getOpcode() == CommandParser.PRINT && parser.getOperandCount() > 0) {
+            int count = parser.getOperandCount();
+            if (extraSize + count + 1 > extra.length) {
+                extra = Arrays.copyOf(extra, Math.max(extra.length * 2, extraSize + count + 1));
+            }
+            operand = extraSize + 1;
+            extra[extraSize++] = count;
+            for (int i = 0; i < count; i++) {
+                extra[extraSize++] = parser.getOperand(i);
+            }
+        }
+        String text = keepsText(parser) ? line.toString() : null;
+        int[] loop = parser.getOpcode() == CommandParser.REPEAT && status == CommandParser.OK
+                ? RepeatLoop.compileOrNull(text) : null;
+        add(header(parser.getOpcode(), status, parser.getLetter()), operand, text, loop);
+    }
+
+    private void add(int header, int operand, String text, int[] loop) {
+        if (status(header) == CommandParser.EMPTY) {
+            return;
+        }
+        if (size * 2 == code.length) {
+            code = Arrays.copyOf(code, code.length * 2);
+        }
+        code[size * 2] = header;
+        code[size * 2 + 1] = operand;
+        if (text != null) {
+            if (texts == null) {
+                texts = new String[code.length / 2];
+            } else if (texts.length < code.length / 2) {
+                texts = Arrays.copyOf(texts, code.length / 2);
+            }
+            texts[size] = text;
+        }
+        if (loop != null) {
+            if (loops == null) {
+                loops = new int[code.length / 2][];
+            } else if (loops.length < code.length / 2) {
+                loops = Arrays.copyOf(loops, code.length / 2);
+            }
+            loops[size] = loop;
+        }
+        size++;
+    }
+}
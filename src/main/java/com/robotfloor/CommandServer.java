@@ -0,0 +1,343 @@
+package com.robotfloor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.function.IntFunction;
+
+/**
+ * Serves the command language over TCP from a single selector thread
+ * Every connection gets its own simulator session. Clients may pipeline any number of
+ * command lines without waiting for replies; each complete line is parsed straight out of
+ * the connection's read buffer and its output is queued and written back in order.
+ * Reading from a client, and running its buffered lines, pauses while too much of its
+ * output is waiting to be sent. A single command's output is cut off at
+ * MAX_BUFFERED_OUTPUT bytes, with an error line in its place. A command that fails with an
+ * unexpected exception ends only its own connection, after the client is told why.
+ */
+public class CommandServer implements Closeable {
+
+    /** Size of each pooled direct buffer, and so the longest accepted command line */
+    public static final int BUFFER_BYTES = 8192;
+    private static final int MAX_PENDING_OUTPUT = 1 << 20;
+    /** Most output bytes a connection holds at once; the rest of a longer command's output is dropped */
+    public static final int MAX_BUFFERED_OUTPUT = 1 << 24;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final IntFunction<Floor> floorFactory;
+    private final ArrayDeque<ByteBuffer> bufferPool = new ArrayDeque<>();
+    private volatile boolean closed;
+    private volatile int connectionCount;
+
+    /**
+     * Constructor for CommandServer
+     * @param address The address to listen on; port 0 picks a free port
+     * @param floorFactory Creates each session's floor on 'I n'
+     * @throws IOException If the server socket cannot be opened
+     */
+    public CommandServer(InetSocketAddress address, IntFunction<Floor> floorFactory) throws IOException {
+        this.floorFactory = floorFactory;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(address);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Get the port the server is listening on
+     * @throws IOException If the server socket is closed
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Get the number of open client connections
+     */
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * Serve clients on the calling thread until close is called
+     * @throws IOException If the selector or server socket fails
+     */
+    public void run() throws IOException {
+        try {
+            while (!closed) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        ((Connection) key.attachment()).handle(key);
+                    }
+                }
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).simulator.close();
+                }
+            }
+            selector.close();
+        }
+    }
+
+    /**
+     * Stop the server; run returns and every connection is closed
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        Connection connection = new Connection(channel);
+        channel.register(selector, SelectionKey.OP_READ, connection);
+        connectionCount++;
+    }
+
+    private ByteBuffer takeBuffer() {
+        ByteBuffer buffer = bufferPool.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_BYTES);
+    }
+
+    /**
+     * One client: a simulator session, a read buffer and the output waiting to be sent
+     */
+    private final class Connection {
+
+        private final SocketChannel channel;
+        private final RobotSimulator simulator;
+        private final PendingOutput output = new PendingOutput();
+        private ByteBuffer input = takeBuffer();
+        private ByteBuffer outgoing = takeBuffer();
+        private boolean discarding;
+        private boolean ended;
+        private boolean backlog;
+        private boolean failed;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.simulator = new RobotSimulator(floorFactory, new PrintStream(output, false));
+        }
+
+        private void handle(SelectionKey key) throws IOException {
+            try {
+                if (key.isReadable()) {
+                    ended = channel.read(input) < 0;
+                }
+                // Run lines for as long as the socket keeps taking their output
+                do {
+                    runLines();
+                    flush();
+                } while (backlog && output.size() < MAX_PENDING_OUTPUT);
+            } catch (IOException e) {
+                // A client that resets its connection only ends its own session
+                close(key);
+                return;
+            } catch (RuntimeException e) {
+                // So does a command that fails: report it, send what is queued, then close
+                failed = true;
+                backlog = false;
+                output.append("Error: Session failed: " + e + "\n");
+                try {
+                    flush();
+                } catch (IOException ignored) {
+                    close(key);
+                    return;
+                }
+            }
+            boolean sending = output.size() > 0 || outgoing.position() > 0;
+            boolean done = failed || !simulator.isRunning() || ended && !backlog;
+            if (done && !sending) {
+                close(key);
+                return;
+            }
+            boolean reading = !done && !backlog && output.size() < MAX_PENDING_OUTPUT;
+            key.interestOps((reading ? SelectionKey.OP_READ : 0) | (sending ? SelectionKey.OP_WRITE : 0));
+        }
+
+        /**
+         * Run the complete lines in the read buffer until too much output is pending
+         * Lines left over are run once the output has drained. Once the client has closed
+         * its end, a final line without a newline is run too.
+         */
+        private void runLines() {
+            int end = input.position();
+            int lineStart = 0;
+            backlog = false;
+            for (int i = 0; i < end && simulator.isRunning(); i++) {
+                if (input.get(i) == '\n') {
+                    if (discarding) {
+                        discarding = false;
+                    } else {
+                        execute(lineStart, i);
+                    }
+                    lineStart = i + 1;
+                    if (output.size() >= MAX_PENDING_OUTPUT) {
+                        backlog = lineStart < end || ended;
+                        break;
+                    }
+                }
+            }
+            if (!backlog && ended && lineStart < end && !discarding && simulator.isRunning()) {
+                execute(lineStart, end);
+                lineStart = end;
+            }
+            input.limit(end).position(lineStart);
+            input.compact();
+            if (!backlog && !input.hasRemaining()) {
+                // No newline in a whole buffer: drop the rest of this line
+                input.clear();
+                discarding = true;
+                output.append("Error: Command longer than " + BUFFER_BYTES + " bytes\n");
+            }
+        }
+
+        private void execute(int start, int end) {
+            simulator.executeCommand(input, start, end);
+            long dropped = output.takeDropped();
+            if (dropped > 0) {
+                output.append("\nError: Output cut off after " + MAX_BUFFERED_OUTPUT + " bytes, "
+                        + dropped + " bytes dropped\n");
+            }
+        }
+
+        /**
+         * Write as much pending output as the socket accepts
+         */
+        private void flush() throws IOException {
+            while (true) {
+                output.drainTo(outgoing);
+                outgoing.flip();
+                int written = channel.write(outgoing);
+                outgoing.compact();
+                if (written == 0 || (outgoing.position() == 0 && output.size() == 0)) {
+                    return;
+                }
+            }
+        }
+
+        private void close(SelectionKey key) throws IOException {
+            key.cancel();
+            channel.close();
+            simulator.close();
+            input.clear();
+            outgoing.clear();
+            bufferPool.push(input);
+            bufferPool.push(outgoing);
+            input = null;
+            outgoing = null;
+            connectionCount--;
+        }
+    }
+
+    /**
+     * Growable byte queue the session's PrintStream writes into
+     * Bytes past MAX_BUFFERED_OUTPUT are counted and dropped as they are written.
+     */
+    private static final class PendingOutput extends OutputStream {
+
+        private byte[] bytes = new byte[256];
+        private int start;
+        private int end;
+        private long dropped;
+
+        int size() {
+            return end - start;
+        }
+
+        @Override
+        public void write(int b) {
+            if (size() >= MAX_BUFFERED_OUTPUT) {
+                dropped++;
+                return;
+            }
+            ensureCapacity(1);
+            bytes[end++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] source, int offset, int length) {
+            int kept = Math.max(0, Math.min(length, MAX_BUFFERED_OUTPUT - size()));
+            dropped += length - kept;
+            ensureCapacity(kept);
+            System.arraycopy(source, offset, bytes, end, kept);
+            end += kept;
+        }
+
+        /**
+         * Queue a message from the server itself, past the limit if need be
+         */
+        void append(String message) {
+            byte[] text = message.getBytes(StandardCharsets.US_ASCII);
+            ensureCapacity(text.length);
+            System.arraycopy(text, 0, bytes, end, text.length);
+            end += text.length;
+        }
+
+        /**
+         * Get the number of bytes dropped since the last call, and reset it
+         */
+        long takeDropped() {
+            long count = dropped;
+            dropped = 0;
+            return count;
+        }
+
+        /**
+         * Move as many queued bytes as fit into a buffer
+         */
+        void drainTo(ByteBuffer target) {
+            int count = Math.min(size(), target.remaining());
+            target.put(bytes, start, count);
+            start += count;
+            if (start == end) {
+                start = 0;
+                end = 0;
+            }
+        }
+
+        private void ensureCapacity(int extra) {
+            if (end + extra <= bytes.length) {
+                return;
+            }
+            int size = size();
+            if (size + extra > bytes.length / 2) {
+                bytes = Arrays.copyOfRange(bytes, start, start + Math.max(bytes.length * 2, size + extra));
+            } else {
+                System.arraycopy(bytes, start, bytes, 0, size);
+            }
+            start = 0;
+            end = size;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.robotfloor;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bit-packed floor that many threads can mark at once without locks
+ * Uses the same row-major layout as PackedFloor, but every word is updated with a
+ * compare-and-set loop, so concurrent marks on the same word are never lost.
+ * Reads see each word atomically; a print taken while robots are drawing shows
+ * some mix of their progress. Listeners are called from the marking threads.
+ */
+public class ConcurrentFloor extends Floor {
+
+    private final AtomicLongArray words;
+    private final int wordsPerRow;
+
+    /**
+     * Constructor for ConcurrentFloor
+     * @param size The size of the floor (N x N)
+     */
+    public ConcurrentFloor(int size) {
+        super(size, false);
+        this.wordsPerRow = (size + 63) >>> 6;
+        long total = (long) wordsPerRow * size;
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Floor size too large for a packed floor");
+        }
+        this.words = new AtomicLongArray((int) total);
+    }
+
+    /**
+     * Get a copy of the grid as an int[][] array
+     */
+    @Override
+    public int[][] getGrid() {
+        int size = getSize();
+        int[][] grid = new int[size][size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                grid[y][x] = getValue(x, y);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Mark a position on the floor
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     */
+    @Override
+    public void mark(int x, int y) {
+        if (isValidPosition(x, y)) {
+            setBits(y, x >>> 6, 1L << x);
+        }
+    }
+
+    /**
+     * Remove the mark from a position on the floor
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     */
+    @Override
+    public void unmark(int x, int y) {
+        if (isValidPosition(x, y)) {
+            int index = y * wordsPerRow + (x >>> 6);
+            long bit = 1L << x;
+            long current = words.get(index);
+            while ((current & bit) != 0 && !words.compareAndSet(index, current, current & ~bit)) {
+                current = words.get(index);
+            }
+            if ((current & bit) != 0) {
+                fireUnmarked(y, x >>> 6, bit);
+            }
+        }
+    }
+
+    /**
+     * Mark a horizontal run of cells with one update per word, clipped to the floor
+     * @param y The Y coordinate of the row
+     * @param fromX One end of the run (inclusive)
+     * @param toX The other end of the run (inclusive)
+     */
+    @Override
+    public void markRow(int y, int fromX, int toX) {
+        int size = getSize();
+        if (y < 0 || y >= size) {
+            return;
+        }
+        int lo = Math.max(Math.min(fromX, toX), 0);
+        int hi = Math.min(Math.max(fromX, toX), size - 1);
+        if (lo > hi) {
+            return;
+        }
+        int rowStart = y * wordsPerRow;
+        int first = lo >>> 6;
+        int last = hi >>> 6;
+        long firstMask = -1L << lo;
+        long lastMask = -1L >>> (63 - (hi & 63));
+        if (first == last) {
+            setBits(y, first, firstMask & lastMask);
+        } else {
+            setBits(y, first, firstMask);
+            for (int word = first + 1; word < last; word++) {
+                // A full word needs no CAS: every bit ends up set whatever other markers do
+                long fresh = ~words.getAndSet(rowStart + word, -1L);
+                if (fresh != 0) {
+                    fireMarked(y, word, fresh);
+                }
+            }
+            setBits(y, last, lastMask);
+        }
+    }
+
+    /**
+     * Mark a vertical run of cells, one update per row, clipped to the floor
+     * @param x The X coordinate of the column
+     * @param fromY One end of the run (inclusive)
+     * @param toY The other end of the run (inclusive)
+     */
+    @Override
+    public void markColumn(int x, int fromY, int toY) {
+        int size = getSize();
+        if (x < 0 || x >= size) {
+            return;
+        }
+        int lo = Math.max(Math.min(fromY, toY), 0);
+        int hi = Math.min(Math.max(fromY, toY), size - 1);
+        int column = x >>> 6;
+        long bit = 1L << x;
+        for (int row = lo; row <= hi; row++) {
+            setBits(row, column, bit);
+        }
+    }
+
+    /**
+     * Remove the marks from a horizontal run of cells in one row with one update per word, clipped to the floor
+     * @param y The Y coordinate of the row
+     * @param fromX One end of the run (inclusive)
+     * @param toX The other end of the run (inclusive)
+     */
+    @Override
+    public void unmarkRow(int y, int fromX, int toX) {
+        int size = getSize();
+        if (y < 0 || y >= size) {
+            return;
+        }
+        int lo = Math.max(Math.min(fromX, toX), 0);
+        int hi = Math.min(Math.max(fromX, toX), size - 1);
+        if (lo > hi) {
+            return;
+        }
+        int rowStart = y * wordsPerRow;
+        int first = lo >>> 6;
+        int last = hi >>> 6;
+        long firstMask = -1L << lo;
+        long lastMask = -1L >>> (63 - (hi & 63));
+        if (first == last) {
+            clearBits(y, first, firstMask & lastMask);
+        } else {
+            clearBits(y, first, firstMask);
+            for (int word = first + 1; word < last; word++) {
+                long cleared = words.getAndSet(rowStart + word, 0L);
+                if (cleared != 0) {
+                    fireUnmarked(y, word, cleared);
+                }
+            }
+            clearBits(y, last, lastMask);
+        }
+    }
+
+    /**
+     * Remove the marks from a vertical run of cells in one column, one update per row, clipped to the floor
+     * @param x The X coordinate of the column
+     * @param fromY One end of the run (inclusive)
+     * @param toY The other end of the run (inclusive)
+     */
+    @Override
+    public void unmarkColumn(int x, int fromY, int toY) {
+        int size = getSize();
+        if (x < 0 || x >= size) {
+            return;
+        }
+        int lo = Math.max(Math.min(fromY, toY), 0);
+        int hi = Math.min(Math.max(fromY, toY), size - 1);
+        int column = x >>> 6;
+        long bit = 1L << x;
+        for (int row = lo; row <= hi; row++) {
+            clearBits(row, column, bit);
+        }
+    }
+
+    /**
+     * Get the value at a specific position
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     * @return 1 if marked, 0 if not marked
+     */
+    @Override
+    public int getValue(int x, int y) {
+        if (isValidPosition(x, y)) {
+            return (int) (words.get(y * wordsPerRow + (x >>> 6)) >>> x) & 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Copy one row into a bit array, reading each word atomically
+     * @param y The Y coordinate of the row
+     * @param bits The target, at least (N + 63) / 64 longs
+     */
+    @Override
+    public void getRowBits(int y, long[] bits) {
+        int rowStart = y * wordsPerRow;
+        for (int i = 0; i < wordsPerRow; i++) {
+            bits[i] = words.get(rowStart + i);
+        }
+    }
+
+    /**
+     * Get 64 cells of one row, reading the word atomically
+     * @param y The Y coordinate of the row
+     * @param word The index of the 64-cell word
+     * @return The marked cells of the word, zero off the floor
+     */
+    @Override
+    public long getWordBits(int y, int word) {
+        if (y < 0 || y >= getSize() || word < 0 || word >= wordsPerRow) {
+            return 0L;
+        }
+        return words.get(y * wordsPerRow + word);
+    }
+
+    /**
+     * Clear the floor (reset all values to 0)
+     */
+    @Override
+    public void clear() {
+        for (int i = 0; i < words.length(); i++) {
+            words.set(i, 0L);
+        }
+        fireCleared();
+    }
+
+    /**
+     * Create a copy of the floor on the heap as a PackedFloor
+     */
+    @Override
+    public PackedFloor copy() {
+        PackedFloor copy = new PackedFloor(getSize());
+        long[] target = copy.words();
+        for (int i = 0; i < target.length; i++) {
+            target[i] = words.get(i);
+        }
+        return copy;
+    }
+
+    /**
+     * Count the marked cells on the floor using a popcount per word
+     * @return The number of cells with value 1
+     */
+    @Override
+    public long countMarked() {
+        long count = 0;
+        for (int i = 0; i < words.length(); i++) {
+            count += Long.bitCount(words.get(i));
+        }
+        return count;
+    }
+
+    /**
+     * OR bits into one word of a row, skipping the write when they are already set,
+     * and report the bits this call set
+     */
+    private void setBits(int y, int word, long bits) {
+        int index = y * wordsPerRow + word;
+        long current = words.get(index);
+        while ((current & bits) != bits && !words.compareAndSet(index, current, current | bits)) {
+            current = words.get(index);
+        }
+        long fresh = bits & ~current;
+        if (fresh != 0) {
+            fireMarked(y, word, fresh);
+        }
+    }
+
+    /**
+     * Clear bits in one word of a row, skipping the write when none are set, and report
+     * the bits this call cleared
+     */
+    private void clearBits(int y, int word, long bits) {
+        int index = y * wordsPerRow + word;
+        long current = words.get(index);
+        while ((current & bits) != 0 && !words.compareAndSet(index, current, current & ~bits)) {
+            current = words.get(index);
+        }
+        long cleared = bits & current;
+        if (cleared != 0) {
+            fireUnmarked(y, word, cleared);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.robotfloor;
+
+import java.util.Arrays;
+
+/**
+ * Marked-cell counts and bounding box of a floor, kept up to date as cells change
+ * Holds the total, a count per row and per column, and the smallest rectangle holding
+ * every marked cell of the N x N area. Attached as a FloorListener, each change costs
+ * time in proportion to the cells it changed, and every query is O(1).
+ * Obtain one with {@link Floor#getCoverage()}. Not thread-safe: on a ConcurrentFloor,
+ * query it only while no robot is marking.
+ */
+public class CoverageStats implements FloorListener {
+
+    private final int size;
+    private final int[] rowCounts;
+    private final int[] columnCounts;
+    private long markedCount;
+    private int minX;
+    private int minY;
+    private int maxX;
+    private int maxY;
+
+    /**
+     * Count the marks of a floor and start following its changes
+     * @param floor The floor to follow
+     */
+    CoverageStats(Floor floor) {
+        this.size = floor.getSize();
+        this.rowCounts = new int[size];
+        this.columnCounts = new int[size];
+        cleared();
+        long[] bits = new long[(size + 63) >>> 6];
+        for (int y = 0; y < size; y++) {
+            floor.getRowBits(y, bits);
+            for (int word = 0; word < bits.length; word++) {
+                if (bits[word] != 0) {
+                    marked(y, word, bits[word]);
+                }
+            }
+        }
+        floor.addListener(this);
+    }
+
+    /**
+     * Get the number of marked cells
+     */
+    public long getMarkedCount() {
+        return markedCount;
+    }
+
+    /**
+     * Get the number of marked cells in one row
+     * @param y The Y coordinate of the row
+     */
+    public int getRowCount(int y) {
+        return rowCounts[y];
+    }
+
+    /**
+     * Get the number of marked cells in one column
+     * @param x The X coordinate of the column
+     */
+    public int getColumnCount(int x) {
+        return columnCounts[x];
+    }
+
+    /**
+     * Check if no cell is marked
+     */
+    public boolean isEmpty() {
+        return markedCount == 0;
+    }
+
+    /**
+     * Get the smallest X of any marked cell, or -1 if none is marked
+     */
+    public int getMinX() {
+        return minX;
+    }
+
+    /**
+     * Get the smallest Y of any marked cell, or -1 if none is marked
+     */
+    public int getMinY() {
+        return minY;
+    }
+
+    /**
+     * Get the largest X of any marked cell, or -1 if none is marked
+     */
+    public int getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Get the largest Y of any marked cell, or -1 if none is marked
+     */
+    public int getMaxY() {
+        return maxY;
+    }
+
+    @Override
+    public void marked(int y, int word, long bits) {
+        bits = clip(y, word, bits);
+        if (bits == 0) {
+            return;
+        }
+        int count = Long.bitCount(bits);
+        int base = word << 6;
+        int first = base + Long.numberOfTrailingZeros(bits);
+        int last = base + 63 - Long.numberOfLeadingZeros(bits);
+        if (markedCount == 0) {
+            minX = first;
+            maxX = last;
+            minY = y;
+            maxY = y;
+        } else {
+            minX = Math.min(minX, first);
+            maxX = Math.max(maxX, last);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+        markedCount += count;
+        rowCounts[y] += count;
+        for (long rest = bits; rest != 0; rest &= rest - 1) {
+            columnCounts[base + Long.numberOfTrailingZeros(rest)]++;
+        }
+    }
+
+    @Override
+    public void unmarked(int y, int word, long bits) {
+        bits = clip(y, word, bits);
+        if (bits == 0) {
+            return;
+        }
+        int base = word << 6;
+        markedCount -= Long.bitCount(bits);
+        rowCounts[y] -= Long.bitCount(bits);
+        for (long rest = bits; rest != 0; rest &= rest - 1) {
+            columnCounts[base + Long.numberOfTrailingZeros(rest)]--;
+        }
+        if (markedCount == 0) {
+            cleared();
+            return;
+        }
+        // Pull in any edge of the box whose row or column just became empty
+        while (rowCounts[minY] == 0) {
+            minY++;
+        }
+        while (rowCounts[maxY] == 0) {
+            maxY--;
+        }
+        while (columnCounts[minX] == 0) {
+            minX++;
+        }
+        while (columnCounts[maxX] == 0) {
+            maxX--;
+        }
+    }
+
+    @Override
+    public void cleared() {
+        if (markedCount != 0) {
+            Arrays.fill(rowCounts, 0);
+            Arrays.fill(columnCounts, 0);
+        }
+        markedCount = 0;
+        minX = -1;
+        minY = -1;
+        maxX = -1;
+        maxY = -1;
+    }
+
+    /**
+     * Drop cells outside the N x N area (possible on an unbounded floor)
+     */
+    private long clip(int y, int word, long bits) {
+        if (y < 0 || y >= size || word < 0 || (long) word << 6 >= size) {
+            return 0;
+        }
+        int columns = size - (word << 6);
+        return columns < 64 ? bits & (-1L >>> (64 - columns)) : bits;
+    }
+}
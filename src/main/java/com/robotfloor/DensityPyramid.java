@@ -0,0 +1,171 @@
+package com.robotfloor;
+
+import java.util.Arrays;
+
+/**
+ * Multi-resolution mark counts for a floor, kept up to date as cells change
+ * Level L holds the number of marked cells in every aligned 2^L x 2^L block of the
+ * N x N area, for L from MIN_LEVEL up to the level whose single block covers the floor.
+ * Attached as a FloorListener, each changed row word updates one count per level, so the
+ * density of any aligned block is read in O(1) instead of counting its cells.
+ */
+public class DensityPyramid implements FloorListener {
+
+    /** The smallest block side kept is 2^MIN_LEVEL cells; smaller blocks are counted directly */
+    public static final int MIN_LEVEL = 3;
+    /** Blocks above 2^MAX_LEVEL cells a side would overflow an int count */
+    public static final int MAX_LEVEL = 15;
+
+    private final Floor floor;
+    private final int size;
+    private final int topLevel;
+    private final int[][] counts;
+    private final int[] blocksPerSide;
+
+    /**
+     * Build the pyramid for a floor and start following its changes
+     * The initial counts are taken from the floor's row words.
+     * @param floor The floor to summarize
+     */
+    public DensityPyramid(Floor floor) {
+        this.floor = floor;
+        this.size = floor.getSize();
+        int top = MIN_LEVEL;
+        while (top < MAX_LEVEL && (1 << top) < size) {
+            top++;
+        }
+        this.topLevel = top;
+        this.counts = new int[top + 1][];
+        this.blocksPerSide = new int[top + 1];
+        for (int level = MIN_LEVEL; level <= top; level++) {
+            int side = (int) ((size + (1L << level) - 1) >> level);
+            blocksPerSide[level] = side;
+            counts[level] = new int[side * side];
+        }
+        rebuild();
+        floor.addListener(this);
+    }
+
+    /**
+     * Get the floor this pyramid follows
+     */
+    public Floor getFloor() {
+        return floor;
+    }
+
+    /**
+     * Stop following the floor
+     */
+    public void detach() {
+        floor.removeListener(this);
+    }
+
+    /**
+     * Count the marked cells in an aligned block of the N x N area
+     * @param blockX The block column, i.e. the block's X origin divided by blockSize
+     * @param blockY The block row, i.e. the block's Y origin divided by blockSize
+     * @param blockSize The block side, a power of two
+     * @return The number of marked cells in the block, clipped to the floor
+     */
+    public long countBlock(int blockX, int blockY, int blockSize) {
+        if (Integer.bitCount(blockSize) != 1) {
+            throw new IllegalArgumentException("Block size must be a power of two");
+        }
+        int level = Integer.numberOfTrailingZeros(blockSize);
+        if (level < MIN_LEVEL) {
+            return countCells((long) blockX << level, (long) blockY << level, blockSize);
+        }
+        if (level <= topLevel) {
+            return count(level, blockX, blockY);
+        }
+        // Larger than the stored levels: add up the top-level blocks it covers
+        long span = 1L << (level - topLevel);
+        int side = blocksPerSide[topLevel];
+        long total = 0;
+        for (long by = Math.max(blockY * span, 0); by < (blockY + 1) * span && by < side; by++) {
+            for (long bx = Math.max(blockX * span, 0); bx < (blockX + 1) * span && bx < side; bx++) {
+                total += count(topLevel, (int) bx, (int) by);
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public void marked(int y, int word, long bits) {
+        add(y, word, bits, 1);
+    }
+
+    @Override
+    public void unmarked(int y, int word, long bits) {
+        add(y, word, bits, -1);
+    }
+
+    @Override
+    public void cleared() {
+        for (int level = MIN_LEVEL; level <= topLevel; level++) {
+            Arrays.fill(counts[level], 0);
+        }
+    }
+
+    private int count(int level, int blockX, int blockY) {
+        int side = blocksPerSide[level];
+        if (blockX < 0 || blockY < 0 || blockX >= side || blockY >= side) {
+            return 0;
+        }
+        return counts[level][blockY * side + blockX];
+    }
+
+    private long countCells(long originX, long originY, int blockSize) {
+        long total = 0;
+        for (long y = Math.max(originY, 0); y < originY + blockSize && y < size; y++) {
+            for (long x = Math.max(originX, 0); x < originX + blockSize && x < size; x++) {
+                total += floor.getValue((int) x, (int) y);
+            }
+        }
+        return total;
+    }
+
+    private void rebuild() {
+        long[] bits = new long[(size + 63) >>> 6];
+        for (int y = 0; y < size; y++) {
+            floor.getRowBits(y, bits);
+            for (int word = 0; word < bits.length; word++) {
+                if (bits[word] != 0) {
+                    add(y, word, bits[word], 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Apply one changed row word to every level
+     */
+    private void add(int y, int word, long bits, int sign) {
+        if (y < 0 || y >= size || word < 0 || (long) word << 6 >= size) {
+            return;
+        }
+        int columns = size - (word << 6);
+        if (columns < 64) {
+            // Cells past the declared width (possible on an unbounded floor) are not counted
+            bits &= -1L >>> (64 - columns);
+        }
+        for (int level = MIN_LEVEL; level <= topLevel; level++) {
+            int side = blocksPerSide[level];
+            int rowBase = (y >> level) * side;
+            if (level >= 6) {
+                // The whole word lies inside one block
+                counts[level][rowBase + ((word << 6) >> level)] += sign * Long.bitCount(bits);
+            } else {
+                int perWord = 64 >> level;
+                long blockMask = (1L << (1 << level)) - 1;
+                int firstBlock = word * perWord;
+                for (int b = 0; b < perWord; b++) {
+                    long inBlock = (bits >>> (b << level)) & blockMask;
+                    if (inBlock != 0) {
+                        counts[level][rowBase + firstBlock + b] += sign * Long.bitCount(inBlock);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -1,24 +1,49 @@
 package com.robotfloor;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 /**
  * Represents the floor (N x N array) on which the robot moves
  * Tracks where the robot has traced with its pen
  */
 public class Floor {
 
+    private static final FloorListener[] NO_LISTENERS = {};
+
     private int[][] grid;
     private int size;
+    private FloorListener[] listeners = NO_LISTENERS;
+    private CoverageStats coverage;
+    private RegionIndex regionIndex;
+    private FloorRenderer renderer;
 
     /**
      * Constructor for Floor
      * @param size The size of the floor (N x N)
      */
     public Floor(int size) {
+        this(size, true);
+    }
+
+    /**
+     * Constructor for Floor subclasses that keep their own cell storage
+     * @param size The size of the floor (N x N)
+     * @param allocateGrid Whether to allocate the int[][] grid
+     */
+    protected Floor(int size, boolean allocateGrid) {
         if (size <= 0) {
             throw new IllegalArgumentException("Floor size must be greater than zero");
         }
         this.size = size;
-        this.grid = new int[size][size];
+        if (allocateGrid) {
+            this.grid = new int[size][size];
+        }
     }
 
     /**
@@ -41,8 +66,127 @@ public class Floor {
      * @param y The Y coordinate
      */
     public void mark(int x, int y) {
-        if (isValidPosition(x, y)) {
+        if (isValidPosition(x, y) && grid[y][x] == 0) {
             grid[y][x] = 1;
+            fireMarked(y, x >>> 6, 1L << x);
+        }
+    }
+
+    /**
+     * Remove the mark from a position on the floor
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     */
+    public void unmark(int x, int y) {
+        if (isValidPosition(x, y) && grid[y][x] == 1) {
+            grid[y][x] = 0;
+            fireUnmarked(y, x >>> 6, 1L << x);
+        }
+    }
+
+    /**
+     * Mark a horizontal run of cells in one row, clipped to the floor
+     * @param y The Y coordinate of the row
+     * @param fromX One end of the run (inclusive)
+     * @param toX The other end of the run (inclusive)
+     */
+    public void markRow(int y, int fromX, int toX) {
+        if (y < 0 || y >= size) {
+            return;
+        }
+        int lo = Math.max(Math.min(fromX, toX), 0);
+        int hi = Math.min(Math.max(fromX, toX), size - 1);
+        if (!hasListeners()) {
+            if (lo <= hi) {
+                Arrays.fill(grid[y], lo, hi + 1, 1);
+            }
+            return;
+        }
+        long fresh = 0;
+        for (int x = lo; x <= hi; x++) {
+            if (grid[y][x] == 0) {
+                grid[y][x] = 1;
+                fresh |= 1L << x;
+            }
+            if ((x & 63) == 63 || x == hi) {
+                if (fresh != 0) {
+                    fireMarked(y, x >>> 6, fresh);
+                }
+                fresh = 0;
+            }
+        }
+    }
+
+    /**
+     * Mark a vertical run of cells in one column, clipped to the floor
+     * @param x The X coordinate of the column
+     * @param fromY One end of the run (inclusive)
+     * @param toY The other end of the run (inclusive)
+     */
+    public void markColumn(int x, int fromY, int toY) {
+        if (x < 0 || x >= size) {
+            return;
+        }
+        int lo = Math.max(Math.min(fromY, toY), 0);
+        int hi = Math.min(Math.max(fromY, toY), size - 1);
+        for (int y = lo; y <= hi; y++) {
+            if (grid[y][x] == 0) {
+                grid[y][x] = 1;
+                fireMarked(y, x >>> 6, 1L << x);
+            }
+        }
+    }
+
+    /**
+     * Remove the marks from a horizontal run of cells in one row, clipped to the floor
+     * @param y The Y coordinate of the row
+     * @param fromX One end of the run (inclusive)
+     * @param toX The other end of the run (inclusive)
+     */
+    public void unmarkRow(int y, int fromX, int toX) {
+        if (y < 0 || y >= size) {
+            return;
+        }
+        int lo = Math.max(Math.min(fromX, toX), 0);
+        int hi = Math.min(Math.max(fromX, toX), size - 1);
+        if (!hasListeners()) {
+            if (lo <= hi) {
+                Arrays.fill(grid[y], lo, hi + 1, 0);
+            }
+            return;
+        }
+        long cleared = 0;
+        for (int x = lo; x <= hi; x++) {
+            if (grid[y][x] == 1) {
+                grid[y][x] = 0;
+                cleared |= 1L << x;
+            }
+            if ((x & 63) == 63 || x == hi) {
+                if (cleared != 0) {
+                    fireUnmarked(y, x >>> 6, cleared);
+                }
+                cleared = 0;
+            }
+        }
+    }
+
+    /**
+     * Remove the marks from a vertical run of cells in one column, clipped to the floor
+     * @param x The X coordinate of the column
+     * @param fromY One end of the run (inclusive)
+     * @param toY The other end of the run (inclusive)
+     */
+    public void unmarkColumn(int x, int fromY, int toY) {
+        if (x < 0 || x >= size) {
+            return;
+        }
+        int lo = Math.max(Math.min(fromY, toY), 0);
+        int hi = Math.min(Math.max(fromY, toY), size - 1);
+        for (int y = lo; y <= hi; y++) {
+            if (grid[y][x] == 1) {
+                grid[y][x] = 0;
+                fireUnmarked(y, x >>> 6, 1L << x);
+            }
         }
     }
 
@@ -69,35 +213,218 @@ public class Floor {
         return 0;
     }
 
+    /**
+     * Copy one row of the N x N area into a bit array, 64 cells per long
+     * Cell x is bit (x % 64) of bits[x / 64]; bits past the last column are zero.
+     * @param y The Y coordinate of the row
+     * @param bits The target, at least (N + 63) / 64 longs
+     */
+    public void getRowBits(int y, long[] bits) {
+        int size = getSize();
+        Arrays.fill(bits, 0, (size + 63) >>> 6, 0L);
+        for (int x = 0; x < size; x++) {
+            if (getValue(x, y) == 1) {
+                bits[x >>> 6] |= 1L << x;
+            }
+        }
+    }
+
+    /**
+     * Get 64 cells of one row as a bit mask: cell word * 64 + i is bit i
+     * Cells off the floor read as zero.
+     * @param y The Y coordinate of the row
+     * @param word The index of the 64-cell word, negative left of column 0
+     * @return The marked cells of the word
+     */
+    public long getWordBits(int y, int word) {
+        long bits = 0L;
+        int first = word << 6;
+        for (int i = 0; i < 64; i++) {
+            if (getValue(first + i, y) == 1) {
+                bits |= 1L << i;
+            }
+        }
+        return bits;
+    }
+
     /**
      * Clear the floor (reset all values to 0)
      */
     public void clear() {
         grid = new int[size][size];
+        fireCleared();
+    }
+
+    /**
+     * Create an independent copy of the floor with the same marks
+     */
+    public Floor copy() {
+        Floor copy = new Floor(size);
+        for (int y = 0; y < size; y++) {
+            System.arraycopy(grid[y], 0, copy.grid[y], 0, size);
+        }
+        return copy;
+    }
+
+    /**
+     * Close a floor that holds a file or other resource, such as a MappedFloor
+     * A failure is ignored, since the floor is being dropped either way.
+     * @param floor The floor to drop, or null
+     */
+    static void release(Floor floor) {
+        if (floor instanceof Closeable) {
+            try {
+                ((Closeable) floor).close();
+            } catch (IOException e) {
+                // Nothing more can be done with a floor that is no longer used
+            }
+        }
+    }
+
+    /**
+     * Register a listener for changes to this floor
+     * Listeners are not carried over by copy().
+     * @param listener The listener to add
+     */
+    public void addListener(FloorListener listener) {
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+    }
+
+    /**
+     * Unregister a listener
+     * @param listener The listener to remove
+     */
+    public void removeListener(FloorListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                FloorListener[] remaining = new FloorListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, remaining, 0, i);
+                System.arraycopy(listeners, i + 1, remaining, i, remaining.length - i);
+                listeners = remaining;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Check whether any listener is registered, so backends can skip change tracking
+     */
+    protected final boolean hasListeners() {
+        return listeners.length != 0;
+    }
+
+    /**
+     * Report newly marked cells of one row word to the listeners
+     */
+    protected final void fireMarked(int y, int word, long bits) {
+        for (FloorListener listener : listeners) {
+            listener.marked(y, word, bits);
+        }
+    }
+
+    /**
+     * Report newly unmarked cells of one row word to the listeners
+     */
+    protected final void fireUnmarked(int y, int word, long bits) {
+        for (FloorListener listener : listeners) {
+            listener.unmarked(y, word, bits);
+        }
+    }
+
+    /**
+     * Report that the floor has been cleared to the listeners
+     */
+    protected final void fireCleared() {
+        for (FloorListener listener : listeners) {
+            listener.cleared();
+        }
+    }
+
+    /**
+     * Get the marked-cell counts and bounding box of the N x N area
+     * They are counted once on the first call and kept up to date from then on.
+     */
+    public CoverageStats getCoverage() {
+        if (coverage == null) {
+            coverage = new CoverageStats(this);
+        }
+        return coverage;
+    }
+
+    /**
+     * Get the rectangle-count index of the N x N area
+     * It is built on the first call, at one long and one int per 64 cells, and kept up to
+     * date from then on.
+     */
+    public RegionIndex getRegionIndex() {
+        if (regionIndex == null) {
+            regionIndex = new RegionIndex(this);
+        }
+        return regionIndex;
+    }
+
+    /**
+     * Count the marked cells in a rectangle, clipped to the N x N area
+     * Answered from the region index, which the first call builds, in O(log^2 N) plus at
+     * most 63 word reads at each end of the rectangle's two edge words.
+     * @param x1 The X coordinate of one corner (inclusive)
+     * @param y1 The Y coordinate of one corner (inclusive)
+     * @param x2 The X coordinate of the opposite corner (inclusive)
+     * @param y2 The Y coordinate of the opposite corner (inclusive)
+     * @return The number of cells with value 1
+     */
+    public long countMarked(int x1, int y1, int x2, int y2) {
+        return getRegionIndex().count(x1, y1, x2, y2);
+    }
+
+    /**
+     * Check if any cell in a rectangle is marked, clipped to the N x N area
+     * @param x1 The X coordinate of one corner (inclusive)
+     * @param y1 The Y coordinate of one corner (inclusive)
+     * @param x2 The X coordinate of the opposite corner (inclusive)
+     * @param y2 The Y coordinate of the opposite corner (inclusive)
+     * @return True if at least one cell has value 1
+     */
+    public boolean anyMarked(int x1, int y1, int x2, int y2) {
+        return getRegionIndex().any(x1, y1, x2, y2);
+    }
+
+    /**
+     * Count the marked cells on the floor
+     * @return The number of cells with value 1
+     */
+    public long countMarked() {
+        long count = 0;
+        for (int[] row : grid) {
+            for (int value : row) {
+                count += value;
+            }
+        }
+        return count;
     }
 
     /**
      * Print the floor to console
      */
     public void print() {
-        // Print column indices
-        System.out.print("    ");
-        for (int i = 0; i < size; i++) {
-            System.out.printf("%2d ", i);
-        }
-        System.out.println();
-
-        // Print the grid
-        for (int y = size - 1; y >= 0; y--) {
-            System.out.printf("%2d: ", y);
-            for (int x = 0; x < size; x++) {
-                if (grid[y][x] == 1) {
-                    System.out.print(" * ");
-                } else {
-                    System.out.print("   ");
-                }
+        print(System.out);
+    }
+
+    /**
+     * Print the floor to a stream
+     * @param out The stream to print to
+     */
+    public void print(PrintStream out) {
+        FloorRenderer renderer = renderer();
+        synchronized (renderer) {
+            renderer.setLineSeparator(System.lineSeparator());
+            try {
+                renderer.render(this, out);
+            } catch (IOException e) {
+                // PrintStream reports errors through checkError() rather than throwing
+                throw new UncheckedIOException(e);
             }
-            System.out.println();
         }
     }
 
@@ -106,26 +433,27 @@ public class Floor {
      */
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        // Print column indices
-        sb.append("    ");
-        for (int i = 0; i < size; i++) {
-            sb.append(String.format("%2d ", i));
-        }
-        sb.append("\n");
-
-        // Print the grid
-        for (int y = size - 1; y >= 0; y--) {
-            sb.append(String.format("%2d: ", y));
-            for (int x = 0; x < size; x++) {
-                if (grid[y][x] == 1) {
-                    sb.append(" * ");
-                } else {
-                    sb.append("   ");
-                }
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        FloorRenderer renderer = renderer();
+        synchronized (renderer) {
+            renderer.setLineSeparator("\n");
+            try {
+                renderer.render(this, text);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-            sb.append("\n");
         }
-        return sb.toString();
+        return text.toString(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Get the renderer shared by print() and toString(), creating it on first use
+     * Calls lock it, since a ConcurrentFloor may be printed from several threads.
+     */
+    private synchronized FloorRenderer renderer() {
+        if (renderer == null) {
+            renderer = new FloorRenderer("\n");
+        }
+        return renderer;
     }
 }
@@ -0,0 +1,184 @@
+package com.robotfloor;
+
+import java.util.Arrays;
+
+/**
+ * The rows and cells of a floor changed since the last frame was drawn
+ * Attached as a FloorListener, it keeps each changed row once, in a bitset and a list, and
+ * each changed row word as it is reported, so drawing a frame costs time in proportion to
+ * the changes rather than to N x N. Past MAX_CELL_CHANGES row words only the rows are kept.
+ * A new tracker, or one whose floor was cleared, reports the whole floor as changed.
+ * Frames are drawn by {@link FloorRenderer#renderChangedRows} and
+ * {@link FloorRenderer#renderAnsiFrame}, which reset the tracker.
+ */
+public class FloorChanges implements FloorListener {
+
+    /** Most changed row words kept between frames before falling back to whole rows */
+    public static final int MAX_CELL_CHANGES = 1 << 16;
+
+    private final Floor floor;
+    private final int size;
+    private final long[] rowFlags;
+    private int[] rows = new int[16];
+    private int rowCount;
+    private int[] changeRows = new int[16];
+    private int[] changeWords = new int[16];
+    private long[] changeBits = new long[16];
+    private int changeCount;
+    private boolean cellsDropped;
+    private boolean allChanged = true;
+
+    /**
+     * Start tracking the changes to a floor
+     * @param floor The floor to follow
+     */
+    public FloorChanges(Floor floor) {
+        this.floor = floor;
+        this.size = floor.getSize();
+        this.rowFlags = new long[(size + 63) >>> 6];
+        floor.addListener(this);
+    }
+
+    /**
+     * Get the floor this tracker follows
+     */
+    public Floor getFloor() {
+        return floor;
+    }
+
+    /**
+     * Stop following the floor
+     */
+    public void detach() {
+        floor.removeListener(this);
+    }
+
+    /**
+     * Check if the whole floor must be drawn, e.g. for the first frame
+     */
+    public boolean isAllChanged() {
+        return allChanged;
+    }
+
+    /**
+     * Get the number of distinct rows changed since the last frame
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Check if only whole rows are known because too many cells changed
+     */
+    public boolean isCellsDropped() {
+        return cellsDropped;
+    }
+
+    /**
+     * Sort the changed rows from top to bottom, the order in which 'P' prints them
+     */
+    void sortRows() {
+        Arrays.sort(rows, 0, rowCount);
+        for (int i = 0, j = rowCount - 1; i < j; i++, j--) {
+            int swap = rows[i];
+            rows[i] = rows[j];
+            rows[j] = swap;
+        }
+    }
+
+    /**
+     * Get a changed row
+     * @param i The index in the list of changed rows
+     */
+    int row(int i) {
+        return rows[i];
+    }
+
+    /**
+     * Get the number of changed row words kept, in the order they changed
+     */
+    int changeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Get the row of a changed row word
+     */
+    int changeRow(int i) {
+        return changeRows[i];
+    }
+
+    /**
+     * Get the word index of a changed row word
+     */
+    int changeWord(int i) {
+        return changeWords[i];
+    }
+
+    /**
+     * Get the changed cells of a changed row word
+     */
+    long changeBits(int i) {
+        return changeBits[i];
+    }
+
+    /**
+     * Start a new frame: nothing has changed since now
+     */
+    public void reset() {
+        for (int i = 0; i < rowCount; i++) {
+            rowFlags[rows[i] >>> 6] = 0;
+        }
+        rowCount = 0;
+        changeCount = 0;
+        cellsDropped = false;
+        allChanged = false;
+    }
+
+    @Override
+    public void marked(int y, int word, long bits) {
+        record(y, word, bits);
+    }
+
+    @Override
+    public void unmarked(int y, int word, long bits) {
+        record(y, word, bits);
+    }
+
+    @Override
+    public void cleared() {
+        allChanged = true;
+    }
+
+    private void record(int y, int word, long bits) {
+        if (allChanged || y < 0 || y >= size || word < 0 || (long) word << 6 >= size) {
+            // Cells outside the N x N area (possible on an unbounded floor) are never drawn
+            return;
+        }
+        long flag = 1L << y;
+        if ((rowFlags[y >>> 6] & flag) == 0) {
+            rowFlags[y >>> 6] |= flag;
+            if (rowCount == rows.length) {
+                rows = Arrays.copyOf(rows, rowCount * 2);
+            }
+            rows[rowCount++] = y;
+        }
+        if (cellsDropped) {
+            return;
+        }
+        if (changeCount == MAX_CELL_CHANGES) {
+            cellsDropped = true;
+            return;
+        }
+        if (changeCount == changeRows.length) {
+            changeRows = Arrays.copyOf(changeRows, changeCount * 2);
+            changeWords = Arrays.copyOf(changeWords, changeCount * 2);
+            changeBits = Arrays.copyOf(changeBits, changeCount * 2);
+        }
+        int columns = size - (word << 6);
+        changeRows[changeCount] = y;
+        changeWords[changeCount] = word;
+        changeBits[changeCount] = columns < 64 ? bits & (-1L >>> (64 - columns)) : bits;
+        changeCount++;
+    }
+}
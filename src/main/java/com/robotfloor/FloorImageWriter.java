@@ -0,0 +1,137 @@
+package com.robotfloor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Exports a floor as a one-bit image, streamed one row at a time
+ * Rows are written top to bottom (Y from N - 1 to 0), as 'P' prints them, so a marked
+ * cell is a black pixel at the same place. Each row is taken from the floor's packed row
+ * bits and turned into image bytes a whole 64-bit word at a time; only one row is held
+ * in memory, so floors far larger than their text rendering can be exported.
+ * A writer is reused between calls and is not thread-safe.
+ */
+public class FloorImageWriter {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int CHUNK_BYTES = 1 << 16;
+
+    private long[] rowBits = new long[0];
+    private ByteBuffer row = ByteBuffer.allocate(0);
+    private final byte[] chunk = new byte[CHUNK_BYTES + 12];
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Write a floor as a binary PBM (P4) image
+     * @param floor The floor to export
+     * @param out The stream to write to; it is not flushed or closed
+     * @throws IOException If writing fails
+     */
+    public void writePbm(Floor floor, OutputStream out) throws IOException {
+        int size = floor.getSize();
+        out.write(("P4\n" + size + " " + size + "\n").getBytes(StandardCharsets.US_ASCII));
+        for (int y = size - 1; y >= 0; y--) {
+            // In P4 a set bit is black and the leftmost pixel is the top bit of each byte
+            packRow(floor, y, false);
+            out.write(row.array(), 1, (size + 7) >>> 3);
+        }
+    }
+
+    /**
+     * Write a floor as a one-bit grayscale PNG image
+     * The scanlines are deflated as they are produced and written out in bounded IDAT chunks.
+     * @param floor The floor to export
+     * @param out The stream to write to; it is not flushed or closed
+     * @throws IOException If writing fails
+     */
+    public void writePng(Floor floor, OutputStream out) throws IOException {
+        int size = floor.getSize();
+        out.write(PNG_SIGNATURE);
+        ByteBuffer header = ByteBuffer.wrap(chunk, 8, 13);
+        // Width, height, bit depth 1, grayscale, deflate, no filtering, no interlace
+        header.putInt(size).putInt(size).put((byte) 1).put((byte) 0).put((byte) 0).put((byte) 0).put((byte) 0);
+        writeChunk(out, "IHDR", 13);
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            int length = 0;
+            int rowBytes = (size + 7) >>> 3;
+            for (int y = size - 1; y >= 0; y--) {
+                // In grayscale a zero bit is black; each scanline starts with filter type 0
+                packRow(floor, y, true);
+                row.array()[0] = 0;
+                deflater.setInput(row.array(), 0, rowBytes + 1);
+                length = deflate(deflater, out, length);
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                length = deflate(deflater, out, length);
+            }
+            if (length > 0) {
+                writeChunk(out, "IDAT", length);
+            }
+        } finally {
+            deflater.end();
+        }
+        writeChunk(out, "IEND", 0);
+    }
+
+    /**
+     * Turn one floor row into image bytes, starting at index 1 of the row buffer
+     * Reversing a word puts cell 0 in its top bit, so its big-endian bytes are the pixels
+     * in order. Bits past the floor width are left clear (black when inverted is false).
+     */
+    private void packRow(Floor floor, int y, boolean inverted) {
+        int size = floor.getSize();
+        int words = (size + 63) >>> 6;
+        if (rowBits.length < words) {
+            rowBits = new long[words];
+            row = ByteBuffer.allocate(1 + words * 8);
+        }
+        floor.getRowBits(y, rowBits);
+        row.position(1);
+        for (int word = 0; word < words; word++) {
+            long bits = inverted ? ~rowBits[word] : rowBits[word];
+            int columns = size - (word << 6);
+            if (columns < 64) {
+                bits &= -1L >>> (64 - columns);
+            }
+            row.putLong(Long.reverse(bits));
+        }
+    }
+
+    /**
+     * Drain deflater output into the chunk buffer, writing an IDAT chunk each time it fills
+     * @return The number of compressed bytes waiting in the chunk buffer
+     */
+    private int deflate(Deflater deflater, OutputStream out, int length) throws IOException {
+        while (true) {
+            int count = deflater.deflate(chunk, 8 + length, CHUNK_BYTES - length);
+            length += count;
+            if (length == CHUNK_BYTES) {
+                writeChunk(out, "IDAT", length);
+                length = 0;
+            } else if (count == 0) {
+                return length;
+            }
+        }
+    }
+
+    /**
+     * Write a PNG chunk whose data is already at index 8 of the chunk buffer
+     */
+    private void writeChunk(OutputStream out, String type, int length) throws IOException {
+        ByteBuffer frame = ByteBuffer.wrap(chunk);
+        frame.putInt(length);
+        frame.put(type.getBytes(StandardCharsets.US_ASCII));
+        crc.reset();
+        crc.update(chunk, 4, length + 4);
+        frame.position(8 + length);
+        frame.putInt((int) crc.getValue());
+        out.write(chunk, 0, length + 12);
+    }
+}
@@ -0,0 +1,31 @@
+package com.robotfloor;
+
+/**
+ * Receives changes to a floor as they happen, one 64-cell word of a row at a time
+ * Cell x of row y is bit (x % 64) of word x / 64, and only cells whose value actually
+ * changed are reported, so a listener can keep counts without re-reading the floor.
+ * Listeners run on the thread that changed the floor.
+ */
+public interface FloorListener {
+
+    /**
+     * Cells that were unmarked have been marked
+     * @param y The Y coordinate of the row
+     * @param word The word index within the row (may be negative on an unbounded floor)
+     * @param bits The newly marked cells, never zero
+     */
+    void marked(int y, int word, long bits);
+
+    /**
+     * Cells that were marked have been unmarked
+     * @param y The Y coordinate of the row
+     * @param word The word index within the row (may be negative on an unbounded floor)
+     * @param bits The newly unmarked cells, never zero
+     */
+    void unmarked(int y, int word, long bits);
+
+    /**
+     * Every cell has been unmarked
+     */
+    void cleared();
+}
@@ -0,0 +1,399 @@
+package com.robotfloor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Streams the text form of a floor ('P' output) row by row
+ * Rows are built straight into a reusable byte buffer from the floor's packed row bits,
+ * with labels written digit by digit instead of through String.format. The buffer is
+ * written out whenever it fills, so the whole picture is never held in memory. The bytes
+ * match the original layout: a column header, then one labelled row per Y from N - 1 to 0.
+ * The buffer is allocated on the first render and grows with the output, up to one chunk
+ * or one row if a row is longer, so a renderer for a small floor stays small. A renderer
+ * is reused between calls and is not thread-safe.
+ */
+public class FloorRenderer {
+
+    private static final int CHUNK_BYTES = 1 << 16;
+
+    private static final int MIN_BUFFER_BYTES = 256;
+
+    private byte[] lineSeparator;
+    private byte[] buffer = new byte[0];
+    private int length;
+    private long[] rowBits = new long[0];
+    private OutputStream stream;
+    private WritableByteChannel channel;
+
+    /**
+     * Constructor for FloorRenderer using the platform line separator, like print()
+     */
+    public FloorRenderer() {
+        this(System.lineSeparator());
+    }
+
+    /**
+     * Constructor for FloorRenderer
+     * @param lineSeparator The line ending, e.g. "\n" to match toString()
+     */
+    public FloorRenderer(String lineSeparator) {
+        this.lineSeparator = lineSeparator.getBytes();
+    }
+
+    /**
+     * Get the size of the output buffer, which is empty until the first render
+     */
+    int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Change the line ending, so one renderer can serve both print() and toString()
+     * @param lineSeparator The line ending
+     */
+    void setLineSeparator(String lineSeparator) {
+        this.lineSeparator = lineSeparator.getBytes();
+    }
+
+    /**
+     * Render a floor to a stream
+     * @param floor The floor to render
+     * @param out The stream to write to; it is not flushed or closed
+     * @throws IOException If writing fails
+     */
+    public void render(Floor floor, OutputStream out) throws IOException {
+        renderRegion(floor, 0, 0, floor.getSize(), floor.getSize(), out);
+    }
+
+    /**
+     * Render a floor to a channel
+     * @param floor The floor to render
+     * @param out The channel to write to; it is not closed
+     * @throws IOException If writing fails
+     */
+    public void render(Floor floor, WritableByteChannel out) throws IOException {
+        channel = out;
+        try {
+            region(floor, 0, 0, floor.getSize(), floor.getSize());
+        } finally {
+            channel = null;
+        }
+    }
+
+    /**
+     * Render a rectangle of a floor in the same layout, labelled with floor coordinates
+     * The rectangle must lie inside the N x N area.
+     * @param floor The floor to render
+     * @param x The X coordinate of the left column
+     * @param y The Y coordinate of the bottom row
+     * @param width The number of columns
+     * @param height The number of rows
+     * @param out The stream to write to; it is not flushed or closed
+     * @throws IOException If writing fails
+     */
+    public void renderRegion(Floor floor, int x, int y, int width, int height, OutputStream out)
+            throws IOException {
+        stream = out;
+        try {
+            region(floor, x, y, width, height);
+        } finally {
+            stream = null;
+        }
+    }
+
+    /**
+     * Render a zoomed-out view where each character summarizes an aligned block of cells
+     * A block shows ' ' when empty, '.' when less than half marked, '+' when at least half
+     * marked and '*' when full. Labels are the floor coordinates of each block's origin.
+     * @param pyramid The block counts of the floor to render
+     * @param blockX The block column of the left edge
+     * @param blockY The block row of the bottom edge
+     * @param columns The number of blocks across
+     * @param rows The number of blocks up
+     * @param blockSize The block side in cells, a power of two
+     * @param out The stream to write to; it is not flushed or closed
+     * @throws IOException If writing fails
+     */
+    public void renderZoomed(DensityPyramid pyramid, int blockX, int blockY, int columns, int rows,
+            int blockSize, OutputStream out) throws IOException {
+        stream = out;
+        try {
+            int size = pyramid.getFloor().getSize();
+            header(blockX, columns, blockSize);
+            for (int by = blockY + rows - 1; by >= blockY; by--) {
+                rowLabel(by * blockSize);
+                long blockHeight = Math.min(blockSize, size - (long) by * blockSize);
+                for (int bx = blockX; bx < blockX + columns; bx++) {
+                    long area = blockHeight * Math.min(blockSize, size - (long) bx * blockSize);
+                    long count = pyramid.countBlock(bx, by, blockSize);
+                    ensureRoom(3);
+                    buffer[length++] = ' ';
+                    buffer[length++] = count == 0 ? (byte) ' ' : count == area ? (byte) '*'
+                            : count * 2 >= area ? (byte) '+' : (byte) '.';
+                    buffer[length++] = ' ';
+                }
+                appendLineSeparator();
+            }
+            flush();
+        } finally {
+            stream = null;
+        }
+    }
+
+    /**
+     * Render the rows of a floor changed since the last frame, top to bottom, without the
+     * column header, then start a new frame
+     * The whole floor, header included, is rendered when the tracker reports everything
+     * changed, e.g. for the first frame. Nothing is written when nothing changed.
+     * @param changes The changes of the floor to render
+     * @param out The stream to write to; it is not flushed or closed
+     * @throws IOException If writing fails
+     */
+    public void renderChangedRows(FloorChanges changes, OutputStream out) throws IOException {
+        stream = out;
+        try {
+            Floor floor = changes.getFloor();
+            if (changes.isAllChanged()) {
+                region(floor, 0, 0, floor.getSize(), floor.getSize());
+            } else {
+                length = 0;
+                reserveRowBits(floor);
+                changes.sortRows();
+                for (int i = 0; i < changes.getRowCount(); i++) {
+                    row(floor, changes.row(i), 0, floor.getSize());
+                }
+                flush();
+            }
+            changes.reset();
+        } finally {
+            stream = null;
+        }
+    }
+
+    /**
+     * Update a terminal showing the floor in place with ANSI escape sequences, then start
+     * a new frame
+     * The first frame, or any after the tracker reports everything changed, clears the
+     * screen and draws the whole floor from the top-left corner. Later frames move the
+     * cursor to each changed cell and rewrite only that cell, or each changed row when
+     * too many cells changed. The cursor is left on the line below the floor, which must
+     * fit on the screen.
+     * @param changes The changes of the floor to render
+     * @param out The stream to write to; it is not flushed or closed
+     * @throws IOException If writing fails
+     */
+    public void renderAnsiFrame(FloorChanges changes, OutputStream out) throws IOException {
+        stream = out;
+        try {
+            Floor floor = changes.getFloor();
+            int size = floor.getSize();
+            length = 0;
+            if (changes.isAllChanged()) {
+                appendAscii("\033[H\033[2J");
+                flush();
+                region(floor, 0, 0, size, size);
+            } else {
+                if (changes.isCellsDropped()) {
+                    reserveRowBits(floor);
+                    for (int i = 0; i < changes.getRowCount(); i++) {
+                        int y = changes.row(i);
+                        cursorTo(size + 1 - y, 1);
+                        row(floor, y, 0, size);
+                    }
+                } else {
+                    changedCells(changes);
+                }
+                cursorTo(size + 2, 1);
+                flush();
+            }
+            changes.reset();
+        } finally {
+            stream = null;
+        }
+    }
+
+    private void region(Floor floor, int x, int y, int width, int height) throws IOException {
+        reserveRowBits(floor);
+        header(x, width, 1);
+        for (int row = y + height - 1; row >= y; row--) {
+            row(floor, row, x, x + width);
+        }
+        flush();
+    }
+
+    private void reserveRowBits(Floor floor) {
+        int words = (floor.getSize() + 63) >>> 6;
+        if (rowBits.length < words) {
+            rowBits = new long[words];
+        }
+    }
+
+    /**
+     * One labelled row of cells from column x up to end (exclusive)
+     */
+    private void row(Floor floor, int row, int x, int end) throws IOException {
+        rowLabel(row);
+        floor.getRowBits(row, rowBits);
+        int column = x;
+        while (column < end) {
+            // One word of row bits at a time
+            long bits = rowBits[column >>> 6];
+            int wordEnd = Math.min(end, (column | 63) + 1);
+            ensureRoom((wordEnd - column) * 3);
+            for (; column < wordEnd; column++) {
+                buffer[length++] = ' ';
+                buffer[length++] = (bits >>> column & 1) != 0 ? (byte) '*' : (byte) ' ';
+                buffer[length++] = ' ';
+            }
+        }
+        appendLineSeparator();
+    }
+
+    /**
+     * Rewrite each changed cell in place; runs of adjacent cells in a row share one cursor move
+     */
+    private void changedCells(FloorChanges changes) throws IOException {
+        Floor floor = changes.getFloor();
+        int size = floor.getSize();
+        int lastX = -2;
+        int lastY = -1;
+        for (int i = 0; i < changes.changeCount(); i++) {
+            int y = changes.changeRow(i);
+            int base = changes.changeWord(i) << 6;
+            for (long rest = changes.changeBits(i); rest != 0; rest &= rest - 1) {
+                int x = base + Long.numberOfTrailingZeros(rest);
+                ensureRoom(32);
+                if (y == lastY && x == lastX + 1) {
+                    // The two spaces between cells are rewritten unchanged
+                    buffer[length++] = ' ';
+                    buffer[length++] = ' ';
+                } else {
+                    // Row y is on screen line N + 1 - y, and cell x after its label and ": "
+                    cursorTo(size + 1 - y, Math.max(2, digits(y)) + 3 * x + 4);
+                }
+                buffer[length++] = floor.getValue(x, y) == 1 ? (byte) '*' : (byte) ' ';
+                lastX = x;
+                lastY = y;
+            }
+        }
+    }
+
+    /**
+     * ANSI cursor position, both 1-based: ESC [ line ; column H
+     */
+    private void cursorTo(int line, int column) throws IOException {
+        ensureRoom(24);
+        buffer[length++] = 0x1B;
+        buffer[length++] = '[';
+        appendNumber(line);
+        buffer[length++] = ';';
+        appendNumber(column);
+        buffer[length++] = 'H';
+    }
+
+    private void appendAscii(String text) throws IOException {
+        ensureRoom(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            buffer[length++] = (byte) text.charAt(i);
+        }
+    }
+
+    private void appendNumber(int value) {
+        if (value < 10) {
+            buffer[length++] = (byte) ('0' + value);
+        } else {
+            appendLabel(value);
+        }
+    }
+
+    private static int digits(int value) {
+        int digits = 1;
+        for (int rest = value; rest >= 10; rest /= 10) {
+            digits++;
+        }
+        return digits;
+    }
+
+    /**
+     * Column indices: "%2d " per column after a four-space margin
+     */
+    private void header(int first, int columns, int step) throws IOException {
+        length = 0;
+        ensureRoom(4);
+        Arrays.fill(buffer, 0, 4, (byte) ' ');
+        length = 4;
+        for (int i = 0; i < columns; i++) {
+            ensureRoom(12);
+            appendLabel((first + i) * step);
+            buffer[length++] = ' ';
+        }
+        appendLineSeparator();
+    }
+
+    /**
+     * Row index: "%2d: "
+     */
+    private void rowLabel(int y) throws IOException {
+        ensureRoom(13);
+        appendLabel(y);
+        buffer[length++] = ':';
+        buffer[length++] = ' ';
+    }
+
+    /**
+     * Append a number right-aligned in two characters, as "%2d" does
+     */
+    private void appendLabel(int value) {
+        if (value < 10) {
+            buffer[length++] = ' ';
+            buffer[length++] = (byte) ('0' + value);
+            return;
+        }
+        int digits = 0;
+        for (int rest = value; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    private void appendLineSeparator() throws IOException {
+        ensureRoom(lineSeparator.length);
+        System.arraycopy(lineSeparator, 0, buffer, length, lineSeparator.length);
+        length += lineSeparator.length;
+    }
+
+    private void ensureRoom(int bytes) throws IOException {
+        if (length + bytes <= buffer.length) {
+            return;
+        }
+        if (buffer.length >= CHUNK_BYTES) {
+            flush();
+            if (bytes <= buffer.length) {
+                return;
+            }
+        }
+        // Grow by doubling until the buffer holds a chunk
+        int capacity = Math.max(length + bytes, Math.min(CHUNK_BYTES, Math.max(MIN_BUFFER_BYTES, buffer.length * 2)));
+        buffer = Arrays.copyOf(buffer, capacity);
+    }
+
+    private void flush() throws IOException {
+        if (stream != null) {
+            stream.write(buffer, 0, length);
+        } else {
+            ByteBuffer pending = ByteBuffer.wrap(buffer, 0, length);
+            while (pending.hasRemaining()) {
+                channel.write(pending);
+            }
+        }
+        length = 0;
+    }
+}
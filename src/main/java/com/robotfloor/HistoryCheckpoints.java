@@ -0,0 +1,301 @@
+package com.robotfloor;
+
+import java.util.Arrays;
+
+/**
+ * Periodic snapshots of the robot and floor, keyed by command number since the last 'I'
+ * The state after any command can be rebuilt from the nearest earlier checkpoint by
+ * replaying at most one interval of history. Only the oldest checkpoint holds a copy of
+ * the floor; every later one holds the row words that changed since the one before it,
+ * which the simulator reports through {@link #touch}. When the deltas outgrow their byte
+ * budget the oldest one is folded into the copy, so the interval never changes and the
+ * earliest commands are the ones that fall back to a full replay.
+ */
+class HistoryCheckpoints {
+
+    /** Bytes held per changed word: its position and its bits */
+    static final int DELTA_WORD_BYTES = 16;
+
+    private final int interval;
+    private final long maxDeltaBytes;
+    private long[] sequences = new long[8];
+    private int[] robotStates = new int[8 * 3];
+    private long[][] deltaKeys = new long[8][];
+    private long[][] deltaBits = new long[8][];
+    private int count;
+    private long deltaBytes;
+    private Floor base;
+    private long[] touched = new long[64];
+    private int touchedCount;
+
+    /**
+     * Constructor for HistoryCheckpoints
+     * @param interval Take a checkpoint every this many commands
+     * @param maxDeltaBytes The memory the deltas may use before the oldest is folded away
+     */
+    HistoryCheckpoints(int interval, long maxDeltaBytes) {
+        if (interval <= 0 || maxDeltaBytes <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval and limit must be positive");
+        }
+        this.interval = interval;
+        this.maxDeltaBytes = maxDeltaBytes;
+    }
+
+    /**
+     * Get the checkpoint interval
+     */
+    int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Get the number of checkpoints held
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Get the bytes held by the deltas, not counting the floor copy
+     */
+    long getDeltaBytes() {
+        return deltaBytes;
+    }
+
+    /**
+     * Note a straight segment of cells that has changed or is about to change
+     * The segment is clipped to the floor; each row word it crosses goes into the next delta.
+     * @param floor The floor the segment is drawn on
+     * @param fromX The X coordinate of one end (inclusive)
+     * @param fromY The Y coordinate of one end (inclusive)
+     * @param toX The X coordinate of the other end (inclusive)
+     * @param toY The Y coordinate of the other end (inclusive)
+     */
+    void touch(Floor floor, int fromX, int fromY, int toX, int toY) {
+        if (count == 0) {
+            // The first checkpoint copies the whole floor, so nothing needs tracking yet
+            return;
+        }
+        boolean bounded = !floor.isValidPosition(-1, -1);
+        int low = bounded ? 0 : Integer.MIN_VALUE;
+        int high = bounded ? floor.getSize() - 1 : Integer.MAX_VALUE;
+        int minX = Math.max(Math.min(fromX, toX), low);
+        int maxX = Math.min(Math.max(fromX, toX), high);
+        int minY = Math.max(Math.min(fromY, toY), low);
+        int maxY = Math.min(Math.max(fromY, toY), high);
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+        // long counters so a segment ending at Integer.MAX_VALUE terminates
+        for (long y = minY; y <= maxY; y++) {
+            for (long word = minX >> 6; word <= maxX >> 6; word++) {
+                addTouched(key((int) y, (int) word));
+            }
+        }
+    }
+
+    /**
+     * Record a checkpoint if one is due after the given command
+     * @param sequence The number of commands executed since the last 'I'
+     * @param robot The robot to snapshot
+     * @param floor The floor to copy
+     */
+    void recordIfDue(long sequence, Robot robot, Floor floor) {
+        if (sequence % interval == 0) {
+            record(sequence, robot, floor);
+        }
+    }
+
+    /**
+     * Record a checkpoint after the given command whether or not one is due
+     * The first checkpoint copies the floor; later ones keep the words touched since the last.
+     * @param sequence The number of commands executed since the last 'I'
+     * @param robot The robot to snapshot
+     * @param floor The floor to copy
+     */
+    void record(long sequence, Robot robot, Floor floor) {
+        if (count > 0 && sequences[count - 1] >= sequence) {
+            return;
+        }
+        if (count == sequences.length) {
+            sequences = Arrays.copyOf(sequences, count * 2);
+            robotStates = Arrays.copyOf(robotStates, count * 2 * 3);
+            deltaKeys = Arrays.copyOf(deltaKeys, count * 2);
+            deltaBits = Arrays.copyOf(deltaBits, count * 2);
+        }
+        sequences[count] = sequence;
+        robotStates[count * 3] = robot.getX();
+        robotStates[count * 3 + 1] = robot.getY();
+        robotStates[count * 3 + 2] = robot.getFacing().ordinal() | (robot.isPenDown() ? 4 : 0);
+        if (count == 0) {
+            base = floor.copy();
+        } else {
+            int unique = compactTouched();
+            long[] keys = Arrays.copyOf(touched, unique);
+            long[] bits = new long[unique];
+            for (int i = 0; i < unique; i++) {
+                bits[i] = floor.getWordBits(row(keys[i]), word(keys[i]));
+            }
+            deltaKeys[count] = keys;
+            deltaBits[count] = bits;
+            deltaBytes += (long) unique * DELTA_WORD_BYTES;
+        }
+        touchedCount = 0;
+        count++;
+        while (deltaBytes > maxDeltaBytes && count > 1) {
+            foldOldest();
+        }
+    }
+
+    /**
+     * Find the latest checkpoint taken at or before a command number
+     * @param sequence The command number
+     * @return The checkpoint index, or -1 if there is none
+     */
+    int find(long sequence) {
+        int index = Arrays.binarySearch(sequences, 0, count, sequence);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Get the command number a checkpoint was taken after
+     */
+    long getSequence(int index) {
+        return sequences[index];
+    }
+
+    /**
+     * Restore a checkpoint onto a robot and return a fresh copy of its floor
+     * The copy of the oldest checkpoint is taken and the deltas up to this one are applied.
+     * The caller owns the copy and releases it when it is replaced.
+     * @param index The checkpoint index
+     * @param robot The robot to update
+     * @return A copy of the checkpointed floor
+     */
+    Floor restore(int index, Robot robot) {
+        int flags = robotStates[index * 3 + 2];
+        robot.setState(robotStates[index * 3], robotStates[index * 3 + 1], (flags & 4) != 0,
+                Robot.Direction.values()[flags & 3]);
+        Floor floor = base.copy();
+        for (int i = 1; i <= index; i++) {
+            apply(floor, i);
+        }
+        return floor;
+    }
+
+    /**
+     * Drop every checkpoint taken after a command number
+     * The words the dropped deltas changed count as touched again, since the floor still
+     * differs from the last kept checkpoint there.
+     * @param sequence The last command number to keep
+     */
+    void truncate(long sequence) {
+        int keep = find(sequence) + 1;
+        if (keep == 0) {
+            clear();
+            return;
+        }
+        for (int i = keep; i < count; i++) {
+            for (long key : deltaKeys[i]) {
+                addTouched(key);
+            }
+            deltaBytes -= (long) deltaKeys[i].length * DELTA_WORD_BYTES;
+            deltaKeys[i] = null;
+            deltaBits[i] = null;
+        }
+        count = Math.min(count, keep);
+    }
+
+    /**
+     * Drop all checkpoints, closing the floor copy if it holds a file
+     */
+    void clear() {
+        Arrays.fill(deltaKeys, 0, count, null);
+        Arrays.fill(deltaBits, 0, count, null);
+        count = 0;
+        deltaBytes = 0;
+        Floor.release(base);
+        base = null;
+        touchedCount = 0;
+    }
+
+    /**
+     * Apply the second checkpoint's delta to the floor copy and make it the oldest
+     */
+    private void foldOldest() {
+        apply(base, 1);
+        deltaBytes -= (long) deltaKeys[1].length * DELTA_WORD_BYTES;
+        count--;
+        System.arraycopy(sequences, 1, sequences, 0, count);
+        System.arraycopy(robotStates, 3, robotStates, 0, count * 3);
+        System.arraycopy(deltaKeys, 2, deltaKeys, 1, count - 1);
+        System.arraycopy(deltaBits, 2, deltaBits, 1, count - 1);
+        deltaKeys[0] = null;
+        deltaBits[0] = null;
+        deltaKeys[count] = null;
+        deltaBits[count] = null;
+    }
+
+    /**
+     * Set every word of a checkpoint's delta on a floor
+     */
+    private void apply(Floor floor, int index) {
+        long[] keys = deltaKeys[index];
+        long[] bits = deltaBits[index];
+        for (int i = 0; i < keys.length; i++) {
+            int y = row(keys[i]);
+            int word = word(keys[i]);
+            long old = floor.getWordBits(y, word);
+            int first = word << 6;
+            for (long clear = old & ~bits[i]; clear != 0; clear &= clear - 1) {
+                floor.unmark(first + Long.numberOfTrailingZeros(clear), y);
+            }
+            // Mark each run of new cells with one markRow
+            long set = bits[i] & ~old;
+            while (set != 0) {
+                int from = Long.numberOfTrailingZeros(set);
+                int to = from + Long.numberOfTrailingZeros(~(set >>> from)) - 1;
+                floor.markRow(y, first + from, first + to);
+                set &= to >= 63 ? 0L : -1L << (to + 1);
+            }
+        }
+    }
+
+    private void addTouched(long key) {
+        if (touchedCount == touched.length) {
+            // Drop repeats before growing; a command often crosses the same words again
+            touchedCount = compactTouched();
+            if (touchedCount > touched.length / 2) {
+                touched = Arrays.copyOf(touched, touched.length * 2);
+            }
+        }
+        touched[touchedCount++] = key;
+    }
+
+    /**
+     * Sort the touched words and drop repeats
+     * @return The number of distinct words, now at the front of the array
+     */
+    private int compactTouched() {
+        Arrays.sort(touched, 0, touchedCount);
+        int unique = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            if (unique == 0 || touched[i] != touched[unique - 1]) {
+                touched[unique++] = touched[i];
+            }
+        }
+        return unique;
+    }
+
+    private static long key(int y, int word) {
+        return ((long) y << 32) | (word & 0xFFFFFFFFL);
+    }
+
+    private static int row(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int word(long key) {
+        return (int) key;
+    }
+}
@@ -0,0 +1,528 @@
+package com.robotfloor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntFunction;
+
+/**
+ * Floor stored off-heap in a memory-mapped file
+ * The file holds a small header followed by the same row-major bit-packed words
+ * as PackedFloor, mapped in segments of up to 1 GiB. Marks go straight to the
+ * mapped pages, and re-opening the file restores the floor without parsing.
+ * Copies are mapped floors too, in temporary files next to the original, so history
+ * checkpoints of a large floor stay off the heap. Closing a floor releases its file
+ * descriptor; the mapped pages go once the floor is garbage collected.
+ */
+public class MappedFloor extends Floor implements Closeable {
+
+    static final int MAGIC = 0x52464C52; // "RFLR"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+
+    private static final int SEGMENT_SHIFT = 27; // 2^27 words = 1 GiB per segment
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private final FileChannel channel;
+    private final Path file;
+    private final Path directory;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] segments;
+    private final int wordsPerRow;
+    private final long wordCount;
+
+    private MappedFloor(int size, FileChannel channel, Path file, Path directory) throws IOException {
+        super(size, false);
+        this.channel = channel;
+        this.file = file;
+        this.directory = directory;
+        this.wordsPerRow = (size + 63) >>> 6;
+        this.wordCount = (long) wordsPerRow * size;
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        int segmentCount = (int) ((wordCount + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        this.segments = new MappedByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            long firstWord = (long) i << SEGMENT_SHIFT;
+            long words = Math.min(1L << SEGMENT_SHIFT, wordCount - firstWord);
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + firstWord * 8, words * 8);
+            segments[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Open a floor file, creating it if it does not exist yet
+     * @param file The backing file
+     * @param size The size of the floor (N x N); must match an existing file
+     * @return The mapped floor
+     * @throws IOException If the file cannot be mapped or holds a different floor
+     */
+    public static MappedFloor open(Path file, int size) throws IOException {
+        return map(file, size, true);
+    }
+
+    /**
+     * Map a floor file, creating it if it does not exist yet
+     * @param named False for a temporary file, which is neither flushed nor kept
+     */
+    private static MappedFloor map(Path file, int size, boolean named) throws IOException {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Floor size must be greater than zero");
+        }
+        boolean existing = Files.exists(file) && Files.size(file) > 0;
+        if (existing && readSize(file) != size) {
+            throw new IOException("Floor file " + file + " holds a different floor size");
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            Path absolute = file.toAbsolutePath();
+            MappedFloor floor = new MappedFloor(size, channel, named ? absolute : null, absolute.getParent());
+            if (!existing) {
+                floor.header.putInt(0, MAGIC);
+                floor.header.putInt(4, VERSION);
+                floor.header.putInt(8, size);
+            }
+            return floor;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Re-open an existing floor file, taking the size from its header
+     * @param file The backing file
+     * @return The mapped floor
+     * @throws IOException If the file cannot be read or is not a floor file
+     */
+    public static MappedFloor open(Path file) throws IOException {
+        return open(file, readSize(file));
+    }
+
+    /**
+     * Create an empty floor in a new temporary file
+     * The file is deleted as soon as it is mapped where the platform allows it, so its space
+     * is returned once the floor is garbage collected; otherwise it is deleted on exit.
+     * @param directory The directory to create the file in
+     * @param size The size of the floor (N x N)
+     * @return The mapped floor
+     * @throws IOException If the file cannot be created or mapped
+     */
+    public static MappedFloor create(Path directory, int size) throws IOException {
+        Path file = Files.createTempFile(directory, "floor", ".bin");
+        try {
+            return map(file, size, false);
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // e.g. Windows, which cannot delete a mapped file
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Get a floor factory that maps every floor it creates in a new temporary file
+     * A failure to create the file is thrown as an UncheckedIOException.
+     * @param directory The directory to create the files in
+     * @return The factory, e.g. for a RobotSimulator
+     */
+    public static IntFunction<Floor> factory(Path directory) {
+        return size -> {
+            try {
+                return create(directory, size);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot map a floor in " + directory + ": " + e.getMessage(), e);
+            }
+        };
+    }
+
+    private static int readSize(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not a floor file: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a floor file: " + file);
+            }
+            return buffer.getInt(8);
+        }
+    }
+
+    /**
+     * Get a copy of the grid as an int[][] array
+     */
+    @Override
+    public int[][] getGrid() {
+        int size = getSize();
+        int[][] grid = new int[size][size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                grid[y][x] = getValue(x, y);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Mark a position on the floor
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     */
+    @Override
+    public void mark(int x, int y) {
+        if (isValidPosition(x, y)) {
+            markWord(y, x >>> 6, 1L << x);
+        }
+    }
+
+    /**
+     * Remove the mark from a position on the floor
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     */
+    @Override
+    public void unmark(int x, int y) {
+        if (isValidPosition(x, y)) {
+            long word = (long) y * wordsPerRow + (x >>> 6);
+            MappedByteBuffer segment = segments[(int) (word >>> SEGMENT_SHIFT)];
+            int offset = (int) (word & SEGMENT_MASK) << 3;
+            long current = segment.getLong(offset);
+            long bit = 1L << x;
+            if ((current & bit) != 0) {
+                segment.putLong(offset, current & ~bit);
+                fireUnmarked(y, x >>> 6, bit);
+            }
+        }
+    }
+
+    /**
+     * Mark a horizontal run of cells with whole-word writes, clipped to the floor
+     * @param y The Y coordinate of the row
+     * @param fromX One end of the run (inclusive)
+     * @param toX The other end of the run (inclusive)
+     */
+    @Override
+    public void markRow(int y, int fromX, int toX) {
+        int size = getSize();
+        if (y < 0 || y >= size) {
+            return;
+        }
+        int lo = Math.max(Math.min(fromX, toX), 0);
+        int hi = Math.min(Math.max(fromX, toX), size - 1);
+        if (lo > hi) {
+            return;
+        }
+        int first = lo >>> 6;
+        int last = hi >>> 6;
+        long firstMask = -1L << lo;
+        long lastMask = -1L >>> (63 - (hi & 63));
+        if (first == last) {
+            markWord(y, first, firstMask & lastMask);
+        } else {
+            markWord(y, first, firstMask);
+            for (int word = first + 1; word < last; word++) {
+                markWord(y, word, -1L);
+            }
+            markWord(y, last, lastMask);
+        }
+    }
+
+    /**
+     * Mark a vertical run of cells, touching one word per row, clipped to the floor
+     * @param x The X coordinate of the column
+     * @param fromY One end of the run (inclusive)
+     * @param toY The other end of the run (inclusive)
+     */
+    @Override
+    public void markColumn(int x, int fromY, int toY) {
+        int size = getSize();
+        if (x < 0 || x >= size) {
+            return;
+        }
+        int lo = Math.max(Math.min(fromY, toY), 0);
+        int hi = Math.min(Math.max(fromY, toY), size - 1);
+        int column = x >>> 6;
+        long bit = 1L << x;
+        for (int row = lo; row <= hi; row++) {
+            markWord(row, column, bit);
+        }
+    }
+
+    /**
+     * Remove the marks from a horizontal run of cells in one row with whole-word writes, clipped to the floor
+     * @param y The Y coordinate of the row
+     * @param fromX One end of the run (inclusive)
+     * @param toX The other end of the run (inclusive)
+     */
+    @Override
+    public void unmarkRow(int y, int fromX, int toX) {
+        int size = getSize();
+        if (y < 0 || y >= size) {
+            return;
+        }
+        int lo = Math.max(Math.min(fromX, toX), 0);
+        int hi = Math.min(Math.max(fromX, toX), size - 1);
+        if (lo > hi) {
+            return;
+        }
+        int first = lo >>> 6;
+        int last = hi >>> 6;
+        long firstMask = -1L << lo;
+        long lastMask = -1L >>> (63 - (hi & 63));
+        if (first == last) {
+            clearWord(y, first, firstMask & lastMask);
+        } else {
+            clearWord(y, first, firstMask);
+            for (int word = first + 1; word < last; word++) {
+                clearWord(y, word, -1L);
+            }
+            clearWord(y, last, lastMask);
+        }
+    }
+
+    /**
+     * Remove the marks from a vertical run of cells in one column, touching one word per row, clipped to the floor
+     * @param x The X coordinate of the column
+     * @param fromY One end of the run (inclusive)
+     * @param toY The other end of the run (inclusive)
+     */
+    @Override
+    public void unmarkColumn(int x, int fromY, int toY) {
+        int size = getSize();
+        if (x < 0 || x >= size) {
+            return;
+        }
+        int lo = Math.max(Math.min(fromY, toY), 0);
+        int hi = Math.min(Math.max(fromY, toY), size - 1);
+        int column = x >>> 6;
+        long bit = 1L << x;
+        for (int row = lo; row <= hi; row++) {
+            clearWord(row, column, bit);
+        }
+    }
+
+    /**
+     * Get the value at a specific position
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     * @return 1 if marked, 0 if not marked
+     */
+    @Override
+    public int getValue(int x, int y) {
+        if (isValidPosition(x, y)) {
+            return (int) (readWord((long) y * wordsPerRow + (x >>> 6)) >>> x) & 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Copy one row into a bit array straight from the mapped words
+     * @param y The Y coordinate of the row
+     * @param bits The target, at least (N + 63) / 64 longs
+     */
+    @Override
+    public void getRowBits(int y, long[] bits) {
+        long rowStart = (long) y * wordsPerRow;
+        for (int i = 0; i < wordsPerRow; i++) {
+            bits[i] = readWord(rowStart + i);
+        }
+    }
+
+    /**
+     * Get 64 cells of one row straight from the mapped word
+     * @param y The Y coordinate of the row
+     * @param word The index of the 64-cell word
+     * @return The marked cells of the word, zero off the floor
+     */
+    @Override
+    public long getWordBits(int y, int word) {
+        if (y < 0 || y >= getSize() || word < 0 || word >= wordsPerRow) {
+            return 0L;
+        }
+        return readWord((long) y * wordsPerRow + word);
+    }
+
+    /**
+     * Clear the floor (reset all values to 0)
+     */
+    @Override
+    public void clear() {
+        for (MappedByteBuffer segment : segments) {
+            for (int offset = 0; offset < segment.capacity(); offset += 8) {
+                segment.putLong(offset, 0L);
+            }
+        }
+        fireCleared();
+    }
+
+    /**
+     * Create an independent copy of the floor in a temporary file next to this one
+     * The words are copied one mapped segment at a time and never pass through the heap.
+     * @throws UncheckedIOException If the copy cannot be created
+     */
+    @Override
+    public MappedFloor copy() {
+        MappedFloor copy;
+        try {
+            copy = create(directory, getSize());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot copy a mapped floor: " + e.getMessage(), e);
+        }
+        for (int i = 0; i < segments.length; i++) {
+            ByteBuffer source = segments[i].duplicate();
+            source.clear();
+            copy.segments[i].duplicate().put(source);
+        }
+        return copy;
+    }
+
+    /**
+     * Count the marked cells on the floor using a popcount per word
+     * @return The number of cells with value 1
+     */
+    @Override
+    public long countMarked() {
+        long count = 0;
+        for (long word = 0; word < wordCount; word++) {
+            count += Long.bitCount(readWord(word));
+        }
+        return count;
+    }
+
+    /**
+     * Flush the mapped pages to the backing file
+     */
+    public void force() {
+        header.force();
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Flush the floor and copy the backing file to a snapshot file
+     * The copy is written to a temporary file next to the target and moved over it, so a
+     * failed copy leaves the old file intact. Snapshotting a floor to its own file only
+     * flushes it. The snapshot can be re-opened with {@link #open(Path)}
+     * @param target The snapshot file to write
+     * @throws IOException If the copy fails
+     */
+    public void snapshotTo(Path target) throws IOException {
+        force();
+        if (file != null && Files.exists(target) && Files.isSameFile(file, target)) {
+            return;
+        }
+        Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), "floor", ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                long position = 0;
+                long length = channel.size();
+                while (position < length) {
+                    position += channel.transferTo(position, length - position, out);
+                }
+                out.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Write any floor to a floor file that {@link #open(Path)} can map
+     * A mapped floor copies its file; other floors are copied row by row into a temporary
+     * file that is then moved over the target.
+     * @param floor The floor to write
+     * @param target The floor file to write
+     * @throws IOException If the file cannot be written
+     */
+    public static void save(Floor floor, Path target) throws IOException {
+        if (floor instanceof MappedFloor) {
+            ((MappedFloor) floor).snapshotTo(target);
+            return;
+        }
+        Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), "floor", ".tmp");
+        try {
+            try (MappedFloor copy = open(temp, floor.getSize())) {
+                long[] row = new long[copy.wordsPerRow];
+                for (int y = 0; y < copy.getSize(); y++) {
+                    floor.getRowBits(y, row);
+                    for (int word = 0; word < row.length; word++) {
+                        copy.writeWord((long) y * copy.wordsPerRow + word, row[word]);
+                    }
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Check if the backing file is still open
+     */
+    boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Close the backing file, flushing it first unless it is a temporary copy
+     * The mapping itself is released once the buffers are garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            force();
+        }
+        channel.close();
+    }
+
+    /**
+     * OR bits into one word of a row and report the ones that were not already set
+     */
+    private void markWord(int y, int column, long bits) {
+        long word = (long) y * wordsPerRow + column;
+        MappedByteBuffer segment = segments[(int) (word >>> SEGMENT_SHIFT)];
+        int offset = (int) (word & SEGMENT_MASK) << 3;
+        long current = segment.getLong(offset);
+        long fresh = bits & ~current;
+        if (fresh != 0) {
+            segment.putLong(offset, current | bits);
+            fireMarked(y, column, fresh);
+        }
+    }
+
+    /**
+     * Clear bits in one word of a row and report the ones that were set
+     */
+    private void clearWord(int y, int column, long bits) {
+        long word = (long) y * wordsPerRow + column;
+        MappedByteBuffer segment = segments[(int) (word >>> SEGMENT_SHIFT)];
+        int offset = (int) (word & SEGMENT_MASK) << 3;
+        long current = segment.getLong(offset);
+        long cleared = bits & current;
+        if (cleared != 0) {
+            segment.putLong(offset, current & ~cleared);
+            fireUnmarked(y, column, cleared);
+        }
+    }
+
+    private void writeWord(long word, long bits) {
+        segments[(int) (word >>> SEGMENT_SHIFT)].putLong((int) (word & SEGMENT_MASK) << 3, bits);
+    }
+
+    private long readWord(long word) {
+        return segments[(int) (word >>> SEGMENT_SHIFT)].getLong((int) (word & SEGMENT_MASK) << 3);
+    }
+}
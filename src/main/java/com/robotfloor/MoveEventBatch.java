@@ -0,0 +1,133 @@
+package com.robotfloor;
+
+/**
+ * A window onto a run of events in a MoveEventRing, reused for every batch
+ * Event i of the batch is read through the getters; what each field means depends on
+ * the event type:
+ * <ul>
+ * <li>{@link #ROBOT}: the robot's new position, facing direction and pen state</li>
+ * <li>{@link #SPAN}: a straight run of cells marked by a move, from [x, y] to [toX, toY]
+ * inclusive; cells outside the floor are part of the span but were not marked</li>
+ * <li>{@link #FLOOR}: the floor was replaced or had cells unmarked ('I', 'H', 'J', 'UNDO',
+ * a snapshot load), so observers should re-read it; the size is 0 before 'I'</li>
+ * </ul>
+ */
+public final class MoveEventBatch {
+
+    /** Event type: the robot's state changed */
+    public static final int ROBOT = 1;
+    /** Event type: a move marked a span of cells */
+    public static final int SPAN = 2;
+    /** Event type: the floor was replaced or cells were unmarked */
+    public static final int FLOOR = 3;
+
+    private static final Robot.Direction[] DIRECTIONS = Robot.Direction.values();
+
+    private final int[] slots;
+    private final int mask;
+    private long first;
+    private int size;
+
+    /**
+     * Constructor for MoveEventBatch
+     * @param slots The ring's event slots
+     * @param mask The ring capacity minus one
+     */
+    MoveEventBatch(int[] slots, int mask) {
+        this.slots = slots;
+        this.mask = mask;
+    }
+
+    /**
+     * Point the batch at a new run of events
+     */
+    void reset(long first, int size) {
+        this.first = first;
+        this.size = size;
+    }
+
+    /**
+     * Get the number of events in the batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the sequence number of the first event, counting every event the ring has published
+     */
+    public long getFirstSequence() {
+        return first;
+    }
+
+    /**
+     * Get the type of an event: ROBOT, SPAN or FLOOR
+     * @param i The index of the event in the batch
+     */
+    public int getType(int i) {
+        return slots[slot(i)];
+    }
+
+    /**
+     * Get the X coordinate of the robot, or of the start of a span
+     * @param i The index of the event in the batch
+     */
+    public int getX(int i) {
+        return slots[slot(i) + 1];
+    }
+
+    /**
+     * Get the Y coordinate of the robot, or of the start of a span
+     * @param i The index of the event in the batch
+     */
+    public int getY(int i) {
+        return slots[slot(i) + 2];
+    }
+
+    /**
+     * Get the X coordinate of the end of a span
+     * @param i The index of the event in the batch
+     */
+    public int getToX(int i) {
+        return slots[slot(i) + 3];
+    }
+
+    /**
+     * Get the Y coordinate of the end of a span
+     * @param i The index of the event in the batch
+     */
+    public int getToY(int i) {
+        return slots[slot(i) + 4];
+    }
+
+    /**
+     * Get the facing direction of the robot in a ROBOT event
+     * @param i The index of the event in the batch
+     */
+    public Robot.Direction getFacing(int i) {
+        return DIRECTIONS[slots[slot(i) + 3] & 3];
+    }
+
+    /**
+     * Check if the pen was down in a ROBOT event
+     * @param i The index of the event in the batch
+     */
+    public boolean isPenDown(int i) {
+        return (slots[slot(i) + 3] & 4) != 0;
+    }
+
+    /**
+     * Get the floor size in a FLOOR event
+     * @param i The index of the event in the batch
+     */
+    public int getFloorSize(int i) {
+        return slots[slot(i) + 1];
+    }
+
+    private int slot(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Event " + i + " of a batch of " + size);
+        }
+        return (int) ((first + i) & mask) * MoveEventRing.EVENT_INTS;
+    }
+}
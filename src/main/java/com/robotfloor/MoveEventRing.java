@@ -0,0 +1,210 @@
+package com.robotfloor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated single-producer, single-consumer ring of robot and floor events
+ * A RobotSimulator writes the events of each command into the ring's int[] slots and
+ * publishes them together with one ordered store when the command ends. The listener
+ * then receives every event published since its last batch. Without a consumer thread,
+ * batches are delivered on the simulator's thread at the end of each command; after
+ * {@link #start()}, a daemon thread delivers them, so a slow listener does not hold up
+ * the command loop until the ring fills. A full ring makes the simulator wait for the
+ * listener rather than lose events.
+ */
+public class MoveEventRing implements AutoCloseable {
+
+    /** Ints per event slot: type and four fields */
+    static final int EVENT_INTS = 5;
+    private static final long IDLE_PARK_NANOS = 50_000;
+    private static final long FULL_PARK_NANOS = 1_000;
+
+    private final int[] slots;
+    private final int mask;
+    private final MoveListener listener;
+    private final MoveEventBatch batch;
+    /** Sequence after the last published event, written by the producer */
+    private final AtomicLong head = new AtomicLong();
+    /** Sequence after the last delivered event, written by the consumer */
+    private final AtomicLong tail = new AtomicLong();
+    /** Sequence after the last written event, not yet published */
+    private long next;
+    private volatile Thread consumer;
+    private volatile boolean closed;
+
+    /**
+     * Constructor for MoveEventRing
+     * @param capacity The number of event slots, a power of two
+     * @param listener Receives the events
+     */
+    public MoveEventRing(int capacity, MoveListener listener) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1 || capacity > (1 << 26)) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two up to 2^26");
+        }
+        this.slots = new int[capacity * EVENT_INTS];
+        this.mask = capacity - 1;
+        this.listener = listener;
+        this.batch = new MoveEventBatch(slots, mask);
+    }
+
+    /**
+     * Get the number of event slots
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Get the number of events published so far
+     */
+    public long getPublishedCount() {
+        return head.get();
+    }
+
+    /**
+     * Get the number of events delivered to the listener so far
+     */
+    public long getDeliveredCount() {
+        return tail.get();
+    }
+
+    /**
+     * Deliver events on a new daemon thread from now on
+     * Call it before the simulator runs commands, or from the simulator's thread. A listener
+     * that throws on this thread loses that batch only.
+     * @return The consumer thread
+     */
+    public synchronized Thread start() {
+        if (consumer != null || closed) {
+            throw new IllegalStateException("Ring consumer already started or closed");
+        }
+        Thread thread = new Thread(this::consume, "move-events");
+        thread.setDaemon(true);
+        consumer = thread;
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Deliver every published event to the listener on the calling thread
+     * Only one thread may poll at a time: the simulator's without a consumer thread,
+     * otherwise the consumer thread.
+     * @return The number of events delivered
+     */
+    int poll() {
+        long from = tail.get();
+        long to = head.get();
+        if (from == to) {
+            return 0;
+        }
+        batch.reset(from, (int) (to - from));
+        try {
+            listener.onEvents(batch);
+        } finally {
+            tail.lazySet(to);
+        }
+        return (int) (to - from);
+    }
+
+    /**
+     * Stop the consumer thread once it has delivered every published event
+     * Without a consumer thread, remaining events are delivered on the calling thread. An
+     * interrupt while waiting is restored once the consumer thread has finished.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Thread thread = consumer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            poll();
+        }
+    }
+
+    /**
+     * Write a ROBOT event
+     */
+    void robot(int x, int y, int state) {
+        write(MoveEventBatch.ROBOT, x, y, state, 0);
+    }
+
+    /**
+     * Write a SPAN event
+     */
+    void span(int fromX, int fromY, int toX, int toY) {
+        write(MoveEventBatch.SPAN, fromX, fromY, toX, toY);
+    }
+
+    /**
+     * Write a FLOOR event
+     */
+    void floor(int size) {
+        write(MoveEventBatch.FLOOR, size, 0, 0, 0);
+    }
+
+    /**
+     * Publish the events written since the last call, delivering them now if there is no
+     * consumer thread
+     */
+    void publish() {
+        if (next != head.get()) {
+            head.lazySet(next);
+        }
+        if (consumer == null) {
+            poll();
+        }
+    }
+
+    private void write(int type, int a, int b, int c, int d) {
+        while (next - tail.get() > mask) {
+            // Full: publish what is written so the listener can drain it, then wait
+            publish();
+            if (consumer != null) {
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+            }
+        }
+        int base = (int) (next & mask) * EVENT_INTS;
+        slots[base] = type;
+        slots[base + 1] = a;
+        slots[base + 2] = b;
+        slots[base + 3] = c;
+        slots[base + 4] = d;
+        next++;
+    }
+
+    /**
+     * Consumer thread loop: deliver batches, parking briefly while the ring is empty
+     */
+    private void consume() {
+        while (true) {
+            boolean stopping = closed;
+            int delivered;
+            try {
+                delivered = poll();
+            } catch (RuntimeException e) {
+                // The failed batch is skipped; later batches are still delivered
+                System.err.println("Error: Move listener failed: " + e);
+                delivered = 1;
+            }
+            if (delivered == 0) {
+                if (stopping) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.robotfloor;
+
+/**
+ * Receives batches of robot and floor events published by a RobotSimulator
+ * Batches come from a MoveEventRing, either on the simulator's thread or on the ring's
+ * own consumer thread, never on two threads at once.
+ */
+public interface MoveListener {
+
+    /**
+     * A batch of events has been published
+     * @param events The events, oldest first; only valid until this call returns
+     */
+    void onEvents(MoveEventBatch events);
+}
@@ -0,0 +1,177 @@
+package com.robotfloor;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs many robots in parallel on one shared floor
+ * Each robot executes its own compiled program on a worker thread. Marks go straight to a
+ * ConcurrentFloor, which updates its words with compare-and-set, so robots never wait on a
+ * lock. Only the movement commands (U, D, R, L, M, REPEAT), 'C' and 'Q' are supported; 'C' prints
+ * that robot's own position. Other commands are reported as errors and skipped.
+ */
+public class MultiRobotRunner {
+
+    private final ConcurrentFloor floor;
+    private final PrintStream out;
+    private final List<Robot> robots = new ArrayList<>();
+    private final List<CommandProgram> programs = new ArrayList<>();
+
+    /**
+     * Constructor for MultiRobotRunner
+     * @param floor The floor shared by every robot
+     * @param out Where 'C' output and errors are written
+     */
+    public MultiRobotRunner(ConcurrentFloor floor, PrintStream out) {
+        this.floor = floor;
+        this.out = out;
+    }
+
+    /**
+     * Add a robot that will run a program, starting at [0, 0] facing north with its pen up
+     * @param program The robot's commands
+     * @return The robot's index
+     */
+    public int addRobot(CommandProgram program) {
+        robots.add(new Robot());
+        programs.add(program);
+        return robots.size() - 1;
+    }
+
+    /**
+     * Get the number of robots
+     */
+    public int getRobotCount() {
+        return robots.size();
+    }
+
+    /**
+     * Get a robot by index
+     * Its state is only stable once run has returned.
+     */
+    public Robot getRobot(int index) {
+        return robots.get(index);
+    }
+
+    /**
+     * Get the shared floor
+     */
+    public ConcurrentFloor getFloor() {
+        return floor;
+    }
+
+    /**
+     * Run every robot's program to completion
+     * @param threads The number of worker threads
+     * @throws InterruptedException If interrupted while waiting for the robots
+     */
+    public void run(int threads) throws InterruptedException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be greater than zero");
+        }
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> running = new ArrayList<>(robots.size());
+            for (int i = 0; i < robots.size(); i++) {
+                int index = i;
+                running.add(workers.submit(() -> runRobot(index)));
+            }
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void runRobot(int index) {
+        Robot robot = robots.get(index);
+        CommandProgram program = programs.get(index);
+        int[] code = program.code();
+        int end = program.size() * 2;
+        for (int pc = 0; pc < end; pc += 2) {
+            int header = code[pc];
+            int operand = code[pc + 1];
+            switch (CommandProgram.opcode(header)) {
+                case CommandParser.PEN_UP:
+                    robot.penUp();
+                    break;
+                case CommandParser.PEN_DOWN:
+                    robot.penDown();
+                    break;
+                case CommandParser.TURN_RIGHT:
+                    robot.turnRight();
+                    break;
+                case CommandParser.TURN_LEFT:
+                    robot.turnLeft();
+                    break;
+                case CommandParser.MOVE:
+                    move(index, robot, CommandProgram.status(header), operand);
+                    break;
+                case CommandParser.REPEAT:
+                    repeat(index, robot, CommandProgram.status(header), program.loop(pc / 2), program.text(pc / 2));
+                    break;
+                case CommandParser.POSITION:
+                    out.println("Robot " + index + ": " + robot);
+                    break;
+                case CommandParser.QUIT:
+                    return;
+                default:
+                    out.println("Robot " + index + ": Error: Command not supported with multiple robots: "
+                            + CommandProgram.letter(header));
+            }
+        }
+    }
+
+    private void move(int index, Robot robot, int status, int spaces) {
+        if (status != CommandParser.OK) {
+            out.println("Robot " + index + ": Error: Invalid move distance. Usage: M <number>");
+            return;
+        }
+        if (spaces < 0) {
+            out.println("Robot " + index + ": Error: Move distance must be non-negative");
+            return;
+        }
+        int startX = robot.getX();
+        int startY = robot.getY();
+        robot.move(spaces);
+        if (robot.isPenDown()) {
+            mark(startX, startY, robot.getX(), robot.getY());
+        }
+    }
+
+    private void repeat(int index, Robot robot, int status, int[] loop, String text) {
+        if (loop == null) {
+            // The program compiled every well-formed loop; compile the text again for its error
+            try {
+                if (status != CommandParser.OK || text == null) {
+                    throw new IllegalArgumentException("Invalid loop. Usage: REPEAT <count> [commands]");
+                }
+                RepeatLoop.compile(text);
+            } catch (IllegalArgumentException e) {
+                out.println("Robot " + index + ": Error: " + e.getMessage());
+            }
+            return;
+        }
+        RepeatLoop.run(loop, robot, floor, this::mark);
+    }
+
+    private void mark(int fromX, int fromY, int toX, int toY) {
+        if (fromY == toY) {
+            floor.markRow(fromY, fromX, toX);
+        } else {
+            floor.markColumn(fromX, fromY, toY);
+        }
+    }
+}
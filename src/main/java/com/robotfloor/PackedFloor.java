@@ -0,0 +1,297 @@
+package com.robotfloor;
+
+import java.util.Arrays;
+
+/**
+ * Floor backed by a bit-packed grid
+ * Each cell is one bit in a flat long[] laid out row by row (row-major),
+ * so an N x N floor needs N * ceil(N / 64) longs instead of N * N ints
+ */
+public class PackedFloor extends Floor {
+
+    private final long[] words;
+    private final int wordsPerRow;
+
+    /**
+     * Constructor for PackedFloor
+     * @param size The size of the floor (N x N)
+     */
+    public PackedFloor(int size) {
+        super(size, false);
+        this.wordsPerRow = (size + 63) >>> 6;
+        long total = (long) wordsPerRow * size;
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Floor size too large for a packed floor");
+        }
+        this.words = new long[(int) total];
+    }
+
+    /**
+     * Get the number of 64-bit words used per row
+     */
+    public int getWordsPerRow() {
+        return wordsPerRow;
+    }
+
+    /**
+     * Get the backing words, row-major with getWordsPerRow() words per row
+     */
+    long[] words() {
+        return words;
+    }
+
+    /**
+     * Get a copy of the grid as an int[][] array
+     * The packed floor has no int[][] of its own, so this allocates N x N ints
+     */
+    @Override
+    public int[][] getGrid() {
+        int size = getSize();
+        int[][] grid = new int[size][size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                grid[y][x] = getValue(x, y);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Mark a position on the floor
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     */
+    @Override
+    public void mark(int x, int y) {
+        if (isValidPosition(x, y)) {
+            markWord(y, x >>> 6, 1L << x);
+        }
+    }
+
+    /**
+     * Remove the mark from a position on the floor
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     */
+    @Override
+    public void unmark(int x, int y) {
+        if (isValidPosition(x, y)) {
+            int index = y * wordsPerRow + (x >>> 6);
+            long bit = 1L << x;
+            if ((words[index] & bit) != 0) {
+                words[index] &= ~bit;
+                fireUnmarked(y, x >>> 6, bit);
+            }
+        }
+    }
+
+    /**
+     * Mark a horizontal run of cells with whole-word fills, clipped to the floor
+     * @param y The Y coordinate of the row
+     * @param fromX One end of the run (inclusive)
+     * @param toX The other end of the run (inclusive)
+     */
+    @Override
+    public void markRow(int y, int fromX, int toX) {
+        int size = getSize();
+        if (y < 0 || y >= size) {
+            return;
+        }
+        int lo = Math.max(Math.min(fromX, toX), 0);
+        int hi = Math.min(Math.max(fromX, toX), size - 1);
+        if (lo > hi) {
+            return;
+        }
+        int first = lo >>> 6;
+        int last = hi >>> 6;
+        long firstMask = -1L << lo;
+        long lastMask = -1L >>> (63 - (hi & 63));
+        if (first == last) {
+            markWord(y, first, firstMask & lastMask);
+        } else if (!hasListeners()) {
+            int rowStart = y * wordsPerRow;
+            words[rowStart + first] |= firstMask;
+            Arrays.fill(words, rowStart + first + 1, rowStart + last, -1L);
+            words[rowStart + last] |= lastMask;
+        } else {
+            markWord(y, first, firstMask);
+            for (int word = first + 1; word < last; word++) {
+                markWord(y, word, -1L);
+            }
+            markWord(y, last, lastMask);
+        }
+    }
+
+    /**
+     * Mark a vertical run of cells, touching one word per row, clipped to the floor
+     * @param x The X coordinate of the column
+     * @param fromY One end of the run (inclusive)
+     * @param toY The other end of the run (inclusive)
+     */
+    @Override
+    public void markColumn(int x, int fromY, int toY) {
+        int size = getSize();
+        if (x < 0 || x >= size) {
+            return;
+        }
+        int lo = Math.max(Math.min(fromY, toY), 0);
+        int hi = Math.min(Math.max(fromY, toY), size - 1);
+        int column = x >>> 6;
+        long bit = 1L << x;
+        for (int row = lo; row <= hi; row++) {
+            markWord(row, column, bit);
+        }
+    }
+
+    /**
+     * Remove the marks from a horizontal run of cells in one row with whole-word clears, clipped to the floor
+     * @param y The Y coordinate of the row
+     * @param fromX One end of the run (inclusive)
+     * @param toX The other end of the run (inclusive)
+     */
+    @Override
+    public void unmarkRow(int y, int fromX, int toX) {
+        int size = getSize();
+        if (y < 0 || y >= size) {
+            return;
+        }
+        int lo = Math.max(Math.min(fromX, toX), 0);
+        int hi = Math.min(Math.max(fromX, toX), size - 1);
+        if (lo > hi) {
+            return;
+        }
+        int first = lo >>> 6;
+        int last = hi >>> 6;
+        long firstMask = -1L << lo;
+        long lastMask = -1L >>> (63 - (hi & 63));
+        if (first == last) {
+            clearWord(y, first, firstMask & lastMask);
+        } else if (!hasListeners()) {
+            int rowStart = y * wordsPerRow;
+            words[rowStart + first] &= ~firstMask;
+            Arrays.fill(words, rowStart + first + 1, rowStart + last, 0L);
+            words[rowStart + last] &= ~lastMask;
+        } else {
+            clearWord(y, first, firstMask);
+            for (int word = first + 1; word < last; word++) {
+                clearWord(y, word, -1L);
+            }
+            clearWord(y, last, lastMask);
+        }
+    }
+
+    /**
+     * Remove the marks from a vertical run of cells in one column, touching one word per row, clipped to the floor
+     * @param x The X coordinate of the column
+     * @param fromY One end of the run (inclusive)
+     * @param toY The other end of the run (inclusive)
+     */
+    @Override
+    public void unmarkColumn(int x, int fromY, int toY) {
+        int size = getSize();
+        if (x < 0 || x >= size) {
+            return;
+        }
+        int lo = Math.max(Math.min(fromY, toY), 0);
+        int hi = Math.min(Math.max(fromY, toY), size - 1);
+        int column = x >>> 6;
+        long bit = 1L << x;
+        for (int row = lo; row <= hi; row++) {
+            clearWord(row, column, bit);
+        }
+    }
+
+    /**
+     * Get the value at a specific position
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     * @return 1 if marked, 0 if not marked
+     */
+    @Override
+    public int getValue(int x, int y) {
+        if (isValidPosition(x, y)) {
+            return (int) (words[y * wordsPerRow + (x >>> 6)] >>> x) & 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Copy one row into a bit array, which is a straight copy of the row's words
+     * @param y The Y coordinate of the row
+     * @param bits The target, at least getWordsPerRow() longs
+     */
+    @Override
+    public void getRowBits(int y, long[] bits) {
+        System.arraycopy(words, y * wordsPerRow, bits, 0, wordsPerRow);
+    }
+
+    /**
+     * Get 64 cells of one row, which is one backing word
+     * @param y The Y coordinate of the row
+     * @param word The index of the 64-cell word
+     * @return The marked cells of the word, zero off the floor
+     */
+    @Override
+    public long getWordBits(int y, int word) {
+        if (y < 0 || y >= getSize() || word < 0 || word >= wordsPerRow) {
+            return 0L;
+        }
+        return words[y * wordsPerRow + word];
+    }
+
+    /**
+     * Clear the floor (reset all values to 0)
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(words, 0L);
+        fireCleared();
+    }
+
+    /**
+     * Create an independent copy of the floor with the same marks
+     */
+    @Override
+    public PackedFloor copy() {
+        PackedFloor copy = new PackedFloor(getSize());
+        System.arraycopy(words, 0, copy.words, 0, words.length);
+        return copy;
+    }
+
+    /**
+     * Count the marked cells on the floor using a popcount per word
+     * @return The number of cells with value 1
+     */
+    @Override
+    public long countMarked() {
+        long count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * OR bits into one word of a row and report the ones that were not already set
+     */
+    private void markWord(int y, int word, long bits) {
+        int index = y * wordsPerRow + word;
+        long fresh = bits & ~words[index];
+        if (fresh != 0) {
+            words[index] |= fresh;
+            fireMarked(y, word, fresh);
+        }
+    }
+
+    /**
+     * Clear bits in one word of a row and report the ones that were set
+     */
+    private void clearWord(int y, int word, long bits) {
+        int index = y * wordsPerRow + word;
+        long cleared = bits & words[index];
+        if (cleared != 0) {
+            words[index] &= ~cleared;
+            fireUnmarked(y, word, cleared);
+        }
+    }
+}
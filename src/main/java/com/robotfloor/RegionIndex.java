@@ -0,0 +1,260 @@
+package com.robotfloor;
+
+import java.util.Arrays;
+
+/**
+ * Rectangle counts over a floor from two Fenwick (binary indexed) trees
+ * The word tree is a 2D tree over 64-cell row words rather than cells: node (i, j) holds
+ * the number of marked cells in the block of rows and words that its indices cover, so it
+ * needs one long per word, as much memory as a PackedFloor. The column tree runs over bands
+ * of 64 rows and keeps, for every cell column, the marked cells of the band from the start
+ * of that column's word up to the column itself: one int per 64 cells. A count takes the
+ * whole words from the word tree in O(log^2 N), then subtracts the cells of its two edge
+ * words outside the rectangle, from the column tree in O(log N) for whole bands and by
+ * reading at most 63 rows at either end from the floor. A changed word costs O(log^2 N)
+ * in the word tree and up to 64 O(log N) updates in the column tree. Attached as a
+ * FloorListener, the trees follow every change to the floor.
+ * Obtain one with {@link Floor#getRegionIndex()}. Not thread-safe: on a ConcurrentFloor,
+ * query it only while no robot is marking.
+ */
+public class RegionIndex implements FloorListener {
+
+    private final Floor floor;
+    private final int size;
+    private final int words;
+    private final int bands;
+    private final long lastWordMask;
+    private final long[] tree;
+    private final int[] columnTree;
+
+    /**
+     * Index the marks of a floor and start following its changes
+     * @param floor The floor to index
+     */
+    RegionIndex(Floor floor) {
+        this.floor = floor;
+        this.size = floor.getSize();
+        this.words = (size + 63) >>> 6;
+        this.bands = words;
+        if ((long) size * words > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Floor size too large for a region index");
+        }
+        // Cells past the declared width (possible on an unbounded floor) are not indexed
+        this.lastWordMask = (size & 63) == 0 ? -1L : -1L >>> (64 - (size & 63));
+        this.tree = new long[size * words];
+        this.columnTree = new int[bands * size];
+        build();
+        floor.addListener(this);
+    }
+
+    /**
+     * Count the marked cells in a rectangle, clipped to the N x N area
+     * @param x1 The X coordinate of one corner (inclusive)
+     * @param y1 The Y coordinate of one corner (inclusive)
+     * @param x2 The X coordinate of the opposite corner (inclusive)
+     * @param y2 The Y coordinate of the opposite corner (inclusive)
+     * @return The number of cells with value 1
+     */
+    public long count(int x1, int y1, int x2, int y2) {
+        int left = Math.max(Math.min(x1, x2), 0);
+        int right = Math.min(Math.max(x1, x2), size - 1);
+        int bottom = Math.max(Math.min(y1, y2), 0);
+        int top = Math.min(Math.max(y1, y2), size - 1);
+        if (left > right || bottom > top) {
+            return 0;
+        }
+        int first = left >>> 6;
+        int last = right >>> 6;
+        long total = prefix(last, top) - prefix(first - 1, top) - prefix(last, bottom - 1)
+                + prefix(first - 1, bottom - 1);
+        if ((left & 63) != 0) {
+            total -= partialWord(first << 6, left - 1, bottom, top);
+        }
+        int lastColumn = Math.min((last << 6) + 63, size - 1);
+        if (right < lastColumn) {
+            total -= partialWord(right + 1, lastColumn, bottom, top);
+        }
+        return total;
+    }
+
+    /**
+     * Count the marked cells between two columns of the same word over a range of rows
+     * Whole bands of 64 rows come from the column tree; the rows left at either end are read.
+     */
+    private long partialWord(int fromX, int toX, int bottom, int top) {
+        int firstBand = (bottom + 63) >>> 6;
+        int lastBand = ((top + 1) >>> 6) - 1;
+        if (firstBand > lastBand) {
+            return readRows(fromX, toX, bottom, top);
+        }
+        long total = bandPrefix(toX, lastBand) - bandPrefix(toX, firstBand - 1);
+        if ((fromX & 63) != 0) {
+            total -= bandPrefix(fromX - 1, lastBand) - bandPrefix(fromX - 1, firstBand - 1);
+        }
+        return total + readRows(fromX, toX, bottom, (firstBand << 6) - 1)
+                + readRows(fromX, toX, (lastBand + 1) << 6, top);
+    }
+
+    /**
+     * Count the marked cells between two columns of the same word by reading the rows
+     */
+    private long readRows(int fromX, int toX, int bottom, int top) {
+        long mask = (-1L << fromX) & (-1L >>> (63 - (toX & 63)));
+        long total = 0;
+        for (int y = bottom; y <= top; y++) {
+            total += Long.bitCount(floor.getWordBits(y, fromX >>> 6) & mask);
+        }
+        return total;
+    }
+
+    /**
+     * Count the marked cells from the start of a column's word to the column in bands at
+     * most band
+     */
+    private long bandPrefix(int x, int band) {
+        long total = 0;
+        for (int i = band + 1; i > 0; i -= i & -i) {
+            total += columnTree[(i - 1) * size + x];
+        }
+        return total;
+    }
+
+    /**
+     * Check if any cell in a rectangle is marked, clipped to the N x N area
+     * @param x1 The X coordinate of one corner (inclusive)
+     * @param y1 The Y coordinate of one corner (inclusive)
+     * @param x2 The X coordinate of the opposite corner (inclusive)
+     * @param y2 The Y coordinate of the opposite corner (inclusive)
+     * @return True if at least one cell has value 1
+     */
+    public boolean any(int x1, int y1, int x2, int y2) {
+        return count(x1, y1, x2, y2) > 0;
+    }
+
+    @Override
+    public void marked(int y, int word, long bits) {
+        update(y, word, bits, 1);
+    }
+
+    @Override
+    public void unmarked(int y, int word, long bits) {
+        update(y, word, bits, -1);
+    }
+
+    @Override
+    public void cleared() {
+        Arrays.fill(tree, 0L);
+        Arrays.fill(columnTree, 0);
+    }
+
+    /**
+     * Count the marked cells in words at most word of rows at most y
+     */
+    private long prefix(int word, int y) {
+        long total = 0;
+        for (int i = y + 1; i > 0; i -= i & -i) {
+            int rowBase = (i - 1) * words;
+            for (int j = word + 1; j > 0; j -= j & -j) {
+                total += tree[rowBase + j - 1];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Add one changed row word to the tree
+     */
+    private void update(int y, int word, long bits, int sign) {
+        if (y < 0 || y >= size || word < 0 || word >= words) {
+            return;
+        }
+        if (word == words - 1) {
+            bits &= lastWordMask;
+        }
+        long delta = sign * Long.bitCount(bits);
+        for (int i = y + 1; i <= size; i += i & -i) {
+            int rowBase = (i - 1) * words;
+            for (int j = word + 1; j <= words; j += j & -j) {
+                tree[rowBase + j - 1] += delta;
+            }
+        }
+        // Every column from the lowest changed bit up gains the changed cells to its left
+        int lastBit = Math.min(63, size - 1 - (word << 6));
+        for (int i = (y >>> 6) + 1; i <= bands; i += i & -i) {
+            int base = (i - 1) * size + (word << 6);
+            int running = 0;
+            for (int bit = Long.numberOfTrailingZeros(bits); bit <= lastBit; bit++) {
+                running += (int) (bits >>> bit) & 1;
+                columnTree[base + bit] += sign * running;
+            }
+        }
+    }
+
+    /**
+     * Fill the tree from the floor in linear time: load every word's count, then push each
+     * node's total into its parent, first along rows and then along columns
+     */
+    private void build() {
+        long[] bits = new long[words];
+        for (int y = 0; y < size; y++) {
+            floor.getRowBits(y, bits);
+            int rowBase = y * words;
+            for (int word = 0; word < words; word++) {
+                tree[rowBase + word] = Long.bitCount(word == words - 1 ? bits[word] & lastWordMask : bits[word]);
+            }
+            for (int j = 1; j <= words; j++) {
+                int parent = j + (j & -j);
+                if (parent <= words) {
+                    tree[rowBase + parent - 1] += tree[rowBase + j - 1];
+                }
+            }
+        }
+        for (int i = 1; i <= size; i++) {
+            int parent = i + (i & -i);
+            if (parent <= size) {
+                int from = (i - 1) * words;
+                int to = (parent - 1) * words;
+                for (int j = 0; j < words; j++) {
+                    tree[to + j] += tree[from + j];
+                }
+            }
+        }
+        buildColumns();
+    }
+
+    /**
+     * Fill the column tree: count each band's cells per column from its set bits, turn the
+     * counts into running totals within each word, then push bands into their parents
+     */
+    private void buildColumns() {
+        long[] bits = new long[words];
+        for (int y = 0; y < size; y++) {
+            floor.getRowBits(y, bits);
+            int base = (y >>> 6) * size;
+            for (int word = 0; word < words; word++) {
+                long rest = word == words - 1 ? bits[word] & lastWordMask : bits[word];
+                for (; rest != 0; rest &= rest - 1) {
+                    columnTree[base + (word << 6) + Long.numberOfTrailingZeros(rest)]++;
+                }
+            }
+        }
+        for (int band = 0; band < bands; band++) {
+            int base = band * size;
+            for (int x = 1; x < size; x++) {
+                if ((x & 63) != 0) {
+                    columnTree[base + x] += columnTree[base + x - 1];
+                }
+            }
+        }
+        for (int i = 1; i <= bands; i++) {
+            int parent = i + (i & -i);
+            if (parent <= bands) {
+                int from = (i - 1) * size;
+                int to = (parent - 1) * size;
+                for (int x = 0; x < size; x++) {
+                    columnTree[to + x] += columnTree[from + x];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package com.robotfloor;
+
+import java.util.Arrays;
+
+/**
+ * Compiles 'REPEAT k [ ... ]' loops to ints once, and runs them with cycle detection
+ * A compiled loop is its count, then its body length in ints, then the body: an opcode and
+ * operand per command, except that a nested loop is REPEAT followed by its own count,
+ * length and body. The body may hold U, D, R, L, 'M n' and nested loops. Nothing in a body
+ * depends on the robot's position, so once an iteration starts in the same heading and pen
+ * state as an earlier one, every later block of iterations is the same trace shifted by a
+ * fixed displacement. The heading repeats within 4 iterations and the pen state within 1,
+ * so at most 5 iterations run before the rest is fast-forwarded: a closed loop (no
+ * displacement) only re-traces marked cells and is skipped, a drifting one has its shifted
+ * segments marked in bulk, and only the copies that reach the N x N area (or the int range
+ * on an unbounded floor) are visited. The robot is then placed where the remaining
+ * iterations would leave it, clamped to the int range as a single move is.
+ */
+final class RepeatLoop {
+
+    /**
+     * Receives every segment the loop draws, both ends inclusive
+     */
+    interface SegmentSink {
+        void trace(int fromX, int fromY, int toX, int toY);
+    }
+
+    /** Deepest nesting of loops accepted */
+    static final int MAX_DEPTH = 16;
+    private static final String USAGE = "Invalid loop. Usage: REPEAT <count> [commands]";
+    private static final int[] PERIODS = {1, 2, 4};
+    private static final int MAX_PROBES = 5;
+
+    private RepeatLoop() {
+    }
+
+    /**
+     * Compile a whole 'REPEAT k [ ... ]' command
+     * @param text The command text
+     * @return The compiled loop: count, body length, body
+     * @throws IllegalArgumentException If the loop is malformed, with a message for the user
+     */
+    static int[] compile(CharSequence text) {
+        Reader reader = new Reader(text);
+        if (!"repeat".equalsIgnoreCase(reader.word())) {
+            throw new IllegalArgumentException(USAGE);
+        }
+        Code code = new Code();
+        compileLoop(reader, code, 1);
+        if (reader.skipSpace()) {
+            throw new IllegalArgumentException("Unexpected text after the loop: " + reader.word());
+        }
+        return Arrays.copyOf(code.ints, code.size);
+    }
+
+    /**
+     * Compile a loop, or return null if it is malformed
+     * @param text The command text
+     */
+    static int[] compileOrNull(CharSequence text) {
+        try {
+            return compile(text);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Compile a loop after its REPEAT keyword, up to and including its ']'
+     */
+    private static void compileLoop(Reader reader, Code code, int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Loops nested deeper than " + MAX_DEPTH);
+        }
+        int count = reader.integer(USAGE);
+        if (count < 0) {
+            throw new IllegalArgumentException("Repeat count must be non-negative");
+        }
+        if (!reader.skipSpace() || reader.next() != '[') {
+            throw new IllegalArgumentException(USAGE);
+        }
+        int start = code.size;
+        code.add(count);
+        // The body length is filled in at the ']'
+        code.add(0);
+        while (true) {
+            if (!reader.skipSpace()) {
+                throw new IllegalArgumentException("Missing ']' at the end of the loop");
+            }
+            if (reader.peek() == ']') {
+                reader.next();
+                break;
+            }
+            String word = reader.word();
+            if ("repeat".equalsIgnoreCase(word)) {
+                code.add(CommandParser.REPEAT);
+                compileLoop(reader, code, depth + 1);
+                continue;
+            }
+            if (word.isEmpty() || (word.length() > 1 && Character.toLowerCase(word.charAt(0)) != 'm')) {
+                throw new IllegalArgumentException("Only U, D, R, L, M and REPEAT can be repeated: "
+                        + (word.isEmpty() ? String.valueOf(reader.next()) : word));
+            }
+            int opcode = CommandParser.opcodeOf(Character.toLowerCase(word.charAt(0)));
+            int operand = 0;
+            if (opcode == CommandParser.MOVE) {
+                String usage = "Invalid move distance. Usage: M <number>";
+                // The distance may follow the M directly, as in 'M5'
+                operand = word.length() > 1 ? reader.integer(reader.pos - word.length() + 1, reader.pos, usage)
+                        : reader.integer(usage);
+                if (operand < 0) {
+                    throw new IllegalArgumentException("Move distance must be non-negative");
+                }
+            } else if (opcode < CommandParser.PEN_UP || opcode > CommandParser.TURN_LEFT) {
+                throw new IllegalArgumentException("Only U, D, R, L, M and REPEAT can be repeated: " + word);
+            }
+            code.add(opcode);
+            code.add(operand);
+        }
+        code.ints[start + 1] = code.size - start - 2;
+    }
+
+    /**
+     * Run a compiled loop from the robot's current state
+     * @param loop The compiled loop
+     * @param robot The robot to move
+     * @param floor The floor drawn on, used for its bounds
+     * @param sink Marks each segment drawn; on a bounded floor segments are clipped to it first
+     */
+    static void run(int[] loop, Robot robot, Floor floor, SegmentSink sink) {
+        execute(new Trace(robot, floor, sink), loop, 0);
+    }
+
+    /**
+     * Run the loop whose count is at loop[start]
+     */
+    private static void execute(Trace trace, int[] loop, int start) {
+        Robot robot = trace.robot;
+        int count = loop[start];
+        int[] startX = new int[MAX_PROBES + 1];
+        int[] startY = new int[MAX_PROBES + 1];
+        int[] state = new int[MAX_PROBES + 1];
+        int[] firstSegment = new int[MAX_PROBES + 1];
+        for (int done = 0; done < count; done++) {
+            startX[done] = robot.getX();
+            startY[done] = robot.getY();
+            state[done] = robot.getFacing().ordinal() | (robot.isPenDown() ? 4 : 0);
+            firstSegment[done] = trace.size;
+            for (int period : PERIODS) {
+                if (period <= done && state[done - period] == state[done]) {
+                    fastForward(trace, loop, start, firstSegment[done - period], period,
+                            (long) startX[done] - startX[done - period],
+                            (long) startY[done] - startY[done - period], count - done);
+                    return;
+                }
+            }
+            runBody(trace, loop, start);
+        }
+    }
+
+    /**
+     * Apply the remaining iterations given the trace of the last block of period iterations
+     */
+    private static void fastForward(Trace trace, int[] loop, int start, int first, int period, long dx, long dy,
+            int remaining) {
+        long blocks = remaining / period;
+        if (blocks > 0 && (dx != 0 || dy != 0)) {
+            int end = trace.size;
+            for (int item = first; item < end; item++) {
+                trace.markCopies(item, 0, 0, dx, dy, blocks);
+            }
+            // Enclosing loops shift this whole family of copies as one item
+            trace.addGroup(first, end, dx, dy, blocks);
+        }
+        // A closed loop re-traces the cells its first block marked, so only the robot moves
+        // Like a single move, a loop that runs past the int range stops at its edge
+        Robot robot = trace.robot;
+        robot.setState(Robot.saturate(robot.getX() + blocks * dx), Robot.saturate(robot.getY() + blocks * dy),
+                robot.isPenDown(), robot.getFacing());
+        for (int i = 0; i < remaining % period; i++) {
+            runBody(trace, loop, start);
+        }
+    }
+
+    private static void runBody(Trace trace, int[] loop, int start) {
+        Robot robot = trace.robot;
+        int end = start + 2 + loop[start + 1];
+        int pc = start + 2;
+        while (pc < end) {
+            switch (loop[pc]) {
+                case CommandParser.PEN_UP:
+                    robot.penUp();
+                    break;
+                case CommandParser.PEN_DOWN:
+                    robot.penDown();
+                    break;
+                case CommandParser.TURN_RIGHT:
+                    robot.turnRight();
+                    break;
+                case CommandParser.TURN_LEFT:
+                    robot.turnLeft();
+                    break;
+                case CommandParser.MOVE:
+                    int startX = robot.getX();
+                    int startY = robot.getY();
+                    robot.move(loop[pc + 1]);
+                    if (robot.isPenDown()) {
+                        trace.addSegment(startX, startY, robot.getX(), robot.getY());
+                    }
+                    break;
+                default:
+                    // A nested loop: its count and length follow the REPEAT
+                    execute(trace, loop, pc + 1);
+                    pc += 3 + loop[pc + 2];
+                    continue;
+            }
+            pc += 2;
+        }
+    }
+
+    /**
+     * The segments drawn during one top-level run, kept so blocks can be shifted
+     * Each item is either a segment or a group: copies 1..count of an earlier range of
+     * items shifted by multiples of a displacement. Both carry their bounding box.
+     */
+    private static final class Trace {
+
+        private static final int SEGMENT = 0;
+        private static final int GROUP = 1;
+        private static final int ITEM_LONGS = 10;
+
+        private final Robot robot;
+        private final SegmentSink sink;
+        private final long low;
+        private final long high;
+        private long[] items = new long[16 * ITEM_LONGS];
+        private int size;
+
+        Trace(Robot robot, Floor floor, SegmentSink sink) {
+            this.robot = robot;
+            this.sink = sink;
+            // Unbounded floors such as SparseFloor keep marks at any int coordinate
+            boolean bounded = !floor.isValidPosition(-1, -1);
+            this.low = bounded ? 0 : Integer.MIN_VALUE;
+            this.high = bounded ? floor.getSize() - 1 : Integer.MAX_VALUE;
+        }
+
+        void addSegment(int fromX, int fromY, int toX, int toY) {
+            int base = append(SEGMENT, Math.min(fromX, toX), Math.min(fromY, toY),
+                    Math.max(fromX, toX), Math.max(fromY, toY));
+            items[base + 5] = fromX;
+            items[base + 6] = fromY;
+            items[base + 7] = toX;
+            items[base + 8] = toY;
+            mark(fromX, fromY, toX, toY);
+        }
+
+        void addGroup(int first, int end, long dx, long dy, long count) {
+            long minX = Long.MAX_VALUE;
+            long minY = Long.MAX_VALUE;
+            long maxX = Long.MIN_VALUE;
+            long maxY = Long.MIN_VALUE;
+            for (int item = first; item < end; item++) {
+                int base = item * ITEM_LONGS;
+                minX = Math.min(minX, items[base + 1]);
+                minY = Math.min(minY, items[base + 2]);
+                maxX = Math.max(maxX, items[base + 3]);
+                maxY = Math.max(maxY, items[base + 4]);
+            }
+            int base = append(GROUP, minX + Math.min(dx, count * dx), minY + Math.min(dy, count * dy),
+                    maxX + Math.max(dx, count * dx), maxY + Math.max(dy, count * dy));
+            items[base + 5] = first;
+            items[base + 6] = end;
+            items[base + 7] = dx;
+            items[base + 8] = dy;
+            items[base + 9] = count;
+        }
+
+        private int append(long type, long minX, long minY, long maxX, long maxY) {
+            if ((size + 1) * ITEM_LONGS > items.length) {
+                items = Arrays.copyOf(items, items.length * 2);
+            }
+            int base = size * ITEM_LONGS;
+            items[base] = type;
+            items[base + 1] = minX;
+            items[base + 2] = minY;
+            items[base + 3] = maxX;
+            items[base + 4] = maxY;
+            size++;
+            return base;
+        }
+
+        /**
+         * Mark copies 1..count of an item, copy b shifted by (ox + b * dx, oy + b * dy)
+         */
+        void markCopies(int item, long ox, long oy, long dx, long dy, long count) {
+            int base = item * ITEM_LONGS;
+            long minX = items[base + 1] + ox;
+            long minY = items[base + 2] + oy;
+            long maxX = items[base + 3] + ox;
+            long maxY = items[base + 4] + oy;
+            long first = Math.max(1, Math.max(firstCopy(minX, maxX, dx), firstCopy(minY, maxY, dy)));
+            long last = Math.min(count, Math.min(lastCopy(minX, maxX, dx), lastCopy(minY, maxY, dy)));
+            if (first > last) {
+                return;
+            }
+            if (items[base] == SEGMENT && (minY == maxY && dy == 0 && Math.abs(dx) <= maxX - minX + 1
+                    || minX == maxX && dx == 0 && Math.abs(dy) <= maxY - minY + 1)) {
+                // The copies overlap or touch along the segment's own line: one run covers them
+                mark(minX + Math.min(first * dx, last * dx), minY + Math.min(first * dy, last * dy),
+                        maxX + Math.max(first * dx, last * dx), maxY + Math.max(first * dy, last * dy));
+                return;
+            }
+            for (long b = first; b <= last; b++) {
+                markItem(item, ox + b * dx, oy + b * dy);
+            }
+        }
+
+        private void markItem(int item, long ox, long oy) {
+            int base = item * ITEM_LONGS;
+            if (items[base] == SEGMENT) {
+                mark(items[base + 5] + ox, items[base + 6] + oy, items[base + 7] + ox, items[base + 8] + oy);
+                return;
+            }
+            for (int i = (int) items[base + 5]; i < items[base + 6]; i++) {
+                markCopies(i, ox, oy, items[base + 7], items[base + 8], items[base + 9]);
+            }
+        }
+
+        /**
+         * Get the first copy whose span [min + b * d, max + b * d] can reach [low, high]
+         */
+        private long firstCopy(long min, long max, long d) {
+            if (d > 0) {
+                return -Math.floorDiv(max - low, d);
+            } else if (d < 0) {
+                return -Math.floorDiv(high - min, -d);
+            }
+            return max < low || min > high ? Long.MAX_VALUE : Long.MIN_VALUE;
+        }
+
+        /**
+         * Get the last copy whose span [min + b * d, max + b * d] can reach [low, high]
+         */
+        private long lastCopy(long min, long max, long d) {
+            if (d > 0) {
+                return Math.floorDiv(high - min, d);
+            } else if (d < 0) {
+                return Math.floorDiv(max - low, -d);
+            }
+            return Long.MAX_VALUE;
+        }
+
+        /**
+         * Clip a horizontal or vertical segment to the floor, or to the int range on an
+         * unbounded floor, and pass it to the sink
+         */
+        private void mark(long fromX, long fromY, long toX, long toY) {
+            if (Math.max(fromX, toX) < low || Math.min(fromX, toX) > high
+                    || Math.max(fromY, toY) < low || Math.min(fromY, toY) > high) {
+                return;
+            }
+            sink.trace((int) clip(fromX), (int) clip(fromY), (int) clip(toX), (int) clip(toY));
+        }
+
+        private long clip(long value) {
+            return Math.max(low, Math.min(value, high));
+        }
+    }
+
+    /**
+     * A growing int[] the compiler appends to
+     */
+    private static final class Code {
+
+        private int[] ints = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == ints.length) {
+                ints = Arrays.copyOf(ints, size * 2);
+            }
+            ints[size++] = value;
+        }
+    }
+
+    /**
+     * Walks the characters of a loop; brackets always stand alone
+     * Integers are read with CommandParser's digit loop, so no text is copied for them.
+     */
+    private static final class Reader {
+
+        private final CharSequence text;
+        private final CommandParser parser = new CommandParser();
+        private int pos;
+
+        Reader(CharSequence text) {
+            this.text = text;
+        }
+
+        /**
+         * Skip whitespace
+         * @return False at the end of the text
+         */
+        boolean skipSpace() {
+            while (pos < text.length() && text.charAt(pos) <= ' ') {
+                pos++;
+            }
+            return pos < text.length();
+        }
+
+        char peek() {
+            return text.charAt(pos);
+        }
+
+        char next() {
+            return text.charAt(pos++);
+        }
+
+        /**
+         * Read the next word, up to whitespace or a bracket; empty at a bracket or the end
+         */
+        String word() {
+            int start = skipWord();
+            return text.subSequence(start, pos).toString();
+        }
+
+        /**
+         * Read the next word as an integer
+         */
+        int integer(String usage) {
+            int start = skipWord();
+            return integer(start, pos, usage);
+        }
+
+        /**
+         * Read a region of the text as an integer
+         * @throws IllegalArgumentException With the usage message, if it is not an integer
+         */
+        int integer(int start, int end, String usage) {
+            if (start == end || parser.parseInteger(text, start, end) != CommandParser.OK) {
+                throw new IllegalArgumentException(usage);
+            }
+            return parser.getOperand();
+        }
+
+        /**
+         * Move past the next word
+         * @return The index where the word starts
+         */
+        private int skipWord() {
+            skipSpace();
+            int start = pos;
+            while (pos < text.length() && text.charAt(pos) > ' ' && text.charAt(pos) != '['
+                    && text.charAt(pos) != ']') {
+                pos++;
+            }
+            return start;
+        }
+    }
+}
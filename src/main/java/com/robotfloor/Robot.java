@@ -125,15 +125,39 @@ public class Robot {
 
     /**
      * Move the robot forward by the specified number of spaces
+     * A move past the int range stops at its edge rather than wrapping around.
      * @param spaces Number of spaces to move forward
      */
     public void move(int spaces) {
-        for (int i = 0; i < spaces; i++) {
-            x += facing.getDx();
-            y += facing.getDy();
+        if (spaces > 0) {
+            x = saturate((long) x + (long) facing.getDx() * spaces);
+            y = saturate((long) y + (long) facing.getDy() * spaces);
         }
     }
 
+    /**
+     * Clamp a coordinate to the int range
+     * @param value The coordinate, possibly out of range
+     * @return The nearest int
+     */
+    static int saturate(long value) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+    }
+
+    /**
+     * Set the full robot state at once, e.g. when restoring a checkpoint
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     * @param penDown Whether the pen is down
+     * @param facing The facing direction
+     */
+    public void setState(int x, int y, boolean penDown, Direction facing) {
+        this.x = x;
+        this.y = y;
+        this.penDown = penDown;
+        this.facing = facing;
+    }
+
     /**
      * Reset the robot to initial state at [0, 0]
      */
@@ -1,41 +1,315 @@
 package com.robotfloor;
 
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
 import java.util.Scanner;
+import java.util.function.IntFunction;
+import javax.management.JMException;
 
 /**
  * Main Robot Floor Simulator Application
  * Controls the robot movement and command processing
  */
-public class RobotSimulator {
+public class RobotSimulator implements AutoCloseable {
+
+    /** Default number of commands between history checkpoints */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 256;
+    /** Memory the checkpoint deltas may use before the oldest are folded away */
+    private static final long MAX_CHECKPOINT_BYTES = 64L << 20;
+    /** Number of commands that can be undone */
+    public static final int UNDO_DEPTH = 4096;
 
     private Robot robot;
     private Floor floor;
     private CommandHistory history;
+    private final CommandParser parser = new CommandParser();
     private boolean running;
+    private boolean quiet;
+    private boolean replaying;
+    private boolean silent;
+    private int initializedSize;
+    private boolean redoing;
+    private final UndoLog undoLog = new UndoLog(UNDO_DEPTH);
+    private final CommandHistory redoStack = new CommandHistory();
+    private FloorRenderer renderer;
+    private final int[] printArgs = new int[CommandParser.MAX_OPERANDS];
+    private int printArgCount;
+    private int[] loop;
+    private DensityPyramid pyramid;
+    private FloorChanges changes;
+    private HistoryCheckpoints checkpoints = new HistoryCheckpoints(DEFAULT_CHECKPOINT_INTERVAL, MAX_CHECKPOINT_BYTES);
+    private final IntFunction<Floor> floorFactory;
+    private final PrintStream out;
+    private final SimulatorMetrics metrics = new SimulatorMetrics();
+    private boolean metricsEnabled = true;
+    private MoveEventRing moveEvents;
+    private Floor eventFloor;
+    private int eventX;
+    private int eventY;
+    private int eventState;
+    private boolean floorRewritten;
 
     /**
      * Constructor for RobotSimulator
      */
     public RobotSimulator() {
+        this(PackedFloor::new);
+    }
+
+    /**
+     * Constructor for RobotSimulator with a custom floor backend
+     * @param floorFactory Creates the floor for a given size on 'I n'
+     */
+    public RobotSimulator(IntFunction<Floor> floorFactory) {
+        this(floorFactory, System.out);
+    }
+
+    /**
+     * Constructor for RobotSimulator with a custom floor backend and output sink
+     * @param floorFactory Creates the floor for a given size on 'I n'
+     * @param out Where command output is written
+     */
+    public RobotSimulator(IntFunction<Floor> floorFactory, PrintStream out) {
+        this(floorFactory, out, new CommandHistory());
+    }
+
+    /**
+     * Constructor for RobotSimulator with a custom floor backend, output sink and history
+     * @param floorFactory Creates the floor for a given size on 'I n'
+     * @param out Where command output is written
+     * @param history Records executed commands, e.g. a bounded CommandHistory
+     */
+    public RobotSimulator(IntFunction<Floor> floorFactory, PrintStream out, CommandHistory history) {
+        this.floorFactory = floorFactory;
+        this.out = out;
         this.robot = new Robot();
         this.floor = null;
-        this.history = new CommandHistory();
+        this.history = history;
         this.running = true;
     }
 
+    /**
+     * Check if the simulator is still accepting commands (no 'Q' yet)
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Enable or disable quiet mode
+     * In quiet mode only the output of 'P' and 'C' is written; status and error messages are dropped.
+     * @param quiet True to suppress everything except 'P' and 'C' output
+     */
+    public void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    /**
+     * Set how many commands pass between history checkpoints
+     * A smaller interval makes 'H', 'J' and stateAt cheaper; checkpoints after the first
+     * hold only the row words changed since the one before, so it costs little memory.
+     * Existing checkpoints are discarded.
+     * @param interval The number of commands between checkpoints
+     */
+    public void setCheckpointInterval(int interval) {
+        checkpoints.clear();
+        this.checkpoints = new HistoryCheckpoints(interval, MAX_CHECKPOINT_BYTES);
+    }
+
+    /**
+     * Enable or disable metrics
+     * Metrics are enabled by default; while disabled, commands are not timed or counted.
+     * @param enabled True to collect metrics
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        this.metricsEnabled = enabled;
+    }
+
+    /**
+     * Publish robot state changes and marked spans to a ring of move events
+     * The current state is published at once as ROBOT and FLOOR events; after that each
+     * command publishes its events in one batch when it ends.
+     * @param ring The ring to write to, or null to stop publishing
+     */
+    public void setMoveEvents(MoveEventRing ring) {
+        this.moveEvents = ring;
+        if (ring != null) {
+            eventFloor = floor;
+            eventX = robot.getX();
+            eventY = robot.getY();
+            eventState = robotState();
+            ring.floor(floor == null ? 0 : floor.getSize());
+            ring.robot(eventX, eventY, eventState);
+            ring.publish();
+        }
+    }
+
+    /**
+     * Get the command counters and latency histograms of this simulator
+     */
+    public SimulatorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the robot
+     */
+    public Robot getRobot() {
+        return robot;
+    }
+
+    /**
+     * Get the command history
+     */
+    public CommandHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Get the floor, or null before the system is initialized
+     * Change it only through commands: history checkpoints track the cells commands change.
+     */
+    public Floor getFloor() {
+        return floor;
+    }
+
+    /**
+     * Save the floor, robot and history to a snapshot file
+     * @param file The snapshot file, replaced if it exists
+     * @throws IOException If the file cannot be written
+     */
+    public void saveSnapshot(Path file) throws IOException {
+        SimulatorSnapshot.write(file, floor, robot, initializedSize, history);
+    }
+
+    /**
+     * Restore the floor, robot and history from a snapshot file
+     * The floor is rebuilt through this simulator's floor factory. Undo and redo start
+     * empty, and the restored state becomes the first checkpoint, so 'H' and 'J' to the
+     * end of the history do not replay it.
+     * @param file The snapshot file
+     * @throws IOException If the file cannot be read or is not a valid snapshot
+     */
+    public void loadSnapshot(Path file) throws IOException {
+        SimulatorSnapshot snapshot = SimulatorSnapshot.read(file, floorFactory, robot, history);
+        replaceFloor(snapshot.getFloor());
+        initializedSize = snapshot.getInitializedSize();
+        checkpoints.clear();
+        undoLog.clear();
+        redoStack.clear();
+        if (floor != null) {
+            checkpoints.record(history.getDroppedCount() + history.size(), robot, floor);
+        }
+        if (moveEvents != null) {
+            publishMoveEvents();
+        }
+    }
+
+    /**
+     * Resume from a floor file written by MappedFloor, mapping it in place
+     * Marks go straight to the file, until a command such as 'I', 'H' or 'J' replaces the
+     * floor. The robot starts at the origin with its pen up, and the history starts empty
+     * from the floor as it was read.
+     * @param file The floor file
+     * @throws IOException If the file cannot be mapped or is not a floor file
+     */
+    public void openFloor(Path file) throws IOException {
+        MappedFloor opened = MappedFloor.open(file);
+        replaceFloor(opened);
+        robot.reset();
+        initializedSize = opened.getSize();
+        history.clear();
+        checkpoints.clear();
+        undoLog.clear();
+        redoStack.clear();
+        checkpoints.record(0, robot, opened);
+        if (moveEvents != null) {
+            publishMoveEvents();
+        }
+    }
+
+    /**
+     * Write the floor to a floor file that {@link #openFloor(Path)} can resume from
+     * A floor already mapped from that file is only flushed.
+     * @param file The floor file, replaced if it exists
+     * @throws IOException If the file cannot be written
+     */
+    public void saveFloor(Path file) throws IOException {
+        if (floor != null) {
+            MappedFloor.save(floor, file);
+        }
+    }
+
+    /**
+     * Drop the floor and its checkpoint copies, closing any that hold a file
+     * The simulator accepts no further commands.
+     */
+    @Override
+    public void close() {
+        running = false;
+        replaceFloor(null);
+        checkpoints.clear();
+    }
+
+    /**
+     * Get the renderer behind 'P', 'DIFF', 'LIVE' and 'TRIM', creating it on first use
+     */
+    private FloorRenderer renderer() {
+        if (renderer == null) {
+            renderer = new FloorRenderer();
+        }
+        return renderer;
+    }
+
+    /**
+     * Make a floor current and release the one it replaces
+     */
+    private void replaceFloor(Floor replacement) {
+        if (floor != replacement) {
+            Floor.release(floor);
+        }
+        floor = replacement;
+    }
+
     /**
      * Initialize the system with a floor size
      * @param size The size of the floor (N x N)
      */
     public void initialize(int size) {
         if (size <= 0) {
-            System.out.println("Error: Floor size must be greater than zero");
+            message("Error: Floor size must be greater than zero");
+            return;
+        }
+        Floor created;
+        try {
+            created = floorFactory.apply(size);
+        } catch (IllegalArgumentException | UncheckedIOException e) {
+            // e.g. a size the backend cannot hold or a floor file that cannot be mapped;
+            // the current floor is kept
+            message("Error: " + e.getMessage());
             return;
         }
-        this.floor = new Floor(size);
+        replaceFloor(created);
         this.robot.reset();
-        this.history.clear();
-        System.out.println("System initialized with " + size + " x " + size + " floor");
+        if (!replaying) {
+            this.history.clear();
+            this.checkpoints.clear();
+            this.undoLog.clear();
+            this.redoStack.clear();
+            this.initializedSize = size;
+        }
+        message("System initialized with " + size + " x " + size + " floor");
     }
 
     /**
@@ -43,50 +317,289 @@ public class RobotSimulator {
      * @param input The user input command
      */
     public void executeCommand(String input) {
-        if (input == null || input.trim().isEmpty()) {
+        if (input == null) {
             return;
         }
+        int status = parser.parse(input);
+        if (status == CommandParser.EMPTY) {
+            return;
+        }
+        loadPrintArgs();
+        execute(CommandProgram.header(parser.getOpcode(), status, parser.getLetter()), parser.getOperand(), input);
+    }
+
+    /**
+     * Execute a command held in a region of a buffer of ASCII bytes, e.g. from a socket
+     * Valid commands are recorded in canonical form, so only malformed ones are decoded
+     * to a String.
+     * @param buffer The buffer holding the command; its position and limit are not changed
+     * @param start The index of the first byte (inclusive)
+     * @param end The index after the last byte (exclusive)
+     */
+    void executeCommand(ByteBuffer buffer, int start, int end) {
+        int status = parser.parse(buffer, start, end);
+        if (status == CommandParser.EMPTY) {
+            return;
+        }
+        loadPrintArgs();
+        String text = null;
+        if (status != CommandParser.OK || printArgCount > 0 || parser.getOpcode() == CommandParser.REPEAT) {
+            ByteBuffer line = buffer.duplicate();
+            line.limit(end).position(start);
+            text = StandardCharsets.ISO_8859_1.decode(line).toString();
+        }
+        execute(CommandProgram.header(parser.getOpcode(), status, parser.getLetter()), parser.getOperand(), text);
+    }
+
+    /**
+     * Execute a compiled program
+     * The instructions are dispatched straight from the program's int[] code without
+     * re-parsing, and recorded in the history in encoded form.
+     * @param program The compiled program
+     */
+    public void run(CommandProgram program) {
+        int[] code = program.code();
+        int end = program.size() * 2;
+        for (int pc = 0; pc < end; pc += 2) {
+            int operand = code[pc + 1];
+            if (CommandProgram.opcode(code[pc]) == CommandParser.PRINT && operand > 0) {
+                int[] extra = program.extra();
+                printArgCount = extra[operand - 1];
+                System.arraycopy(extra, operand, printArgs, 0, printArgCount);
+            } else if (CommandProgram.opcode(code[pc]) == CommandParser.REPEAT) {
+                loop = program.loop(pc / 2);
+            }
+            execute(code[pc], operand, program.text(pc / 2));
+        }
+    }
+
+    /**
+     * Keep the viewport integers of a parsed 'P' for handlePrint
+     */
+    private void loadPrintArgs() {
+        if (parser.getOpcode() == CommandParser.PRINT) {
+            printArgCount = parser.getOperandCount();
+            for (int i = 0; i < printArgCount; i++) {
+                printArgs[i] = parser.getOperand(i);
+            }
+        }
+    }
 
-        String trimmed = input.trim();
-        char command = Character.toLowerCase(trimmed.charAt(0));
+    /**
+     * Run one decoded command, record it in the history and take a checkpoint when due
+     * @param header The instruction header (see CommandProgram)
+     * @param operand The integer operand
+     * @param text The command text, or null to record the canonical form
+     */
+    private void execute(int header, int operand, String text) {
+        long startNanos = 0;
+        if (metricsEnabled) {
+            startNanos = System.nanoTime();
+        }
+        int opcode = CommandProgram.opcode(header);
+        boolean recorded = opcode != CommandParser.HISTORY && opcode != CommandParser.JUMP
+                && opcode != CommandParser.UNDO && opcode != CommandParser.REDO;
+        if (recorded) {
+            undoLog.begin(robot);
+        }
+        int[] compiledLoop;
+        try {
+            dispatch(opcode, CommandProgram.status(header), operand, CommandProgram.letter(header), text);
+        } finally {
+            printArgCount = 0;
+            compiledLoop = loop;
+            loop = null;
+        }
+
+        if (recorded) {
+            long sequence = history.getDroppedCount() + history.size();
+            // A viewport 'P' keeps its integers in the text; the side table offset is not recorded
+            history.addCommand(text, header, opcode == CommandParser.PRINT ? 0 : operand, compiledLoop);
+            if (history.getDroppedCount() + history.size() == sequence) {
+                // A full REJECT_NEWEST history no longer lines up with the undo log
+                undoLog.clear();
+            }
+            if (!redoing && opcode != CommandParser.PRINT && opcode != CommandParser.POSITION
+                    && opcode != CommandParser.COVERAGE && opcode != CommandParser.TRIM
+                    && opcode != CommandParser.STATS && opcode != CommandParser.DIFF
+                    && opcode != CommandParser.LIVE) {
+                redoStack.clear();
+            }
+            if (floor != null) {
+                checkpoints.recordIfDue(history.getDroppedCount() + history.size(), robot, floor);
+            }
+        }
+        if (moveEvents != null) {
+            publishMoveEvents();
+        }
+        if (metricsEnabled) {
+            metrics.recordCommand(opcode, System.nanoTime() - startNanos);
+        }
+    }
 
-        switch (command) {
-            case 'u':
+    /**
+     * Write FLOOR and ROBOT events for whatever a command changed, then publish the batch
+     */
+    private void publishMoveEvents() {
+        if (floor != eventFloor || floorRewritten) {
+            eventFloor = floor;
+            floorRewritten = false;
+            moveEvents.floor(floor == null ? 0 : floor.getSize());
+        }
+        int state = robotState();
+        if (robot.getX() != eventX || robot.getY() != eventY || state != eventState) {
+            eventX = robot.getX();
+            eventY = robot.getY();
+            eventState = state;
+            moveEvents.robot(eventX, eventY, state);
+        }
+        moveEvents.publish();
+    }
+
+    /**
+     * Pack the robot's facing direction and pen state as in a ROBOT event
+     */
+    private int robotState() {
+        return robot.getFacing().ordinal() | (robot.isPenDown() ? 4 : 0);
+    }
+
+    /**
+     * Create a detached simulator in the state reached after the first commands of the history
+     * The state is rebuilt from the nearest checkpoint, so the cost is one floor copy plus
+     * at most one checkpoint interval of commands. The returned simulator has an empty history
+     * that starts from the restored state.
+     * @param commandCount The number of history commands to apply
+     * @return A new simulator holding the robot and floor state at that point
+     * @throws IllegalStateException If that part of a bounded history has been dropped
+     */
+    public RobotSimulator stateAt(int commandCount) {
+        if (commandCount < 0 || commandCount > history.size()) {
+            throw new IndexOutOfBoundsException("Command count " + commandCount + " outside history of "
+                    + history.size());
+        }
+        RobotSimulator target = new RobotSimulator(floorFactory, out);
+        if (!restore(target, commandCount)) {
+            throw new IllegalStateException("Command " + commandCount + " is no longer in the history");
+        }
+        if (target.floor != null) {
+            // The restored state is the starting point of the new simulator's own history
+            target.checkpoints.recordIfDue(0, target.robot, target.floor);
+        }
+        return target;
+    }
+
+    /**
+     * Rebuild the state after the first commands of the history on a simulator
+     * The nearest checkpoint is restored and the remaining commands are replayed silently.
+     * @param target The simulator to update, possibly this one
+     * @param commandCount The number of history commands to apply
+     * @return False if the commands needed have been dropped from a bounded history
+     */
+    private boolean restore(RobotSimulator target, int commandCount) {
+        long dropped = history.getDroppedCount();
+        int index = checkpoints.find(dropped + commandCount);
+        long start;
+        if (index >= 0 && checkpoints.getSequence(index) >= dropped) {
+            target.replaceFloor(checkpoints.restore(index, target.robot));
+            start = checkpoints.getSequence(index);
+        } else if (dropped == 0) {
+            target.robot.reset();
+            target.replaceFloor(initializedSize > 0 ? floorFactory.apply(initializedSize) : null);
+            start = 0;
+        } else {
+            return false;
+        }
+
+        long startNanos = metricsEnabled ? System.nanoTime() : 0;
+        target.replaying = true;
+        target.silent = true;
+        try {
+            for (int i = (int) (start - dropped); i < commandCount; i++) {
+                int header = history.getHeader(i);
+                target.loop = history.getLoop(i);
+                target.dispatch(CommandProgram.opcode(header), CommandProgram.status(header),
+                        history.getOperand(i), CommandProgram.letter(header), history.getRawCommand(i));
+            }
+        } finally {
+            target.replaying = false;
+            target.silent = false;
+            target.loop = null;
+        }
+        if (metricsEnabled) {
+            metrics.recordReplay(commandCount - (start - dropped), System.nanoTime() - startNanos);
+        }
+        return true;
+    }
+
+    /**
+     * Run one decoded command
+     * @param opcode The command opcode from CommandParser
+     * @param status The parse status, used to report bad operands
+     * @param operand The integer operand for 'M', 'I' and 'J'
+     * @param letter The command letter, used to report unknown commands
+     * @param text The command text, from which 'REPEAT' compiles its body if it has none yet
+     */
+    private void dispatch(int opcode, int status, int operand, char letter, String text) {
+        switch (opcode) {
+            case CommandParser.PEN_UP:
                 handlePenUp();
                 break;
-            case 'd':
+            case CommandParser.PEN_DOWN:
                 handlePenDown();
                 break;
-            case 'r':
+            case CommandParser.TURN_RIGHT:
                 handleTurnRight();
                 break;
-            case 'l':
+            case CommandParser.TURN_LEFT:
                 handleTurnLeft();
                 break;
-            case 'm':
-                handleMove(trimmed);
+            case CommandParser.MOVE:
+                handleMove(status, operand);
                 break;
-            case 'p':
-                handlePrint();
+            case CommandParser.PRINT:
+                handlePrint(status);
                 break;
-            case 'c':
+            case CommandParser.POSITION:
                 handleCurrentPosition();
                 break;
-            case 'q':
+            case CommandParser.QUIT:
                 handleQuit();
                 break;
-            case 'i':
-                handleInitialize(trimmed);
+            case CommandParser.INITIALIZE:
+                handleInitialize(status, operand);
                 break;
-            case 'h':
+            case CommandParser.HISTORY:
                 handleHistory();
                 break;
+            case CommandParser.JUMP:
+                handleJump(status, operand);
+                break;
+            case CommandParser.UNDO:
+                handleUndo();
+                break;
+            case CommandParser.REDO:
+                handleRedo();
+                break;
+            case CommandParser.COVERAGE:
+                handleCoverage();
+                break;
+            case CommandParser.TRIM:
+                handleTrim();
+                break;
+            case CommandParser.STATS:
+                handleStats();
+                break;
+            case CommandParser.DIFF:
+                handleChanges(false);
+                break;
+            case CommandParser.LIVE:
+                handleChanges(true);
+                break;
+            case CommandParser.REPEAT:
+                handleRepeat(status, text);
+                break;
             default:
-                System.out.println("Unknown command: " + command);
-        }
-
-        if (command != 'h') {
-            history.addCommand(input);
+                message("Unknown command: " + letter);
         }
     }
 
@@ -120,54 +633,258 @@ public class RobotSimulator {
 
     /**
      * Handle move command
-     * @param input The input string containing the move command and distance
+     * @param status The parse status of the distance
+     * @param spaces The distance to move
+     */
+    private void handleMove(int status, int spaces) {
+        if (floor == null) {
+            message("Error: System not initialized. Use 'I n' command first.");
+            return;
+        }
+        if (status != CommandParser.OK) {
+            message("Error: Invalid move distance. Usage: M <number>");
+            return;
+        }
+        if (spaces < 0) {
+            message("Error: Move distance must be non-negative");
+            return;
+        }
+
+        // Move in one step, then mark the whole traced segment as a single span
+        int startX = robot.getX();
+        int startY = robot.getY();
+        robot.move(spaces);
+        if (robot.isPenDown()) {
+            traceSegment(startX, startY, robot.getX(), robot.getY());
+        }
+    }
+
+    /**
+     * Handle repeat command: 'REPEAT k [ ... ]' runs its body k times
+     * Once an iteration repeats the heading and pen state of an earlier one, RepeatLoop
+     * fast-forwards the rest instead of interpreting each iteration. Loops from a program, the
+     * history or the redo stack arrive compiled; a typed loop is compiled here, once.
+     * @param status The parse status of the count
+     * @param text The command text holding the body
      */
-    private void handleMove(String input) {
+    private void handleRepeat(int status, String text) {
         if (floor == null) {
-            System.out.println("Error: System not initialized. Use 'I n' command first.");
+            message("Error: System not initialized. Use 'I n' command first.");
             return;
         }
+        if (status != CommandParser.OK || text == null) {
+            message("Error: Invalid loop. Usage: REPEAT <count> [commands]");
+            return;
+        }
+        if (loop == null) {
+            try {
+                loop = RepeatLoop.compile(text);
+            } catch (IllegalArgumentException e) {
+                message("Error: " + e.getMessage());
+                return;
+            }
+        }
+        RepeatLoop.run(loop, robot, floor, this::traceSegment);
+    }
+
+    /**
+     * Mark a segment the pen has drawn, recording it for 'UNDO' and move listeners
+     */
+    private void traceSegment(int fromX, int fromY, int toX, int toY) {
+        if (!replaying) {
+            long fresh = undoLog.recordUnmarked(floor, fromX, fromY, toX, toY);
+            if (metricsEnabled) {
+                metrics.recordCells(fresh, 0);
+            }
+        }
+        checkpoints.touch(floor, fromX, fromY, toX, toY);
+        markSegment(fromX, fromY, toX, toY);
+        if (moveEvents != null && !replaying) {
+            moveEvents.span(fromX, fromY, toX, toY);
+        }
+    }
 
+    /**
+     * Mark a straight horizontal or vertical segment, both ends inclusive
+     */
+    private void markSegment(int fromX, int fromY, int toX, int toY) {
+        if (fromY == toY) {
+            floor.markRow(fromY, fromX, toX);
+        } else {
+            floor.markColumn(fromX, fromY, toY);
+        }
+    }
+
+    /**
+     * Handle print command: the whole floor, or 'P x y w h [k]' for a viewport
+     * With k, each character stands for an aligned k x k block, read from the density pyramid.
+     * @param status The parse status of the viewport
+     */
+    private void handlePrint(int status) {
+        if (silent) {
+            return;
+        }
+        if (floor == null) {
+            message("Error: System not initialized. Use 'I n' command first.");
+            return;
+        }
+        int size = floor.getSize();
+        if (status != CommandParser.OK || (printArgCount != 0 && printArgCount < 4)
+                || (printArgCount >= 4 && (printArgs[0] < 0 || printArgs[0] >= size || printArgs[1] < 0
+                || printArgs[1] >= size || printArgs[2] <= 0 || printArgs[3] <= 0))) {
+            message("Error: Invalid viewport. Usage: P [x y w h [k]]");
+            return;
+        }
+        if (printArgCount == 5 && (printArgs[4] <= 0 || Integer.bitCount(printArgs[4]) != 1)) {
+            message("Error: Zoom must be a power of two");
+            return;
+        }
         try {
-            int spaces = parseInteger(input, 1);
-            if (spaces < 0) {
-                System.out.println("Error: Move distance must be non-negative");
+            if (printArgCount == 0) {
+                renderer().render(floor, out);
                 return;
             }
-
-            // Move and mark the floor
-            for (int i = 0; i < spaces; i++) {
-                if (robot.isPenDown()) {
-                    floor.mark(robot.getX(), robot.getY());
+            int x = printArgs[0];
+            int y = printArgs[1];
+            int width = (int) Math.min(printArgs[2], (long) size - x);
+            int height = (int) Math.min(printArgs[3], (long) size - y);
+            if (printArgCount == 4 || printArgs[4] == 1) {
+                renderer().renderRegion(floor, x, y, width, height, out);
+                return;
+            }
+            if (pyramid == null || pyramid.getFloor() != floor) {
+                // Built on first use and rebuilt when 'I', 'H' or 'J' replaced the floor
+                if (pyramid != null) {
+                    pyramid.detach();
                 }
-                robot.move(1);
+                pyramid = new DensityPyramid(floor);
             }
+            int shift = Integer.numberOfTrailingZeros(printArgs[4]);
+            int blockX = x >> shift;
+            int blockY = y >> shift;
+            int columns = ((x + width - 1) >> shift) - blockX + 1;
+            int rows = ((y + height - 1) >> shift) - blockY + 1;
+            renderer().renderZoomed(pyramid, blockX, blockY, columns, rows, printArgs[4], out);
+        } catch (IOException e) {
+            // PrintStream reports errors through checkError() rather than throwing
+            throw new UncheckedIOException(e);
+        }
+    }
 
-            // Mark the final position if pen is down
-            if (robot.isPenDown()) {
-                floor.mark(robot.getX(), robot.getY());
+    /**
+     * Handle diff and live commands: draw only what changed since the last DIFF or LIVE
+     * The first one after 'I', 'H' or 'J' replaced the floor draws the whole floor.
+     * @param ansi True to update a terminal in place, false to print the changed rows
+     */
+    private void handleChanges(boolean ansi) {
+        if (silent) {
+            return;
+        }
+        if (floor == null) {
+            message("Error: System not initialized. Use 'I n' command first.");
+            return;
+        }
+        if (changes == null || changes.getFloor() != floor) {
+            if (changes != null) {
+                changes.detach();
             }
-        } catch (NumberFormatException e) {
-            System.out.println("Error: Invalid move distance. Usage: M <number>");
+            changes = new FloorChanges(floor);
+        }
+        if (!ansi && !changes.isAllChanged() && changes.getRowCount() == 0) {
+            message("No changes");
+            return;
+        }
+        try {
+            if (ansi) {
+                renderer().renderAnsiFrame(changes, out);
+            } else {
+                renderer().renderChangedRows(changes, out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Handle coverage command: marked-cell count and bounding box
+     */
+    private void handleCoverage() {
+        if (silent) {
+            return;
+        }
+        if (floor == null) {
+            message("Error: System not initialized. Use 'I n' command first.");
+            return;
+        }
+        CoverageStats coverage = floor.getCoverage();
+        long cells = (long) floor.getSize() * floor.getSize();
+        out.println(String.format(Locale.ROOT, "Coverage: %d of %d cells (%.2f%%)", coverage.getMarkedCount(), cells,
+                100.0 * coverage.getMarkedCount() / cells));
+        if (coverage.isEmpty()) {
+            out.println("Bounding box: none");
+        } else {
+            out.println("Bounding box: [" + coverage.getMinX() + ", " + coverage.getMinY() + "] to ["
+                    + coverage.getMaxX() + ", " + coverage.getMaxY() + "]");
         }
     }
 
     /**
-     * Handle print command
+     * Handle trim command: print only the bounding box of the marked cells
      */
-    private void handlePrint() {
+    private void handleTrim() {
+        if (silent) {
+            return;
+        }
         if (floor == null) {
-            System.out.println("Error: System not initialized. Use 'I n' command first.");
+            message("Error: System not initialized. Use 'I n' command first.");
+            return;
+        }
+        CoverageStats coverage = floor.getCoverage();
+        if (coverage.isEmpty()) {
+            out.println("Nothing marked");
             return;
         }
-        floor.print();
+        try {
+            renderer().renderRegion(floor, coverage.getMinX(), coverage.getMinY(),
+                    coverage.getMaxX() - coverage.getMinX() + 1, coverage.getMaxY() - coverage.getMinY() + 1, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Handle stats command: per-command counts and latencies, cells marked and replay times
+     */
+    private void handleStats() {
+        if (silent) {
+            return;
+        }
+        if (!metricsEnabled) {
+            out.println("Metrics are disabled");
+            return;
+        }
+        out.println("Commands: " + metrics.getCommandCount() + ", cells marked: " + metrics.getCellsMarked()
+                + ", cells unmarked: " + metrics.getCellsUnmarked());
+        for (int opcode = 0; opcode < CommandParser.OPCODE_COUNT; opcode++) {
+            long count = metrics.getCount(opcode);
+            if (count > 0) {
+                out.println(String.format(Locale.ROOT, "  %-8s %10d  p50 %9.1f us  p99 %9.1f us  max %9.1f us",
+                        CommandParser.name(opcode), count, metrics.getPercentileNanos(opcode, 50) / 1e3,
+                        metrics.getPercentileNanos(opcode, 99) / 1e3, metrics.getMaxNanos(opcode) / 1e3));
+            }
+        }
+        out.println(String.format(Locale.ROOT, "Replays: %d (%d commands), total %.2f ms, p99 %.2f ms, max %.2f ms",
+                metrics.getReplayCount(), metrics.getReplayedCommandCount(), metrics.getReplayTotalNanos() / 1e6,
+                metrics.getReplayP99Nanos() / 1e6, metrics.getReplayMaxNanos() / 1e6));
     }
 
     /**
      * Handle current position command
      */
     private void handleCurrentPosition() {
-        System.out.println(robot.toString());
+        if (!silent) {
+            out.println(robot.toString());
+        }
     }
 
     /**
@@ -175,50 +892,127 @@ public class RobotSimulator {
      */
     private void handleQuit() {
         running = false;
-        System.out.println("Program ended.");
+        message("Program ended.");
     }
 
     /**
      * Handle initialize command
-     * @param input The input string containing the initialize command and size
+     * @param status The parse status of the size
+     * @param size The floor size
      */
-    private void handleInitialize(String input) {
-        try {
-            int size = parseInteger(input, 1);
-            if (size <= 0) {
-                System.out.println("Error: Floor size must be greater than zero");
-                return;
-            }
-            initialize(size);
-        } catch (NumberFormatException e) {
-            System.out.println("Error: Invalid floor size. Usage: I <number>");
+    private void handleInitialize(int status, int size) {
+        if (status != CommandParser.OK) {
+            message("Error: Invalid floor size. Usage: I <number>");
+            return;
         }
+        if (size <= 0) {
+            message("Error: Floor size must be greater than zero");
+            return;
+        }
+        initialize(size);
     }
 
     /**
      * Handle history replay command
+     * The recorded commands are listed, then the state they produce is rebuilt from the
+     * latest checkpoint, so only the commands since that checkpoint are re-executed.
      */
     private void handleHistory() {
-        System.out.println("Replaying history...");
-        for (String cmd : history.getCommands()) {
-            System.out.println("> Enter command: " + cmd);
-            executeCommand(cmd);
+        message("Replaying history...");
+        if (!quiet) {
+            for (String command : history) {
+                message("> Enter command: " + command);
+            }
+        }
+        restore(this, history.size());
+        message("History replay complete.");
+    }
+
+    /**
+     * Handle jump command: go back to the state after history command n
+     * Later commands are discarded from the history.
+     * @param status The parse status of the command number
+     * @param commandNumber The number of history commands to keep
+     */
+    private void handleJump(int status, int commandNumber) {
+        if (status != CommandParser.OK) {
+            message("Error: Invalid command number. Usage: J <number>");
+            return;
+        }
+        if (commandNumber < 1 || commandNumber > history.size()) {
+            message("Error: Command number must be between 1 and " + history.size());
+            return;
+        }
+        if (!restore(this, commandNumber)) {
+            message("Error: Command " + commandNumber + " is no longer in the history");
+            return;
+        }
+        history.truncate(commandNumber);
+        checkpoints.truncate(history.getDroppedCount() + commandNumber);
+        undoLog.clear();
+        redoStack.clear();
+        message("Jumped to command " + commandNumber);
+    }
+
+    /**
+     * Handle undo command: revert the last command that changed the robot or the floor
+     * Only the cells that command newly marked are cleared. Commands after it that changed
+     * nothing (e.g. 'P' or 'C') are dropped from the history as well.
+     */
+    private void handleUndo() {
+        while (undoLog.size() > 0 && history.size() > 0) {
+            int index = history.size() - 1;
+            String command = history.getCommand(index);
+            boolean changed = undoLog.undo(floor, robot);
+            if (metricsEnabled) {
+                metrics.recordCells(0, undoLog.getClearedCount());
+            }
+            if (changed) {
+                floorRewritten = true;
+                redoStack.addCommand(command, history.getHeader(index), history.getOperand(index),
+                        history.getLoop(index));
+            }
+            history.truncate(index);
+            checkpoints.truncate(history.getDroppedCount() + index);
+            if (changed) {
+                message("Undid " + command);
+                return;
+            }
         }
-        System.out.println("History replay complete.");
+        undoLog.clear();
+        message("Nothing to undo");
     }
 
     /**
-     * Parse integer from command string
-     * @param input The input string
-     * @param startIndex The index to start looking for the integer
-     * @return The parsed integer
+     * Handle redo command: run the last undone command again
      */
-    private int parseInteger(String input, int startIndex) {
-        if (input.length() <= startIndex) {
-            throw new NumberFormatException("No integer provided");
+    private void handleRedo() {
+        int index = redoStack.size() - 1;
+        if (index < 0) {
+            message("Nothing to redo");
+            return;
+        }
+        String command = redoStack.getCommand(index);
+        int header = redoStack.getHeader(index);
+        int operand = redoStack.getOperand(index);
+        loop = redoStack.getLoop(index);
+        redoStack.truncate(index);
+        redoing = true;
+        try {
+            execute(header, operand, command);
+        } finally {
+            redoing = false;
+        }
+        message("Redid " + command);
+    }
+
+    /**
+     * Write a status or error message unless in quiet mode
+     */
+    private void message(String text) {
+        if (!quiet && !silent) {
+            out.println(text);
         }
-        String numStr = input.substring(startIndex).trim();
-        return Integer.parseInt(numStr);
     }
 
     /**
@@ -227,13 +1021,15 @@ public class RobotSimulator {
     public void start() {
         Scanner scanner = new Scanner(System.in);
 
-        System.out.println("=== Robot Floor Simulator ===");
-        System.out.println("Commands: U/D (pen up/down), L/R (turn left/right), M n (move n spaces)");
-        System.out.println("         P (print), C (current position), I n (initialize), H (history), Q (quit)");
-        System.out.println();
+        out.println("=== Robot Floor Simulator ===");
+        out.println("Commands: U/D (pen up/down), L/R (turn left/right), M n (move n spaces)");
+        out.println("         P [x y w h [k]] (print), C (current position), I n (initialize), H (history), Q (quit)");
+        out.println("         J n (jump to command n), UNDO, REDO, COVERAGE, TRIM, STATS, DIFF, LIVE,");
+        out.println("         REPEAT k [ ... ] (run U, D, R, L, M n and loops k times)");
+        out.println();
 
         while (running) {
-            System.out.print("> Enter command: ");
+            out.print("> Enter command: ");
             String input = scanner.nextLine();
             executeCommand(input);
         }
@@ -243,9 +1039,163 @@ public class RobotSimulator {
 
     /**
      * Main method
+     * With no arguments the interactive simulator is started. Batch mode:
+     * {@code --script <file> [--quiet]} runs a command script and reports the
+     * command count and elapsed time on standard error. {@code --serve <port>}
+     * accepts commands over TCP, one simulator session per connection.
+     * {@code --snapshot <file>} restores the session from the file if it exists and
+     * saves it there on exit, in interactive and batch mode. In those modes the session's
+     * metrics are published over JMX as {@code com.robotfloor:type=SimulatorMetrics}.
+     * {@code --floor-dir <directory>} maps every floor in a temporary file there.
+     * {@code --floor-file <file>} maps floors next to the file, resumes from the floor in it
+     * if it exists, and writes the floor back to it on exit, in interactive and batch mode.
      */
     public static void main(String[] args) {
-        RobotSimulator simulator = new RobotSimulator();
-        simulator.start();
+        Path script = null;
+        Path snapshot = null;
+        Path floorDir = null;
+        Path floorFile = null;
+        boolean quiet = false;
+        boolean usageError = false;
+        int port = -1;
+        for (int i = 0; i < args.length && !usageError; i++) {
+            if ("--script".equals(args[i]) && i + 1 < args.length) {
+                script = Paths.get(args[++i]);
+            } else if ("--snapshot".equals(args[i]) && i + 1 < args.length) {
+                snapshot = Paths.get(args[++i]);
+            } else if ("--floor-dir".equals(args[i]) && i + 1 < args.length) {
+                floorDir = Paths.get(args[++i]);
+            } else if ("--floor-file".equals(args[i]) && i + 1 < args.length) {
+                floorFile = Paths.get(args[++i]).toAbsolutePath();
+            } else if ("--quiet".equals(args[i])) {
+                quiet = true;
+            } else if ("--serve".equals(args[i]) && i + 1 < args.length) {
+                port = parsePort(args[++i]);
+                usageError = port < 0;
+            } else {
+                usageError = true;
+            }
+        }
+        if (usageError || (floorFile != null && (floorDir != null || snapshot != null))) {
+            System.err.println("Usage: RobotSimulator [--script <file> [--quiet]] [--snapshot <file>] [--serve <port>]"
+                    + " [--floor-dir <directory> | --floor-file <file>]");
+            System.err.println("       --floor-file cannot be combined with --floor-dir or --snapshot");
+            System.exit(2);
+        }
+        if (floorFile != null) {
+            floorDir = floorFile.getParent();
+        }
+        if (floorDir != null && !Files.isDirectory(floorDir)) {
+            System.err.println("Error: Not a directory: " + floorDir);
+            System.exit(2);
+        }
+
+        // Floors in memory-mapped files keep large floors and their checkpoints off the heap
+        IntFunction<Floor> floorFactory = floorDir == null ? PackedFloor::new : MappedFloor.factory(floorDir);
+        if (port >= 0) {
+            try (CommandServer server = new CommandServer(new InetSocketAddress(port), floorFactory)) {
+                System.err.println("Listening on port " + server.getPort());
+                server.run();
+            } catch (IOException e) {
+                System.err.println("Error: Cannot serve on port " + port + ": " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+
+        if (script == null) {
+            RobotSimulator simulator = new RobotSimulator(floorFactory);
+            publishMetrics(simulator, "interactive");
+            transferSnapshot(simulator, snapshot, false);
+            transferFloor(simulator, floorFile, false);
+            simulator.start();
+            transferSnapshot(simulator, snapshot, true);
+            transferFloor(simulator, floorFile, true);
+            simulator.close();
+            return;
+        }
+
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+        RobotSimulator simulator = new RobotSimulator(floorFactory, out);
+        simulator.setQuiet(quiet);
+        publishMetrics(simulator, "batch");
+        transferSnapshot(simulator, snapshot, false);
+        transferFloor(simulator, floorFile, false);
+        BatchRunner runner = new BatchRunner(simulator);
+        try {
+            runner.run(script);
+        } catch (IOException e) {
+            out.flush();
+            System.err.println("Error: Cannot read script " + script + ": " + e.getMessage());
+            System.exit(1);
+        }
+        out.flush();
+        System.err.println(runner.getSummary());
+        transferSnapshot(simulator, snapshot, true);
+        transferFloor(simulator, floorFile, true);
+        simulator.close();
+    }
+
+    /**
+     * Register a simulator's metrics on the platform MBean server; a failure only warns
+     */
+    static void publishMetrics(RobotSimulator simulator, String name) {
+        try {
+            simulator.getMetrics().register(name);
+        } catch (JMException e) {
+            System.err.println("Warning: Cannot publish metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Load a snapshot file if it exists, or save to it; exits on failure
+     */
+    private static void transferSnapshot(RobotSimulator simulator, Path snapshot, boolean save) {
+        if (snapshot == null || (!save && !Files.exists(snapshot))) {
+            return;
+        }
+        try {
+            if (save) {
+                simulator.saveSnapshot(snapshot);
+            } else {
+                simulator.loadSnapshot(snapshot);
+            }
+        } catch (IOException e) {
+            System.err.println("Error: Cannot " + (save ? "save" : "load") + " snapshot " + snapshot + ": "
+                    + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Resume from a floor file if it exists, or write the floor back to it; exits on failure
+     */
+    private static void transferFloor(RobotSimulator simulator, Path floorFile, boolean save) {
+        if (floorFile == null || (!save && !Files.exists(floorFile))) {
+            return;
+        }
+        try {
+            if (save) {
+                simulator.saveFloor(floorFile);
+            } else {
+                simulator.openFloor(floorFile);
+            }
+        } catch (IOException e) {
+            System.err.println("Error: Cannot " + (save ? "save" : "open") + " floor file " + floorFile + ": "
+                    + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Parse a TCP port number, returning -2 if it is not valid
+     */
+    private static int parsePort(String text) {
+        try {
+            int port = Integer.parseInt(text);
+            return port <= 65535 ? port : -2;
+        } catch (NumberFormatException e) {
+            return -2;
+        }
     }
 }
@@ -0,0 +1,402 @@
+package com.robotfloor;
+
+import java.util.Arrays;
+
+/**
+ * Floor that stores each row as a sorted list of marked intervals
+ * A row holds [start, end] pairs (both inclusive) in one int[], kept sorted, disjoint and
+ * non-adjacent: marking merges every interval the new cells touch, and getValue finds the
+ * covering interval by binary search. A straight trace of any length costs one interval
+ * per row, so memory follows the number of strokes rather than the floor area.
+ */
+public class RunLengthFloor extends Floor {
+
+    private static final int INITIAL_RUNS = 2;
+
+    private final int[][] rows;
+    private final int[] runCounts;
+
+    /**
+     * Constructor for RunLengthFloor
+     * @param size The size of the floor (N x N)
+     */
+    public RunLengthFloor(int size) {
+        super(size, false);
+        this.rows = new int[size][];
+        this.runCounts = new int[size];
+    }
+
+    /**
+     * Get a copy of the grid as an int[][] array
+     * The run-length floor has no int[][] of its own, so this allocates N x N ints
+     */
+    @Override
+    public int[][] getGrid() {
+        int size = getSize();
+        int[][] grid = new int[size][size];
+        for (int y = 0; y < size; y++) {
+            for (int i = 0; i < runCounts[y]; i++) {
+                Arrays.fill(grid[y], rows[y][i * 2], rows[y][i * 2 + 1] + 1, 1);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Mark a position on the floor
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     */
+    @Override
+    public void mark(int x, int y) {
+        if (isValidPosition(x, y)) {
+            markRange(y, x, x);
+        }
+    }
+
+    /**
+     * Remove the mark from a position on the floor, splitting its interval if needed
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     */
+    @Override
+    public void unmark(int x, int y) {
+        if (!isValidPosition(x, y)) {
+            return;
+        }
+        int[] row = rows[y];
+        int count = runCounts[y];
+        int i = firstEndingFrom(row, count, x);
+        if (i == count || row[i * 2] > x) {
+            return;
+        }
+        int start = row[i * 2];
+        int end = row[i * 2 + 1];
+        if (start == end) {
+            System.arraycopy(row, (i + 1) * 2, row, i * 2, (count - i - 1) * 2);
+            runCounts[y]--;
+        } else if (x == start) {
+            row[i * 2] = x + 1;
+        } else if (x == end) {
+            row[i * 2 + 1] = x - 1;
+        } else {
+            row[i * 2 + 1] = x - 1;
+            insert(y, i + 1, x + 1, end);
+        }
+        fireUnmarked(y, x >>> 6, 1L << x);
+    }
+
+    /**
+     * Mark a horizontal run of cells in one row, clipped to the floor
+     * @param y The Y coordinate of the row
+     * @param fromX One end of the run (inclusive)
+     * @param toX The other end of the run (inclusive)
+     */
+    @Override
+    public void markRow(int y, int fromX, int toX) {
+        if (y < 0 || y >= getSize()) {
+            return;
+        }
+        int lo = Math.max(Math.min(fromX, toX), 0);
+        int hi = Math.min(Math.max(fromX, toX), getSize() - 1);
+        if (lo <= hi) {
+            markRange(y, lo, hi);
+        }
+    }
+
+    /**
+     * Mark a vertical run of cells in one column, clipped to the floor
+     * @param x The X coordinate of the column
+     * @param fromY One end of the run (inclusive)
+     * @param toY The other end of the run (inclusive)
+     */
+    @Override
+    public void markColumn(int x, int fromY, int toY) {
+        if (x < 0 || x >= getSize()) {
+            return;
+        }
+        int lo = Math.max(Math.min(fromY, toY), 0);
+        int hi = Math.min(Math.max(fromY, toY), getSize() - 1);
+        for (int y = lo; y <= hi; y++) {
+            markRange(y, x, x);
+        }
+    }
+
+    /**
+     * Remove the marks from a horizontal run of cells in one row, clipped to the floor
+     * @param y The Y coordinate of the row
+     * @param fromX One end of the run (inclusive)
+     * @param toX The other end of the run (inclusive)
+     */
+    @Override
+    public void unmarkRow(int y, int fromX, int toX) {
+        if (y < 0 || y >= getSize()) {
+            return;
+        }
+        int lo = Math.max(Math.min(fromX, toX), 0);
+        int hi = Math.min(Math.max(fromX, toX), getSize() - 1);
+        if (lo <= hi) {
+            unmarkRange(y, lo, hi);
+        }
+    }
+
+    /**
+     * Remove the marks from a vertical run of cells in one column, clipped to the floor
+     * @param x The X coordinate of the column
+     * @param fromY One end of the run (inclusive)
+     * @param toY The other end of the run (inclusive)
+     */
+    @Override
+    public void unmarkColumn(int x, int fromY, int toY) {
+        if (x < 0 || x >= getSize()) {
+            return;
+        }
+        int lo = Math.max(Math.min(fromY, toY), 0);
+        int hi = Math.min(Math.max(fromY, toY), getSize() - 1);
+        for (int y = lo; y <= hi; y++) {
+            unmarkRange(y, x, x);
+        }
+    }
+
+    /**
+     * Get the value at a specific position
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     * @return 1 if marked, 0 if not marked
+     */
+    @Override
+    public int getValue(int x, int y) {
+        if (!isValidPosition(x, y)) {
+            return 0;
+        }
+        int i = firstEndingFrom(rows[y], runCounts[y], x);
+        return i < runCounts[y] && rows[y][i * 2] <= x ? 1 : 0;
+    }
+
+    /**
+     * Copy one row into a bit array, filling whole words for each interval
+     * @param y The Y coordinate of the row
+     * @param bits The target, at least (N + 63) / 64 longs
+     */
+    @Override
+    public void getRowBits(int y, long[] bits) {
+        Arrays.fill(bits, 0, (getSize() + 63) >>> 6, 0L);
+        int[] row = rows[y];
+        for (int i = 0; i < runCounts[y]; i++) {
+            int start = row[i * 2];
+            int end = row[i * 2 + 1];
+            for (int word = start >>> 6; word <= end >>> 6; word++) {
+                bits[word] |= wordMask(word, start, end);
+            }
+        }
+    }
+
+    /**
+     * Clear the floor by dropping every row's intervals
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(rows, null);
+        Arrays.fill(runCounts, 0);
+        fireCleared();
+    }
+
+    /**
+     * Create an independent copy of the floor with the same intervals
+     */
+    @Override
+    public RunLengthFloor copy() {
+        RunLengthFloor copy = new RunLengthFloor(getSize());
+        for (int y = 0; y < rows.length; y++) {
+            if (runCounts[y] > 0) {
+                copy.rows[y] = Arrays.copyOf(rows[y], runCounts[y] * 2);
+                copy.runCounts[y] = runCounts[y];
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Count the marked cells by adding up interval lengths
+     * @return The number of cells with value 1
+     */
+    @Override
+    public long countMarked() {
+        long count = 0;
+        for (int y = 0; y < rows.length; y++) {
+            for (int i = 0; i < runCounts[y]; i++) {
+                count += rows[y][i * 2 + 1] - rows[y][i * 2] + 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of intervals stored across all rows
+     */
+    public long getRunCount() {
+        long count = 0;
+        for (int runs : runCounts) {
+            count += runs;
+        }
+        return count;
+    }
+
+    /**
+     * Mark [lo, hi] in a row, merging every interval it overlaps or touches
+     */
+    private void markRange(int y, int lo, int hi) {
+        int[] row = rows[y];
+        int count = runCounts[y];
+        int first = firstEndingFrom(row, count, lo - 1);
+        int last = firstStartingAfter(row, count, hi + 1);
+        if (first == last) {
+            insert(y, first, lo, hi);
+            fireRange(y, lo, hi, true);
+            return;
+        }
+        if (last - first == 1 && row[first * 2] <= lo && row[first * 2 + 1] >= hi) {
+            return;
+        }
+        if (hasListeners()) {
+            // Report only the gaps between the intervals being merged
+            int cursor = lo;
+            for (int i = first; i < last && cursor <= hi; i++) {
+                if (row[i * 2] > cursor) {
+                    fireRange(y, cursor, Math.min(row[i * 2] - 1, hi), true);
+                }
+                cursor = Math.max(cursor, row[i * 2 + 1] + 1);
+            }
+            if (cursor <= hi) {
+                fireRange(y, cursor, hi, true);
+            }
+        }
+        row[first * 2] = Math.min(lo, row[first * 2]);
+        row[first * 2 + 1] = Math.max(hi, row[(last - 1) * 2 + 1]);
+        System.arraycopy(row, last * 2, row, (first + 1) * 2, (count - last) * 2);
+        runCounts[y] = count - (last - first - 1);
+    }
+
+    /**
+     * Remove [lo, hi] from a row, trimming the intervals at either end and dropping the
+     * ones in between
+     */
+    private void unmarkRange(int y, int lo, int hi) {
+        int[] row = rows[y];
+        int count = runCounts[y];
+        int first = firstEndingFrom(row, count, lo);
+        int last = firstStartingAfter(row, count, hi);
+        if (first >= last) {
+            return;
+        }
+        if (hasListeners()) {
+            for (int i = first; i < last; i++) {
+                fireRange(y, Math.max(row[i * 2], lo), Math.min(row[i * 2 + 1], hi), false);
+            }
+        }
+        int headStart = row[first * 2];
+        int tailEnd = row[(last - 1) * 2 + 1];
+        if (headStart < lo && tailEnd > hi && last - first == 1) {
+            row[first * 2 + 1] = lo - 1;
+            insert(y, first + 1, hi + 1, tailEnd);
+            return;
+        }
+        int index = first;
+        if (headStart < lo) {
+            row[index * 2 + 1] = lo - 1;
+            index++;
+        }
+        if (tailEnd > hi) {
+            row[index * 2] = hi + 1;
+            row[index * 2 + 1] = tailEnd;
+            index++;
+        }
+        System.arraycopy(row, last * 2, row, index * 2, (count - last) * 2);
+        runCounts[y] = count - (last - index);
+    }
+
+    /**
+     * Insert an interval at an index, growing the row if needed
+     */
+    private void insert(int y, int index, int start, int end) {
+        int[] row = rows[y];
+        int count = runCounts[y];
+        if (row == null) {
+            row = new int[INITIAL_RUNS * 2];
+            rows[y] = row;
+        } else if (count * 2 == row.length) {
+            row = Arrays.copyOf(row, row.length * 2);
+            rows[y] = row;
+        }
+        System.arraycopy(row, index * 2, row, (index + 1) * 2, (count - index) * 2);
+        row[index * 2] = start;
+        row[index * 2 + 1] = end;
+        runCounts[y] = count + 1;
+    }
+
+    /**
+     * Report [start, end] of a row to the listeners, one word at a time
+     */
+    private void fireRange(int y, int start, int end, boolean marked) {
+        if (!hasListeners()) {
+            return;
+        }
+        for (int word = start >>> 6; word <= end >>> 6; word++) {
+            if (marked) {
+                fireMarked(y, word, wordMask(word, start, end));
+            } else {
+                fireUnmarked(y, word, wordMask(word, start, end));
+            }
+        }
+    }
+
+    /**
+     * Get the bits of one row word that lie inside [start, end]
+     */
+    private static long wordMask(int word, int start, int end) {
+        long mask = -1L;
+        if (word == start >>> 6) {
+            mask &= -1L << start;
+        }
+        if (word == end >>> 6) {
+            mask &= -1L >>> (63 - (end & 63));
+        }
+        return mask;
+    }
+
+    /**
+     * Binary search for the first interval whose end is at or after x
+     * @return Its index, or count if there is none
+     */
+    private static int firstEndingFrom(int[] row, int count, int x) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (row[mid * 2 + 1] < x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Binary search for the first interval whose start is after x
+     * @return Its index, or count if there is none
+     */
+    private static int firstStartingAfter(int[] row, int count, int x) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (row[mid * 2] <= x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
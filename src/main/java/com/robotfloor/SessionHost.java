@@ -0,0 +1,200 @@
+package com.robotfloor;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Hosts many independent simulator sessions on a small pool of threads
+ * Each session has its own robot, floor and history, plus a queue of pending commands.
+ * Submitting a command schedules the session on the pool only if it is not already
+ * scheduled, and the worker drains the whole queue, so an idle session holds no thread
+ * and commands for one session always run in order. A command that fails with an
+ * unexpected exception is reported on that session's output and the session carries on.
+ */
+public class SessionHost implements AutoCloseable {
+
+    private final ExecutorService workers;
+    private final IntFunction<Floor> floorFactory;
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+
+    /**
+     * Constructor for SessionHost
+     * @param threads The number of worker threads shared by all sessions
+     * @param floorFactory Creates each session's floor on 'I n'
+     */
+    public SessionHost(int threads, IntFunction<Floor> floorFactory) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be greater than zero");
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "session-host-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.floorFactory = floorFactory;
+    }
+
+    /**
+     * Open a new session
+     * @param out Where the session's output is written
+     * @return The new session
+     */
+    public Session open(PrintStream out) {
+        long id = nextId.incrementAndGet();
+        Session session = new Session(id, new RobotSimulator(floorFactory, out), out);
+        sessions.put(id, session);
+        return session;
+    }
+
+    /**
+     * Get an open session by id, or null if there is none
+     */
+    public Session getSession(long id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * Get the number of open sessions
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Stop accepting commands, finish the queued ones and stop the workers
+     * Sessions still open keep their state; closing them releases their floors. An interrupt
+     * while waiting does not cut the wait short; it is restored once the workers have stopped.
+     */
+    @Override
+    public void close() {
+        workers.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * One simulator with its own input queue
+     */
+    public final class Session {
+
+        private final long id;
+        private final RobotSimulator simulator;
+        private final PrintStream out;
+        private final Queue<String> input = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private Session(long id, RobotSimulator simulator, PrintStream out) {
+            this.id = id;
+            this.simulator = simulator;
+            this.out = out;
+        }
+
+        /**
+         * Get the session id
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * Get the session's simulator
+         * Its state is only stable while no commands are pending.
+         */
+        public RobotSimulator getSimulator() {
+            return simulator;
+        }
+
+        /**
+         * Check if the session is still open ('Q' closes it)
+         */
+        public boolean isOpen() {
+            return sessions.get(id) == this;
+        }
+
+        /**
+         * Queue a command for the session; ignored once the session is closed
+         * @param command The command line
+         */
+        public void submit(String command) {
+            if (!isOpen()) {
+                return;
+            }
+            input.add(command);
+            if (scheduled.compareAndSet(false, true)) {
+                workers.execute(this::drain);
+            }
+        }
+
+        /**
+         * Close the session, dropping any commands not yet run
+         * Its floor is released once no worker is running its commands.
+         */
+        public void close() {
+            sessions.remove(id, this);
+            input.clear();
+            releaseIfClosed();
+        }
+
+        private void drain() {
+            do {
+                try {
+                    String command;
+                    while (simulator.isRunning() && (command = input.poll()) != null) {
+                        execute(command);
+                    }
+                    if (!simulator.isRunning()) {
+                        close();
+                    }
+                } finally {
+                    scheduled.set(false);
+                }
+                // Pick up a command queued after the last poll but before the flag was cleared
+            } while (!input.isEmpty() && isOpen() && scheduled.compareAndSet(false, true));
+            releaseIfClosed();
+        }
+
+        /**
+         * Release the simulator of a closed session from whichever thread takes the flag
+         * last; holding it for good keeps the session from being scheduled again
+         */
+        private void releaseIfClosed() {
+            if (!isOpen() && scheduled.compareAndSet(false, true)) {
+                simulator.close();
+            }
+        }
+
+        /**
+         * Run one command, reporting a failure to this session only
+         */
+        private void execute(String command) {
+            try {
+                simulator.executeCommand(command);
+            } catch (RuntimeException e) {
+                out.println("Error: Command failed: " + e);
+            }
+        }
+    }
+}
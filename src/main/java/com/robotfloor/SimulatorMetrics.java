@@ -0,0 +1,280 @@
+package com.robotfloor;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Per-command counters and latency histograms of one RobotSimulator
+ * Latencies go into fixed log-linear buckets: exact below 8 ns, then 8 buckets per power
+ * of two, so every bucket is within 12.5% of the values it holds, up to about 18 minutes.
+ * A command's histogram is allocated on its first sample, so a simulator pays only for the
+ * commands it runs; after that recording is a few array increments. The simulator also
+ * reports the cells that commands newly mark and unmark, counted from the traced segments.
+ * The counters are plain fields written by the simulator's thread, so values read over
+ * JMX may lag slightly behind. A reset from another thread swaps in fresh counters rather
+ * than clearing the ones the simulator may be writing.
+ */
+public class SimulatorMetrics implements SimulatorMetricsMXBean {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    /** Number of latency buckets; longer latencies go in the last one */
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    /**
+     * One generation of counters, replaced as a whole by {@link #reset()}
+     */
+    private static final class Counters {
+        final long[] counts = new long[CommandParser.OPCODE_COUNT];
+        final long[] maxNanos = new long[CommandParser.OPCODE_COUNT];
+        final long[][] latency = new long[CommandParser.OPCODE_COUNT][];
+        long cellsMarked;
+        long cellsUnmarked;
+        long replays;
+        long replayedCommands;
+        long replayTotalNanos;
+        long replayMaxNanos;
+        long[] replayLatency;
+    }
+
+    private volatile Counters counters = new Counters();
+
+    /**
+     * Get the histogram bucket of a latency
+     * @param nanos The latency in nanoseconds
+     */
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return nanos < 0 ? 0 : (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Get the largest latency held by a histogram bucket
+     * @param bucket The bucket index
+     */
+    static long bucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    /**
+     * Record one executed command
+     * @param opcode The command opcode from CommandParser
+     * @param nanos How long the command took
+     */
+    void recordCommand(int opcode, long nanos) {
+        Counters c = counters;
+        long[] histogram = c.latency[opcode];
+        if (histogram == null) {
+            histogram = new long[BUCKETS];
+            c.latency[opcode] = histogram;
+        }
+        histogram[bucket(nanos)]++;
+        c.counts[opcode]++;
+        if (nanos > c.maxNanos[opcode]) {
+            c.maxNanos[opcode] = nanos;
+        }
+    }
+
+    /**
+     * Record one history replay
+     * @param commands The number of commands re-run
+     * @param nanos How long the replay took
+     */
+    void recordReplay(long commands, long nanos) {
+        Counters c = counters;
+        long[] histogram = c.replayLatency;
+        if (histogram == null) {
+            histogram = new long[BUCKETS];
+            c.replayLatency = histogram;
+        }
+        histogram[bucket(nanos)]++;
+        c.replays++;
+        c.replayedCommands += commands;
+        c.replayTotalNanos += nanos;
+        if (nanos > c.replayMaxNanos) {
+            c.replayMaxNanos = nanos;
+        }
+    }
+
+    /**
+     * Record cells newly marked and unmarked by a command
+     * @param marked The number of cells marked
+     * @param unmarked The number of cells unmarked
+     */
+    void recordCells(long marked, long unmarked) {
+        Counters c = counters;
+        c.cellsMarked += marked;
+        c.cellsUnmarked += unmarked;
+    }
+
+    /**
+     * Get the number of times a command has run
+     * @param opcode The command opcode from CommandParser
+     */
+    public long getCount(int opcode) {
+        return counters.counts[opcode];
+    }
+
+    /**
+     * Get a latency percentile of a command, to the precision of its bucket
+     * @param opcode The command opcode from CommandParser
+     * @param percentile The percentile, from 0 to 100
+     * @return The latency in nanoseconds, or 0 if the command has not run
+     */
+    public long getPercentileNanos(int opcode, double percentile) {
+        Counters c = counters;
+        return percentile(c.latency[opcode], c.counts[opcode], c.maxNanos[opcode], percentile);
+    }
+
+    /**
+     * Get the largest latency of a command
+     * @param opcode The command opcode from CommandParser
+     * @return The latency in nanoseconds, or 0 if the command has not run
+     */
+    public long getMaxNanos(int opcode) {
+        return counters.maxNanos[opcode];
+    }
+
+    @Override
+    public long getCommandCount() {
+        long total = 0;
+        for (long count : counters.counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    @Override
+    public Map<String, Long> getCommandCounts() {
+        long[] counts = counters.counts;
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int opcode = 0; opcode < counts.length; opcode++) {
+            if (counts[opcode] > 0) {
+                result.put(CommandParser.name(opcode), counts[opcode]);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getMedianLatencyNanos() {
+        return percentiles(50);
+    }
+
+    @Override
+    public Map<String, Long> getP99LatencyNanos() {
+        return percentiles(99);
+    }
+
+    @Override
+    public Map<String, Long> getMaxLatencyNanos() {
+        Counters c = counters;
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int opcode = 0; opcode < c.counts.length; opcode++) {
+            if (c.counts[opcode] > 0) {
+                result.put(CommandParser.name(opcode), c.maxNanos[opcode]);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public long getCellsMarked() {
+        return counters.cellsMarked;
+    }
+
+    @Override
+    public long getCellsUnmarked() {
+        return counters.cellsUnmarked;
+    }
+
+    @Override
+    public long getReplayCount() {
+        return counters.replays;
+    }
+
+    @Override
+    public long getReplayedCommandCount() {
+        return counters.replayedCommands;
+    }
+
+    @Override
+    public long getReplayTotalNanos() {
+        return counters.replayTotalNanos;
+    }
+
+    @Override
+    public long getReplayP99Nanos() {
+        Counters c = counters;
+        return percentile(c.replayLatency, c.replays, c.replayMaxNanos, 99);
+    }
+
+    @Override
+    public long getReplayMaxNanos() {
+        return counters.replayMaxNanos;
+    }
+
+    @Override
+    public void reset() {
+        counters = new Counters();
+    }
+
+    /**
+     * Publish these metrics on the platform MBean server
+     * @param name The session name, used as the name key of the ObjectName
+     * @return The name the metrics are registered under
+     * @throws JMException If the name is malformed or already registered
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("com.robotfloor:type=SimulatorMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    private Map<String, Long> percentiles(double percentile) {
+        Counters c = counters;
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int opcode = 0; opcode < c.counts.length; opcode++) {
+            if (c.counts[opcode] > 0) {
+                result.put(CommandParser.name(opcode),
+                        percentile(c.latency[opcode], c.counts[opcode], c.maxNanos[opcode], percentile));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the bucket holding a percentile and report its upper bound, capped at the maximum
+     */
+    private static long percentile(long[] histogram, long count, long max, double percentile) {
+        // Another thread may see the count before the histogram it was recorded in
+        if (count == 0 || histogram == null) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += histogram[bucket];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(bucket), max);
+            }
+        }
+        return max;
+    }
+}
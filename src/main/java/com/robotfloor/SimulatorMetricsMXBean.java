@@ -0,0 +1,76 @@
+package com.robotfloor;
+
+import java.util.Map;
+
+/**
+ * Management interface of SimulatorMetrics, published on the platform MBean server
+ * Per-command maps are keyed by command name (e.g. "M" or "UNDO") and hold only
+ * commands that have run.
+ */
+public interface SimulatorMetricsMXBean {
+
+    /**
+     * Get the number of commands executed
+     */
+    long getCommandCount();
+
+    /**
+     * Get the number of commands executed, per command
+     */
+    Map<String, Long> getCommandCounts();
+
+    /**
+     * Get the median latency in nanoseconds, per command
+     */
+    Map<String, Long> getMedianLatencyNanos();
+
+    /**
+     * Get the 99th percentile latency in nanoseconds, per command
+     */
+    Map<String, Long> getP99LatencyNanos();
+
+    /**
+     * Get the largest latency in nanoseconds, per command
+     */
+    Map<String, Long> getMaxLatencyNanos();
+
+    /**
+     * Get the number of cells newly marked by commands
+     */
+    long getCellsMarked();
+
+    /**
+     * Get the number of cells unmarked by commands, e.g. by 'UNDO'
+     */
+    long getCellsUnmarked();
+
+    /**
+     * Get the number of history replays ('H', 'J' and stateAt)
+     */
+    long getReplayCount();
+
+    /**
+     * Get the number of commands re-run by history replays
+     */
+    long getReplayedCommandCount();
+
+    /**
+     * Get the total time spent in history replays, in nanoseconds
+     */
+    long getReplayTotalNanos();
+
+    /**
+     * Get the 99th percentile history replay time, in nanoseconds
+     */
+    long getReplayP99Nanos();
+
+    /**
+     * Get the longest history replay, in nanoseconds
+     */
+    long getReplayMaxNanos();
+
+    /**
+     * Set every counter and histogram back to zero
+     */
+    void reset();
+}
@@ -0,0 +1,322 @@
+package com.robotfloor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntFunction;
+
+/**
+ * Versioned binary snapshot of a simulator: floor, robot and encoded history
+ * The file is a 64-byte little-endian header followed by the floor as row-major packed
+ * words (the PackedFloor layout), the history entries as longs (header and operand, the
+ * CommandHistory encoding), the few commands kept as raw text and, for an unbounded floor,
+ * the marked words outside the N x N area as (key, bits) pairs. Saving writes the
+ * sections through a FileChannel in large buffers into a temporary file that replaces the
+ * target atomically; loading maps the file and copies each section in bulk, so no cell or
+ * command is parsed.
+ */
+final class SimulatorSnapshot {
+
+    static final int MAGIC = 0x50534E52; // "RNSP"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    /** Flag bit: the robot stands outside the N x N area, e.g. after walking off the floor */
+    static final int ROBOT_OUTSIDE = 8;
+
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+    private static final long MAP_WORDS = 1L << 27; // 1 GiB per mapping
+
+    private final Floor floor;
+    private final int initializedSize;
+
+    private SimulatorSnapshot(Floor floor, int initializedSize) {
+        this.floor = floor;
+        this.initializedSize = initializedSize;
+    }
+
+    /**
+     * Get the restored floor, or null if the simulator was not initialized
+     */
+    Floor getFloor() {
+        return floor;
+    }
+
+    /**
+     * Get the floor size of the last 'I', which the history replays from
+     */
+    int getInitializedSize() {
+        return initializedSize;
+    }
+
+    /**
+     * Write a snapshot file, replacing any existing file
+     * The snapshot is written to a temporary file in the same directory, forced to disk and
+     * then atomically moved over the target, so the old snapshot survives a failed save.
+     * @param file The snapshot file
+     * @param floor The floor, or null before the system is initialized
+     * @param robot The robot
+     * @param initializedSize The floor size of the last 'I'
+     * @param history The command history
+     * @throws IOException If the file cannot be written
+     */
+    static void write(Path file, Floor floor, Robot robot, int initializedSize, CommandHistory history)
+            throws IOException {
+        int size = floor == null ? 0 : floor.getSize();
+        long[] outside = floor instanceof SparseFloor ? ((SparseFloor) floor).getWordsOutside() : new long[0];
+        int rawCount = 0;
+        for (int i = 0; i < history.size(); i++) {
+            if (history.getRawCommand(i) != null) {
+                rawCount++;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        // Write beside the target and move it over, so a crash never leaves a half-written snapshot
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), "snapshot", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(initializedSize)
+                        .putInt(robot.getX()).putInt(robot.getY())
+                        .putInt(robot.getFacing().ordinal() | (robot.isPenDown() ? 4 : 0)
+                                | (isOutside(robot.getX(), robot.getY(), size) ? ROBOT_OUTSIDE : 0))
+                        .putInt(history.size()).putLong(history.getDroppedCount()).putInt(rawCount)
+                        .putInt(0).putLong(outside.length / 2);
+                buffer.position(HEADER_BYTES);
+
+                if (floor instanceof PackedFloor) {
+                    putWords(channel, buffer, ((PackedFloor) floor).words());
+                } else if (floor != null) {
+                    long[] row = new long[(size + 63) >>> 6];
+                    for (int y = 0; y < size; y++) {
+                        floor.getRowBits(y, row);
+                        putWords(channel, buffer, row);
+                    }
+                }
+
+                for (int i = 0; i < history.size(); i++) {
+                    ensureRoom(channel, buffer, 8);
+                    buffer.putLong(((long) history.getHeader(i) << 32) | (history.getOperand(i) & 0xFFFFFFFFL));
+                }
+                for (int i = 0; i < history.size(); i++) {
+                    String command = history.getRawCommand(i);
+                    if (command != null) {
+                        byte[] text = command.getBytes(StandardCharsets.UTF_8);
+                        ensureRoom(channel, buffer, 8);
+                        buffer.putInt(i).putInt(text.length);
+                        for (int offset = 0; offset < text.length; ) {
+                            ensureRoom(channel, buffer, 1);
+                            int length = Math.min(buffer.remaining(), text.length - offset);
+                            buffer.put(text, offset, length);
+                            offset += length;
+                        }
+                    }
+                }
+                putWords(channel, buffer, outside);
+                drain(channel, buffer);
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Read a snapshot file
+     * The robot and history are updated in place; the history keeps its own capacity and
+     * eviction policy.
+     * @param file The snapshot file
+     * @param floorFactory Creates the floor to restore into
+     * @param robot The robot to update
+     * @param history The history to replace
+     * @return The restored floor and initialization size
+     * @throws IOException If the file cannot be read or is not a valid snapshot
+     */
+    static SimulatorSnapshot read(Path file, IntFunction<Floor> floorFactory, Robot robot, CommandHistory history)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_BYTES) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported snapshot version " + header.getInt(4) + " in " + file);
+            }
+            int size = header.getInt(8);
+            int initializedSize = header.getInt(12);
+            int flags = header.getInt(24);
+            int count = header.getInt(28);
+            long dropped = header.getLong(32);
+            int rawCount = header.getInt(40);
+            long outsideCount = header.getLong(48);
+            int wordsPerRow = (size + 63) >>> 6;
+            long floorBytes = (long) wordsPerRow * size * 8;
+            int robotX = header.getInt(16);
+            int robotY = header.getInt(20);
+            if (size < 0 || count < 0 || rawCount < 0 || rawCount > count || dropped < 0 || outsideCount < 0
+                    || HEADER_BYTES + floorBytes + (long) count * 8 + (long) rawCount * 8 > fileSize) {
+                throw new IOException("Corrupt snapshot file: " + file);
+            }
+            // A position off the floor must match the flag written with it, or the file is damaged
+            if ((flags & ~(ROBOT_OUTSIDE | 7)) != 0 || size > 0
+                    && isOutside(robotX, robotY, size) != ((flags & ROBOT_OUTSIDE) != 0)) {
+                throw new IOException("Corrupt snapshot file: " + file);
+            }
+
+            Floor floor = null;
+            try {
+                if (size > 0) {
+                    floor = floorFactory.apply(size);
+                    // Whole rows per mapping, so a mapping never exceeds the 2 GiB buffer limit
+                    int rowsPerMap = (int) Math.max(1, Math.min(size, MAP_WORDS / wordsPerRow));
+                    for (int y = 0; y < size; y += rowsPerMap) {
+                        int rows = Math.min(rowsPerMap, size - y);
+                        MappedByteBuffer words = channel.map(FileChannel.MapMode.READ_ONLY,
+                                HEADER_BYTES + (long) y * wordsPerRow * 8, (long) rows * wordsPerRow * 8);
+                        loadRows(floor, words.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer(), y, rows);
+                    }
+                }
+
+                long historyStart = HEADER_BYTES + floorBytes;
+                ByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, historyStart, fileSize - historyStart)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                long[] entries = new long[count];
+                tail.asLongBuffer().get(entries);
+                tail.position(count * 8);
+                String[] raw = new String[count];
+                for (int i = 0; i < rawCount; i++) {
+                    if (tail.remaining() < 8) {
+                        throw new IOException("Corrupt snapshot file: " + file);
+                    }
+                    int index = tail.getInt();
+                    int length = tail.getInt();
+                    if (index < 0 || index >= count || length < 0 || length > tail.remaining()) {
+                        throw new IOException("Corrupt snapshot file: " + file);
+                    }
+                    byte[] text = new byte[length];
+                    tail.get(text);
+                    raw[index] = new String(text, StandardCharsets.UTF_8);
+                }
+                if (outsideCount > tail.remaining() / 16) {
+                    throw new IOException("Corrupt snapshot file: " + file);
+                }
+                // Marks outside N x N only exist on an unbounded floor; a bounded one drops them
+                if (floor != null && floor.isValidPosition(-1, -1)) {
+                    for (long i = 0; i < outsideCount; i++) {
+                        long key = tail.getLong();
+                        markWord(floor, (int) (key >> 32), (int) key, tail.getLong());
+                    }
+                }
+
+                history.clear();
+                for (int i = 0; i < count; i++) {
+                    history.addCommand(raw[i], (int) (entries[i] >>> 32), (int) entries[i]);
+                }
+                history.addDropped(dropped);
+                robot.setState(robotX, robotY, (flags & 4) != 0, Robot.Direction.values()[flags & 3]);
+                return new SimulatorSnapshot(floor, initializedSize);
+            } catch (IOException | RuntimeException e) {
+                Floor.release(floor);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Check whether a position is outside the N x N area of a floor
+     */
+    private static boolean isOutside(int x, int y, int size) {
+        return x < 0 || y < 0 || x >= size || y >= size;
+    }
+
+    /**
+     * Copy packed rows into a floor: straight into a PackedFloor's array, otherwise as one
+     * markRow per run of marked cells
+     */
+    private static void loadRows(Floor floor, LongBuffer words, int firstRow, int rows) {
+        int size = floor.getSize();
+        int wordsPerRow = (size + 63) >>> 6;
+        if (floor instanceof PackedFloor) {
+            words.get(((PackedFloor) floor).words(), firstRow * wordsPerRow, rows * wordsPerRow);
+            return;
+        }
+        for (int y = firstRow; y < firstRow + rows; y++) {
+            int runStart = -1;
+            for (int word = 0; word < wordsPerRow; word++) {
+                long bits = words.get();
+                int columns = size - (word << 6);
+                if (columns < 64) {
+                    bits &= -1L >>> (64 - columns);
+                }
+                // Jump from one run boundary to the next within the word
+                int bit = 0;
+                while (bit < 64) {
+                    long rest = (runStart < 0 ? bits : ~bits) >>> bit;
+                    if (rest == 0) {
+                        break;
+                    }
+                    bit += Long.numberOfTrailingZeros(rest);
+                    if (runStart < 0) {
+                        runStart = (word << 6) + bit;
+                    } else {
+                        floor.markRow(y, runStart, (word << 6) + bit - 1);
+                        runStart = -1;
+                    }
+                }
+            }
+            if (runStart >= 0) {
+                floor.markRow(y, runStart, size - 1);
+            }
+        }
+    }
+
+    /**
+     * Mark the set cells of one 64-cell word, one markRow per run
+     */
+    private static void markWord(Floor floor, int y, int word, long bits) {
+        int first = word << 6;
+        while (bits != 0) {
+            int from = Long.numberOfTrailingZeros(bits);
+            int to = from + Long.numberOfTrailingZeros(~(bits >>> from)) - 1;
+            floor.markRow(y, first + from, first + to);
+            bits &= to >= 63 ? 0L : -1L << (to + 1);
+        }
+    }
+
+    private static void putWords(FileChannel channel, ByteBuffer buffer, long[] words) throws IOException {
+        for (int offset = 0; offset < words.length; ) {
+            ensureRoom(channel, buffer, 8);
+            LongBuffer view = buffer.asLongBuffer();
+            int length = Math.min(view.remaining(), words.length - offset);
+            view.put(words, offset, length);
+            buffer.position(buffer.position() + length * 8);
+            offset += length;
+        }
+    }
+
+    private static void ensureRoom(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain(channel, buffer);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
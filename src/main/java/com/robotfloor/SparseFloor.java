@@ -0,0 +1,351 @@
+package com.robotfloor;
+
+import java.util.Arrays;
+
+/**
+ * Floor that allocates storage only where the robot has drawn
+ * Cells are grouped into 64 x 64 tiles (one long per tile row) that are created
+ * on first write, so memory follows the drawn area rather than the declared size.
+ * Coordinates are unbounded: marks outside [0, N) and negative coordinates are kept,
+ * while print() and toString() still show the declared N x N area.
+ */
+public class SparseFloor extends Floor {
+
+    static final int TILE_SHIFT = 6;
+    static final int TILE_SIZE = 1 << TILE_SHIFT;
+    static final int TILE_MASK = TILE_SIZE - 1;
+
+    private final TileMap tiles;
+
+    /**
+     * Constructor for SparseFloor
+     * @param size The declared size of the floor (N x N) used for printing
+     */
+    public SparseFloor(int size) {
+        super(size, false);
+        this.tiles = new TileMap();
+    }
+
+    /**
+     * Every coordinate is valid on an unbounded floor
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     * @return Always true
+     */
+    @Override
+    public boolean isValidPosition(int x, int y) {
+        return true;
+    }
+
+    /**
+     * Get a copy of the declared N x N area as an int[][] array
+     */
+    @Override
+    public int[][] getGrid() {
+        int size = getSize();
+        int[][] grid = new int[size][size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                grid[y][x] = getValue(x, y);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Mark a position on the floor, allocating its tile if needed
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     */
+    @Override
+    public void mark(int x, int y) {
+        markTileRow(x >> TILE_SHIFT, y, 1L << x);
+    }
+
+    /**
+     * Remove the mark from a position on the floor
+     * The tile stays allocated even if it becomes empty.
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     */
+    @Override
+    public void unmark(int x, int y) {
+        long[] tile = tiles.get(tileKey(x >> TILE_SHIFT, y >> TILE_SHIFT));
+        long bit = 1L << x;
+        if (tile != null && (tile[y & TILE_MASK] & bit) != 0) {
+            tile[y & TILE_MASK] &= ~bit;
+            fireUnmarked(y, x >> TILE_SHIFT, bit);
+        }
+    }
+
+    /**
+     * Mark a horizontal run of cells, one tile word at a time
+     * @param y The Y coordinate of the row
+     * @param fromX One end of the run (inclusive)
+     * @param toX The other end of the run (inclusive)
+     */
+    @Override
+    public void markRow(int y, int fromX, int toX) {
+        int lo = Math.min(fromX, toX);
+        int hi = Math.max(fromX, toX);
+        int firstTileX = lo >> TILE_SHIFT;
+        int lastTileX = hi >> TILE_SHIFT;
+        for (int tileX = firstTileX; tileX <= lastTileX; tileX++) {
+            long mask = -1L;
+            if (tileX == firstTileX) {
+                mask &= -1L << lo;
+            }
+            if (tileX == lastTileX) {
+                mask &= -1L >>> (TILE_MASK - (hi & TILE_MASK));
+            }
+            markTileRow(tileX, y, mask);
+        }
+    }
+
+    /**
+     * Mark a vertical run of cells, one tile at a time
+     * @param x The X coordinate of the column
+     * @param fromY One end of the run (inclusive)
+     * @param toY The other end of the run (inclusive)
+     */
+    @Override
+    public void markColumn(int x, int fromY, int toY) {
+        int lo = Math.min(fromY, toY);
+        int hi = Math.max(fromY, toY);
+        int firstTileY = lo >> TILE_SHIFT;
+        int lastTileY = hi >> TILE_SHIFT;
+        int tileX = x >> TILE_SHIFT;
+        long bit = 1L << x;
+        for (int tileY = firstTileY; tileY <= lastTileY; tileY++) {
+            long[] tile = tileFor(tileX, tileY);
+            int first = tileY == firstTileY ? lo & TILE_MASK : 0;
+            int last = tileY == lastTileY ? hi & TILE_MASK : TILE_MASK;
+            for (int row = first; row <= last; row++) {
+                long fresh = bit & ~tile[row];
+                if (fresh != 0) {
+                    tile[row] |= fresh;
+                    fireMarked((tileY << TILE_SHIFT) | row, tileX, fresh);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the marks from a horizontal run of cells in one row, one tile word at a time
+     * @param y The Y coordinate of the row
+     * @param fromX One end of the run (inclusive)
+     * @param toX The other end of the run (inclusive)
+     */
+    @Override
+    public void unmarkRow(int y, int fromX, int toX) {
+        int lo = Math.min(fromX, toX);
+        int hi = Math.max(fromX, toX);
+        int firstTileX = lo >> TILE_SHIFT;
+        int lastTileX = hi >> TILE_SHIFT;
+        for (int tileX = firstTileX; tileX <= lastTileX; tileX++) {
+            long[] tile = tiles.get(tileKey(tileX, y >> TILE_SHIFT));
+            if (tile == null) {
+                continue;
+            }
+            long mask = -1L;
+            if (tileX == firstTileX) {
+                mask &= -1L << lo;
+            }
+            if (tileX == lastTileX) {
+                mask &= -1L >>> (TILE_MASK - (hi & TILE_MASK));
+            }
+            long cleared = mask & tile[y & TILE_MASK];
+            if (cleared != 0) {
+                tile[y & TILE_MASK] &= ~cleared;
+                fireUnmarked(y, tileX, cleared);
+            }
+        }
+    }
+
+    /**
+     * Remove the marks from a vertical run of cells in one column, one tile at a time
+     * @param x The X coordinate of the column
+     * @param fromY One end of the run (inclusive)
+     * @param toY The other end of the run (inclusive)
+     */
+    @Override
+    public void unmarkColumn(int x, int fromY, int toY) {
+        int lo = Math.min(fromY, toY);
+        int hi = Math.max(fromY, toY);
+        int firstTileY = lo >> TILE_SHIFT;
+        int lastTileY = hi >> TILE_SHIFT;
+        int tileX = x >> TILE_SHIFT;
+        long bit = 1L << x;
+        for (int tileY = firstTileY; tileY <= lastTileY; tileY++) {
+            long[] tile = tiles.get(tileKey(tileX, tileY));
+            if (tile == null) {
+                continue;
+            }
+            int first = tileY == firstTileY ? lo & TILE_MASK : 0;
+            int last = tileY == lastTileY ? hi & TILE_MASK : TILE_MASK;
+            for (int row = first; row <= last; row++) {
+                if ((tile[row] & bit) != 0) {
+                    tile[row] &= ~bit;
+                    fireUnmarked((tileY << TILE_SHIFT) | row, tileX, bit);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the value at a specific position
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     * @return 1 if marked, 0 if not marked
+     */
+    @Override
+    public int getValue(int x, int y) {
+        long[] tile = tiles.get(tileKey(x >> TILE_SHIFT, y >> TILE_SHIFT));
+        if (tile == null) {
+            return 0;
+        }
+        return (int) (tile[y & TILE_MASK] >>> x) & 1;
+    }
+
+    /**
+     * Copy one row of the declared area into a bit array, one tile row per word
+     * @param y The Y coordinate of the row
+     * @param bits The target, at least (N + 63) / 64 longs
+     */
+    @Override
+    public void getRowBits(int y, long[] bits) {
+        int size = getSize();
+        int wordCount = (size + TILE_MASK) >>> TILE_SHIFT;
+        for (int tileX = 0; tileX < wordCount; tileX++) {
+            long[] tile = tiles.get(tileKey(tileX, y >> TILE_SHIFT));
+            bits[tileX] = tile == null ? 0L : tile[y & TILE_MASK];
+        }
+        if ((size & TILE_MASK) != 0) {
+            // Marks past the declared width are kept but not part of the N x N area
+            bits[wordCount - 1] &= -1L >>> (TILE_SIZE - (size & TILE_MASK));
+        }
+    }
+
+    /**
+     * Get 64 cells of one row, which is one tile row
+     * @param y The Y coordinate of the row
+     * @param word The index of the 64-cell word, i.e. the tile column
+     * @return The marked cells of the word, zero if its tile was never written
+     */
+    @Override
+    public long getWordBits(int y, int word) {
+        long[] tile = tiles.get(tileKey(word, y >> TILE_SHIFT));
+        return tile == null ? 0L : tile[y & TILE_MASK];
+    }
+
+    /**
+     * Clear the floor by dropping every tile
+     */
+    @Override
+    public void clear() {
+        tiles.clear();
+        fireCleared();
+    }
+
+    /**
+     * Create an independent copy of the floor, copying only the allocated tiles
+     */
+    @Override
+    public SparseFloor copy() {
+        SparseFloor copy = new SparseFloor(getSize());
+        long[] keys = tiles.keys();
+        long[][] slots = tiles.tiles();
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != null) {
+                copy.tiles.put(keys[i], slots[i].clone());
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Count every marked cell, including those outside the declared area
+     * @return The number of cells with value 1
+     */
+    @Override
+    public long countMarked() {
+        long count = 0;
+        for (long[] tile : tiles.tiles()) {
+            if (tile != null) {
+                for (long row : tile) {
+                    count += Long.bitCount(row);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the marked cells that lie outside the declared N x N area, one tile row at a time
+     * @return Pairs of a (y << 32 | word) key and that word's bits outside the area
+     */
+    long[] getWordsOutside() {
+        int size = getSize();
+        int wordCount = (size + TILE_MASK) >>> TILE_SHIFT;
+        long edgeMask = (size & TILE_MASK) == 0 ? 0L : -1L << (size & TILE_MASK);
+        long[] keys = tiles.keys();
+        long[][] slots = tiles.tiles();
+        long[] words = new long[16];
+        int count = 0;
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] == null) {
+                continue;
+            }
+            int tileX = (int) keys[i];
+            int tileY = (int) (keys[i] >> 32);
+            for (int row = 0; row < TILE_SIZE; row++) {
+                int y = (tileY << TILE_SHIFT) | row;
+                long bits = slots[i][row];
+                if (y >= 0 && y < size && tileX >= 0 && tileX < wordCount) {
+                    bits &= tileX == wordCount - 1 ? edgeMask : 0L;
+                }
+                if (bits != 0) {
+                    if (count == words.length) {
+                        words = Arrays.copyOf(words, count * 2);
+                    }
+                    words[count++] = ((long) y << 32) | (tileX & 0xFFFFFFFFL);
+                    words[count++] = bits;
+                }
+            }
+        }
+        return Arrays.copyOf(words, count);
+    }
+
+    /**
+     * Get the number of allocated tiles
+     */
+    public int getTileCount() {
+        return tiles.size();
+    }
+
+    /**
+     * OR bits into one tile row and report the ones that were not already set
+     */
+    private void markTileRow(int tileX, int y, long bits) {
+        long[] tile = tileFor(tileX, y >> TILE_SHIFT);
+        long fresh = bits & ~tile[y & TILE_MASK];
+        if (fresh != 0) {
+            tile[y & TILE_MASK] |= fresh;
+            fireMarked(y, tileX, fresh);
+        }
+    }
+
+    private long[] tileFor(int tileX, int tileY) {
+        long key = tileKey(tileX, tileY);
+        long[] tile = tiles.get(key);
+        if (tile == null) {
+            tile = new long[TILE_SIZE];
+            tiles.put(key, tile);
+        }
+        return tile;
+    }
+
+    static long tileKey(int tileX, int tileY) {
+        return ((long) tileY << 32) | (tileX & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,109 @@
+package com.robotfloor;
+
+/**
+ * Open-addressing hash map from primitive long keys to tiles (long[] rows)
+ * Used by SparseFloor so tile lookups do not box their keys
+ */
+class TileMap {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] keys;
+    private long[][] tiles;
+    private int count;
+
+    /**
+     * Constructor for TileMap
+     */
+    TileMap() {
+        this.keys = new long[INITIAL_CAPACITY];
+        this.tiles = new long[INITIAL_CAPACITY][];
+    }
+
+    /**
+     * Get the tile stored under a key
+     * @param key The tile key
+     * @return The tile, or null if none was stored
+     */
+    long[] get(long key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (tiles[slot] != null) {
+            if (keys[slot] == key) {
+                return tiles[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Store a tile under a key that is not yet present
+     * @param key The tile key
+     * @param tile The tile to store
+     */
+    void put(long key, long[] tile) {
+        if ((count + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        insert(keys, tiles, key, tile);
+        count++;
+    }
+
+    /**
+     * Get the number of tiles in the map
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Get the raw tile slots; empty slots are null
+     */
+    long[][] tiles() {
+        return tiles;
+    }
+
+    /**
+     * Get the raw key slots, parallel to {@link #tiles()}
+     */
+    long[] keys() {
+        return keys;
+    }
+
+    /**
+     * Remove all tiles
+     */
+    void clear() {
+        this.keys = new long[INITIAL_CAPACITY];
+        this.tiles = new long[INITIAL_CAPACITY][];
+        this.count = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] newKeys = new long[capacity];
+        long[][] newTiles = new long[capacity][];
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] != null) {
+                insert(newKeys, newTiles, keys[i], tiles[i]);
+            }
+        }
+        this.keys = newKeys;
+        this.tiles = newTiles;
+    }
+
+    private static void insert(long[] keys, long[][] tiles, long key, long[] tile) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (tiles[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        tiles[slot] = tile;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,239 @@
+package com.robotfloor;
+
+import java.util.Arrays;
+
+/**
+ * Cell-delta log behind 'UNDO'
+ * For each command it keeps the robot state before the command and the runs of cells the
+ * command newly marked, so undoing a command clears only those cells, a run at a time,
+ * instead of rebuilding the floor from the history. When the log is full the oldest half is discarded.
+ */
+class UndoLog {
+
+    private static final int ENTRY_INTS = 4;
+    private static final int SPAN_INTS = 4;
+
+    private final int maxEntries;
+    private int[] entries;
+    private int count;
+    private int[] spans;
+    private int spanCount;
+    private long clearedCount;
+
+    /**
+     * Constructor for UndoLog
+     * @param maxEntries The number of commands that can be undone
+     */
+    UndoLog(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Undo depth must be greater than zero");
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new int[16 * ENTRY_INTS];
+        this.spans = new int[16 * SPAN_INTS];
+    }
+
+    /**
+     * Get the number of commands in the log
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Start a new entry holding the robot state before a command
+     * @param robot The robot, before the command runs
+     */
+    void begin(Robot robot) {
+        if (count == maxEntries) {
+            discardOldestHalf();
+        }
+        if ((count + 1) * ENTRY_INTS > entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+        }
+        int base = count * ENTRY_INTS;
+        entries[base] = robot.getX();
+        entries[base + 1] = robot.getY();
+        entries[base + 2] = robot.getFacing().ordinal() | (robot.isPenDown() ? 4 : 0);
+        entries[base + 3] = spanCount;
+        count++;
+    }
+
+    /**
+     * Record the cells of a straight segment that are not yet marked, before it is marked
+     * The segment is clipped to the floor first, then read one 64-cell word at a time along
+     * a row or one word per row along a column; the cells are added to the current entry
+     * as runs.
+     * @param floor The floor, before the segment is marked
+     * @param fromX The X coordinate of one end (inclusive)
+     * @param fromY The Y coordinate of one end (inclusive)
+     * @param toX The X coordinate of the other end (inclusive)
+     * @param toY The Y coordinate of the other end (inclusive)
+     * @return The number of cells recorded, which the segment will newly mark
+     */
+    long recordUnmarked(Floor floor, int fromX, int fromY, int toX, int toY) {
+        // Unbounded floors such as SparseFloor keep marks at any int coordinate
+        boolean bounded = !floor.isValidPosition(-1, -1);
+        int low = bounded ? 0 : Integer.MIN_VALUE;
+        int high = bounded ? floor.getSize() - 1 : Integer.MAX_VALUE;
+        int minX = Math.max(Math.min(fromX, toX), low);
+        int maxX = Math.min(Math.max(fromX, toX), high);
+        int minY = Math.max(Math.min(fromY, toY), low);
+        int maxY = Math.min(Math.max(fromY, toY), high);
+        if (minX > maxX || minY > maxY) {
+            return 0;
+        }
+        if (minY == maxY) {
+            return recordRow(floor, minY, minX, maxX);
+        }
+        return recordColumn(floor, minX, minY, maxY);
+    }
+
+    private long recordRow(Floor floor, int y, int fromX, int toX) {
+        long cells = 0;
+        long runStart = 0;
+        boolean inRun = false;
+        for (int word = fromX >> 6; word <= toX >> 6; word++) {
+            long range = -1L;
+            if (word == fromX >> 6) {
+                range &= -1L << fromX;
+            }
+            if (word == toX >> 6) {
+                range &= -1L >>> (63 - (toX & 63));
+            }
+            long fresh = ~floor.getWordBits(y, word) & range;
+            long stale = ~fresh & range;
+            long first = (long) word << 6;
+            // Alternate between the next fresh and the next stale cell of the word
+            int bit = Long.numberOfTrailingZeros(range);
+            while (bit < 64) {
+                long rest = -1L << bit;
+                if (inRun) {
+                    if ((stale & rest) == 0) {
+                        break;
+                    }
+                    bit = Long.numberOfTrailingZeros(stale & rest);
+                    cells += addSpan((int) runStart, y, (int) (first + bit - 1), y);
+                    inRun = false;
+                } else {
+                    if ((fresh & rest) == 0) {
+                        break;
+                    }
+                    bit = Long.numberOfTrailingZeros(fresh & rest);
+                    runStart = first + bit;
+                    inRun = true;
+                }
+            }
+        }
+        if (inRun) {
+            cells += addSpan((int) runStart, y, toX, y);
+        }
+        return cells;
+    }
+
+    private long recordColumn(Floor floor, int x, int fromY, int toY) {
+        long cells = 0;
+        int word = x >> 6;
+        long bit = 1L << x;
+        long runStart = 0;
+        boolean inRun = false;
+        // long counter so a column ending at Integer.MAX_VALUE terminates
+        for (long y = fromY; y <= toY; y++) {
+            boolean fresh = (floor.getWordBits((int) y, word) & bit) == 0;
+            if (fresh && !inRun) {
+                runStart = y;
+                inRun = true;
+            } else if (!fresh && inRun) {
+                cells += addSpan(x, (int) runStart, x, (int) (y - 1));
+                inRun = false;
+            }
+        }
+        if (inRun) {
+            cells += addSpan(x, (int) runStart, x, toY);
+        }
+        return cells;
+    }
+
+    /**
+     * Undo the newest entry: clear the cells it marked and restore the robot
+     * @param floor The floor to clear cells on
+     * @param robot The robot to restore
+     * @return True if the command changed the robot or the floor
+     */
+    boolean undo(Floor floor, Robot robot) {
+        count--;
+        int base = count * ENTRY_INTS;
+        int firstSpan = entries[base + 3];
+        boolean changed = spanCount > firstSpan;
+        clearedCount = 0;
+        for (int s = spanCount - 1; s >= firstSpan; s--) {
+            clearedCount += clearSpan(floor, s * SPAN_INTS);
+        }
+        spanCount = firstSpan;
+
+        int flags = entries[base + 2];
+        Robot.Direction facing = Robot.Direction.values()[flags & 3];
+        boolean penDown = (flags & 4) != 0;
+        changed |= robot.getX() != entries[base] || robot.getY() != entries[base + 1]
+                || robot.getFacing() != facing || robot.isPenDown() != penDown;
+        robot.setState(entries[base], entries[base + 1], penDown, facing);
+        return changed;
+    }
+
+    /**
+     * Get the number of cells the last undo cleared
+     */
+    long getClearedCount() {
+        return clearedCount;
+    }
+
+    /**
+     * Drop every entry
+     */
+    void clear() {
+        count = 0;
+        spanCount = 0;
+    }
+
+    /**
+     * Append a run to the current entry
+     * @return The number of cells in the run
+     */
+    private long addSpan(int fromX, int fromY, int toX, int toY) {
+        if ((spanCount + 1) * SPAN_INTS > spans.length) {
+            spans = Arrays.copyOf(spans, spans.length * 2);
+        }
+        int base = spanCount * SPAN_INTS;
+        spans[base] = fromX;
+        spans[base + 1] = fromY;
+        spans[base + 2] = toX;
+        spans[base + 3] = toY;
+        spanCount++;
+        return Math.max(Math.abs((long) toX - fromX), Math.abs((long) toY - fromY)) + 1;
+    }
+
+    private long clearSpan(Floor floor, int base) {
+        int fromX = spans[base];
+        int fromY = spans[base + 1];
+        int toX = spans[base + 2];
+        int toY = spans[base + 3];
+        if (fromY == toY) {
+            floor.unmarkRow(fromY, fromX, toX);
+        } else {
+            floor.unmarkColumn(fromX, fromY, toY);
+        }
+        return Math.max(Math.abs((long) toX - fromX), Math.abs((long) toY - fromY)) + 1;
+    }
+
+    private void discardOldestHalf() {
+        int keepFrom = count / 2;
+        int spanShift = entries[keepFrom * ENTRY_INTS + 3];
+        System.arraycopy(entries, keepFrom * ENTRY_INTS, entries, 0, (count - keepFrom) * ENTRY_INTS);
+        count -= keepFrom;
+        for (int i = 0; i < count; i++) {
+            entries[i * ENTRY_INTS + 3] -= spanShift;
+        }
+        System.arraycopy(spans, spanShift * SPAN_INTS, spans, 0, (spanCount - spanShift) * SPAN_INTS);
+        spanCount -= spanShift;
+    }
+}
@@ -0,0 +1,92 @@
+package com.robotfloor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for BatchRunner class
+ */
+public class BatchRunnerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ByteArrayOutputStream outputStream;
+    private RobotSimulator simulator;
+    private BatchRunner runner;
+
+    @BeforeEach
+    public void setUp() {
+        outputStream = new ByteArrayOutputStream();
+        simulator = new RobotSimulator(PackedFloor::new, new PrintStream(outputStream));
+        runner = new BatchRunner(simulator);
+    }
+
+    private Path script(String... lines) throws IOException {
+        return Files.write(tempDir.resolve("script.txt"), Arrays.asList(lines));
+    }
+
+    @Test
+    public void testRunsScriptUntilQuit() throws IOException {
+        long executed = runner.run(script("I 5", "", "D", "M 2", "C", "Q", "C"));
+
+        assertEquals(5, executed, "Blank lines and commands after Q should be skipped");
+        assertEquals(5, runner.getCommandCount());
+        assertFalse(simulator.isRunning());
+        String output = outputStream.toString();
+        assertTrue(output.contains("Position: 0, 2 - Pen: down - Facing: north"));
+        assertTrue(output.contains("Program ended."));
+    }
+
+    @Test
+    public void testQuietModeOnlyEmitsPrintAndPosition() throws IOException {
+        simulator.setQuiet(true);
+        runner.run(script("I 3", "Z", "D", "M 1", "P", "C", "Q"));
+
+        Floor expectedFloor = new Floor(3);
+        expectedFloor.markColumn(0, 0, 1);
+        String expected = expectedFloor.toString().replace("\n", System.lineSeparator())
+                + "Position: 0, 1 - Pen: down - Facing: north" + System.lineSeparator();
+        assertEquals(expected, outputStream.toString());
+    }
+
+    @Test
+    public void testSummaryReportsCountAndTime() throws IOException {
+        runner.run(script("I 4", "R", "L"));
+        runner.run(script("C"));
+
+        assertEquals(4, runner.getCommandCount(), "Counts should accumulate across runs");
+        assertTrue(runner.getElapsedNanos() > 0);
+        assertTrue(runner.getSummary().startsWith("Executed 4 commands in "));
+    }
+
+    @Test
+    public void testSummaryIgnoresDefaultLocale() throws IOException {
+        runner.run(script("I 4"));
+        Locale original = Locale.getDefault();
+        Locale.setDefault(Locale.GERMANY);
+        try {
+            assertTrue(runner.getSummary().matches("Executed 1 commands in \\d+\\.\\d{3} ms"), runner.getSummary());
+        } finally {
+            Locale.setDefault(original);
+        }
+    }
+
+    @Test
+    public void testMissingScript() {
+        assertThrows(IOException.class, () -> runner.run(tempDir.resolve("missing.txt")));
+    }
+}
@@ -1,9 +1,14 @@
 package com.robotfloor;
 
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -111,4 +116,110 @@ public class CommandHistoryTest {
         assertNotNull(output);
         assertTrue(output.contains("CommandHistory"));
     }
+
+    @Test
+    public void testNonCanonicalTextIsPreserved() {
+        String[] commands = {"m 5", "M  5", "M 05", "M -0", "M bad", "Zebra", "D extra", "I -7", "M 0", "M -12"};
+        for (String cmd : commands) {
+            history.addCommand(cmd);
+        }
+        for (int i = 0; i < commands.length; i++) {
+            assertEquals(commands[i], history.getCommand(i), "Command text should round-trip exactly");
+        }
+    }
+
+    @Test
+    public void testEncodedAccessors() {
+        history.addCommand("M 12");
+        history.addCommand("q");
+        assertEquals(CommandParser.MOVE, history.getOpcode(0));
+        assertEquals(12, history.getOperand(0));
+        assertEquals(CommandParser.QUIT, history.getOpcode(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> history.getCommand(2));
+    }
+
+    @Test
+    public void testBoundedHistoryDropsOldest() {
+        CommandHistory bounded = new CommandHistory(3, CommandHistory.EvictionPolicy.DROP_OLDEST);
+        for (int i = 1; i <= 40; i++) {
+            bounded.addCommand("M " + i);
+        }
+        assertEquals(3, bounded.size());
+        assertEquals(3, bounded.getCapacity());
+        assertEquals("M 38", bounded.getCommand(0));
+        assertEquals("M 40", bounded.getCommand(2));
+    }
+
+    @Test
+    public void testBoundedHistoryRejectsNewest() {
+        CommandHistory bounded = new CommandHistory(2, CommandHistory.EvictionPolicy.REJECT_NEWEST);
+        bounded.addCommand("U");
+        bounded.addCommand("d");
+        bounded.addCommand("R");
+        assertEquals(2, bounded.size());
+        assertEquals("d", bounded.getCommand(1));
+        assertEquals(CommandHistory.EvictionPolicy.REJECT_NEWEST, bounded.getEvictionPolicy());
+        assertThrows(IllegalArgumentException.class,
+                () -> new CommandHistory(0, CommandHistory.EvictionPolicy.DROP_OLDEST));
+    }
+
+    @Test
+    public void testGrowthKeepsOrderAfterWrapAround() {
+        CommandHistory bounded = new CommandHistory(100, CommandHistory.EvictionPolicy.DROP_OLDEST);
+        for (int i = 0; i < 60; i++) {
+            bounded.addCommand(i % 2 == 0 ? "M " + i : "m " + i);
+        }
+        for (int i = 0; i < 60; i++) {
+            assertEquals(i % 2 == 0 ? "M " + i : "m " + i, bounded.getCommand(i));
+        }
+    }
+
+    @Test
+    public void testViewAndIteratorAreLiveAndReadOnly() {
+        List<String> view = history.view();
+        history.addCommand("U");
+        history.addCommand("M 2");
+        assertEquals(2, view.size(), "View should reflect later additions");
+        assertEquals("M 2", view.get(1));
+        assertThrows(UnsupportedOperationException.class, () -> view.add("D"));
+
+        Iterator<String> iterator = history.iterator();
+        assertEquals("U", iterator.next());
+        assertEquals("M 2", iterator.next());
+        assertFalse(iterator.hasNext());
+        assertThrows(NoSuchElementException.class, iterator::next);
+    }
+
+    @Test
+    public void testTruncate() {
+        history.addCommand("I 10");
+        history.addCommand("m 3");
+        history.addCommand("R");
+        history.truncate(1);
+        history.addCommand("L");
+
+        assertEquals(2, history.size());
+        assertEquals("L", history.getCommand(1), "Truncated entries should not leak into new ones");
+        assertThrows(IndexOutOfBoundsException.class, () -> history.truncate(3));
+    }
+
+    @Test
+    public void testDroppedCount() {
+        CommandHistory bounded = new CommandHistory(2, CommandHistory.EvictionPolicy.DROP_OLDEST);
+        bounded.addCommand("U");
+        bounded.addCommand("D");
+        bounded.addCommand("R");
+        assertEquals(1, bounded.getDroppedCount());
+        bounded.clear();
+        assertEquals(0, bounded.getDroppedCount(), "Clearing should reset the dropped count");
+    }
+
+    @Test
+    public void testKeywordCommandsKeepTheirName() {
+        CommandHistory keywords = new CommandHistory();
+        keywords.addCommand("COVERAGE");
+        keywords.addCommand("trim");
+        keywords.addCommand(null, CommandProgram.header(CommandParser.TRIM, CommandParser.OK, 't'), 0);
+        assertEquals(Arrays.asList("COVERAGE", "trim", "TRIM"), keywords.getCommands());
+    }
 }
@@ -0,0 +1,191 @@
+package com.robotfloor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for CommandParser class
+ */
+public class CommandParserTest {
+
+    private CommandParser parser;
+
+    @BeforeEach
+    public void setUp() {
+        parser = new CommandParser();
+    }
+
+    @Test
+    public void testSingleLetterCommands() {
+        String letters = "UDRLPCQH";
+        int[] opcodes = {CommandParser.PEN_UP, CommandParser.PEN_DOWN, CommandParser.TURN_RIGHT,
+            CommandParser.TURN_LEFT, CommandParser.PRINT, CommandParser.POSITION, CommandParser.QUIT,
+            CommandParser.HISTORY};
+        for (int i = 0; i < letters.length(); i++) {
+            assertEquals(CommandParser.OK, parser.parse(letters.substring(i, i + 1)));
+            assertEquals(opcodes[i], parser.getOpcode());
+            assertEquals(CommandParser.OK, parser.parse(letters.substring(i, i + 1).toLowerCase()));
+            assertEquals(opcodes[i], parser.getOpcode(), "Commands should be case-insensitive");
+        }
+    }
+
+    @Test
+    public void testTrailingTextIsIgnoredForCommandsWithoutOperand() {
+        assertEquals(CommandParser.OK, parser.parse("  Down please "));
+        assertEquals(CommandParser.PEN_DOWN, parser.getOpcode());
+    }
+
+    @Test
+    public void testIntegerOperands() {
+        assertEquals(CommandParser.OK, parser.parse(" m 15 "));
+        assertEquals(CommandParser.MOVE, parser.getOpcode());
+        assertEquals(15, parser.getOperand());
+
+        assertEquals(CommandParser.OK, parser.parse("I10"));
+        assertEquals(CommandParser.INITIALIZE, parser.getOpcode());
+        assertEquals(10, parser.getOperand());
+
+        assertEquals(CommandParser.OK, parser.parse("M +7"));
+        assertEquals(7, parser.getOperand());
+        assertEquals(CommandParser.OK, parser.parse("M -3"));
+        assertEquals(-3, parser.getOperand());
+        assertEquals(CommandParser.OK, parser.parse("M 2147483647"));
+        assertEquals(Integer.MAX_VALUE, parser.getOperand());
+        assertEquals(CommandParser.OK, parser.parse("M -2147483648"));
+        assertEquals(Integer.MIN_VALUE, parser.getOperand());
+    }
+
+    @Test
+    public void testOperandErrorsAreReturnedAsStatus() {
+        assertEquals(CommandParser.MISSING_OPERAND, parser.parse("M"));
+        assertEquals(CommandParser.MOVE, parser.getOpcode(), "Opcode should still be reported");
+        assertEquals(CommandParser.MISSING_OPERAND, parser.parse("I   "));
+        assertEquals(CommandParser.INVALID_OPERAND, parser.parse("M bad"));
+        assertEquals(CommandParser.INVALID_OPERAND, parser.parse("M -"));
+        assertEquals(CommandParser.INVALID_OPERAND, parser.parse("M 1 2"));
+        assertEquals(CommandParser.INVALID_OPERAND, parser.parse("I 2147483648"));
+        assertEquals(CommandParser.INVALID_OPERAND, parser.parse("I -2147483649"));
+    }
+
+    @Test
+    public void testEmptyAndUnknownInput() {
+        assertEquals(CommandParser.EMPTY, parser.parse(""));
+        assertEquals(CommandParser.EMPTY, parser.parse(" \t "));
+        assertEquals(CommandParser.UNKNOWN_COMMAND, parser.parse("Zebra"));
+        assertEquals(CommandParser.UNKNOWN, parser.getOpcode());
+        assertEquals('z', parser.getLetter());
+    }
+
+    @Test
+    public void testParseRegionOfCharSequence() {
+        String script = "D\nM 12\nC";
+        assertEquals(CommandParser.OK, parser.parse(script, 2, 6));
+        assertEquals(CommandParser.MOVE, parser.getOpcode());
+        assertEquals(12, parser.getOperand());
+    }
+
+    @Test
+    public void testParseRegionOfByteBuffer() {
+        ByteBuffer buffer = ByteBuffer.wrap("I 8\nm 300\n".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(CommandParser.OK, parser.parse(buffer, 0, 3));
+        assertEquals(CommandParser.INITIALIZE, parser.getOpcode());
+        assertEquals(8, parser.getOperand());
+        assertEquals(CommandParser.OK, parser.parse(buffer, 4, 10));
+        assertEquals(CommandParser.MOVE, parser.getOpcode());
+        assertEquals(300, parser.getOperand());
+        assertEquals(0, buffer.position(), "Buffer position should not change");
+    }
+
+    @Test
+    public void testJumpTakesOperand() {
+        assertEquals(CommandParser.OK, parser.parse("j 12"));
+        assertEquals(CommandParser.JUMP, parser.getOpcode());
+        assertEquals(12, parser.getOperand());
+        assertEquals(CommandParser.MISSING_OPERAND, parser.parse("J"));
+    }
+
+    @Test
+    public void testKeywords() {
+        assertEquals(CommandParser.OK, parser.parse("  undo "));
+        assertEquals(CommandParser.UNDO, parser.getOpcode());
+        assertEquals(CommandParser.OK, parser.parse("ReDo"));
+        assertEquals(CommandParser.REDO, parser.getOpcode());
+        parser.parse("UP");
+        assertEquals(CommandParser.PEN_UP, parser.getOpcode(), "Other words still go by their first letter");
+        parser.parse("UNDONE");
+        assertEquals(CommandParser.PEN_UP, parser.getOpcode());
+        assertEquals(CommandParser.OK, parser.parse("Coverage"));
+        assertEquals(CommandParser.COVERAGE, parser.getOpcode());
+        assertEquals(CommandParser.OK, parser.parse("trim"));
+        assertEquals(CommandParser.TRIM, parser.getOpcode());
+        assertEquals(CommandParser.OK, parser.parse("STATS"));
+        assertEquals(CommandParser.STATS, parser.getOpcode());
+        parser.parse("diff");
+        assertEquals(CommandParser.DIFF, parser.getOpcode());
+        parser.parse("Live");
+        assertEquals(CommandParser.LIVE, parser.getOpcode());
+        parser.parse("Cat");
+        assertEquals(CommandParser.POSITION, parser.getOpcode());
+    }
+
+    @Test
+    public void testByteRegionDecodesSubSequences() {
+        ByteBuffer buffer = ByteBuffer.wrap("M 12\u00e9".getBytes(StandardCharsets.ISO_8859_1));
+        buffer.limit(4);
+        CommandParser.ByteRegion region = new CommandParser.ByteRegion(buffer);
+        assertEquals("12", region.subSequence(2, 4));
+        assertEquals("", region.subSequence(4, 4));
+        assertEquals("M 12", region.toString());
+        assertThrows(IndexOutOfBoundsException.class, () -> region.subSequence(3, 5), "Past the limit");
+        assertThrows(IndexOutOfBoundsException.class, () -> region.subSequence(2, 1));
+        buffer.limit(5);
+        assertEquals("\u00e9", region.subSequence(4, 5), "Bytes decode as Latin-1");
+    }
+
+    @Test
+    public void testRepeatTakesItsCount() {
+        assertEquals(CommandParser.OK, parser.parse("REPEAT 12 [M 1 R]"));
+        assertEquals(CommandParser.REPEAT, parser.getOpcode());
+        assertEquals(12, parser.getOperand());
+        assertEquals(CommandParser.OK, parser.parse("repeat 3[M 1]"), "The count ends at the bracket");
+        assertEquals(3, parser.getOperand());
+        assertEquals(CommandParser.MISSING_OPERAND, parser.parse("REPEAT [M 1]"));
+        assertEquals(CommandParser.MISSING_OPERAND, parser.parse("REPEAT"));
+        assertEquals(CommandParser.INVALID_OPERAND, parser.parse("REPEAT x [M 1]"));
+        assertEquals("REPEAT", CommandParser.name(CommandParser.REPEAT));
+    }
+
+    @Test
+    public void testCommandNames() {
+        assertEquals("U", CommandParser.name(CommandParser.PEN_UP));
+        assertEquals("M", CommandParser.name(CommandParser.MOVE));
+        assertEquals("J", CommandParser.name(CommandParser.JUMP));
+        assertEquals("STATS", CommandParser.name(CommandParser.STATS));
+        assertEquals("unknown", CommandParser.name(CommandParser.UNKNOWN));
+    }
+
+    @Test
+    public void testPrintTakesOptionalViewport() {
+        assertEquals(CommandParser.OK, parser.parse("P"));
+        assertEquals(0, parser.getOperandCount());
+        assertEquals(CommandParser.OK, parser.parse("p 3 -4  5 6 8"));
+        assertEquals(CommandParser.PRINT, parser.getOpcode());
+        assertEquals(5, parser.getOperandCount());
+        assertEquals(-4, parser.getOperand(1));
+        assertEquals(8, parser.getOperand(4));
+        assertEquals(0, parser.getOperand(), "The viewport should only be available by index");
+        assertThrows(IndexOutOfBoundsException.class, () -> parser.getOperand(5));
+        assertEquals(CommandParser.INVALID_OPERAND, parser.parse("P 1 2 x"));
+        assertEquals(0, parser.getOperandCount());
+        assertEquals(CommandParser.INVALID_OPERAND, parser.parse("P 1 2 3 4 5 6"));
+        assertEquals(CommandParser.OK, parser.parse("PRINT 1 2"), "Only a lone 'P' takes integers");
+        assertEquals(0, parser.getOperandCount());
+        assertEquals(CommandParser.OK, parser.parse("M 4"));
+        assertEquals(1, parser.getOperandCount());
+    }
+}
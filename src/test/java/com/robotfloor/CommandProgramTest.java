@@ -0,0 +1,141 @@
+package com.robotfloor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for CommandProgram class
+ */
+public class CommandProgramTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final List<String> SCRIPT = Arrays.asList(
+            "I 6", "D", "M 3", "R", "M 2", "U", "R", "M 2", "D", "L", "M 2",
+            "M bad", "M -1", "Z", "", "P", "C", "REPEAT 3 [M 1 R]", "REPEAT x [M 1]", "P", "C");
+
+    private String runLineByLine(List<String> lines) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RobotSimulator simulator = new RobotSimulator(PackedFloor::new, new PrintStream(output));
+        for (String line : lines) {
+            simulator.executeCommand(line);
+        }
+        return output.toString();
+    }
+
+    private String runProgram(CommandProgram program) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RobotSimulator simulator = new RobotSimulator(PackedFloor::new, new PrintStream(output));
+        simulator.run(program);
+        return output.toString();
+    }
+
+    @Test
+    public void testCompileDropsBlankLines() {
+        CommandProgram program = CommandProgram.compile(SCRIPT);
+        assertEquals(SCRIPT.size() - 1, program.size());
+        assertEquals(CommandParser.INITIALIZE, program.getOpcode(0));
+        assertEquals(6, program.getOperand(0));
+        assertEquals(CommandParser.INVALID_OPERAND, program.getStatus(11));
+        assertEquals(CommandParser.UNKNOWN, program.getOpcode(13));
+    }
+
+    @Test
+    public void testProgramOutputMatchesLineByLineExecution() {
+        assertEquals(runLineByLine(SCRIPT), runProgram(CommandProgram.compile(SCRIPT)));
+    }
+
+    @Test
+    public void testProgramCanBeRunRepeatedly() {
+        CommandProgram program = CommandProgram.compile(SCRIPT);
+        String first = runProgram(program);
+        assertEquals(first, runProgram(program));
+    }
+
+    @Test
+    public void testCompileFileMatchesCompileLines() throws IOException {
+        Path script = tempDir.resolve("script.txt");
+        Files.write(script, String.join("\r\n", SCRIPT).getBytes(StandardCharsets.US_ASCII));
+
+        CommandProgram fromFile = CommandProgram.compile(script);
+        assertEquals(SCRIPT.size() - 1, fromFile.size());
+        assertEquals(runLineByLine(SCRIPT), runProgram(fromFile));
+    }
+
+    @Test
+    public void testCompileFileWithLinesLongerThanReadBuffer() throws IOException {
+        StringBuilder padded = new StringBuilder("M");
+        for (int i = 0; i < 100_000; i++) {
+            padded.append(' ');
+        }
+        padded.append("42");
+        Path script = tempDir.resolve("long.txt");
+        Files.write(script, Arrays.asList("I 3", padded.toString(), "C"));
+
+        CommandProgram program = CommandProgram.compile(script);
+        assertEquals(3, program.size());
+        assertEquals(42, program.getOperand(1));
+    }
+
+    @Test
+    public void testCompileHistory() {
+        CommandHistory history = new CommandHistory();
+        history.addCommand("I 4");
+        history.addCommand("M 2");
+        history.addCommand("REPEAT 2 [M 1]");
+        CommandProgram program = CommandProgram.compile(history);
+        assertEquals(3, program.size());
+        assertEquals(CommandParser.MOVE, program.getOpcode(1));
+        assertEquals(2, program.getOperand(1));
+        assertEquals(null, program.text(1));
+        assertEquals("REPEAT 2 [M 1]", program.text(2), "A loop keeps its text for the history");
+        assertArrayEquals(new int[] {2, 2, CommandParser.MOVE, 1}, program.loop(2), "The body should stay compiled");
+        assertNull(program.loop(1));
+    }
+
+    @Test
+    public void testViewportsAreKeptInSideTable() {
+        List<String> script = Arrays.asList("I 20", "D", "M 12", "P 0 8 4 6", "P", "P 0 0 20 20 8", "P 1 2");
+        CommandProgram program = CommandProgram.compile(script);
+        assertEquals(0, program.getOperand(4), "A plain 'P' should have no viewport");
+        assertEquals(runLineByLine(script), runProgram(program));
+    }
+
+    @Test
+    public void testViewportsSurviveTheHistory() {
+        List<String> script = Arrays.asList("I 20", "D", "M 12", "P 0 8 4 6", "P", "p 0 0 20 20 8", "P 1 2");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RobotSimulator simulator = new RobotSimulator(PackedFloor::new, new PrintStream(output));
+        simulator.run(CommandProgram.compile(script));
+        assertEquals("P 0 8 4 6", simulator.getHistory().getCommand(3), "A program should record the viewport");
+        assertEquals("p 0 0 20 20 8", simulator.getHistory().getCommand(5));
+
+        CommandProgram program = CommandProgram.compile(simulator.getHistory());
+        assertEquals(script.size(), program.size());
+        assertEquals(runLineByLine(script), runProgram(program));
+    }
+
+    @Test
+    public void testLongProgramAfterALoop() {
+        List<String> script = new ArrayList<>(List.of("I 8", "REPEAT 2 [M 1]"));
+        for (int i = 0; i < 100; i++) {
+            script.add("R");
+        }
+        script.add("C");
+        assertEquals(runLineByLine(script), runProgram(CommandProgram.compile(script)));
+    }
+}
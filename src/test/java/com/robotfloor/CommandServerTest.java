@@ -0,0 +1,143 @@
+package com.robotfloor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.function.IntFunction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for CommandServer over real localhost connections
+ */
+public class CommandServerTest {
+
+    private CommandServer server;
+    private Thread serverThread;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        start(PackedFloor::new);
+    }
+
+    private void start(IntFunction<Floor> floorFactory) throws IOException {
+        server = new CommandServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), floorFactory);
+        serverThread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        serverThread.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        server.close();
+        serverThread.join(5000);
+    }
+
+    private String exchange(String script) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(script.getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            socket.shutdownOutput();
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream reply = new ByteArrayOutputStream();
+            in.transferTo(reply);
+            return reply.toString(StandardCharsets.US_ASCII);
+        }
+    }
+
+    @Test
+    public void testPipelinedCommandsMatchLocalSession() throws IOException {
+        StringBuilder script = new StringBuilder("I 20\nD\n");
+        for (int i = 0; i < 2000; i++) {
+            script.append(i % 2 == 0 ? "M 1\n" : "R\n");
+        }
+        script.append("C\nP\nm x\nREPEAT 500 [M 1 R M 1 L]\nC");
+
+        ByteArrayOutputStream local = new ByteArrayOutputStream();
+        RobotSimulator simulator = new RobotSimulator(PackedFloor::new, new PrintStream(local, true));
+        for (String line : script.toString().split("\n")) {
+            simulator.executeCommand(line);
+        }
+
+        assertEquals(local.toString(), exchange(script.toString()),
+                "Output over TCP should match a local session, including the final line without a newline");
+    }
+
+    @Test
+    public void testConnectionsHaveSeparateSessions() throws IOException {
+        exchange("I 5\nD\nM 3\n");
+        String reply = exchange("C\n");
+        assertEquals("Position: 0, 0 - Pen: up - Facing: north\n", reply.replace("\r", ""));
+    }
+
+    @Test
+    public void testQuitClosesConnectionAfterReply() throws IOException {
+        String reply = exchange("I 5\nQ\nC\n");
+        assertTrue(reply.endsWith("Program ended." + System.lineSeparator()));
+        assertFalse(reply.contains("Position:"), "Commands after 'Q' should not run");
+    }
+
+    @Test
+    public void testOverlongLineIsRejected() throws IOException {
+        StringBuilder script = new StringBuilder("M ");
+        for (int i = 0; i < CommandServer.BUFFER_BYTES * 2; i++) {
+            script.append('1');
+        }
+        script.append("\nI 4\nC\n");
+
+        String reply = exchange(script.toString());
+        assertTrue(reply.startsWith("Error: Command longer than " + CommandServer.BUFFER_BYTES + " bytes"));
+        assertTrue(reply.contains("Position: 0, 0 - Pen: up - Facing: north"),
+                "The connection should keep working after an overlong line");
+    }
+
+    @Test
+    public void testFailingCommandClosesOnlyItsConnection() throws Exception {
+        tearDown();
+        start(size -> {
+            if (size > 100) {
+                throw new IllegalStateException("no room for " + size);
+            }
+            return new PackedFloor(size);
+        });
+        try (Socket idle = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            String reply = exchange("I 5\nI 500\nC\n");
+            assertTrue(reply.contains("Error: Session failed: java.lang.IllegalStateException: no room for 500"), reply);
+            assertFalse(reply.contains("Position:"), "The failed session should not run more commands");
+
+            OutputStream out = idle.getOutputStream();
+            out.write("I 5\nC\nQ\n".getBytes(StandardCharsets.US_ASCII));
+            ByteArrayOutputStream other = new ByteArrayOutputStream();
+            idle.getInputStream().transferTo(other);
+            assertTrue(other.toString(StandardCharsets.US_ASCII).contains("Position: 0, 0"),
+                    "Other connections should keep working");
+        }
+        assertTrue(serverThread.isAlive());
+    }
+
+    @Test
+    public void testHugeOutputIsCutOffAndLaterLinesStillRun() throws IOException {
+        // Each of the 3000 rows prints 9000 bytes, well past the limit
+        String reply = exchange("I 3000\nP\nD\nM 2\nC\n");
+        assertTrue(reply.length() < CommandServer.MAX_BUFFERED_OUTPUT + 10_000, "Got " + reply.length());
+        assertTrue(reply.contains("Error: Output cut off after " + CommandServer.MAX_BUFFERED_OUTPUT + " bytes"));
+        assertTrue(reply.endsWith("Position: 0, 2 - Pen: down - Facing: north" + System.lineSeparator()),
+                "Lines queued behind the big output should run once it drains");
+    }
+}
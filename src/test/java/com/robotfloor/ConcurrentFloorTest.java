@@ -0,0 +1,82 @@
+package com.robotfloor;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for ConcurrentFloor class
+ */
+public class ConcurrentFloorTest {
+
+    private ConcurrentFloor floor;
+
+    @BeforeEach
+    public void setUp() {
+        floor = new ConcurrentFloor(130);
+    }
+
+    @Test
+    public void testInvalidFloorSize() {
+        assertThrows(IllegalArgumentException.class, () -> new ConcurrentFloor(0));
+    }
+
+    @Test
+    public void testMatchesPackedFloor() {
+        PackedFloor reference = new PackedFloor(130);
+        for (Floor target : new Floor[] {floor, reference}) {
+            target.mark(129, 129);
+            target.mark(-1, 3);
+            target.markRow(7, 140, 2);
+            target.markRow(8, 60, 63);
+            target.markColumn(64, 0, 200);
+            target.markColumn(-3, 0, 5);
+            target.unmark(64, 10);
+            target.unmark(65, 10);
+        }
+
+        assertEquals(reference.countMarked(), floor.countMarked());
+        assertArrayEquals(reference.getGrid(), floor.getGrid());
+        assertEquals(reference.toString(), floor.toString());
+        for (int word = -1; word <= 3; word++) {
+            assertEquals(reference.getWordBits(7, word), floor.getWordBits(7, word), "Word " + word);
+        }
+        assertEquals(0L, floor.getWordBits(130, 0), "Rows off the floor should read as zero");
+    }
+
+    @Test
+    public void testCopyAndClear() {
+        floor.mark(3, 3);
+        PackedFloor copy = floor.copy();
+        floor.clear();
+
+        assertEquals(0, floor.countMarked());
+        assertEquals(1, copy.getValue(3, 3));
+    }
+
+    @Test
+    public void testConcurrentMarksOnSharedWordsAreNotLost() throws InterruptedException {
+        // Each thread marks every fourth column, so all of them contend on the same words
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t;
+            threads.add(new Thread(() -> {
+                for (int x = offset; x < 130; x += 4) {
+                    floor.markColumn(x, 0, 129);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(130L * 130, floor.countMarked(), "Every cell should be marked exactly once");
+    }
+}
@@ -0,0 +1,132 @@
+package com.robotfloor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for CoverageStats class
+ */
+public class CoverageStatsTest {
+
+    /**
+     * Compare every statistic with a scan of the floor
+     */
+    private static void assertMatchesScan(Floor floor, String label) {
+        CoverageStats coverage = floor.getCoverage();
+        int size = floor.getSize();
+        long total = 0;
+        int minX = -1;
+        int minY = -1;
+        int maxX = -1;
+        int maxY = -1;
+        for (int y = 0; y < size; y++) {
+            int row = 0;
+            for (int x = 0; x < size; x++) {
+                if (floor.getValue(x, y) == 1) {
+                    row++;
+                    minX = minX < 0 ? x : Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    minY = minY < 0 ? y : minY;
+                    maxY = y;
+                }
+            }
+            assertEquals(row, coverage.getRowCount(y), label + ": row " + y);
+            total += row;
+        }
+        for (int x = 0; x < size; x++) {
+            int column = 0;
+            for (int y = 0; y < size; y++) {
+                column += floor.getValue(x, y);
+            }
+            assertEquals(column, coverage.getColumnCount(x), label + ": column " + x);
+        }
+        assertEquals(total, coverage.getMarkedCount(), label);
+        assertEquals(total == 0, coverage.isEmpty(), label);
+        assertEquals(minX, coverage.getMinX(), label);
+        assertEquals(minY, coverage.getMinY(), label);
+        assertEquals(maxX, coverage.getMaxX(), label);
+        assertEquals(maxY, coverage.getMaxY(), label);
+    }
+
+    @Test
+    public void testFollowsChangesOnEveryBackend() {
+        Random random = new Random(19);
+        for (int size : new int[] {1, 10, 70}) {
+            for (Floor floor : new Floor[] {new Floor(size), new PackedFloor(size), new SparseFloor(size),
+                    new ConcurrentFloor(size), new RunLengthFloor(size)}) {
+                String label = floor.getClass().getSimpleName() + " of size " + size;
+                floor.mark(0, size - 1);
+                assertMatchesScan(floor, label + " at first query");
+                for (int i = 0; i < 200; i++) {
+                    int a = random.nextInt(size);
+                    int b = random.nextInt(size);
+                    int c = random.nextInt(size);
+                    if (i % 3 == 0) {
+                        floor.markRow(a, b, c);
+                    } else if (i % 3 == 1) {
+                        floor.markColumn(a, b, c);
+                    } else {
+                        floor.unmark(a, b);
+                        floor.unmark(b, c);
+                    }
+                    if (i % 50 == 0) {
+                        assertMatchesScan(floor, label + " after " + i + " changes");
+                    }
+                }
+                assertMatchesScan(floor, label);
+                floor.clear();
+                assertMatchesScan(floor, label + " after clear");
+            }
+        }
+    }
+
+    @Test
+    public void testBoundingBoxShrinksOnUnmark() {
+        PackedFloor floor = new PackedFloor(10);
+        floor.markRow(2, 3, 7);
+        floor.mark(5, 8);
+        CoverageStats coverage = floor.getCoverage();
+        assertEquals(8, coverage.getMaxY());
+        floor.unmark(5, 8);
+        assertEquals(2, coverage.getMaxY(), "The box should shrink to the remaining marks");
+        floor.unmark(3, 2);
+        floor.unmark(7, 2);
+        assertEquals(4, coverage.getMinX());
+        assertEquals(6, coverage.getMaxX());
+        floor.markRow(2, 4, 6);
+        assertEquals(3, coverage.getMarkedCount(), "Marking marked cells should not count them again");
+        floor.unmark(4, 2);
+        floor.unmark(5, 2);
+        floor.unmark(6, 2);
+        assertTrue(coverage.isEmpty());
+        assertEquals(-1, coverage.getMinX());
+    }
+
+    @Test
+    public void testSparseMarksOutsideDeclaredAreaAreIgnored() {
+        SparseFloor floor = new SparseFloor(10);
+        floor.markRow(-3, 0, 5);
+        floor.markRow(4, -70, 70);
+        floor.mark(200, -5);
+        CoverageStats coverage = floor.getCoverage();
+        assertEquals(10, coverage.getMarkedCount());
+        floor.unmark(-5, 4);
+        floor.unmark(9, 4);
+        assertEquals(9, coverage.getMarkedCount());
+        assertEquals(8, coverage.getMaxX());
+    }
+
+    @Test
+    public void testCoverageIsKeptPerFloor() {
+        PackedFloor floor = new PackedFloor(5);
+        assertSame(floor.getCoverage(), floor.getCoverage());
+        floor.mark(1, 1);
+        PackedFloor copy = floor.copy();
+        copy.mark(2, 2);
+        assertEquals(1, floor.getCoverage().getMarkedCount());
+        assertEquals(2, copy.getCoverage().getMarkedCount());
+    }
+}
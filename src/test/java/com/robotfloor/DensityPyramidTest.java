@@ -0,0 +1,100 @@
+package com.robotfloor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for DensityPyramid class
+ */
+public class DensityPyramidTest {
+
+    private static long bruteForce(Floor floor, int blockX, int blockY, int blockSize) {
+        long total = 0;
+        for (long y = (long) blockY * blockSize; y < (long) (blockY + 1) * blockSize && y < floor.getSize(); y++) {
+            for (long x = (long) blockX * blockSize; x < (long) (blockX + 1) * blockSize && x < floor.getSize(); x++) {
+                total += floor.getValue((int) x, (int) y);
+            }
+        }
+        return total;
+    }
+
+    private static void assertMatches(DensityPyramid pyramid, String label) {
+        Floor floor = pyramid.getFloor();
+        for (int blockSize = 1; blockSize <= 2 * floor.getSize(); blockSize <<= 1) {
+            int blocks = (floor.getSize() + blockSize - 1) / blockSize;
+            for (int by = 0; by < blocks; by++) {
+                for (int bx = 0; bx < blocks; bx++) {
+                    assertEquals(bruteForce(floor, bx, by, blockSize), pyramid.countBlock(bx, by, blockSize),
+                            label + ": block " + bx + ", " + by + " of size " + blockSize);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFollowsMarksOnEveryBackend() {
+        Random random = new Random(15);
+        for (int size : new int[] {5, 70, 130}) {
+            for (Floor floor : new Floor[] {new Floor(size), new PackedFloor(size), new SparseFloor(size),
+                    new ConcurrentFloor(size), new RunLengthFloor(size)}) {
+                String label = floor.getClass().getSimpleName() + " of size " + size;
+                floor.mark(1, 1);
+                DensityPyramid pyramid = new DensityPyramid(floor);
+                for (int i = 0; i < 40; i++) {
+                    int a = random.nextInt(size);
+                    int b = random.nextInt(size);
+                    int c = random.nextInt(size);
+                    if (i % 3 == 0) {
+                        floor.markRow(a, b, c);
+                    } else if (i % 3 == 1) {
+                        floor.markColumn(a, b, c);
+                    } else {
+                        floor.unmark(a, b);
+                    }
+                }
+                assertMatches(pyramid, label);
+                floor.clear();
+                assertMatches(pyramid, label + " after clear");
+            }
+        }
+    }
+
+    @Test
+    public void testSparseMarksOutsideDeclaredAreaAreNotCounted() {
+        SparseFloor floor = new SparseFloor(10);
+        DensityPyramid pyramid = new DensityPyramid(floor);
+        floor.markRow(2, -70, 70);
+        floor.markColumn(3, -5, 200);
+        assertEquals(19, pyramid.countBlock(0, 0, 16), "Only the 10 x 10 area should be counted");
+        assertMatches(pyramid, "SparseFloor");
+    }
+
+    @Test
+    public void testDetachStopsFollowing() {
+        PackedFloor floor = new PackedFloor(16);
+        DensityPyramid pyramid = new DensityPyramid(floor);
+        floor.mark(0, 0);
+        pyramid.detach();
+        floor.mark(1, 0);
+        assertEquals(1, pyramid.countBlock(0, 0, 8));
+    }
+
+    @Test
+    public void testLargeBlocksAreClipped() {
+        PackedFloor floor = new PackedFloor(20);
+        DensityPyramid pyramid = new DensityPyramid(floor);
+        floor.markRow(19, 0, 19);
+        assertEquals(20, pyramid.countBlock(0, 0, 1 << 30));
+        assertEquals(0, pyramid.countBlock(1, 0, 1 << 30));
+        assertEquals(0, pyramid.countBlock(-1, 0, 16));
+    }
+
+    @Test
+    public void testBlockSizeMustBePowerOfTwo() {
+        DensityPyramid pyramid = new DensityPyramid(new PackedFloor(8));
+        assertThrows(IllegalArgumentException.class, () -> pyramid.countBlock(0, 0, 6));
+        assertThrows(IllegalArgumentException.class, () -> pyramid.countBlock(0, 0, 0));
+    }
+}
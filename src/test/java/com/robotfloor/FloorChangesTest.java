@@ -0,0 +1,93 @@
+package com.robotfloor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for FloorChanges class
+ */
+public class FloorChangesTest {
+
+    @Test
+    public void testFirstFrameIsWholeFloor() {
+        PackedFloor floor = new PackedFloor(10);
+        FloorChanges changes = new FloorChanges(floor);
+        assertSame(floor, changes.getFloor());
+        floor.mark(3, 3);
+        assertTrue(changes.isAllChanged());
+        assertEquals(0, changes.getRowCount(), "Rows are not tracked while everything is changed");
+        changes.reset();
+        assertFalse(changes.isAllChanged());
+        floor.clear();
+        assertTrue(changes.isAllChanged(), "Clearing should change the whole floor");
+    }
+
+    @Test
+    public void testRowsAreKeptOnceAndSorted() {
+        PackedFloor floor = new PackedFloor(100);
+        FloorChanges changes = new FloorChanges(floor);
+        changes.reset();
+        floor.mark(5, 70);
+        floor.markRow(2, 0, 99);
+        floor.mark(6, 70);
+        floor.markColumn(8, 60, 71);
+        floor.mark(5, 70);
+        assertEquals(13, changes.getRowCount(), "Rows 60 to 71 and row 2, each once");
+        changes.sortRows();
+        assertEquals(71, changes.row(0));
+        assertEquals(70, changes.row(1));
+        assertEquals(2, changes.row(12));
+        assertEquals(2 + 2 + 12, changes.changeCount(), "Two words for the full row, unchanged cells not at all");
+        assertEquals(70, changes.changeRow(0));
+        assertEquals(0, changes.changeWord(0));
+        assertEquals(1L << 5, changes.changeBits(0));
+        assertEquals((1L << 36) - 1, changes.changeBits(2), "The second word of row 2 is cut at column 99");
+        changes.reset();
+        assertEquals(0, changes.getRowCount());
+        assertEquals(0, changes.changeCount());
+        floor.unmark(8, 65);
+        assertEquals(1, changes.getRowCount(), "A row reported before the reset should be tracked again");
+        assertEquals(65, changes.row(0));
+    }
+
+    @Test
+    public void testManyChangesKeepOnlyRows() {
+        PackedFloor floor = new PackedFloor(300);
+        FloorChanges changes = new FloorChanges(floor);
+        changes.reset();
+        for (int i = 0; i <= FloorChanges.MAX_CELL_CHANGES; i++) {
+            floor.mark(i % 300, i / 300 % 300);
+        }
+        assertTrue(changes.isCellsDropped());
+        assertEquals(FloorChanges.MAX_CELL_CHANGES, changes.changeCount());
+        assertEquals(219, changes.getRowCount());
+        changes.reset();
+        assertFalse(changes.isCellsDropped());
+    }
+
+    @Test
+    public void testSparseMarksOutsideDeclaredAreaAreIgnored() {
+        SparseFloor floor = new SparseFloor(10);
+        FloorChanges changes = new FloorChanges(floor);
+        changes.reset();
+        floor.mark(-4, 3);
+        floor.mark(3, 40);
+        floor.markRow(4, 5, 300);
+        assertEquals(1, changes.getRowCount());
+        assertEquals(1, changes.changeCount());
+        assertEquals(0b11111L << 5, changes.changeBits(0));
+    }
+
+    @Test
+    public void testDetach() {
+        PackedFloor floor = new PackedFloor(10);
+        FloorChanges changes = new FloorChanges(floor);
+        changes.reset();
+        changes.detach();
+        floor.mark(1, 1);
+        assertEquals(0, changes.getRowCount());
+    }
+}
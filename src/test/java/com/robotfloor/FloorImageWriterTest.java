@@ -0,0 +1,97 @@
+package com.robotfloor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for FloorImageWriter class
+ */
+public class FloorImageWriterTest {
+
+    private static void draw(Floor floor, long seed) {
+        int size = floor.getSize();
+        Random random = new Random(seed);
+        floor.markRow(size - 1, 0, size - 1);
+        floor.markColumn(size / 2, 0, size - 1);
+        for (int i = 0; i < size; i++) {
+            floor.mark(random.nextInt(size), random.nextInt(size));
+        }
+    }
+
+    @Test
+    public void testPbmMatchesCells() throws IOException {
+        for (int size : new int[] {1, 7, 8, 9, 64, 70}) {
+            for (Floor floor : new Floor[] {new Floor(size), new PackedFloor(size), new SparseFloor(size)}) {
+                draw(floor, size);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                new FloorImageWriter().writePbm(floor, out);
+                byte[] bytes = out.toByteArray();
+
+                String header = "P4\n" + size + " " + size + "\n";
+                assertEquals(header, new String(bytes, 0, header.length(), StandardCharsets.US_ASCII));
+                int rowBytes = (size + 7) / 8;
+                assertEquals(header.length() + rowBytes * size, bytes.length);
+                for (int y = 0; y < size; y++) {
+                    int rowStart = header.length() + (size - 1 - y) * rowBytes;
+                    for (int x = 0; x < rowBytes * 8; x++) {
+                        int bit = bytes[rowStart + x / 8] >>> (7 - x % 8) & 1;
+                        assertEquals(x < size ? floor.getValue(x, y) : 0, bit,
+                                floor.getClass().getSimpleName() + " of size " + size + " at " + x + ", " + y);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPngDecodesToCells() throws IOException {
+        FloorImageWriter writer = new FloorImageWriter();
+        for (int size : new int[] {3, 64, 130}) {
+            Floor floor = new PackedFloor(size);
+            draw(floor, size);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writer.writePng(floor, out);
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+            assertEquals(size, image.getWidth());
+            assertEquals(size, image.getHeight());
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    boolean black = (image.getRGB(x, size - 1 - y) & 0xFFFFFF) == 0;
+                    assertEquals(floor.getValue(x, y) == 1, black, "Pixel for " + x + ", " + y);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLargePngSpansSeveralChunks() throws IOException {
+        Floor floor = new PackedFloor(3000);
+        draw(floor, 3);
+        Random random = new Random(3);
+        for (int i = 0; i < 500_000; i++) {
+            floor.mark(random.nextInt(3000), random.nextInt(3000));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FloorImageWriter().writePng(floor, out);
+        byte[] bytes = out.toByteArray();
+        int chunks = 0;
+        byte[] idat = "IDAT".getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i + 4 <= bytes.length; i++) {
+            if (Arrays.equals(idat, Arrays.copyOfRange(bytes, i, i + 4))) {
+                chunks++;
+            }
+        }
+        assertTrue(chunks > 1, "Random marks should not fit one 64 KiB chunk");
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+        assertEquals(0, image.getRGB(1500, 0) & 0xFFFFFF, "The top row is marked");
+    }
+}
@@ -0,0 +1,266 @@
+package com.robotfloor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for FloorRenderer class
+ */
+public class FloorRendererTest {
+
+    /**
+     * The original String.format based rendering, kept as the reference layout
+     */
+    private static String formatted(Floor floor) {
+        StringBuilder sb = new StringBuilder("    ");
+        for (int i = 0; i < floor.getSize(); i++) {
+            sb.append(String.format("%2d ", i));
+        }
+        sb.append("\n");
+        for (int y = floor.getSize() - 1; y >= 0; y--) {
+            sb.append(String.format("%2d: ", y));
+            for (int x = 0; x < floor.getSize(); x++) {
+                sb.append(floor.getValue(x, y) == 1 ? " * " : "   ");
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    private static void draw(Floor floor) {
+        int size = floor.getSize();
+        floor.markRow(size - 1, 0, size - 1);
+        floor.markColumn(size / 2, 0, size - 1);
+        floor.mark(0, 0);
+        floor.mark(size - 1, 3);
+    }
+
+    @Test
+    public void testMatchesFormattedLayoutOnEveryBackend() {
+        for (int size : new int[] {1, 9, 10, 64, 65, 130}) {
+            for (Floor floor : new Floor[] {new Floor(size), new PackedFloor(size), new SparseFloor(size),
+                    new ConcurrentFloor(size), new RunLengthFloor(size)}) {
+                draw(floor);
+                assertEquals(formatted(floor), floor.toString(),
+                        floor.getClass().getSimpleName() + " of size " + size);
+            }
+        }
+    }
+
+    @Test
+    public void testLargeFloorStreamsInChunks() throws IOException {
+        PackedFloor floor = new PackedFloor(1100);
+        draw(floor);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FloorRenderer("\n").render(floor, out);
+        assertEquals(formatted(floor), out.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testBufferGrowsWithTheOutput() throws IOException {
+        FloorRenderer renderer = new FloorRenderer("\n");
+        assertEquals(0, renderer.capacity(), "Nothing should be allocated before the first render");
+        PackedFloor small = new PackedFloor(5);
+        draw(small);
+        renderer.render(small, new ByteArrayOutputStream());
+        assertTrue(renderer.capacity() <= 256, "A small floor should not need a full chunk");
+        PackedFloor large = new PackedFloor(1100);
+        draw(large);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        renderer.render(large, out);
+        assertEquals(formatted(large), out.toString(StandardCharsets.US_ASCII));
+        assertTrue(renderer.capacity() <= 1 << 16, "The buffer should stop growing at one chunk");
+    }
+
+    @Test
+    public void testRenderToChannelReusesRenderer() throws IOException {
+        FloorRenderer renderer = new FloorRenderer("\n");
+        for (int size : new int[] {70, 5}) {
+            Floor floor = new PackedFloor(size);
+            draw(floor);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            renderer.render(floor, Channels.newChannel(out));
+            assertEquals(formatted(floor), out.toString(StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    public void testSparseMarksOutsideDeclaredAreaAreNotShown() {
+        SparseFloor floor = new SparseFloor(10);
+        floor.markRow(2, -5, 70);
+        assertEquals(formatted(floor), floor.toString());
+    }
+
+    @Test
+    public void testRegionMatchesFormattedLayout() throws IOException {
+        PackedFloor floor = new PackedFloor(130);
+        draw(floor);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FloorRenderer("\n").renderRegion(floor, 60, 127, 6, 3, out);
+        StringBuilder expected = new StringBuilder("    ");
+        for (int x = 60; x < 66; x++) {
+            expected.append(String.format("%2d ", x));
+        }
+        expected.append("\n");
+        for (int y = 129; y >= 127; y--) {
+            expected.append(String.format("%2d: ", y));
+            for (int x = 60; x < 66; x++) {
+                expected.append(floor.getValue(x, y) == 1 ? " * " : "   ");
+            }
+            expected.append("\n");
+        }
+        assertEquals(expected.toString(), out.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testZoomedShowsBlockDensity() throws IOException {
+        PackedFloor floor = new PackedFloor(10);
+        floor.markRow(0, 0, 3);
+        floor.markRow(1, 0, 3);
+        floor.markRow(2, 0, 3);
+        floor.markRow(3, 0, 3);
+        floor.markRow(4, 4, 7);
+        floor.markRow(5, 4, 7);
+        floor.markRow(8, 8, 9);
+        floor.markRow(9, 8, 9);
+        floor.mark(8, 0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FloorRenderer("\n").renderZoomed(new DensityPyramid(floor), 0, 0, 3, 3, 4, out);
+        assertEquals("     0  4  8 \n"
+                + " 8:        * \n"
+                + " 4:     +    \n"
+                + " 0:  *     . \n", out.toString(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * A minimal terminal: applies cursor moves, clear screen and line breaks to a text grid
+     */
+    private static void applyAnsi(char[][] screen, String output) {
+        int line = 0;
+        int column = 0;
+        for (int i = 0; i < output.length(); i++) {
+            char c = output.charAt(i);
+            if (c == 0x1B) {
+                int end = i + 2;
+                while (!Character.isLetter(output.charAt(end))) {
+                    end++;
+                }
+                String args = output.substring(i + 2, end);
+                if (output.charAt(end) == 'J') {
+                    for (char[] row : screen) {
+                        Arrays.fill(row, ' ');
+                    }
+                } else if (args.isEmpty()) {
+                    line = 0;
+                    column = 0;
+                } else {
+                    line = Integer.parseInt(args.substring(0, args.indexOf(';'))) - 1;
+                    column = Integer.parseInt(args.substring(args.indexOf(';') + 1)) - 1;
+                }
+                i = end;
+            } else if (c == '\n') {
+                line++;
+                column = 0;
+            } else {
+                screen[line][column++] = c;
+            }
+        }
+    }
+
+    private static String trimmed(String text) {
+        return text.replaceAll(" +\n", "\n");
+    }
+
+    private static String screenText(char[][] screen, int lines) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append(new String(screen[i]).replaceAll(" +$", "")).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testChangedRowsOnly() throws IOException {
+        PackedFloor floor = new PackedFloor(12);
+        FloorChanges changes = new FloorChanges(floor);
+        FloorRenderer renderer = new FloorRenderer("\n");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        floor.mark(1, 1);
+        renderer.renderChangedRows(changes, out);
+        assertEquals(formatted(floor), out.toString(StandardCharsets.US_ASCII), "The first frame is the whole floor");
+        out.reset();
+        renderer.renderChangedRows(changes, out);
+        assertEquals(0, out.size(), "Nothing changed");
+        floor.markColumn(2, 3, 10);
+        floor.unmark(2, 10);
+        floor.unmark(1, 1);
+        renderer.renderChangedRows(changes, out);
+        String[] lines = formatted(floor).split("\n");
+        StringBuilder expected = new StringBuilder();
+        for (int y = 10; y >= 3; y--) {
+            expected.append(lines[12 - y]).append('\n');
+        }
+        expected.append(lines[11]).append('\n');
+        assertEquals(expected.toString(), out.toString(StandardCharsets.US_ASCII), "Changed rows, top to bottom");
+    }
+
+    @Test
+    public void testAnsiFramesKeepScreenInSync() throws IOException {
+        Random random = new Random(24);
+        for (int size : new int[] {5, 12, 130}) {
+            for (Floor floor : new Floor[] {new PackedFloor(size), new SparseFloor(size), new RunLengthFloor(size)}) {
+                String label = floor.getClass().getSimpleName() + " of size " + size;
+                FloorChanges changes = new FloorChanges(floor);
+                FloorRenderer renderer = new FloorRenderer("\n");
+                char[][] screen = new char[size + 3][4 + 4 * size];
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                draw(floor);
+                for (int frame = 0; frame < 6; frame++) {
+                    renderer.renderAnsiFrame(changes, out);
+                    applyAnsi(screen, out.toString(StandardCharsets.US_ASCII));
+                    assertEquals(trimmed(formatted(floor)), screenText(screen, size + 1), label + ", frame " + frame);
+                    out.reset();
+                    for (int i = 0; i < 1 + frame * frame * size / 2; i++) {
+                        int a = random.nextInt(size);
+                        int b = random.nextInt(size);
+                        if (i % 3 == 0) {
+                            floor.unmark(a, b);
+                        } else if (i % 3 == 1) {
+                            floor.markRow(a, b, random.nextInt(size));
+                        } else {
+                            floor.mark(a, b);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAnsiFrameRewritesRowsWhenCellsAreDropped() throws IOException {
+        PackedFloor floor = new PackedFloor(200);
+        FloorChanges changes = new FloorChanges(floor);
+        FloorRenderer renderer = new FloorRenderer("\n");
+        char[][] screen = new char[203][900];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        renderer.renderAnsiFrame(changes, out);
+        applyAnsi(screen, out.toString(StandardCharsets.US_ASCII));
+        for (int i = 0; i <= FloorChanges.MAX_CELL_CHANGES; i++) {
+            floor.mark(i % 200, i / 200 % 200);
+            floor.unmark(i % 200, i / 200 % 200);
+        }
+        floor.markRow(7, 0, 150);
+        assertTrue(changes.isCellsDropped());
+        out.reset();
+        renderer.renderAnsiFrame(changes, out);
+        applyAnsi(screen, out.toString(StandardCharsets.US_ASCII));
+        assertEquals(trimmed(formatted(floor)), screenText(screen, 201));
+    }
+}
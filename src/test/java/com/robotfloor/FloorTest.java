@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.Random;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -149,4 +150,139 @@ public class FloorTest {
         assertEquals(1, floor1.getValue(0, 0));
         assertEquals(0, floor2.getValue(0, 0), "Marking floor1 should not affect floor2");
     }
+
+    @Test
+    public void testCountMarked() {
+        assertEquals(0, floor.countMarked(), "Empty floor should have no marked cells");
+        floor.mark(0, 0);
+        floor.mark(0, 0);
+        floor.mark(9, 9);
+        floor.mark(10, 10);
+        assertEquals(2, floor.countMarked(), "Only distinct in-bounds marks should be counted");
+    }
+
+    @Test
+    public void testMarkRowAndColumnAreClipped() {
+        floor.markRow(2, 7, -3);
+        floor.markColumn(9, 5, 20);
+        floor.markRow(10, 0, 9);
+        floor.markColumn(-1, 0, 9);
+
+        for (int x = 0; x < 10; x++) {
+            assertEquals(x <= 7 ? 1 : 0, floor.getValue(x, 2), "Row 2 should be marked from 0 to 7");
+        }
+        for (int y = 0; y < 10; y++) {
+            assertEquals(y >= 5 ? 1 : 0, floor.getValue(9, y), "Column 9 should be marked from 5 to 9");
+        }
+        assertEquals(13, floor.countMarked());
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        floor.mark(2, 3);
+        Floor copy = floor.copy();
+        floor.mark(4, 4);
+        copy.mark(5, 5);
+
+        assertEquals(1, copy.getValue(2, 3));
+        assertEquals(0, copy.getValue(4, 4), "Marks after copying should not reach the copy");
+        assertEquals(0, floor.getValue(5, 5), "Marks on the copy should not reach the original");
+    }
+
+    @Test
+    public void testUnmark() {
+        floor.mark(1, 1);
+        floor.unmark(1, 1);
+        floor.unmark(-1, 20);
+        assertEquals(0, floor.getValue(1, 1), "Unmarked position should have value 0");
+    }
+
+    @Test
+    public void testListenerSeesOnlyChangedCells() {
+        long[] changes = new long[3];
+        FloorListener listener = new FloorListener() {
+            @Override
+            public void marked(int y, int word, long bits) {
+                changes[0] += Long.bitCount(bits);
+            }
+
+            @Override
+            public void unmarked(int y, int word, long bits) {
+                changes[1] += Long.bitCount(bits);
+            }
+
+            @Override
+            public void cleared() {
+                changes[2]++;
+            }
+        };
+        floor.addListener(listener);
+        floor.mark(1, 1);
+        floor.markRow(1, 0, 3);
+        floor.markColumn(1, 0, 2);
+        floor.unmark(1, 1);
+        floor.unmark(1, 1);
+        floor.clear();
+        floor.removeListener(listener);
+        floor.mark(2, 2);
+        assertEquals(6, changes[0], "Already marked cells should not be reported again");
+        assertEquals(1, changes[1], "Only a marked cell should be reported as unmarked");
+        assertEquals(1, changes[2], "Clear should be reported once");
+    }
+
+    @Test
+    public void testUnmarkRunsMatchCellByCellOnEveryBackend() {
+        Random random = new Random(3);
+        for (Floor target : new Floor[] {new Floor(150), new PackedFloor(150), new SparseFloor(150),
+                new ConcurrentFloor(150), new RunLengthFloor(150)}) {
+            String label = target.getClass().getSimpleName();
+            long[] unmarked = new long[2];
+            target.addListener(new FloorListener() {
+                @Override
+                public void marked(int y, int word, long bits) {
+                }
+
+                @Override
+                public void unmarked(int y, int word, long bits) {
+                    unmarked[0] += Long.bitCount(bits);
+                    unmarked[1]++;
+                }
+
+                @Override
+                public void cleared() {
+                }
+            });
+            for (int round = 0; round < 200; round++) {
+                for (int i = 0; i < 10; i++) {
+                    target.markRow(random.nextInt(150), random.nextInt(200) - 25, random.nextInt(200) - 25);
+                    target.markColumn(random.nextInt(150), random.nextInt(200) - 25, random.nextInt(200) - 25);
+                }
+                Floor expected = target.copy();
+                int a = random.nextInt(200) - 25;
+                int b = random.nextInt(200) - 25;
+                int c = random.nextInt(200) - 25;
+                boolean row = random.nextBoolean();
+                for (int i = Math.min(b, c); i <= Math.max(b, c); i++) {
+                    expected.unmark(row ? i : a, row ? a : i);
+                }
+                long before = target.countMarked();
+                unmarked[0] = 0;
+                unmarked[1] = 0;
+                if (row) {
+                    target.unmarkRow(a, b, c);
+                } else {
+                    target.unmarkColumn(a, b, c);
+                }
+                for (int y = -25; y < 175; y++) {
+                    for (int x = -25; x < 175; x++) {
+                        assertEquals(expected.getValue(x, y), target.getValue(x, y), label + " at " + x + "," + y);
+                    }
+                }
+                assertEquals(before - target.countMarked(), unmarked[0], label + ": every cleared cell is reported");
+                if (row && !(target instanceof RunLengthFloor)) {
+                    assertTrue(unmarked[1] <= 4, label + ": a row is reported one word at a time");
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,141 @@
+package com.robotfloor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for HistoryCheckpoints class
+ */
+public class HistoryCheckpointsTest {
+
+    private HistoryCheckpoints checkpoints;
+    private Robot robot;
+    private Floor floor;
+
+    @BeforeEach
+    public void setUp() {
+        checkpoints = new HistoryCheckpoints(4, 1 << 20);
+        robot = new Robot();
+        floor = new PackedFloor(8);
+    }
+
+    @Test
+    public void testRecordsOnlyWhenDue() {
+        for (long sequence = 1; sequence <= 9; sequence++) {
+            checkpoints.recordIfDue(sequence, robot, floor);
+        }
+        assertEquals(2, checkpoints.size(), "Checkpoints should be taken after commands 4 and 8");
+        checkpoints.recordIfDue(8, robot, floor);
+        assertEquals(2, checkpoints.size(), "The same command should not be checkpointed twice");
+    }
+
+    @Test
+    public void testFindLatestAtOrBefore() {
+        checkpoints.recordIfDue(4, robot, floor);
+        checkpoints.recordIfDue(8, robot, floor);
+
+        assertEquals(-1, checkpoints.find(3));
+        assertEquals(0, checkpoints.find(4));
+        assertEquals(0, checkpoints.find(7));
+        assertEquals(1, checkpoints.find(100));
+        assertEquals(8, checkpoints.getSequence(1));
+    }
+
+    @Test
+    public void testRestoreReturnsRobotStateAndFloorCopy() {
+        robot.setState(3, 5, true, Robot.Direction.SOUTH);
+        floor.mark(3, 5);
+        checkpoints.recordIfDue(4, robot, floor);
+        checkpoints.touch(floor, 0, 0, 0, 0);
+        floor.mark(0, 0);
+
+        Robot restored = new Robot();
+        Floor restoredFloor = checkpoints.restore(0, restored);
+        restoredFloor.mark(7, 7);
+
+        assertEquals(3, restored.getX());
+        assertEquals(5, restored.getY());
+        assertEquals(true, restored.isPenDown());
+        assertEquals(Robot.Direction.SOUTH, restored.getFacing());
+        assertEquals(1, restoredFloor.getValue(3, 5));
+        assertEquals(0, restoredFloor.getValue(0, 0), "Later marks should not be in the checkpoint");
+        assertEquals(0, checkpoints.restore(0, restored).getValue(7, 7), "Restores should not share floors");
+    }
+
+    @Test
+    public void testLaterCheckpointsHoldOnlyTouchedWords() {
+        checkpoints.recordIfDue(4, robot, floor);
+        checkpoints.touch(floor, 1, 2, 70, 2);
+        floor.markRow(2, 1, 70);
+        checkpoints.recordIfDue(8, robot, floor);
+        checkpoints.touch(floor, 6, 0, 6, 7);
+        checkpoints.touch(floor, 6, 7, 6, 0);
+        floor.markColumn(6, 0, 7);
+        checkpoints.recordIfDue(12, robot, floor);
+
+        assertEquals(9 * HistoryCheckpoints.DELTA_WORD_BYTES, checkpoints.getDeltaBytes(),
+                "One word for the row and one per row of the column, each counted once");
+        assertEquals(7, checkpoints.restore(1, new Robot()).countMarked());
+        assertEquals(14, checkpoints.restore(2, new Robot()).countMarked());
+        assertEquals(0, checkpoints.restore(0, new Robot()).countMarked());
+    }
+
+    @Test
+    public void testOldestDeltaIsFoldedWhenOverBudget() {
+        checkpoints = new HistoryCheckpoints(4, HistoryCheckpoints.DELTA_WORD_BYTES);
+        checkpoints.recordIfDue(4, robot, floor);
+        for (int y = 0; y < 3; y++) {
+            checkpoints.touch(floor, 0, y, 7, y);
+            floor.markRow(y, 0, y);
+            checkpoints.recordIfDue(8 + y * 4, robot, floor);
+        }
+        assertEquals(2, checkpoints.size(), "The two oldest deltas should have been folded");
+        assertEquals(4, checkpoints.getInterval(), "The interval should not change");
+        assertEquals(12, checkpoints.getSequence(0));
+        assertEquals(-1, checkpoints.find(11));
+        assertEquals(3, checkpoints.restore(0, robot).countMarked());
+        assertEquals(6, checkpoints.restore(1, robot).countMarked());
+
+        checkpoints.clear();
+        assertEquals(0, checkpoints.size());
+        assertEquals(0, checkpoints.getDeltaBytes());
+    }
+
+    @Test
+    public void testUnboundedFloorKeepsMarksOutsideTheDeclaredArea() {
+        Floor sparse = new SparseFloor(4);
+        checkpoints.recordIfDue(4, robot, sparse);
+        checkpoints.touch(sparse, -100, -3, 200, -3);
+        sparse.markRow(-3, -100, 200);
+        checkpoints.recordIfDue(8, robot, sparse);
+        Floor restored = checkpoints.restore(1, robot);
+        assertEquals(1, restored.getValue(-100, -3));
+        assertEquals(1, restored.getValue(200, -3));
+        assertEquals(0, restored.getValue(201, -3));
+    }
+
+    @Test
+    public void testTruncate() {
+        checkpoints.recordIfDue(4, robot, floor);
+        checkpoints.recordIfDue(8, robot, floor);
+        checkpoints.touch(floor, 3, 3, 3, 3);
+        floor.mark(3, 3);
+        checkpoints.recordIfDue(12, robot, floor);
+        checkpoints.truncate(7);
+        assertEquals(1, checkpoints.size());
+        checkpoints.recordIfDue(8, robot, floor);
+        assertEquals(2, checkpoints.size(), "A truncated checkpoint can be taken again");
+        assertEquals(1, checkpoints.restore(1, robot).getValue(3, 3),
+                "Words changed by dropped deltas should be kept by the next checkpoint");
+        checkpoints.truncate(0);
+        assertEquals(0, checkpoints.size());
+    }
+
+    @Test
+    public void testInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new HistoryCheckpoints(0, 4));
+        assertThrows(IllegalArgumentException.class, () -> new HistoryCheckpoints(4, 0));
+    }
+}
@@ -0,0 +1,243 @@
+package com.robotfloor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for MappedFloor class
+ */
+public class MappedFloorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testMarkAndGetValue() throws IOException {
+        try (MappedFloor floor = MappedFloor.open(tempDir.resolve("floor.bin"), 70)) {
+            floor.mark(0, 0);
+            floor.mark(64, 69);
+            floor.mark(70, 0);
+
+            assertEquals(70, floor.getSize());
+            assertEquals(1, floor.getValue(0, 0));
+            assertEquals(1, floor.getValue(64, 69));
+            assertEquals(0, floor.getValue(63, 69));
+            assertEquals(0, floor.getValue(70, 0), "Out of bounds should return 0");
+            assertEquals(1L, floor.getWordBits(69, 1));
+            assertEquals(0L, floor.getWordBits(69, 2), "Words off the floor should read as zero");
+            assertEquals(0L, floor.getWordBits(-1, 0));
+            assertEquals(2, floor.countMarked());
+        }
+    }
+
+    @Test
+    public void testReopenRestoresFloor() throws IOException {
+        Path file = tempDir.resolve("floor.bin");
+        String rendered;
+        try (MappedFloor floor = MappedFloor.open(file, 12)) {
+            floor.mark(3, 4);
+            floor.mark(11, 11);
+            rendered = floor.toString();
+        }
+
+        try (MappedFloor reopened = MappedFloor.open(file)) {
+            assertEquals(12, reopened.getSize());
+            assertEquals(1, reopened.getValue(3, 4));
+            assertEquals(rendered, reopened.toString());
+        }
+    }
+
+    @Test
+    public void testSnapshotCanBeReopened() throws IOException {
+        Path snapshot = tempDir.resolve("snapshot.bin");
+        try (MappedFloor floor = MappedFloor.open(tempDir.resolve("floor.bin"), 8)) {
+            floor.mark(2, 2);
+            floor.snapshotTo(snapshot);
+            floor.mark(5, 5);
+        }
+
+        try (MappedFloor copy = MappedFloor.open(snapshot)) {
+            assertEquals(1, copy.getValue(2, 2));
+            assertEquals(0, copy.getValue(5, 5), "Marks after the snapshot should not appear in it");
+        }
+    }
+
+    @Test
+    public void testClear() throws IOException {
+        try (MappedFloor floor = MappedFloor.open(tempDir.resolve("floor.bin"), 10)) {
+            floor.mark(1, 1);
+            floor.clear();
+            assertEquals(0, floor.getValue(1, 1));
+            assertEquals(0, floor.countMarked());
+            assertEquals(new Floor(10).getGrid()[1][1], floor.getGrid()[1][1]);
+        }
+    }
+
+    @Test
+    public void testRejectsMismatchedOrForeignFiles() throws IOException {
+        Path file = tempDir.resolve("floor.bin");
+        MappedFloor.open(file, 10).close();
+        assertThrows(IOException.class, () -> MappedFloor.open(file, 20));
+        assertThrows(IllegalArgumentException.class, () -> MappedFloor.open(file, 0));
+
+        Path foreign = tempDir.resolve("foreign.bin");
+        Files.write(foreign, new byte[MappedFloor.HEADER_BYTES]);
+        assertThrows(IOException.class, () -> MappedFloor.open(foreign));
+    }
+
+    @Test
+    public void testSpanFills() throws IOException {
+        try (MappedFloor floor = MappedFloor.open(tempDir.resolve("floor.bin"), 130)) {
+            floor.markRow(5, 1, 200);
+            floor.markColumn(64, 129, 0);
+
+            assertEquals(0, floor.getValue(0, 5));
+            assertEquals(1, floor.getValue(1, 5));
+            assertEquals(1, floor.getValue(129, 5));
+            assertEquals(1, floor.getValue(64, 0));
+            assertEquals(1, floor.getValue(64, 129));
+            assertEquals(129 + 130 - 1, floor.countMarked());
+        }
+    }
+
+    @Test
+    public void testCopyIsMappedAndIndependent() throws IOException {
+        try (MappedFloor floor = MappedFloor.open(tempDir.resolve("floor.bin"), 66)) {
+            floor.mark(65, 65);
+            try (MappedFloor copy = floor.copy()) {
+                floor.mark(0, 0);
+                copy.mark(1, 1);
+
+                assertEquals(1, copy.getValue(65, 65));
+                assertEquals(0, copy.getValue(0, 0));
+                assertEquals(0, floor.getValue(1, 1), "The copy should not share pages with the floor");
+            }
+        }
+    }
+
+    @Test
+    public void testSimulatorKeepsFloorsMapped() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RobotSimulator simulator = new RobotSimulator(MappedFloor.factory(tempDir), new PrintStream(output));
+        simulator.setCheckpointInterval(2);
+        for (String command : new String[] {"I 70", "D", "M 5", "R", "M 66", "H", "J 3"}) {
+            simulator.executeCommand(command);
+        }
+        assertTrue(simulator.getFloor() instanceof MappedFloor, "Replays should restore mapped floors");
+        assertEquals(6, simulator.getFloor().countMarked());
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(0, files.count(), "Temporary floor files should be removed once mapped");
+        }
+
+        RobotSimulator broken = new RobotSimulator(MappedFloor.factory(tempDir.resolve("missing")),
+                new PrintStream(output));
+        broken.executeCommand("I 5");
+        assertTrue(output.toString().contains("Error: Cannot map a floor in "), output.toString());
+        assertNull(broken.getFloor());
+    }
+
+    @Test
+    public void testSimulatorClosesFloorsItReplaces() throws IOException {
+        List<MappedFloor> created = new ArrayList<>();
+        IntFunction<Floor> mapped = MappedFloor.factory(tempDir);
+        RobotSimulator simulator = new RobotSimulator(size -> {
+            Floor floor = mapped.apply(size);
+            created.add((MappedFloor) floor);
+            return floor;
+        }, new PrintStream(new ByteArrayOutputStream()));
+        simulator.setCheckpointInterval(2);
+        for (String command : new String[] {"I 70", "D", "M 5", "R", "M 66", "J 3", "H", "I 10"}) {
+            simulator.executeCommand(command);
+        }
+        MappedFloor current = (MappedFloor) simulator.getFloor();
+        for (MappedFloor floor : created) {
+            assertEquals(floor == current, floor.isOpen(), "Only the current floor should stay open");
+        }
+        simulator.close();
+        assertFalse(current.isOpen(), "Closing the simulator should close its floor");
+        assertFalse(simulator.isRunning());
+    }
+
+    @Test
+    public void testSimulatorResumesFromAFloorFile() throws IOException {
+        Path file = tempDir.resolve("session.floor");
+        RobotSimulator first = new RobotSimulator(PackedFloor::new, new PrintStream(new ByteArrayOutputStream()));
+        for (String command : new String[] {"I 70", "D", "M 5"}) {
+            first.executeCommand(command);
+        }
+        first.saveFloor(file);
+
+        RobotSimulator second = new RobotSimulator(MappedFloor.factory(tempDir),
+                new PrintStream(new ByteArrayOutputStream()));
+        second.openFloor(file);
+        assertEquals(6, second.getFloor().countMarked());
+        assertEquals("Position: 0, 0 - Pen: up - Facing: north", second.getRobot().toString());
+        for (String command : new String[] {"D", "R", "M 3", "UNDO", "M 2"}) {
+            second.executeCommand(command);
+        }
+        second.saveFloor(file);
+        second.close();
+
+        RobotSimulator third = new RobotSimulator(MappedFloor.factory(tempDir),
+                new PrintStream(new ByteArrayOutputStream()));
+        third.openFloor(file);
+        assertEquals(8, third.getFloor().countMarked(), "Marks made on the opened floor should be in the file");
+        assertEquals(1, third.getFloor().getValue(2, 0));
+        assertEquals(0, third.getFloor().getValue(3, 0));
+        third.executeCommand("I 5");
+        third.saveFloor(file);
+        third.close();
+        try (MappedFloor saved = MappedFloor.open(file)) {
+            assertEquals(5, saved.getSize(), "A replaced floor should be written back over the file");
+        }
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(1, files.count(), "Only the floor file should be left");
+        }
+    }
+
+    @Test
+    public void testUnmark() throws IOException {
+        try (MappedFloor floor = MappedFloor.open(tempDir.resolve("floor.bin"), 70)) {
+            floor.markRow(69, 0, 69);
+            floor.unmark(65, 69);
+            assertEquals(0, floor.getValue(65, 69));
+            assertEquals(69, floor.countMarked());
+            floor.unmarkRow(69, 60, 200);
+            assertEquals(60, floor.countMarked(), "Cells 60 to 69 are cleared, 65 already was");
+            floor.markColumn(3, 0, 69);
+            floor.unmarkColumn(3, -5, 10);
+            assertEquals(0, floor.getValue(3, 10));
+            assertEquals(1, floor.getValue(3, 11));
+        }
+    }
+
+    @Test
+    public void testDensityPyramidFollowsChanges() throws IOException {
+        try (MappedFloor floor = MappedFloor.open(tempDir.resolve("floor.bin"), 130)) {
+            DensityPyramid pyramid = new DensityPyramid(floor);
+            floor.markRow(5, 0, 129);
+            floor.markColumn(64, 0, 129);
+            floor.mark(3, 3);
+            floor.unmark(64, 5);
+            assertEquals(floor.countMarked(), pyramid.countBlock(0, 0, 256));
+            assertEquals(9, pyramid.countBlock(0, 0, 8), "Row 5 across x 0-7, plus [3, 3]");
+            floor.clear();
+            assertEquals(0, pyramid.countBlock(0, 0, 256));
+        }
+    }
+}
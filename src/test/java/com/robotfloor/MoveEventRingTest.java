@@ -0,0 +1,213 @@
+package com.robotfloor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for MoveEventRing class
+ */
+public class MoveEventRingTest {
+
+    /**
+     * Copies every event to a string and counts batches
+     */
+    private static final class Recorder implements MoveListener {
+
+        private final List<String> events = new ArrayList<>();
+        private final List<Integer> batchSizes = new ArrayList<>();
+        private volatile Thread thread;
+
+        @Override
+        public void onEvents(MoveEventBatch batch) {
+            thread = Thread.currentThread();
+            batchSizes.add(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                switch (batch.getType(i)) {
+                    case MoveEventBatch.ROBOT:
+                        events.add("robot " + batch.getX(i) + "," + batch.getY(i) + " " + batch.getFacing(i)
+                                + (batch.isPenDown(i) ? " down" : " up"));
+                        break;
+                    case MoveEventBatch.SPAN:
+                        events.add("span " + batch.getX(i) + "," + batch.getY(i) + " to "
+                                + batch.getToX(i) + "," + batch.getToY(i));
+                        break;
+                    default:
+                        events.add("floor " + batch.getFloorSize(i));
+                }
+            }
+        }
+    }
+
+    private static RobotSimulator simulator() {
+        return new RobotSimulator(PackedFloor::new, new PrintStream(new ByteArrayOutputStream()));
+    }
+
+    @Test
+    public void testSimulatorPublishesStateAndSpans() {
+        Recorder recorder = new Recorder();
+        RobotSimulator simulator = simulator();
+        simulator.setMoveEvents(new MoveEventRing(64, recorder));
+        simulator.executeCommand("I 10");
+        simulator.executeCommand("D");
+        simulator.executeCommand("M 3");
+        simulator.executeCommand("C");
+        simulator.executeCommand("R");
+        simulator.executeCommand("M 20");
+        simulator.executeCommand("UNDO");
+        assertEquals(List.of(
+                "floor 0", "robot 0,0 north up",
+                "floor 10",
+                "robot 0,0 north down",
+                "span 0,0 to 0,3", "robot 0,3 north down",
+                "robot 0,3 east down",
+                "span 0,3 to 20,3", "robot 20,3 east down",
+                "floor 10", "robot 0,3 east down"), recorder.events);
+        assertEquals(List.of(2, 1, 1, 2, 1, 2, 2), recorder.batchSizes, "One batch per command that changed something");
+        assertEquals(Thread.currentThread(), recorder.thread);
+    }
+
+    @Test
+    public void testReplayPublishesOnlyTheNewFloor() {
+        Recorder recorder = new Recorder();
+        RobotSimulator simulator = simulator();
+        simulator.executeCommand("I 5");
+        simulator.executeCommand("D");
+        simulator.executeCommand("M 2");
+        simulator.setMoveEvents(new MoveEventRing(8, recorder));
+        simulator.executeCommand("H");
+        simulator.setMoveEvents(null);
+        simulator.executeCommand("M 1");
+        assertEquals(List.of("floor 5", "robot 0,2 north down", "floor 5"), recorder.events,
+                "Replayed moves should not be published again");
+    }
+
+    @Test
+    public void testFullRingDeliversMidCommand() {
+        Recorder recorder = new Recorder();
+        MoveEventRing ring = new MoveEventRing(2, recorder);
+        for (int i = 0; i < 5; i++) {
+            ring.span(i, 0, i, 9);
+        }
+        assertEquals(List.of(2, 2), recorder.batchSizes);
+        ring.publish();
+        assertEquals(5, ring.getPublishedCount());
+        assertEquals(5, ring.getDeliveredCount());
+        assertEquals("span 4,0 to 4,9", recorder.events.get(4), "Events should survive wrapping around");
+        ring.publish();
+        assertEquals(3, recorder.batchSizes.size(), "An empty publish should not deliver a batch");
+        assertEquals(2, ring.getCapacity());
+    }
+
+    @Test
+    public void testConsumerThreadDeliversEveryEvent() {
+        Recorder recorder = new Recorder();
+        MoveEventRing ring = new MoveEventRing(16, batch -> {
+            // A slow listener, so events queue up behind it
+            LockSupport.parkNanos(200_000);
+            recorder.onEvents(batch);
+        });
+        Thread consumer = ring.start();
+        RobotSimulator simulator = simulator();
+        simulator.setMoveEvents(ring);
+        simulator.executeCommand("I 300");
+        simulator.executeCommand("D");
+        for (int i = 0; i < 200; i++) {
+            simulator.executeCommand(i % 2 == 0 ? "M 1" : "R");
+        }
+        ring.close();
+        assertFalse(consumer.isAlive());
+        assertNotSame(Thread.currentThread(), recorder.thread);
+        assertEquals(ring.getPublishedCount(), ring.getDeliveredCount());
+        assertEquals(ring.getPublishedCount(), recorder.events.size());
+        assertEquals(100, recorder.events.stream().filter(event -> event.startsWith("span")).count());
+        assertTrue(recorder.batchSizes.stream().anyMatch(size -> size > 1), "A slow listener should get batches");
+        assertThrows(IllegalStateException.class, ring::start);
+    }
+
+    @Test
+    public void testFailingListenerLosesOnlyItsBatch() {
+        List<Integer> seen = new ArrayList<>();
+        MoveEventRing ring = new MoveEventRing(4, batch -> {
+            if (batch.getX(0) == 1) {
+                throw new IllegalStateException("listener failure");
+            }
+            seen.add(batch.getX(0));
+        });
+        PrintStream originalErr = System.err;
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(err));
+        try {
+            ring.start();
+            for (int i = 0; i < 3; i++) {
+                ring.floor(i);
+                ring.publish();
+                while (ring.getDeliveredCount() <= i) {
+                    Thread.onSpinWait();
+                }
+            }
+            ring.close();
+        } finally {
+            System.setErr(originalErr);
+        }
+        assertEquals(List.of(0, 2), seen);
+        assertTrue(err.toString().contains("listener failure"));
+    }
+
+    @Test
+    public void testInterruptedCloseWaitsForTheConsumer() {
+        Recorder recorder = new Recorder();
+        MoveEventRing ring = new MoveEventRing(16, batch -> {
+            LockSupport.parkNanos(1_000_000);
+            recorder.onEvents(batch);
+        });
+        Thread consumer = ring.start();
+        for (int i = 0; i < 10; i++) {
+            ring.floor(i);
+            ring.publish();
+        }
+        Thread.currentThread().interrupt();
+        ring.close();
+        assertTrue(Thread.interrupted(), "close() should restore the interrupt");
+        assertFalse(consumer.isAlive());
+        assertEquals(ring.getPublishedCount(), ring.getDeliveredCount());
+    }
+
+    @Test
+    public void testCloseWithoutConsumerDelivers() {
+        Recorder recorder = new Recorder();
+        MoveEventRing ring = new MoveEventRing(4, recorder);
+        ring.close();
+        ring.robot(1, 2, 4 | Robot.Direction.WEST.ordinal());
+        ring.publish();
+        assertEquals(List.of("robot 1,2 west down"), recorder.events);
+        assertThrows(IllegalStateException.class, ring::start, "A closed ring cannot be started");
+    }
+
+    @Test
+    public void testBatchIndexIsChecked() {
+        MoveEventRing ring = new MoveEventRing(4, batch -> {
+            assertEquals(0, batch.getFirstSequence());
+            assertThrows(IndexOutOfBoundsException.class, () -> batch.getType(1));
+            assertThrows(IndexOutOfBoundsException.class, () -> batch.getX(-1));
+        });
+        ring.floor(3);
+        ring.publish();
+        assertEquals(1, ring.getDeliveredCount());
+    }
+
+    @Test
+    public void testRejectsBadCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new MoveEventRing(0, batch -> { }));
+        assertThrows(IllegalArgumentException.class, () -> new MoveEventRing(12, batch -> { }));
+        assertThrows(IllegalArgumentException.class, () -> new MoveEventRing(1 << 27, batch -> { }));
+    }
+}
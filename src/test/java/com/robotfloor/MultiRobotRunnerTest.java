@@ -0,0 +1,73 @@
+package com.robotfloor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for MultiRobotRunner class
+ */
+public class MultiRobotRunnerTest {
+
+    private ByteArrayOutputStream output;
+    private MultiRobotRunner runner;
+
+    @BeforeEach
+    public void setUp() {
+        output = new ByteArrayOutputStream();
+        runner = new MultiRobotRunner(new ConcurrentFloor(200), new PrintStream(output, true));
+    }
+
+    @Test
+    public void testRobotsShareTheFloor() throws InterruptedException {
+        RobotSimulator reference = new RobotSimulator(PackedFloor::new, new PrintStream(new ByteArrayOutputStream()));
+        reference.executeCommand("I 200");
+        for (int i = 0; i < 100; i++) {
+            // Robot i walks right to column i, then draws up column i and across row 150
+            CommandProgram program = CommandProgram.compile(Arrays.asList(
+                    "R", "M " + i, "L", "D", "M 150", "R", "M 40"));
+            runner.addRobot(program);
+            reference.executeCommand("U");
+            reference.getRobot().reset();
+            reference.run(program);
+        }
+
+        runner.run(4);
+
+        assertEquals(100, runner.getRobotCount());
+        assertEquals(reference.getFloor().toString(), runner.getFloor().toString());
+        assertEquals("Position: 139, 150 - Pen: down - Facing: east", runner.getRobot(99).toString());
+    }
+
+    @Test
+    public void testPositionQuitAndUnsupportedCommands() throws InterruptedException {
+        runner.addRobot(CommandProgram.compile(Arrays.asList("D", "M 2", "C", "P", "M x", "M -1", "Q", "M 5")));
+        runner.run(1);
+
+        String text = output.toString();
+        assertTrue(text.contains("Robot 0: Position: 0, 2 - Pen: down - Facing: north"));
+        assertTrue(text.contains("Robot 0: Error: Command not supported with multiple robots: p"));
+        assertTrue(text.contains("Robot 0: Error: Invalid move distance. Usage: M <number>"));
+        assertTrue(text.contains("Robot 0: Error: Move distance must be non-negative"));
+        assertEquals(2, runner.getRobot(0).getY(), "Commands after 'Q' should not run");
+    }
+
+    @Test
+    public void testRepeat() throws InterruptedException {
+        runner.addRobot(CommandProgram.compile(Arrays.asList("D", "REPEAT 1000 [M 1 R M 1 L]", "REPEAT 2 [P]", "C")));
+        runner.run(1);
+        String text = output.toString();
+        assertTrue(text.contains("Robot 0: Position: 1000, 1000 - Pen: down - Facing: north"), text);
+        assertTrue(text.contains("Robot 0: Error: Only U, D, R, L, M and REPEAT can be repeated: P"), text);
+    }
+
+    @Test
+    public void testInvalidThreadCount() {
+        assertThrows(IllegalArgumentException.class, () -> runner.run(0));
+    }
+}
@@ -0,0 +1,116 @@
+package com.robotfloor;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for PackedFloor class
+ */
+public class PackedFloorTest {
+
+    private PackedFloor floor;
+
+    @BeforeEach
+    public void setUp() {
+        floor = new PackedFloor(70);
+    }
+
+    @Test
+    public void testInitialization() {
+        assertEquals(70, floor.getSize());
+        assertEquals(2, floor.getWordsPerRow(), "70 columns should need 2 words per row");
+        assertEquals(0, floor.countMarked());
+    }
+
+    @Test
+    public void testInvalidFloorSize() {
+        assertThrows(IllegalArgumentException.class, () -> new PackedFloor(0));
+        assertThrows(IllegalArgumentException.class, () -> new PackedFloor(-5));
+    }
+
+    @Test
+    public void testMarkAcrossWordBoundary() {
+        floor.mark(63, 4);
+        floor.mark(64, 4);
+        floor.mark(69, 69);
+
+        assertEquals(1, floor.getValue(63, 4));
+        assertEquals(1, floor.getValue(64, 4));
+        assertEquals(1, floor.getValue(69, 69));
+        assertEquals(0, floor.getValue(62, 4));
+        assertEquals(0, floor.getValue(63, 5), "Marks should not leak into the next row");
+        assertEquals(3, floor.countMarked());
+    }
+
+    @Test
+    public void testMarkOutOfBounds() {
+        floor.mark(-1, 0);
+        floor.mark(70, 0);
+        floor.mark(0, 70);
+        assertEquals(0, floor.countMarked());
+        assertEquals(0, floor.getValue(70, 0));
+    }
+
+    @Test
+    public void testClear() {
+        floor.mark(1, 1);
+        floor.mark(65, 30);
+        floor.clear();
+        assertEquals(0, floor.getValue(1, 1));
+        assertEquals(0, floor.getValue(65, 30));
+        assertEquals(0, floor.countMarked());
+    }
+
+    @Test
+    public void testMatchesIntGridFloor() {
+        Floor reference = new Floor(70);
+        int[][] points = {{0, 0}, {5, 3}, {63, 63}, {64, 0}, {69, 12}, {12, 69}};
+        for (int[] point : points) {
+            floor.mark(point[0], point[1]);
+            reference.mark(point[0], point[1]);
+        }
+
+        assertEquals(reference.toString(), floor.toString(), "Rendering should match the int[][] floor");
+        assertArrayEquals(reference.getGrid(), floor.getGrid(), "Materialized grid should match");
+        assertEquals(reference.countMarked(), floor.countMarked());
+    }
+
+    @Test
+    public void testSpanFillsMatchCellByCellMarking() {
+        Floor reference = new Floor(70);
+        int[][] rows = {{3, 0, 69}, {4, 62, 65}, {5, 10, 20}, {6, 64, 64}, {7, 80, -10}};
+        for (int[] row : rows) {
+            floor.markRow(row[0], row[1], row[2]);
+            reference.markRow(row[0], row[1], row[2]);
+        }
+        floor.markColumn(65, 69, 40);
+        reference.markColumn(65, 69, 40);
+        floor.markColumn(0, -5, 2);
+        reference.markColumn(0, -5, 2);
+        floor.markColumn(70, 0, 69);
+
+        assertArrayEquals(reference.getGrid(), floor.getGrid());
+        assertEquals(reference.countMarked(), floor.countMarked());
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        floor.markRow(10, 0, 69);
+        PackedFloor copy = floor.copy();
+        floor.mark(0, 0);
+
+        assertEquals(70, copy.countMarked());
+        assertEquals(0, copy.getValue(0, 0));
+    }
+
+    @Test
+    public void testUnmarkKeepsNeighbours() {
+        floor.markRow(0, 62, 66);
+        floor.unmark(64, 0);
+        assertEquals(0, floor.getValue(64, 0));
+        assertEquals(4, floor.countMarked());
+    }
+}
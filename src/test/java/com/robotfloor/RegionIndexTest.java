@@ -0,0 +1,153 @@
+package com.robotfloor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for RegionIndex class
+ */
+public class RegionIndexTest {
+
+    private static long bruteForce(Floor floor, int x1, int y1, int x2, int y2) {
+        long total = 0;
+        for (int y = Math.min(y1, y2); y <= Math.max(y1, y2); y++) {
+            for (int x = Math.min(x1, x2); x <= Math.max(x1, x2); x++) {
+                total += floor.getValue(x, y);
+            }
+        }
+        return total;
+    }
+
+    private static void assertRandomQueries(Floor floor, Random random, String label) {
+        int size = floor.getSize();
+        for (int q = 0; q < 100; q++) {
+            int x1 = random.nextInt(size + 4) - 2;
+            int y1 = random.nextInt(size + 4) - 2;
+            int x2 = random.nextInt(size + 4) - 2;
+            int y2 = random.nextInt(size + 4) - 2;
+            long expected = bruteForce(floor, x1, y1, x2, y2);
+            assertEquals(expected, floor.countMarked(x1, y1, x2, y2),
+                    label + ": [" + x1 + ", " + y1 + "] to [" + x2 + ", " + y2 + "]");
+            assertEquals(expected > 0, floor.anyMarked(x1, y1, x2, y2), label);
+        }
+    }
+
+    @Test
+    public void testMatchesBruteForceOnEveryBackend() {
+        Random random = new Random(20);
+        for (int size : new int[] {1, 13, 70}) {
+            for (Floor floor : new Floor[] {new Floor(size), new PackedFloor(size), new SparseFloor(size),
+                    new ConcurrentFloor(size), new RunLengthFloor(size)}) {
+                String label = floor.getClass().getSimpleName() + " of size " + size;
+                for (int i = 0; i < 20; i++) {
+                    floor.mark(random.nextInt(size), random.nextInt(size));
+                }
+                floor.markRow(size / 2, 0, size - 1);
+                assertRandomQueries(floor, random, label + " when built");
+                for (int i = 0; i < 60; i++) {
+                    int a = random.nextInt(size);
+                    int b = random.nextInt(size);
+                    int c = random.nextInt(size);
+                    if (i % 3 == 0) {
+                        floor.markRow(a, b, c);
+                    } else if (i % 3 == 1) {
+                        floor.markColumn(a, b, c);
+                    } else {
+                        floor.unmark(a, b);
+                    }
+                }
+                assertRandomQueries(floor, random, label + " after changes");
+                floor.clear();
+                assertEquals(0, floor.countMarked(0, 0, size - 1, size - 1), label + " after clear");
+            }
+        }
+    }
+
+    @Test
+    public void testWholeFloorMatchesCountMarked() {
+        PackedFloor floor = new PackedFloor(100);
+        floor.markRow(3, 0, 99);
+        floor.markColumn(40, 0, 99);
+        assertEquals(floor.countMarked(), floor.countMarked(0, 0, 99, 99));
+        assertEquals(floor.countMarked(), floor.countMarked(-50, 500, 500, -50), "Corners are clipped");
+        assertTrue(floor.anyMarked(40, 90, 40, 90));
+        assertFalse(floor.anyMarked(41, 4, 99, 99));
+        assertFalse(floor.anyMarked(200, 200, 300, 300));
+    }
+
+    @Test
+    public void testSparseMarksOutsideDeclaredAreaAreIgnored() {
+        SparseFloor floor = new SparseFloor(10);
+        floor.markRow(4, -70, 70);
+        floor.getRegionIndex();
+        floor.markRow(5, -70, 70);
+        floor.mark(3, -3);
+        assertEquals(20, floor.countMarked(0, 0, 9, 9));
+    }
+
+    @Test
+    public void testIndexIsKeptPerFloor() {
+        PackedFloor floor = new PackedFloor(8);
+        assertSame(floor.getRegionIndex(), floor.getRegionIndex());
+        floor.mark(1, 1);
+        PackedFloor copy = floor.copy();
+        copy.mark(2, 2);
+        assertEquals(1, floor.countMarked(0, 0, 7, 7));
+        assertEquals(2, copy.countMarked(0, 0, 7, 7));
+    }
+
+    @Test
+    public void testIndexesFloorsPastOneIntPerCell() {
+        SparseFloor floor = new SparseFloor(50_000);
+        floor.markRow(49_999, 0, 49_999);
+        floor.markColumn(100, 0, 49_999);
+        assertEquals(99_999, floor.countMarked(0, 0, 49_999, 49_999));
+        floor.markRow(7, 60, 70);
+        assertEquals(10, floor.countMarked(61, 7, 70, 7), "Edge words should be masked");
+        assertEquals(49_999, floor.countMarked(100, 0, 100, 49_998));
+    }
+
+    @Test
+    public void testTallQueriesReadOnlyTheRowsOutsideWholeBands() {
+        long[] reads = new long[1];
+        PackedFloor floor = new PackedFloor(300) {
+            @Override
+            public long getWordBits(int y, int word) {
+                reads[0]++;
+                return super.getWordBits(y, word);
+            }
+        };
+        Random random = new Random(7);
+        for (int i = 0; i < 400; i++) {
+            floor.mark(random.nextInt(300), random.nextInt(300));
+        }
+        floor.getRegionIndex();
+        floor.markColumn(130, 5, 290);
+        floor.markRow(100, 3, 250);
+        for (int q = 0; q < 200; q++) {
+            int x1 = random.nextInt(300);
+            int y1 = random.nextInt(300);
+            int x2 = random.nextInt(300);
+            int y2 = random.nextInt(300);
+            reads[0] = 0;
+            long count = floor.countMarked(x1, y1, x2, y2);
+            assertTrue(reads[0] <= 4 * 126, "Edge words should come from the column tree, read " + reads[0]);
+            assertEquals(bruteForce(floor, x1, y1, x2, y2), count,
+                    "[" + x1 + ", " + y1 + "] to [" + x2 + ", " + y2 + "]");
+        }
+        reads[0] = 0;
+        assertEquals(bruteForce(floor, 1, 0, 298, 255), floor.countMarked(1, 0, 298, 255));
+        assertEquals(0, reads[0], "Rows covering whole bands should not be read");
+    }
+
+    @Test
+    public void testRejectsFloorsTooLargeToIndex() {
+        SparseFloor floor = new SparseFloor(400_000);
+        assertThrows(IllegalArgumentException.class, floor::getRegionIndex);
+    }
+}
@@ -0,0 +1,251 @@
+package com.robotfloor;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntFunction;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for RepeatLoop class
+ */
+public class RepeatLoopTest {
+
+    /**
+     * A loop built in the test, run one iteration at a time as the reference
+     */
+    private static final class Loop {
+
+        private final int count;
+        private final List<Object> body = new ArrayList<>();
+
+        Loop(int count) {
+            this.count = count;
+        }
+
+        String text() {
+            StringBuilder text = new StringBuilder("REPEAT " + count + " [");
+            for (Object command : body) {
+                text.append(' ').append(command instanceof Loop ? ((Loop) command).text() : command);
+            }
+            return text.append(" ]").toString();
+        }
+
+        void runSlowly(Robot robot, Floor floor) {
+            for (int i = 0; i < count; i++) {
+                for (Object command : body) {
+                    if (command instanceof Loop) {
+                        ((Loop) command).runSlowly(robot, floor);
+                        continue;
+                    }
+                    String word = (String) command;
+                    switch (word.charAt(0)) {
+                        case 'U':
+                            robot.penUp();
+                            break;
+                        case 'D':
+                            robot.penDown();
+                            break;
+                        case 'R':
+                            robot.turnRight();
+                            break;
+                        case 'L':
+                            robot.turnLeft();
+                            break;
+                        default:
+                            int startX = robot.getX();
+                            int startY = robot.getY();
+                            robot.move(Integer.parseInt(word.substring(2)));
+                            if (robot.isPenDown()) {
+                                mark(floor, startX, startY, robot.getX(), robot.getY());
+                            }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void mark(Floor floor, int fromX, int fromY, int toX, int toY) {
+        if (fromY == toY) {
+            floor.markRow(fromY, fromX, toX);
+        } else {
+            floor.markColumn(fromX, fromY, toY);
+        }
+    }
+
+    private static Loop randomLoop(Random random, int depth) {
+        // Long outer loops walk far off the floor, so clipping is exercised too
+        Loop loop = new Loop(random.nextInt(depth == 1 ? 400 : 14));
+        int length = 1 + random.nextInt(5);
+        for (int i = 0; i < length; i++) {
+            int pick = random.nextInt(depth < 3 ? 8 : 7);
+            if (pick == 7) {
+                loop.body.add(randomLoop(random, depth + 1));
+            } else if (pick < 3) {
+                loop.body.add("M " + random.nextInt(6));
+            } else {
+                loop.body.add(String.valueOf("UDRL".charAt(pick - 3)));
+            }
+        }
+        return loop;
+    }
+
+    private static void assertSameFloor(Floor expected, Floor actual, String label) {
+        for (int y = -80; y < 120; y++) {
+            for (int x = -80; x < 120; x++) {
+                assertEquals(expected.getValue(x, y), actual.getValue(x, y), label + " at " + x + "," + y);
+            }
+        }
+    }
+
+    private static int run(String text, Robot robot, Floor floor) {
+        int[] traces = new int[1];
+        RepeatLoop.run(RepeatLoop.compile(text), robot, floor, (fromX, fromY, toX, toY) -> {
+            traces[0]++;
+            mark(floor, fromX, fromY, toX, toY);
+        });
+        return traces[0];
+    }
+
+    @Test
+    public void testMatchesIteratingOnEveryFloor() {
+        List<IntFunction<Floor>> backends = List.of(Floor::new, PackedFloor::new, SparseFloor::new);
+        Random random = new Random(25);
+        for (int round = 0; round < 300; round++) {
+            Loop loop = randomLoop(random, 1);
+            IntFunction<Floor> backend = backends.get(round % backends.size());
+            Robot expectedRobot = new Robot();
+            Robot actualRobot = new Robot();
+            expectedRobot.setState(20, 20, round % 2 == 0, Robot.Direction.values()[round % 4]);
+            actualRobot.setState(20, 20, round % 2 == 0, Robot.Direction.values()[round % 4]);
+            Floor expected = backend.apply(40);
+            Floor actual = backend.apply(40);
+            loop.runSlowly(expectedRobot, expected);
+            run(loop.text(), actualRobot, actual);
+            assertEquals(expectedRobot.toString(), actualRobot.toString(), loop.text());
+            assertSameFloor(expected, actual, loop.text());
+        }
+    }
+
+    @Test
+    public void testClosedLoopIsSkipped() {
+        Floor floor = new PackedFloor(10);
+        Robot robot = new Robot();
+        robot.penDown();
+        int traces = run("REPEAT 1000000 [M 3 R]", robot, floor);
+        assertEquals(4, traces, "Only the first trip around the square is drawn");
+        assertEquals("Position: 0, 0 - Pen: down - Facing: north", robot.toString());
+        assertEquals(12, floor.getCoverage().getMarkedCount());
+    }
+
+    @Test
+    public void testStaircaseIsClippedToTheFloor() {
+        Floor floor = new PackedFloor(50);
+        Robot robot = new Robot();
+        robot.penDown();
+        int traces = run("REPEAT 1000000 [M 1 R M 1 L]", robot, floor);
+        assertTrue(traces < 200, "Copies off the floor should not be visited, got " + traces);
+        assertEquals("Position: 1000000, 1000000 - Pen: down - Facing: north", robot.toString());
+        assertEquals(99, floor.getCoverage().getMarkedCount());
+    }
+
+    @Test
+    public void testStraightRunIsMergedOnAnUnboundedFloor() {
+        Floor floor = new SparseFloor(10);
+        Robot robot = new Robot();
+        robot.turnRight();
+        robot.penDown();
+        int traces = run("repeat 1000000 [ m 1 ]", robot, floor);
+        assertTrue(traces <= 2, "The copies touch, so one run covers them, got " + traces);
+        assertEquals(1, floor.getValue(1_000_000, 0), "Marks past N are kept on an unbounded floor");
+        assertEquals(1000000, robot.getX());
+    }
+
+    @Test
+    public void testLoopPastTheIntRangeStopsAtItsEdge() {
+        Floor floor = new PackedFloor(10);
+        Robot robot = new Robot();
+        robot.penDown();
+        run("REPEAT 1000 [M 10000000]", robot, floor);
+        assertEquals(Integer.MAX_VALUE, robot.getY(), "The position should saturate, not wrap");
+        assertEquals(10, floor.getCoverage().getMarkedCount());
+
+        Floor sparse = new SparseFloor(10);
+        robot.setState(Integer.MAX_VALUE - 10, 0, true, Robot.Direction.EAST);
+        int traces = run("REPEAT 1000000 [M 1]", robot, sparse);
+        assertTrue(traces <= 2, "Copies past the int range should not be visited, got " + traces);
+        assertEquals(Integer.MAX_VALUE, robot.getX());
+        assertEquals(1, sparse.getValue(Integer.MAX_VALUE, 0));
+        assertEquals(0, sparse.getValue(Integer.MIN_VALUE, 0), "Nothing should wrap to the far side");
+    }
+
+    @Test
+    public void testNestedDriftingLoops() {
+        Loop inner = new Loop(1000);
+        inner.body.addAll(List.of("M 1", "R", "M 1", "L"));
+        Loop outer = new Loop(1000);
+        outer.body.addAll(List.of("M 2", inner, "U", "L", "M 3", "R", "D"));
+        Floor expected = new PackedFloor(60);
+        Robot expectedRobot = new Robot();
+        expectedRobot.penDown();
+        outer.runSlowly(expectedRobot, expected);
+        Floor actual = new PackedFloor(60);
+        Robot actualRobot = new Robot();
+        actualRobot.penDown();
+        int traces = run(outer.text(), actualRobot, actual);
+        assertTrue(traces < 5000, "Got " + traces);
+        assertEquals(expectedRobot.toString(), actualRobot.toString());
+        assertSameFloor(expected, actual, outer.text());
+    }
+
+    @Test
+    public void testZeroCountAndEmptyBody() {
+        Floor floor = new PackedFloor(5);
+        Robot robot = new Robot();
+        robot.penDown();
+        assertEquals(0, run("REPEAT 0 [M 3]", robot, floor));
+        assertEquals(0, run("REPEAT 7 []", robot, floor));
+        assertEquals(0, RepeatLoop.compile("REPEAT 0 [M 3]")[0], "The count comes first");
+        assertEquals(2, run("REPEAT 2 [M2 R]", robot, floor), "The distance may follow the M directly");
+        assertEquals("Position: 2, 2 - Pen: down - Facing: south", robot.toString());
+    }
+
+    @Test
+    public void testCompiledLayout() {
+        int[] loop = RepeatLoop.compile("REPEAT 3 [M5 R REPEAT 2 [m 1] D]");
+        int[] expected = {3, 11, CommandParser.MOVE, 5, CommandParser.TURN_RIGHT, 0,
+                CommandParser.REPEAT, 2, 2, CommandParser.MOVE, 1, CommandParser.PEN_DOWN, 0};
+        assertArrayEquals(expected, loop, "Count, body length, then an opcode and operand per command");
+        assertEquals(Integer.MAX_VALUE, RepeatLoop.compile("REPEAT 1 [M 2147483647]")[3]);
+        assertThrows(IllegalArgumentException.class, () -> RepeatLoop.compile("REPEAT 1 [M 2147483648]"));
+        assertThrows(IllegalArgumentException.class, () -> RepeatLoop.compile("REPEAT 1 [M]"));
+        assertNull(RepeatLoop.compileOrNull("REPEAT 1 [M x]"));
+    }
+
+    @Test
+    public void testRejectsMalformedLoops() {
+        assertEquals("Repeat count must be non-negative",
+                assertThrows(IllegalArgumentException.class, () -> RepeatLoop.compile("REPEAT -1 [M 1]")).getMessage());
+        assertEquals("Move distance must be non-negative",
+                assertThrows(IllegalArgumentException.class, () -> RepeatLoop.compile("REPEAT 2 [M -1]")).getMessage());
+        assertEquals("Only U, D, R, L, M and REPEAT can be repeated: P",
+                assertThrows(IllegalArgumentException.class, () -> RepeatLoop.compile("REPEAT 2 [P]")).getMessage());
+        assertEquals("Missing ']' at the end of the loop",
+                assertThrows(IllegalArgumentException.class, () -> RepeatLoop.compile("REPEAT 2 [M 1")).getMessage());
+        assertTrue(assertThrows(IllegalArgumentException.class, () -> RepeatLoop.compile("REPEAT 2 [M 1] R"))
+                .getMessage().startsWith("Unexpected text"));
+        assertThrows(IllegalArgumentException.class, () -> RepeatLoop.compile("REPEAT 2 M 1"));
+        assertThrows(IllegalArgumentException.class, () -> RepeatLoop.compile("REPEAT two [M 1]"));
+        assertThrows(IllegalArgumentException.class, () -> RepeatLoop.compile("REPEAT 2 [[M 1]]"));
+        assertThrows(IllegalArgumentException.class, () -> RepeatLoop.compile("REPEAT 2 [UP]"));
+        assertThrows(IllegalArgumentException.class, () -> RepeatLoop.compile("LOOP 2 [M 1]"));
+        String deep = "REPEAT 2 [".repeat(RepeatLoop.MAX_DEPTH + 1) + "]".repeat(RepeatLoop.MAX_DEPTH + 1);
+        assertThrows(IllegalArgumentException.class, () -> RepeatLoop.compile(deep));
+        RepeatLoop.compile(deep.substring("REPEAT 2 [".length(), deep.length() - 1));
+    }
+}
@@ -2,8 +2,14 @@ package com.robotfloor;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.List;
 
 import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -83,6 +89,53 @@ public class RobotSimulatorIntegrationTest {
         assertTrue(output.contains("Unknown command: z"));
     }
 
+    @Test
+    public void testMovePastTheIntRangeDoesNotWrapOntoTheFloor() {
+        RobotSimulator simulator = new RobotSimulator();
+        simulator.executeCommand("I 10");
+        simulator.executeCommand("R");
+        simulator.executeCommand("M 2147483647");
+        simulator.executeCommand("D");
+        simulator.executeCommand("M 5");
+        simulator.executeCommand("C");
+
+        assertEquals(0, simulator.getFloor().getCoverage().getMarkedCount(), "Nothing should be marked");
+        assertTrue(outputStream.toString().contains("Position: 2147483647, 0 - Pen: down - Facing: east"),
+                outputStream.toString());
+    }
+
+    @Test
+    public void testUndoOfAMoveFarPastTheFloorOnlyReadsTheFloor() {
+        RobotSimulator simulator = new RobotSimulator();
+        simulator.executeCommand("I 100");
+        simulator.executeCommand("D");
+        long start = System.nanoTime();
+        simulator.executeCommand("M 1000000000");
+        simulator.executeCommand("UNDO");
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(0, simulator.getFloor().getCoverage().getMarkedCount());
+        assertTrue(elapsedMillis < 500, "Recording the move should not walk a billion cells, took "
+                + elapsedMillis + " ms");
+    }
+
+    @Test
+    public void testOversizeFloorIsReportedAndKeepsTheCurrentFloor() {
+        RobotSimulator simulator = new RobotSimulator();
+        simulator.executeCommand("I 4");
+        simulator.executeCommand("D");
+        simulator.executeCommand("M 2");
+        simulator.executeCommand("I 400000");
+        simulator.executeCommand("C");
+
+        String output = outputStream.toString();
+        assertTrue(output.contains("Error: Floor size too large for a packed floor"), output);
+        assertEquals(4, simulator.getFloor().getSize());
+        assertTrue(output.contains("Position: 0, 2 - Pen: down - Facing: north"), "The session should keep running");
+        simulator.executeCommand("H");
+        assertEquals(4, simulator.getFloor().getSize(), "Replaying the failed 'I' should change nothing");
+    }
+
     @Test
     public void testHistoryReplayAndQuitFlow() {
         RobotSimulator simulator = new RobotSimulator();
@@ -101,4 +154,438 @@ public class RobotSimulatorIntegrationTest {
         assertTrue(output.contains("History replay complete."));
         assertTrue(output.contains("Program ended."));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSparseFloorKeepsMarksOutsideDeclaredArea() {
+        RobotSimulator simulator = new RobotSimulator(SparseFloor::new);
+
+        simulator.executeCommand("I 1000000000");
+        simulator.executeCommand("D");
+        simulator.executeCommand("L");
+        simulator.executeCommand("M 3");
+        simulator.executeCommand("C");
+
+        String output = outputStream.toString();
+
+        assertTrue(output.contains("System initialized with 1000000000 x 1000000000 floor"));
+        assertTrue(output.contains("Position: -3, 0 - Pen: down - Facing: west"));
+    }
+
+    @Test
+    public void testHistoryReplayRestoresSameStateRepeatedly() {
+        RobotSimulator simulator = new RobotSimulator();
+
+        simulator.executeCommand("I 4");
+        simulator.executeCommand("D");
+        simulator.executeCommand("r");
+        simulator.executeCommand("M 2");
+        simulator.executeCommand("H");
+        simulator.executeCommand("H");
+        simulator.executeCommand("C");
+
+        String output = outputStream.toString();
+
+        assertTrue(output.contains("> Enter command: r"), "Replay should echo the original text");
+        assertTrue(output.contains("Position: 2, 0 - Pen: down - Facing: east"));
+    }
+
+    private static RobotSimulator squareWalker(int checkpointInterval, int sides) {
+        RobotSimulator simulator = new RobotSimulator();
+        simulator.setCheckpointInterval(checkpointInterval);
+        simulator.executeCommand("I 10");
+        simulator.executeCommand("D");
+        for (int i = 0; i < sides; i++) {
+            simulator.executeCommand("M " + (i % 5 + 1));
+            simulator.executeCommand("R");
+        }
+        return simulator;
+    }
+
+    @Test
+    public void testJumpRewindsStateAndHistory() {
+        RobotSimulator simulator = squareWalker(3, 8);
+        RobotSimulator reference = squareWalker(3, 2);
+
+        simulator.executeCommand("J 6");
+
+        assertEquals(reference.getRobot().toString(), simulator.getRobot().toString());
+        assertEquals(reference.getFloor().toString(), simulator.getFloor().toString());
+        assertTrue(outputStream.toString().contains("Jumped to command 6"));
+
+        simulator.executeCommand("M 1");
+        reference.executeCommand("M 1");
+        simulator.executeCommand("H");
+        assertEquals(reference.getFloor().toString(), simulator.getFloor().toString(),
+                "Replay after a jump should follow the truncated history");
+    }
+
+    @Test
+    public void testJumpErrors() {
+        RobotSimulator simulator = squareWalker(4, 1);
+
+        simulator.executeCommand("J");
+        simulator.executeCommand("J 0");
+        simulator.executeCommand("J 99");
+
+        String output = outputStream.toString();
+        assertTrue(output.contains("Error: Invalid command number. Usage: J <number>"));
+        assertTrue(output.contains("Error: Command number must be between 1 and 4"));
+    }
+
+    @Test
+    public void testStateAtDoesNotChangeCurrentState() {
+        RobotSimulator simulator = squareWalker(2, 12);
+        List<String> commands = simulator.getHistory().getCommands();
+        String before = simulator.getFloor().toString();
+
+        for (int count = 1; count <= commands.size(); count++) {
+            RobotSimulator reference = new RobotSimulator();
+            for (String command : commands.subList(0, count)) {
+                reference.executeCommand(command);
+            }
+            RobotSimulator past = simulator.stateAt(count);
+            assertEquals(reference.getRobot().toString(), past.getRobot().toString(), "Robot after " + count);
+            assertEquals(reference.getFloor().toString(), past.getFloor().toString(), "Floor after " + count);
+        }
+
+        assertEquals(before, simulator.getFloor().toString());
+        assertThrows(IndexOutOfBoundsException.class, () -> simulator.stateAt(commands.size() + 1));
+    }
+
+    @Test
+    public void testCheckpointDeltasFollowUndoAndJumps() {
+        java.util.Random random = new java.util.Random(9);
+        RobotSimulator simulator = new RobotSimulator(PackedFloor::new, new PrintStream(new ByteArrayOutputStream()));
+        simulator.setCheckpointInterval(3);
+        simulator.executeCommand("I 70");
+        simulator.executeCommand("D");
+        for (int i = 0; i < 300; i++) {
+            int pick = random.nextInt(10);
+            if (pick < 4) {
+                simulator.executeCommand("M " + random.nextInt(80));
+            } else if (pick < 6) {
+                simulator.executeCommand(random.nextBoolean() ? "R" : "L");
+            } else if (pick == 6) {
+                simulator.executeCommand(random.nextBoolean() ? "U" : "D");
+            } else if (pick == 7) {
+                simulator.executeCommand("UNDO");
+            } else if (pick == 8 && simulator.getHistory().size() > 2) {
+                simulator.executeCommand("J " + (2 + random.nextInt(simulator.getHistory().size() - 1)));
+            } else {
+                simulator.executeCommand("H");
+            }
+        }
+        List<String> commands = simulator.getHistory().getCommands();
+        for (int count = 1; count <= commands.size(); count += 1 + count / 8) {
+            RobotSimulator reference = new RobotSimulator(PackedFloor::new, new PrintStream(new ByteArrayOutputStream()));
+            for (String command : commands.subList(0, count)) {
+                reference.executeCommand(command);
+            }
+            RobotSimulator past = simulator.stateAt(count);
+            assertEquals(reference.getRobot().toString(), past.getRobot().toString(), "Robot after " + count);
+            assertEquals(reference.getFloor().toString(), past.getFloor().toString(), "Floor after " + count);
+        }
+    }
+
+    @Test
+    public void testStateAtFailsOnceBoundedHistoryDroppedTheCommands() {
+        RobotSimulator simulator = new RobotSimulator(PackedFloor::new, System.out,
+                new CommandHistory(4, CommandHistory.EvictionPolicy.DROP_OLDEST));
+        simulator.setCheckpointInterval(100);
+        simulator.executeCommand("I 5");
+        for (int i = 0; i < 6; i++) {
+            simulator.executeCommand("R");
+        }
+        assertThrows(IllegalStateException.class, () -> simulator.stateAt(2));
+    }
+
+    @Test
+    public void testProgramRunsAreRecordedForReplay() {
+        RobotSimulator simulator = new RobotSimulator();
+        simulator.run(CommandProgram.compile(java.util.Arrays.asList("I 5", "D", "R", "M 3", "M x")));
+        simulator.executeCommand("H");
+
+        String output = outputStream.toString();
+        assertTrue(output.contains("> Enter command: M 3"));
+        assertTrue(output.contains("> Enter command: M"), "Invalid entries keep their command letter");
+        assertEquals("Position: 3, 0 - Pen: down - Facing: east", simulator.getRobot().toString());
+    }
+
+    @Test
+    public void testUndoAndRedo() {
+        RobotSimulator simulator = new RobotSimulator();
+        simulator.executeCommand("I 10");
+        simulator.executeCommand("D");
+        simulator.executeCommand("M 4");
+        simulator.executeCommand("R");
+        simulator.executeCommand("M 3");
+        String drawn = simulator.getFloor().toString();
+        simulator.executeCommand("P");
+
+        simulator.executeCommand("UNDO");
+        assertEquals("Position: 0, 4 - Pen: down - Facing: east", simulator.getRobot().toString());
+        assertEquals(5, simulator.getFloor().countMarked());
+        assertEquals(4, simulator.getHistory().size(), "The trailing 'P' and the undone move should be dropped");
+
+        simulator.executeCommand("undo");
+        simulator.executeCommand("UNDO");
+        assertEquals(0, simulator.getFloor().countMarked(), "Undoing the first move should clear its cells");
+        assertEquals("Position: 0, 0 - Pen: down - Facing: north", simulator.getRobot().toString());
+
+        simulator.executeCommand("REDO");
+        simulator.executeCommand("REDO");
+        simulator.executeCommand("C");
+        simulator.executeCommand("REDO");
+        assertEquals(drawn, simulator.getFloor().toString());
+        assertEquals(6, simulator.getHistory().size(), "Redone commands are recorded again after the 'C'");
+
+        simulator.executeCommand("REDO");
+        String output = outputStream.toString();
+        assertTrue(output.contains("Undid M 3"));
+        assertTrue(output.contains("Redid M 3"));
+        assertTrue(output.contains("Nothing to redo"));
+    }
+
+    @Test
+    public void testNewCommandClearsRedo() {
+        RobotSimulator simulator = new RobotSimulator();
+        simulator.executeCommand("I 5");
+        simulator.executeCommand("R");
+        simulator.executeCommand("UNDO");
+        simulator.executeCommand("L");
+        simulator.executeCommand("REDO");
+        assertEquals(Robot.Direction.WEST, simulator.getRobot().getFacing());
+        assertTrue(outputStream.toString().contains("Nothing to redo"));
+    }
+
+    @Test
+    public void testUndoStopsAtInitialize() {
+        RobotSimulator simulator = new RobotSimulator();
+        simulator.executeCommand("D");
+        simulator.executeCommand("I 5");
+        simulator.executeCommand("UNDO");
+        assertTrue(outputStream.toString().contains("Nothing to undo"));
+        assertTrue(!simulator.getRobot().isPenDown(), "'I' should reset the robot");
+    }
+
+    @Test
+    public void testUndoAfterHistoryReplay() {
+        RobotSimulator simulator = new RobotSimulator(SparseFloor::new);
+        simulator.setCheckpointInterval(2);
+        simulator.executeCommand("I 8");
+        simulator.executeCommand("D");
+        simulator.executeCommand("M 3");
+        simulator.executeCommand("R");
+        simulator.executeCommand("M 3");
+        simulator.executeCommand("H");
+        simulator.executeCommand("UNDO");
+        simulator.executeCommand("UNDO");
+        simulator.executeCommand("M 1");
+        simulator.executeCommand("H");
+
+        assertEquals(5, simulator.getFloor().countMarked());
+        assertEquals("Position: 0, 4 - Pen: down - Facing: north", simulator.getRobot().toString());
+    }
+
+    @Test
+    public void testPrintViewport() {
+        RobotSimulator simulator = new RobotSimulator();
+        simulator.executeCommand("I 12");
+        simulator.executeCommand("D");
+        simulator.executeCommand("R");
+        simulator.executeCommand("M 11");
+        simulator.executeCommand("P 9 0 5 2");
+        String output = outputStream.toString().replace(System.lineSeparator(), "\n");
+        assertTrue(output.endsWith("     9 10 11 \n 1:          \n 0:  *  *  * \n"),
+                "The viewport should be clipped to the floor and labelled with floor coordinates");
+        assertEquals(5, simulator.getHistory().size(), "'P' should be recorded");
+        assertEquals("P 9 0 5 2", simulator.getHistory().getCommand(4));
+    }
+
+    @Test
+    public void testPrintZoomedFollowsUndo() {
+        RobotSimulator simulator = new RobotSimulator(SparseFloor::new);
+        simulator.executeCommand("I 16");
+        simulator.executeCommand("D");
+        simulator.executeCommand("R");
+        simulator.executeCommand("M 15");
+        simulator.executeCommand("P 0 0 16 16 8");
+        simulator.executeCommand("UNDO");
+        simulator.executeCommand("P 3 3 13 13 8");
+        String output = outputStream.toString().replace(System.lineSeparator(), "\n");
+        String marked = "     0  8 \n 8:       \n 0:  .  . \n";
+        String empty = "     0  8 \n 8:       \n 0:       \n";
+        assertTrue(output.contains(marked + "Undid M 15\n" + empty),
+                "Zoomed output should follow the floor through undo: " + output);
+    }
+
+    @Test
+    public void testPrintViewportErrors() {
+        RobotSimulator simulator = new RobotSimulator();
+        simulator.executeCommand("I 8");
+        simulator.executeCommand("P 1 2");
+        simulator.executeCommand("P 8 0 2 2");
+        simulator.executeCommand("P 0 0 0 2");
+        simulator.executeCommand("P 0 0 2 2 3");
+        simulator.executeCommand("P a");
+        String output = outputStream.toString();
+        assertEquals(4, output.split("Error: Invalid viewport. Usage: P \\[x y w h \\[k\\]\\]", -1).length - 1);
+        assertTrue(output.contains("Error: Zoom must be a power of two"));
+    }
+
+    @Test
+    public void testCoverageAndTrim() {
+        RobotSimulator simulator = new RobotSimulator();
+        simulator.executeCommand("I 10");
+        simulator.executeCommand("TRIM");
+        simulator.executeCommand("coverage");
+        simulator.executeCommand("R");
+        simulator.executeCommand("M 2");
+        simulator.executeCommand("L");
+        simulator.executeCommand("D");
+        simulator.executeCommand("M 3");
+        simulator.executeCommand("R");
+        simulator.executeCommand("M 1");
+        simulator.executeCommand("COVERAGE");
+        simulator.executeCommand("TRIM");
+        String output = outputStream.toString().replace(System.lineSeparator(), "\n");
+        assertTrue(output.contains("Nothing marked\nCoverage: 0 of 100 cells (0.00%)\nBounding box: none\n"));
+        assertTrue(output.contains("Coverage: 5 of 100 cells (5.00%)\nBounding box: [2, 0] to [3, 3]\n"));
+        assertTrue(output.endsWith("     2  3 \n 3:  *  * \n 2:  *    \n 1:  *    \n 0:  *    \n"), output);
+        assertEquals("coverage", simulator.getHistory().getCommand(2), "Non-canonical text should be kept");
+        assertEquals("TRIM", simulator.getHistory().getCommand(11));
+    }
+
+    @Test
+    public void testCoverageFollowsUndoAndJump() {
+        RobotSimulator simulator = new RobotSimulator(RunLengthFloor::new);
+        simulator.executeCommand("I 8");
+        simulator.executeCommand("D");
+        simulator.executeCommand("M 7");
+        simulator.executeCommand("COVERAGE");
+        simulator.executeCommand("R");
+        simulator.executeCommand("M 7");
+        simulator.executeCommand("UNDO");
+        simulator.executeCommand("COVERAGE");
+        simulator.executeCommand("J 2");
+        simulator.executeCommand("COVERAGE");
+        String output = outputStream.toString();
+        assertEquals(2, output.split("Coverage: 8 of 64 cells", -1).length - 1);
+        assertTrue(output.contains("Coverage: 0 of 64 cells"), "'J 2' should go back to before the move");
+    }
+
+    @Test
+    public void testStatsCountsCommandsCellsAndReplays() {
+        RobotSimulator simulator = new RobotSimulator();
+        simulator.executeCommand("I 10");
+        simulator.executeCommand("D");
+        simulator.executeCommand("M 4");
+        simulator.executeCommand("M 2");
+        simulator.executeCommand("UNDO");
+        simulator.executeCommand("H");
+        simulator.executeCommand("x");
+        simulator.executeCommand("STATS");
+        SimulatorMetrics metrics = simulator.getMetrics();
+        assertEquals(2, metrics.getCount(CommandParser.MOVE));
+        assertEquals(1, metrics.getCount(CommandParser.UNKNOWN));
+        assertEquals(8, metrics.getCommandCount(), "STATS should count itself once it has run");
+        assertEquals(7, metrics.getCellsMarked(), "Only newly marked cells should count");
+        assertEquals(2, metrics.getCellsUnmarked());
+        assertEquals(1, metrics.getReplayCount());
+        assertEquals(3, metrics.getReplayedCommandCount());
+        String output = outputStream.toString().replace(System.lineSeparator(), "\n");
+        assertTrue(output.contains("Commands: 7, cells marked: 7, cells unmarked: 2\n"), output);
+        assertTrue(output.contains("\n  M                 2  p50 "), output);
+        assertTrue(output.contains("\n  UNDO              1  p50 "), output);
+        assertTrue(output.contains("\nReplays: 1 (3 commands), total "), output);
+        assertEquals("STATS", simulator.getHistory().getCommand(4));
+    }
+
+    @Test
+    public void testMetricsFollowReplacedFloorsAndCanBeDisabled() {
+        RobotSimulator simulator = new RobotSimulator();
+        simulator.executeCommand("I 5");
+        simulator.executeCommand("D");
+        simulator.executeCommand("M 4");
+        simulator.executeCommand("I 6");
+        simulator.executeCommand("D");
+        simulator.executeCommand("M 5");
+        assertEquals(11, simulator.getMetrics().getCellsMarked(), "The new floor should be counted");
+        assertFalse(simulator.getFloor().hasListeners(), "Counting cells should not slow down marking");
+        simulator.setMetricsEnabled(false);
+        simulator.executeCommand("R");
+        simulator.executeCommand("M 5");
+        simulator.executeCommand("stats");
+        assertEquals(6, simulator.getMetrics().getCommandCount());
+        assertEquals(11, simulator.getMetrics().getCellsMarked());
+        assertTrue(outputStream.toString().contains("Metrics are disabled"));
+        simulator.setMetricsEnabled(true);
+        simulator.executeCommand("M 5");
+        assertEquals(7, simulator.getMetrics().getCommandCount());
+        assertEquals(11, simulator.getMetrics().getCellsMarked(), "Marking already marked cells adds nothing");
+    }
+
+    @Test
+    public void testDiffPrintsOnlyChangedRows() {
+        RobotSimulator simulator = new RobotSimulator();
+        simulator.executeCommand("I 4");
+        simulator.executeCommand("DIFF");
+        simulator.executeCommand("DIFF");
+        simulator.executeCommand("D");
+        simulator.executeCommand("R");
+        simulator.executeCommand("M 2");
+        simulator.executeCommand("diff");
+        simulator.executeCommand("I 3");
+        simulator.executeCommand("DIFF");
+        String output = outputStream.toString().replace(System.lineSeparator(), "\n");
+        assertTrue(output.contains("System initialized with 4 x 4 floor\n     0  1  2  3 \n 3:             \n"), output);
+        assertTrue(output.contains("No changes\n 0:  *  *  *    \nSystem initialized with 3 x 3 floor\n     0  1  2 \n"),
+                output);
+        assertEquals("DIFF", simulator.getHistory().getCommand(1));
+    }
+
+    @Test
+    public void testLiveUpdatesChangedCells() {
+        RobotSimulator simulator = new RobotSimulator();
+        simulator.executeCommand("I 3");
+        simulator.executeCommand("LIVE");
+        simulator.executeCommand("D");
+        simulator.executeCommand("M 1");
+        simulator.executeCommand("LIVE");
+        simulator.executeCommand("LIVE");
+        String output = outputStream.toString().replace(System.lineSeparator(), "\n");
+        assertTrue(output.contains("\u001B[H\u001B[2J     0  1  2 \n"), output);
+        assertTrue(output.endsWith("\u001B[4;6H*\u001B[3;6H*\u001B[5;1H\u001B[5;1H"), output);
+    }
+
+    @Test
+    public void testRepeatFastForwardsAndCanBeUndoneAndReplayed() {
+        RobotSimulator simulator = new RobotSimulator();
+        simulator.executeCommand("REPEAT 2 [M 1]");
+        simulator.executeCommand("I 20");
+        simulator.executeCommand("D");
+        simulator.executeCommand("REPEAT 1000000 [M 1 R M 1 L]");
+        assertEquals(1000000, simulator.getRobot().getX());
+        assertEquals(39, simulator.getFloor().getCoverage().getMarkedCount());
+        assertEquals("REPEAT 1000000 [M 1 R M 1 L]", simulator.getHistory().getCommand(2));
+        assertArrayEquals(RepeatLoop.compile("REPEAT 1000000 [M 1 R M 1 L]"), simulator.getHistory().getLoop(2),
+                "The history should keep the compiled body");
+        assertNull(simulator.getHistory().getLoop(0), "A loop run before 'I' was never compiled");
+        simulator.executeCommand("H");
+        assertEquals(39, simulator.getFloor().getCoverage().getMarkedCount(), "The loop should replay from its body");
+        simulator.executeCommand("UNDO");
+        assertEquals(0, simulator.getFloor().getCoverage().getMarkedCount());
+        assertEquals(0, simulator.getRobot().getX());
+        simulator.executeCommand("REDO");
+        assertEquals(39, simulator.getFloor().getCoverage().getMarkedCount());
+        assertEquals(1000000, simulator.getRobot().getY());
+
+        simulator.executeCommand("REPEAT x [M 1]");
+        simulator.executeCommand("REPEAT 2 [C]");
+        String output = outputStream.toString();
+        assertTrue(output.contains("Error: System not initialized. Use 'I n' command first."));
+        assertTrue(output.contains("Error: Invalid loop. Usage: REPEAT <count> [commands]"));
+        assertTrue(output.contains("Error: Only U, D, R, L, M and REPEAT can be repeated: C"));
+        assertEquals(1000000, simulator.getRobot().getY(), "A malformed loop should not move the robot");
+    }
+}
@@ -128,6 +128,21 @@ public class RobotTest {
         assertEquals(6, robot.getY());
     }
 
+    @Test
+    public void testMoveStopsAtTheEdgeOfTheIntRange() {
+        robot.turnRight();
+        robot.move(Integer.MAX_VALUE);
+        robot.move(5);
+        assertEquals(Integer.MAX_VALUE, robot.getX(), "The position should saturate, not wrap");
+        robot.turnRight();
+        robot.turnRight();
+        robot.move(Integer.MAX_VALUE);
+        robot.move(Integer.MAX_VALUE);
+        robot.move(Integer.MAX_VALUE);
+        assertEquals(Integer.MIN_VALUE, robot.getX());
+        assertEquals(0, robot.getY());
+    }
+
     @Test
     public void testReset() {
         robot.penDown();
@@ -168,4 +183,23 @@ public class RobotTest {
         assertTrue(output.contains("Pen: down"));
         assertTrue(output.contains("Facing: east"));
     }
+
+    @Test
+    public void testLongMoveIsArithmetic() {
+        robot.turnRight();
+        robot.move(1_000_000_000);
+        assertEquals(1_000_000_000, robot.getX());
+        robot.move(0);
+        robot.move(-5);
+        assertEquals(1_000_000_000, robot.getX(), "Non-positive moves should not change position");
+    }
+
+    @Test
+    public void testSetState() {
+        robot.setState(-4, 9, true, Robot.Direction.WEST);
+        assertEquals(-4, robot.getX());
+        assertEquals(9, robot.getY());
+        assertTrue(robot.isPenDown());
+        assertEquals(Robot.Direction.WEST, robot.getFacing());
+    }
 }
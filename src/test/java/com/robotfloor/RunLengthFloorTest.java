@@ -0,0 +1,140 @@
+package com.robotfloor;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for RunLengthFloor class
+ */
+public class RunLengthFloorTest {
+
+    private RunLengthFloor floor;
+
+    @BeforeEach
+    public void setUp() {
+        floor = new RunLengthFloor(10);
+    }
+
+    @Test
+    public void testMarksMergeIntoOneInterval() {
+        floor.mark(2, 4);
+        floor.mark(4, 4);
+        assertEquals(2, floor.getRunCount());
+        floor.mark(3, 4);
+        assertEquals(1, floor.getRunCount(), "Touching cells should merge");
+        floor.markRow(4, 8, 6);
+        floor.markRow(4, 0, 9);
+        assertEquals(1, floor.getRunCount(), "A covering run should swallow every interval");
+        assertEquals(10, floor.countMarked());
+        floor.markRow(4, 3, 5);
+        assertEquals(10, floor.countMarked());
+    }
+
+    @Test
+    public void testUnmarkSplitsAndShrinksIntervals() {
+        floor.markRow(1, 0, 9);
+        floor.unmark(5, 1);
+        assertEquals(2, floor.getRunCount());
+        floor.unmark(0, 1);
+        floor.unmark(9, 1);
+        floor.unmark(9, 1);
+        floor.unmark(-1, 1);
+        floor.unmark(3, 2);
+        assertEquals(7, floor.countMarked());
+        floor.unmark(4, 1);
+        floor.unmark(6, 1);
+        assertEquals(0, floor.getValue(6, 1));
+        assertEquals(1, floor.getValue(7, 1));
+        assertEquals(1, floor.getValue(1, 1));
+        floor.mark(8, 8);
+        floor.unmark(8, 8);
+        assertEquals(0, floor.getValue(8, 8), "A single-cell interval should be removed");
+        assertEquals(2, floor.getRunCount());
+    }
+
+    @Test
+    public void testMatchesPackedFloor() {
+        Random random = new Random(18);
+        for (int size : new int[] {1, 10, 70, 200}) {
+            RunLengthFloor runs = new RunLengthFloor(size);
+            PackedFloor packed = new PackedFloor(size);
+            for (int i = 0; i < 500; i++) {
+                int a = random.nextInt(size + 10) - 5;
+                int b = random.nextInt(size + 10) - 5;
+                int c = random.nextInt(size + 10) - 5;
+                for (Floor floor : new Floor[] {runs, packed}) {
+                    switch (i % 4) {
+                        case 0:
+                            floor.markRow(a, b, c);
+                            break;
+                        case 1:
+                            floor.markColumn(a, b, c);
+                            break;
+                        case 2:
+                            floor.mark(a, b);
+                            break;
+                        default:
+                            floor.unmark(a, b);
+                    }
+                }
+            }
+            assertEquals(packed.toString(), runs.toString(), "Output should be identical for size " + size);
+            assertEquals(packed.countMarked(), runs.countMarked());
+            assertArrayEquals(packed.getGrid(), runs.getGrid());
+            for (int y = -1; y <= size; y++) {
+                for (int x = -1; x <= size; x++) {
+                    assertEquals(packed.getValue(x, y), runs.getValue(x, y), "Cell " + x + ", " + y);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLongStrokesStayCompact() {
+        RunLengthFloor big = new RunLengthFloor(100_000);
+        big.markRow(5, 0, 99_999);
+        big.markColumn(50_000, 0, 99_999);
+        big.markRow(99_999, 99_999, 0);
+        assertEquals(100_000, big.getRunCount(), "Crossing a full row should merge into it");
+        assertEquals(3L * 100_000 - 2, big.countMarked());
+    }
+
+    @Test
+    public void testDensityPyramidFollowsChanges() {
+        RunLengthFloor runs = new RunLengthFloor(130);
+        DensityPyramid pyramid = new DensityPyramid(runs);
+        runs.markRow(3, 10, 20);
+        runs.markRow(3, 0, 129);
+        runs.markColumn(64, 0, 129);
+        runs.unmark(64, 3);
+        runs.mark(64, 3);
+        assertEquals(runs.countMarked(), pyramid.countBlock(0, 0, 256));
+        assertEquals(8, pyramid.countBlock(0, 0, 8));
+        runs.clear();
+        assertEquals(0, pyramid.countBlock(0, 0, 256));
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        floor.markRow(2, 1, 6);
+        RunLengthFloor copy = floor.copy();
+        floor.unmark(3, 2);
+        copy.mark(9, 9);
+        assertEquals(1, copy.getValue(3, 2));
+        assertEquals(0, floor.getValue(9, 9));
+        assertEquals(floor.getSize(), copy.getSize());
+    }
+
+    @Test
+    public void testClear() {
+        floor.markRow(2, 1, 6);
+        floor.clear();
+        assertEquals(0, floor.countMarked());
+        assertEquals(0, floor.getRunCount());
+        floor.mark(1, 2);
+        assertEquals(1, floor.countMarked());
+    }
+}
@@ -0,0 +1,116 @@
+package com.robotfloor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for SessionHost class
+ */
+public class SessionHostTest {
+
+    @Test
+    public void testSessionsRunIndependentlyAndInOrder() {
+        SessionHost host = new SessionHost(3, PackedFloor::new);
+        List<SessionHost.Session> sessions = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            sessions.add(host.open(new PrintStream(new ByteArrayOutputStream())));
+        }
+        assertEquals(200, host.getSessionCount());
+
+        for (int step = 0; step < 50; step++) {
+            for (int i = 0; i < sessions.size(); i++) {
+                SessionHost.Session session = sessions.get(i);
+                if (step == 0) {
+                    session.submit("I 64");
+                    session.submit("D");
+                } else if (step <= i % 40) {
+                    session.submit("M 1");
+                }
+            }
+        }
+        host.close();
+
+        for (int i = 0; i < sessions.size(); i++) {
+            RobotSimulator simulator = sessions.get(i).getSimulator();
+            assertEquals(i % 40, simulator.getRobot().getY(), "Session " + i + " should run only its own moves");
+            assertEquals(i % 40 == 0 ? 0 : i % 40 + 1, simulator.getFloor().countMarked());
+        }
+    }
+
+    @Test
+    public void testFailingCommandIsReportedToItsSessionOnly() {
+        SessionHost host = new SessionHost(1, size -> {
+            if (size > 100) {
+                throw new IllegalStateException("no room for " + size);
+            }
+            return new PackedFloor(size);
+        });
+        ByteArrayOutputStream failing = new ByteArrayOutputStream();
+        ByteArrayOutputStream healthy = new ByteArrayOutputStream();
+        SessionHost.Session first = host.open(new PrintStream(failing, true));
+        SessionHost.Session second = host.open(new PrintStream(healthy, true));
+        first.submit("I 5");
+        first.submit("I 500");
+        first.submit("C");
+        second.submit("I 5");
+        second.submit("C");
+        host.close();
+
+        String text = failing.toString();
+        assertTrue(text.contains("Error: Command failed: java.lang.IllegalStateException: no room for 500"), text);
+        assertTrue(text.contains("Position: 0, 0"), "Commands after the failure should still run");
+        assertTrue(first.isOpen());
+        assertFalse(healthy.toString().contains("Error"));
+        assertEquals(5, first.getSimulator().getFloor().getSize());
+    }
+
+    @Test
+    public void testQuitClosesSession() {
+        SessionHost host = new SessionHost(1, SparseFloor::new);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        SessionHost.Session session = host.open(new PrintStream(output, true));
+        assertSame(session, host.getSession(session.getId()));
+
+        session.submit("I 5");
+        session.submit("Q");
+        session.submit("C");
+        host.close();
+
+        assertFalse(session.isOpen());
+        assertNull(host.getSession(session.getId()));
+        assertTrue(output.toString().contains("Program ended."));
+        assertFalse(output.toString().contains("Position:"), "Commands after 'Q' should not run");
+
+        session.submit("C");
+        assertEquals(0, host.getSessionCount());
+    }
+
+    @Test
+    public void testInterruptedCloseStillFinishesQueuedCommands() {
+        SessionHost host = new SessionHost(1, PackedFloor::new);
+        SessionHost.Session session = host.open(new PrintStream(new ByteArrayOutputStream()));
+        session.submit("I 600");
+        session.submit("D");
+        for (int i = 0; i < 500; i++) {
+            session.submit("M 1");
+        }
+        Thread.currentThread().interrupt();
+        host.close();
+        assertTrue(Thread.interrupted(), "close() should restore the interrupt");
+        assertEquals(501, session.getSimulator().getFloor().countMarked(), "Queued commands should all run");
+    }
+
+    @Test
+    public void testInvalidThreadCount() {
+        assertThrows(IllegalArgumentException.class, () -> new SessionHost(0, PackedFloor::new));
+    }
+}
@@ -0,0 +1,146 @@
+package com.robotfloor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for SimulatorMetrics class
+ */
+public class SimulatorMetricsTest {
+
+    private SimulatorMetrics metrics;
+
+    @BeforeEach
+    public void setUp() {
+        metrics = new SimulatorMetrics();
+    }
+
+    @Test
+    public void testBucketsAreLogLinear() {
+        for (long nanos = 0; nanos < 8; nanos++) {
+            assertEquals(nanos, SimulatorMetrics.bucket(nanos), "Small values should have a bucket each");
+        }
+        assertEquals(0, SimulatorMetrics.bucket(-5));
+        int previous = 0;
+        for (long nanos = 1; nanos < 1L << 41; nanos += 1 + nanos / 7) {
+            int bucket = SimulatorMetrics.bucket(nanos);
+            assertTrue(bucket >= previous, "Buckets should not decrease at " + nanos);
+            assertTrue(nanos <= SimulatorMetrics.bucketUpperBound(bucket), "Upper bound of " + nanos);
+            assertTrue(SimulatorMetrics.bucketUpperBound(bucket) - nanos <= nanos / 8,
+                    "Each bucket should be within 12.5% of " + nanos);
+            previous = bucket;
+        }
+        assertEquals(SimulatorMetrics.BUCKETS - 1, SimulatorMetrics.bucket(Long.MAX_VALUE));
+        assertEquals(SimulatorMetrics.bucket(15) + 1, SimulatorMetrics.bucket(16));
+    }
+
+    @Test
+    public void testPercentiles() {
+        for (int i = 1; i <= 100; i++) {
+            metrics.recordCommand(CommandParser.MOVE, i * 1000L);
+        }
+        metrics.recordCommand(CommandParser.PRINT, 42);
+        assertEquals(100, metrics.getCount(CommandParser.MOVE));
+        assertEquals(101, metrics.getCommandCount());
+        long median = metrics.getPercentileNanos(CommandParser.MOVE, 50);
+        assertTrue(median >= 50_000 && median <= 50_000 * 9 / 8, "Median " + median);
+        assertEquals(100_000, metrics.getPercentileNanos(CommandParser.MOVE, 100), "Capped at the maximum");
+        assertEquals(100_000, metrics.getMaxNanos(CommandParser.MOVE));
+        assertEquals(42, metrics.getPercentileNanos(CommandParser.PRINT, 0));
+        assertEquals(0, metrics.getPercentileNanos(CommandParser.TURN_LEFT, 99), "No samples");
+    }
+
+    @Test
+    public void testMapsAndReset() {
+        metrics.recordCommand(CommandParser.UNDO, 300);
+        metrics.recordCommand(CommandParser.MOVE, 100);
+        metrics.recordCommand(CommandParser.MOVE, 200);
+        metrics.recordReplay(10, 5000);
+        metrics.recordReplay(20, 7000);
+        metrics.recordCells(3, 0);
+        metrics.recordCells(0, 1);
+        Map<String, Long> counts = metrics.getCommandCounts();
+        assertEquals(2, counts.size(), "Only commands that ran should be listed");
+        assertEquals(2L, counts.get("M"));
+        assertEquals(1L, counts.get("UNDO"));
+        assertEquals(300L, metrics.getMedianLatencyNanos().get("UNDO"));
+        assertEquals(200L, metrics.getP99LatencyNanos().get("M"));
+        assertEquals(200L, metrics.getMaxLatencyNanos().get("M"));
+        assertEquals(3, metrics.getCellsMarked());
+        assertEquals(1, metrics.getCellsUnmarked());
+        assertEquals(2, metrics.getReplayCount());
+        assertEquals(30, metrics.getReplayedCommandCount());
+        assertEquals(12_000, metrics.getReplayTotalNanos());
+        assertEquals(7000, metrics.getReplayP99Nanos());
+        assertEquals(7000, metrics.getReplayMaxNanos());
+        metrics.reset();
+        assertEquals(0, metrics.getCommandCount());
+        assertTrue(metrics.getCommandCounts().isEmpty());
+        assertEquals(0, metrics.getCellsMarked());
+        assertEquals(0, metrics.getReplayP99Nanos());
+        assertEquals(0, metrics.getMaxNanos(CommandParser.MOVE));
+    }
+
+    @Test
+    public void testResetFromAnotherThreadWhileRecording() throws Exception {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread resetter = new Thread(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                metrics.reset();
+                metrics.getP99LatencyNanos();
+                metrics.getReplayP99Nanos();
+            }
+        });
+        resetter.setUncaughtExceptionHandler((thread, error) -> failure.set(error));
+        resetter.start();
+        while (resetter.isAlive()) {
+            for (int opcode = 0; opcode < CommandParser.OPCODE_COUNT; opcode++) {
+                metrics.recordCommand(opcode, opcode * 100L);
+                metrics.getPercentileNanos(opcode, 99);
+            }
+            metrics.recordReplay(1, 50);
+            metrics.recordCells(1, 1);
+        }
+        resetter.join();
+        assertNull(failure.get(), "Reading over JMX should not fail during a reset");
+        metrics.reset();
+        metrics.recordCommand(CommandParser.MOVE, 100);
+        assertEquals(1, metrics.getCommandCount(), "Recording should continue after a reset");
+        assertEquals(100, metrics.getPercentileNanos(CommandParser.MOVE, 99));
+    }
+
+    @Test
+    public void testPublishedOverJmx() throws Exception {
+        RobotSimulator simulator = new RobotSimulator(PackedFloor::new, new PrintStream(new ByteArrayOutputStream()));
+        simulator.executeCommand("I 4");
+        simulator.executeCommand("M 2");
+        ObjectName name = simulator.getMetrics().register("test \"session\"");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertEquals(2L, server.getAttribute(name, "CommandCount"));
+            TabularData counts = (TabularData) server.getAttribute(name, "CommandCounts");
+            CompositeData move = counts.get(new Object[] {"M"});
+            assertEquals(1L, move.get("value"));
+            assertThrows(InstanceAlreadyExistsException.class,
+                    () -> simulator.getMetrics().register("test \"session\""));
+            server.invoke(name, "reset", new Object[0], new String[0]);
+            assertEquals(0L, server.getAttribute(name, "CommandCount"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.robotfloor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for SimulatorSnapshot class
+ */
+public class SimulatorSnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final List<String> SCRIPT = Arrays.asList(
+            "I 70", "D", "M 69", "R", "m 66", "R", "M 10", "L", "M bad", "Z", "P", "C", "U", "M 2");
+
+    private static RobotSimulator run(RobotSimulator simulator, List<String> lines) {
+        for (String line : lines) {
+            simulator.executeCommand(line);
+        }
+        return simulator;
+    }
+
+    private static RobotSimulator quiet(IntFunction<Floor> floorFactory) {
+        return new RobotSimulator(floorFactory, new PrintStream(new ByteArrayOutputStream()));
+    }
+
+    private static void assertSameState(RobotSimulator expected, RobotSimulator actual) {
+        assertEquals(expected.getRobot().toString(), actual.getRobot().toString());
+        assertEquals(expected.getFloor().toString(), actual.getFloor().toString());
+        assertEquals(expected.getHistory().getCommands(), actual.getHistory().getCommands());
+        assertEquals(expected.getHistory().getDroppedCount(), actual.getHistory().getDroppedCount());
+    }
+
+    @Test
+    public void testRoundTripOnEveryBackend() throws IOException {
+        RobotSimulator original = run(quiet(PackedFloor::new), SCRIPT);
+        Path file = tempDir.resolve("session.snap");
+        original.saveSnapshot(file);
+
+        for (RobotSimulator restored : new RobotSimulator[] {quiet(PackedFloor::new), quiet(SparseFloor::new),
+                quiet(Floor::new)}) {
+            restored.loadSnapshot(file);
+            assertSameState(original, restored);
+            assertEquals("m 66", restored.getHistory().getCommand(4), "Raw command text should be kept");
+
+            // Both continue identically, including history replay
+            run(original, Arrays.asList("D", "L", "M 5", "H"));
+            run(restored, Arrays.asList("D", "L", "M 5", "H"));
+            assertSameState(original, restored);
+            original.executeCommand("J 14");
+            restored.executeCommand("J 14");
+            assertSameState(original, restored);
+        }
+    }
+
+    @Test
+    public void testSnapshotFromUnpackedFloor() throws IOException {
+        RobotSimulator original = run(quiet(SparseFloor::new), SCRIPT);
+        Path file = tempDir.resolve("session.snap");
+        original.saveSnapshot(file);
+        RobotSimulator restored = quiet(PackedFloor::new);
+        restored.loadSnapshot(file);
+        assertSameState(original, restored);
+    }
+
+    @Test
+    public void testSparseFloorKeepsMarksOutsideTheArea() throws IOException {
+        RobotSimulator original = run(quiet(SparseFloor::new),
+                Arrays.asList("I 70", "D", "M 100", "R", "M 80", "R", "R", "M 200"));
+        Path file = tempDir.resolve("sparse.snap");
+        original.saveSnapshot(file);
+        RobotSimulator restored = quiet(SparseFloor::new);
+        restored.loadSnapshot(file);
+        assertSameState(original, restored);
+        assertEquals(original.getFloor().countMarked(), restored.getFloor().countMarked(),
+                "Marks outside the declared area should be saved");
+        assertEquals(1, restored.getFloor().getValue(-120, 100));
+        assertEquals(1, restored.getFloor().getValue(0, 100));
+        assertEquals(0, restored.getFloor().getValue(-121, 100));
+
+        RobotSimulator bounded = quiet(PackedFloor::new);
+        bounded.loadSnapshot(file);
+        assertEquals(original.getFloor().toString(), bounded.getFloor().toString(),
+                "A bounded floor keeps only the declared area");
+    }
+
+    @Test
+    public void testUninitializedSession() throws IOException {
+        RobotSimulator original = run(quiet(PackedFloor::new), Arrays.asList("D", "R"));
+        Path file = tempDir.resolve("session.snap");
+        original.saveSnapshot(file);
+        RobotSimulator restored = run(quiet(PackedFloor::new), Arrays.asList("I 5", "M 2"));
+        restored.loadSnapshot(file);
+        assertNull(restored.getFloor());
+        assertEquals(original.getRobot().toString(), restored.getRobot().toString());
+        assertEquals(Arrays.asList("D", "R"), restored.getHistory().getCommands());
+    }
+
+    @Test
+    public void testBoundedHistoryKeepsDroppedCount() throws IOException {
+        RobotSimulator original = new RobotSimulator(PackedFloor::new, new PrintStream(new ByteArrayOutputStream()),
+                new CommandHistory(4, CommandHistory.EvictionPolicy.DROP_OLDEST));
+        run(original, SCRIPT);
+        Path file = tempDir.resolve("session.snap");
+        original.saveSnapshot(file);
+        RobotSimulator restored = new RobotSimulator(PackedFloor::new, new PrintStream(new ByteArrayOutputStream()),
+                new CommandHistory(4, CommandHistory.EvictionPolicy.DROP_OLDEST));
+        restored.loadSnapshot(file);
+        assertSameState(original, restored);
+        restored.executeCommand("H");
+        assertEquals(original.getFloor().toString(), restored.getFloor().toString(),
+                "The restored state should serve as the checkpoint for 'H'");
+    }
+
+    @Test
+    public void testUndoStartsEmptyAfterLoad() throws IOException {
+        RobotSimulator original = run(quiet(PackedFloor::new), SCRIPT);
+        Path file = tempDir.resolve("session.snap");
+        original.saveSnapshot(file);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RobotSimulator restored = new RobotSimulator(PackedFloor::new, new PrintStream(output));
+        restored.loadSnapshot(file);
+        restored.executeCommand("UNDO");
+        assertTrue(output.toString().contains("Nothing to undo"));
+        assertEquals(original.getFloor().countMarked(), restored.getFloor().countMarked());
+    }
+
+    @Test
+    public void testLargeFloorRoundTrip() throws IOException {
+        RobotSimulator original = run(quiet(PackedFloor::new), Arrays.asList("I 4000", "D", "M 3999", "R", "M 3999"));
+        Path file = tempDir.resolve("large.snap");
+        original.saveSnapshot(file);
+        assertEquals(SimulatorSnapshot.HEADER_BYTES + 63L * 4000 * 8 + 5 * 8, Files.size(file));
+        RobotSimulator restored = quiet(PackedFloor::new);
+        restored.loadSnapshot(file);
+        assertEquals(7999, restored.getFloor().countMarked());
+        assertEquals(1, restored.getFloor().getValue(3999, 3999));
+    }
+
+    @Test
+    public void testSaveReplacesTheFileWithoutLeavingTemporaries() throws IOException {
+        RobotSimulator simulator = run(quiet(PackedFloor::new), SCRIPT);
+        Path file = tempDir.resolve("session.snap");
+        Files.write(file, new byte[1 << 20]);
+        simulator.saveSnapshot(file);
+        simulator.executeCommand("M 1");
+        simulator.saveSnapshot(file);
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(List.of(file), files.collect(Collectors.toList()), "Only the snapshot should remain");
+        }
+        RobotSimulator restored = quiet(PackedFloor::new);
+        restored.loadSnapshot(file);
+        assertSameState(simulator, restored);
+
+        assertThrows(IOException.class, () -> simulator.saveSnapshot(tempDir.resolve("missing").resolve("x.snap")));
+    }
+
+    @Test
+    public void testRejectsARobotPositionThatDisagreesWithItsFlag() throws IOException {
+        RobotSimulator simulator = run(quiet(PackedFloor::new), SCRIPT);
+        Path file = tempDir.resolve("session.snap");
+        simulator.saveSnapshot(file);
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(16, 70);
+        Files.write(file, bytes);
+
+        for (IntFunction<Floor> backend : List.<IntFunction<Floor>>of(PackedFloor::new, SparseFloor::new)) {
+            RobotSimulator target = run(quiet(backend), List.of("I 5", "D", "M 2"));
+            IOException error = assertThrows(IOException.class, () -> target.loadSnapshot(file));
+            assertTrue(error.getMessage().startsWith("Corrupt snapshot file"), error.getMessage());
+            assertEquals(3, target.getHistory().size(), "A failed load should leave the history alone");
+            assertEquals(2, target.getRobot().getY(), "A failed load should leave the robot alone");
+        }
+    }
+
+    @Test
+    public void testRobotThatWalkedOffTheFloorRoundTrips() throws IOException {
+        RobotSimulator simulator = run(quiet(PackedFloor::new), List.of("I 5", "D", "M 10", "R", "M 3"));
+        Path file = tempDir.resolve("session.snap");
+        simulator.saveSnapshot(file);
+        RobotSimulator restored = quiet(PackedFloor::new);
+        restored.loadSnapshot(file);
+        assertSameState(simulator, restored);
+        assertEquals("Position: 3, 10 - Pen: down - Facing: east", restored.getRobot().toString());
+    }
+
+    @Test
+    public void testRejectsForeignAndCorruptFiles() throws IOException {
+        RobotSimulator simulator = run(quiet(PackedFloor::new), SCRIPT);
+        Path file = tempDir.resolve("session.snap");
+
+        Files.write(file, new byte[10]);
+        assertThrows(IOException.class, () -> simulator.loadSnapshot(file));
+        Files.write(file, new byte[100]);
+        assertThrows(IOException.class, () -> simulator.loadSnapshot(file));
+
+        simulator.saveSnapshot(file);
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(4, SimulatorSnapshot.VERSION + 1);
+        Files.write(file, bytes);
+        IOException error = assertThrows(IOException.class, () -> simulator.loadSnapshot(file));
+        assertTrue(error.getMessage().contains("version"));
+
+        simulator.saveSnapshot(file);
+        Files.write(file, Arrays.copyOf(Files.readAllBytes(file), (int) Files.size(file) - 20));
+        assertThrows(IOException.class, () -> simulator.loadSnapshot(file));
+        assertEquals(SCRIPT.size(), simulator.getHistory().size(), "A failed load should leave the history alone");
+    }
+}
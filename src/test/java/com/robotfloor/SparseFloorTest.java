@@ -0,0 +1,148 @@
+package com.robotfloor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for SparseFloor class
+ */
+public class SparseFloorTest {
+
+    private SparseFloor floor;
+
+    @BeforeEach
+    public void setUp() {
+        floor = new SparseFloor(10);
+    }
+
+    @Test
+    public void testNoTilesUntilFirstMark() {
+        assertEquals(0, floor.getTileCount(), "A fresh floor should not allocate tiles");
+        floor.mark(3, 3);
+        floor.mark(4, 3);
+        assertEquals(1, floor.getTileCount(), "Marks in the same tile should share it");
+    }
+
+    @Test
+    public void testHugeDeclaredSizeIsCheap() {
+        SparseFloor huge = new SparseFloor(Integer.MAX_VALUE);
+        huge.mark(2_000_000_000, 1_999_999_999);
+        assertEquals(1, huge.getValue(2_000_000_000, 1_999_999_999));
+        assertEquals(1, huge.getTileCount());
+    }
+
+    @Test
+    public void testNegativeAndOutOfBoundsCoordinates() {
+        assertTrue(floor.isValidPosition(-5, 100), "Sparse floor should be unbounded");
+        floor.mark(-1, -1);
+        floor.mark(-64, 0);
+        floor.mark(100, 10);
+
+        assertEquals(1, floor.getValue(-1, -1));
+        assertEquals(1, floor.getValue(-64, 0));
+        assertEquals(1, floor.getValue(100, 10));
+        assertEquals(0, floor.getValue(-2, -1));
+        assertEquals(0, floor.getValue(-1, 0), "Negative tiles should not alias positive ones");
+        assertEquals(3, floor.getTileCount());
+        assertEquals(3, floor.countMarked());
+    }
+
+    @Test
+    public void testManyTilesSurviveResize() {
+        for (int i = 0; i < 200; i++) {
+            floor.mark(i * 64, -i * 64);
+        }
+        assertEquals(200, floor.getTileCount());
+        for (int i = 0; i < 200; i++) {
+            assertEquals(1, floor.getValue(i * 64, -i * 64));
+        }
+    }
+
+    @Test
+    public void testClear() {
+        floor.mark(1, 1);
+        floor.mark(-70, 5);
+        floor.clear();
+        assertEquals(0, floor.getTileCount());
+        assertEquals(0, floor.getValue(1, 1));
+        assertEquals(0, floor.countMarked());
+    }
+
+    @Test
+    public void testDeclaredAreaRendersLikeIntGridFloor() {
+        Floor reference = new Floor(10);
+        int[][] points = {{0, 0}, {9, 9}, {4, 7}};
+        for (int[] point : points) {
+            floor.mark(point[0], point[1]);
+            reference.mark(point[0], point[1]);
+        }
+        floor.mark(-3, 2);
+
+        assertEquals(reference.toString(), floor.toString());
+        assertEquals(reference.getValue(4, 7), floor.getGrid()[7][4]);
+    }
+
+    @Test
+    public void testSpanFillsAcrossTilesAndNegativeCoordinates() {
+        floor.markRow(-1, -70, 70);
+        floor.markColumn(-65, 130, -2);
+
+        assertEquals(141, countRow(-1, -80, 80), "Row -1 should be marked from -70 to 70");
+        assertEquals(1, floor.getValue(-70, -1));
+        assertEquals(0, floor.getValue(-71, -1));
+        assertEquals(1, floor.getValue(70, -1));
+        assertEquals(0, floor.getValue(71, -1));
+        assertEquals(1, floor.getValue(-65, 130));
+        assertEquals(1, floor.getValue(-65, -2));
+        assertEquals(0, floor.getValue(-65, -3));
+        assertEquals(141 + 133 - 1, floor.countMarked(), "Crossing cell should only count once");
+    }
+
+    private int countRow(int y, int fromX, int toX) {
+        int count = 0;
+        for (int x = fromX; x <= toX; x++) {
+            count += floor.getValue(x, y);
+        }
+        return count;
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        floor.mark(-100, 3);
+        floor.mark(5, 5);
+        SparseFloor copy = floor.copy();
+        floor.mark(6, 5);
+
+        assertEquals(2, copy.getTileCount());
+        assertEquals(1, copy.getValue(-100, 3));
+        assertEquals(0, copy.getValue(6, 5));
+    }
+
+    @Test
+    public void testWordsOutsideSkipTheDeclaredArea() {
+        floor.markRow(2, 0, 12);
+        floor.mark(-1, 4);
+        floor.mark(3, 70);
+        long[] outside = floor.getWordsOutside();
+        assertEquals(6, outside.length, "Only words with cells outside 10 x 10 should be listed");
+        long marked = 0;
+        for (int i = 0; i < outside.length; i += 2) {
+            marked += Long.bitCount(outside[i + 1]);
+            if ((int) (outside[i] >> 32) == 2) {
+                assertEquals(0b1110000000000L, outside[i + 1], "Cells inside the area should be masked off");
+            }
+        }
+        assertEquals(5, marked);
+    }
+
+    @Test
+    public void testUnmark() {
+        floor.mark(-3, -3);
+        floor.unmark(-3, -3);
+        floor.unmark(1000, 1000);
+        assertEquals(0, floor.countMarked());
+        assertEquals(1, floor.getTileCount(), "Unmarking should not allocate tiles");
+    }
+}
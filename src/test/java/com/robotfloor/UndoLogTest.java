@@ -0,0 +1,171 @@
+package com.robotfloor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for UndoLog class
+ */
+public class UndoLogTest {
+
+    private UndoLog log;
+    private Robot robot;
+    private Floor floor;
+
+    @BeforeEach
+    public void setUp() {
+        log = new UndoLog(8);
+        robot = new Robot();
+        floor = new PackedFloor(10);
+    }
+
+    @Test
+    public void testUndoClearsOnlyNewlyMarkedCells() {
+        floor.mark(0, 3);
+        floor.mark(0, 5);
+        robot.penDown();
+
+        log.begin(robot);
+        log.recordUnmarked(floor, 0, 0, 0, 7);
+        floor.markColumn(0, 0, 7);
+        robot.move(7);
+
+        assertTrue(log.undo(floor, robot));
+        assertEquals(2, floor.countMarked(), "Cells marked before the command should stay");
+        assertEquals(1, floor.getValue(0, 3));
+        assertEquals(1, floor.getValue(0, 5));
+        assertEquals(0, robot.getY());
+        assertEquals(0, log.size());
+    }
+
+    @Test
+    public void testUndoRestoresRobotState() {
+        log.begin(robot);
+        robot.turnRight();
+        log.begin(robot);
+        robot.penDown();
+
+        assertTrue(log.undo(floor, robot));
+        assertFalse(robot.isPenDown());
+        assertTrue(log.undo(floor, robot));
+        assertEquals(Robot.Direction.NORTH, robot.getFacing());
+    }
+
+    @Test
+    public void testUndoReportsCommandsThatChangedNothing() {
+        log.begin(robot);
+        assertFalse(log.undo(floor, robot));
+    }
+
+    @Test
+    public void testRunsAlongReversedRow() {
+        floor.mark(5, 2);
+        log.begin(robot);
+        log.recordUnmarked(floor, 8, 2, 2, 2);
+        floor.markRow(2, 2, 8);
+
+        log.undo(floor, robot);
+        assertEquals(1, floor.countMarked());
+        assertEquals(1, floor.getValue(5, 2));
+    }
+
+    @Test
+    public void testSegmentIsClippedToTheFloorBeforeItIsRead() {
+        floor.mark(4, 0);
+        log.begin(robot);
+        log.recordUnmarked(floor, Integer.MIN_VALUE, 0, Integer.MAX_VALUE, 0);
+        log.recordUnmarked(floor, 7, Integer.MAX_VALUE, 7, -5);
+        log.recordUnmarked(floor, 3, -1, 3, -1_000_000_000);
+        floor.markRow(0, 0, 9);
+        floor.markColumn(7, 0, 9);
+
+        assertTrue(log.undo(floor, robot));
+        assertEquals(1, floor.countMarked(), "Only the cell marked before should be left");
+        assertEquals(1, floor.getValue(4, 0));
+    }
+
+    @Test
+    public void testRunsMatchCellByCellOnEveryFloor() {
+        Random random = new Random(10);
+        for (Floor target : List.of(new PackedFloor(150), new SparseFloor(150), new Floor(150),
+                new ConcurrentFloor(150), new RunLengthFloor(150))) {
+            for (int round = 0; round < 200; round++) {
+                for (int i = 0; i < 20; i++) {
+                    target.mark(random.nextInt(300) - 75, random.nextInt(300) - 75);
+                }
+                Floor before = target.copy();
+                int fromX = random.nextInt(300) - 75;
+                int fromY = random.nextInt(300) - 75;
+                int to = random.nextInt(300) - 75;
+                boolean row = random.nextBoolean();
+                log.begin(robot);
+                log.recordUnmarked(target, fromX, fromY, row ? to : fromX, row ? fromY : to);
+                if (row) {
+                    target.markRow(fromY, fromX, to);
+                } else {
+                    target.markColumn(fromX, fromY, to);
+                }
+                log.undo(target, robot);
+                for (int y = -75; y < 225; y++) {
+                    for (int x = -75; x < 225; x++) {
+                        assertEquals(before.getValue(x, y), target.getValue(x, y), "Cell " + x + "," + y);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUndoClearsRunsAWordAtATime() {
+        Floor large = new SparseFloor(10);
+        long[] events = new long[1];
+        large.addListener(new FloorListener() {
+            @Override
+            public void marked(int y, int word, long bits) {
+            }
+
+            @Override
+            public void unmarked(int y, int word, long bits) {
+                events[0]++;
+            }
+
+            @Override
+            public void cleared() {
+            }
+        });
+        log.begin(robot);
+        log.recordUnmarked(large, 0, 5, 999_999, 5);
+        large.markRow(5, 0, 999_999);
+        log.undo(large, robot);
+        assertEquals(0, large.countMarked());
+        assertEquals(1_000_000, log.getClearedCount());
+        assertEquals((1_000_000 + 63) / 64, events[0], "Undo should clear one word per call, not one cell");
+    }
+
+    @Test
+    public void testOldestEntriesAreDiscardedWhenFull() {
+        for (int i = 0; i < 9; i++) {
+            log.begin(robot);
+            log.recordUnmarked(floor, i, 0, i, 0);
+            floor.mark(i, 0);
+        }
+        assertEquals(5, log.size(), "Half of the entries should be discarded when full");
+        for (int i = 0; i < 5; i++) {
+            log.undo(floor, robot);
+        }
+        assertEquals(4, floor.countMarked(), "Only the kept entries should be undone");
+        assertEquals(1, floor.getValue(3, 0));
+        assertEquals(0, floor.getValue(4, 0));
+    }
+
+    @Test
+    public void testInvalidDepth() {
+        assertThrows(IllegalArgumentException.class, () -> new UndoLog(0));
+    }
+}